@@ -0,0 +1,127 @@
+package org.oskari.benchmarks.mvt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.util.GeometryEditor;
+import org.locationtech.jts.simplify.VWSimplifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.oskari.service.mvt.SimpleFeaturesMVTEncoder;
+import org.oskari.service.mvt.ToMVTSpace;
+
+import fi.nls.oskari.util.IOHelper;
+
+/**
+ * Benchmarks the stages of creating a MVT tile from WFS features.
+ * Run with the GC profiler (-prof gc) to get the allocation rate of each stage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MVTEncoderBenchmark {
+
+    private static final int EXTENT = 4096;
+    private static final int BUFFER = 256;
+    private static final String LAYER = "benchmark";
+
+    @Param({ "EPSG:3067", "EPSG:3857" })
+    public String srs;
+
+    @Param({ MVTFixtures.TYPE_POINT, MVTFixtures.TYPE_LINE, MVTFixtures.TYPE_POLYGON })
+    public String geometryType;
+
+    @Param({ "100", "1000", "10000" })
+    public int features;
+
+    private double[] bbox;
+    private List<SimpleFeatureCollection> subTiles;
+    private SimpleFeatureCollection all;
+    private List<Geometry> geometries;
+    private List<Geometry> mvtSpaceGeometries;
+    private ToMVTSpace toMVTSpace;
+    private GeometryEditor editor;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        MVTFixtures fixtures = new MVTFixtures(srs, geometryType, features);
+        bbox = fixtures.getTileExtent();
+        subTiles = fixtures.getSubTiles();
+        all = fixtures.getAll();
+        geometries = fixtures.getGeometries();
+
+        // Same transformation SimpleFeaturesMVTEncoder uses
+        double scaleX = EXTENT / (bbox[2] - bbox[0]);
+        double scaleY = -(EXTENT / (bbox[3] - bbox[1]));
+        toMVTSpace = new ToMVTSpace(bbox[0], bbox[3], scaleX, scaleY);
+        editor = new GeometryEditor(new GeometryFactory());
+        mvtSpaceGeometries = new ArrayList<>(geometries.size());
+        for (Geometry g : geometries) {
+            Geometry edited = editor.edit(g, toMVTSpace);
+            if (edited != null && !edited.isEmpty()) {
+                mvtSpaceGeometries.add(edited);
+            }
+        }
+        encoded = SimpleFeaturesMVTEncoder.encodeToByteArray(all, LAYER, bbox, EXTENT, BUFFER);
+    }
+
+    @Benchmark
+    public List<Geometry> asMVTGeoms() {
+        return SimpleFeaturesMVTEncoder.asMVTGeoms(all, bbox, EXTENT, BUFFER);
+    }
+
+    @Benchmark
+    public void toMVTSpace(Blackhole bh) {
+        for (Geometry g : geometries) {
+            bh.consume(editor.edit(g, toMVTSpace));
+        }
+    }
+
+    @Benchmark
+    public void simplify(Blackhole bh) {
+        for (Geometry g : mvtSpaceGeometries) {
+            if (!(g instanceof Point)) {
+                bh.consume(VWSimplifier.simplify(g, 0.5));
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return SimpleFeaturesMVTEncoder.encodeToByteArray(all, LAYER, bbox, EXTENT, BUFFER);
+    }
+
+    @Benchmark
+    public byte[] encodeStreaming() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        SimpleFeaturesMVTEncoder.encode(subTiles, LAYER, bbox, EXTENT, BUFFER, baos);
+        return baos.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] gzip() throws IOException {
+        return IOHelper.gzip(encoded).toByteArray();
+    }
+
+}
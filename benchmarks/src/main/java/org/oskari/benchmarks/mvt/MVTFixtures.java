@@ -0,0 +1,162 @@
+package org.oskari.benchmarks.mvt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.oskari.service.mvt.TileCoord;
+import org.oskari.service.mvt.WFSTileGrid;
+import org.oskari.service.mvt.WFSTileGridProperties;
+
+/**
+ * Generates reproducible feature collections for the benchmarks. Features are spread over
+ * the tile and the tiles around it (like the sub-tiles loaded for a MVT tile) and each
+ * 3x3 cell gets its own collection.
+ */
+public class MVTFixtures {
+
+    public static final String TYPE_POINT = "point";
+    public static final String TYPE_LINE = "line";
+    public static final String TYPE_POLYGON = "polygon";
+
+    private static final GeometryFactory GF = new GeometryFactory();
+    private static final long SEED = 42L;
+    private static final int LINE_VERTICES = 64;
+    private static final int POLYGON_VERTICES = 48;
+
+    // Helsinki, the tile containing this point is used for the benchmarks
+    private static final double[] CENTER_3067 = { 385000, 6672000 };
+    private static final double[] CENTER_3857 = { 2776000, 8437000 };
+
+    private final WFSTileGrid grid;
+    private final TileCoord tile;
+    private final List<SimpleFeatureCollection> subTiles;
+
+    public MVTFixtures(String srs, String geometryType, int count) {
+        grid = WFSTileGridProperties.getKnownTileGrids().get(srs);
+        if (grid == null) {
+            throw new IllegalArgumentException("Unknown srs: " + srs);
+        }
+        double[] center = "EPSG:3857".equals(srs) ? CENTER_3857 : CENTER_3067;
+        int z = WFSTileGridProperties.getCacheZoom(grid);
+        tile = grid.getTilesInExtent(z, new double[] { center[0], center[1], center[0], center[1] }).get(0);
+        subTiles = createSubTiles(geometryType, count);
+    }
+
+    public double[] getTileExtent() {
+        return grid.getTileExtent(tile);
+    }
+
+    public List<SimpleFeatureCollection> getSubTiles() {
+        return subTiles;
+    }
+
+    public SimpleFeatureCollection getAll() {
+        DefaultFeatureCollection all = new DefaultFeatureCollection();
+        subTiles.forEach(all::addAll);
+        return all;
+    }
+
+    private List<SimpleFeatureCollection> createSubTiles(String geometryType, int count) {
+        SimpleFeatureType type = createType(geometryType);
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+        Random r = new Random(SEED);
+
+        List<SimpleFeatureCollection> collections = new ArrayList<>(9);
+        int perSubTile = Math.max(1, count / 9);
+        int id = 0;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                double[] extent = grid.getTileExtent(new TileCoord(tile.getZ(), tile.getX() + dx, tile.getY() + dy));
+                DefaultFeatureCollection fc = new DefaultFeatureCollection(null, type);
+                for (int i = 0; i < perSubTile; i++) {
+                    builder.set("geom", createGeometry(geometryType, extent, r));
+                    builder.set("name", "feature " + id);
+                    builder.set("value", r.nextDouble() * 1000);
+                    fc.add(builder.buildFeature("fixture." + id++));
+                }
+                collections.add(fc);
+            }
+        }
+        return collections;
+    }
+
+    private static SimpleFeatureType createType(String geometryType) {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName(geometryType);
+        tb.add("geom", getBinding(geometryType));
+        tb.add("name", String.class);
+        tb.add("value", Double.class);
+        return tb.buildFeatureType();
+    }
+
+    private static Class<? extends Geometry> getBinding(String geometryType) {
+        switch (geometryType) {
+        case TYPE_POINT: return Point.class;
+        case TYPE_LINE: return LineString.class;
+        case TYPE_POLYGON: return Polygon.class;
+        default: throw new IllegalArgumentException("Unknown geometry type: " + geometryType);
+        }
+    }
+
+    private static Geometry createGeometry(String geometryType, double[] extent, Random r) {
+        double w = extent[2] - extent[0];
+        double h = extent[3] - extent[1];
+        double x = extent[0] + r.nextDouble() * w;
+        double y = extent[1] + r.nextDouble() * h;
+        switch (geometryType) {
+        case TYPE_POINT:
+            return GF.createPoint(new Coordinate(x, y));
+        case TYPE_LINE:
+            // Random walk, some of the lines cross tile boundaries
+            Coordinate[] line = new Coordinate[LINE_VERTICES];
+            double step = w / 200;
+            for (int i = 0; i < LINE_VERTICES; i++) {
+                line[i] = new Coordinate(x, y);
+                x += (r.nextDouble() - 0.5) * step;
+                y += (r.nextDouble() - 0.5) * step;
+            }
+            return GF.createLineString(line);
+        case TYPE_POLYGON:
+            // Irregular star-like polygon around x,y
+            Coordinate[] ring = new Coordinate[POLYGON_VERTICES + 1];
+            double radius = w / 100;
+            for (int i = 0; i < POLYGON_VERTICES; i++) {
+                double angle = 2 * Math.PI * i / POLYGON_VERTICES;
+                double d = radius * (0.5 + r.nextDouble() * 0.5);
+                ring[i] = new Coordinate(x + Math.cos(angle) * d, y + Math.sin(angle) * d);
+            }
+            ring[POLYGON_VERTICES] = ring[0];
+            return GF.createPolygon(ring);
+        default:
+            throw new IllegalArgumentException("Unknown geometry type: " + geometryType);
+        }
+    }
+
+    /**
+     * @return geometries of all the features
+     */
+    public List<Geometry> getGeometries() {
+        List<Geometry> geometries = new ArrayList<>();
+        for (SimpleFeatureCollection fc : subTiles) {
+            try (SimpleFeatureIterator it = fc.features()) {
+                while (it.hasNext()) {
+                    geometries.add((Geometry) it.next().getDefaultGeometry());
+                }
+            }
+        }
+        return geometries;
+    }
+}
@@ -11,6 +11,7 @@ import fi.nls.oskari.db.DatasourceHelper;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.util.ConversionHelper;
 import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.OskariRuntimeException;
@@ -304,7 +305,7 @@ public class GeoserverPopulator {
         featureType.srs = srs;
         featureType.nativeCRS = srs;
         try {
-            CoordinateReferenceSystem sys = CRS.decode(featureType.srs);
+            CoordinateReferenceSystem sys = CRSRegistry.decode(featureType.srs);
             Envelope bounds = CRS.getEnvelope(sys);
             featureType.setBounds(bounds.getLowerCorner().getOrdinate(Coordinate.X),
                     bounds.getUpperCorner().getOrdinate(Coordinate.X),
@@ -40,7 +40,8 @@ public class CacheHandler extends RestActionHandler {
     @Override
     public void handlePost(ActionParameters params) throws ActionException {
         Cache cache = CacheManager.getCache(params.getRequiredParam("name"));
-        cache.flush(true);
+        // clears the shared second level too and flushes the cache on other nodes
+        cache.clear();
         handleGet(params);
 
         AuditLog.user(params.getClientIp(), params.getUser())
@@ -56,6 +57,11 @@ public class CacheHandler extends RestActionHandler {
         JSONHelper.putValue(json, "limit", cache.getLimit());
         JSONHelper.putValue(json, "expiration", cache.getExpiration() / 1000);
         JSONHelper.putValue(json, "secondsToExpire", cache.getTimeToExpirationMs() / 1000);
+        JSONHelper.putValue(json, "weight", cache.getWeight());
+        JSONHelper.putValue(json, "maxWeight", cache.getMaxWeight());
+        JSONHelper.putValue(json, "hits", cache.getHitCount());
+        JSONHelper.putValue(json, "misses", cache.getMissCount());
+        JSONHelper.putValue(json, "evictions", cache.getEvictionCount());
         return json;
     }
 
@@ -12,6 +12,7 @@ import fi.nls.oskari.annotation.OskariActionRoute;
 import fi.nls.oskari.control.*;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.HostConnectionLimiter;
 import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.ResponseHelper;
 import org.json.JSONObject;
@@ -69,9 +70,26 @@ public class MetricsHandler extends RestActionHandler {
             LOG.error(e, "Error writing thread state metrics");
         }
 
+        JSONHelper.putValue(metricsJSON, "http", getHttpMetrics());
+
         ResponseHelper.writeResponse(params, metricsJSON);
     }
 
+    private JSONObject getHttpMetrics() {
+        JSONObject hosts = new JSONObject();
+        for (HostConnectionLimiter host : HostConnectionLimiter.getHosts().values()) {
+            JSONObject json = new JSONObject();
+            JSONHelper.putValue(json, "limit", host.getLimit());
+            JSONHelper.putValue(json, "active", host.getActive());
+            JSONHelper.putValue(json, "waiting", host.getWaiting());
+            JSONHelper.putValue(json, "requests", host.getRequestCount());
+            JSONHelper.putValue(json, "failed", host.getFailedCount());
+            JSONHelper.putValue(json, "rejected", host.getRejectedCount());
+            JSONHelper.putValue(hosts, host.getHost(), json);
+        }
+        return hosts;
+    }
+
 
     @Override
     public void preProcess(ActionParameters params) throws ActionException {
@@ -15,10 +15,25 @@ import fi.nls.oskari.map.layer.OskariLayerService;
 import fi.nls.oskari.map.layer.OskariLayerServiceMybatisImpl;
 import fi.nls.oskari.map.myplaces.service.GeoServerProxyService;
 import fi.nls.oskari.util.ConversionHelper;
+import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.util.ResponseHelper;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static fi.nls.oskari.control.ActionConstants.*;
 
 @OskariActionRoute("GetFeatureInfoWMS")
@@ -40,6 +55,14 @@ public class GetGeoPointDataHandler extends ActionHandler {
     private static final String PARAM_ZOOM = "zoom";
     private static final String PARAM_GEOJSON = "geojson";
 
+    private static final String PROPERTY_PREFIX = "actionhandler.GetFeatureInfoWMS.";
+    private static final String PROPERTY_POOL_SIZE = PROPERTY_PREFIX + "pool.size";
+    private static final String PROPERTY_POOL_QUEUE = PROPERTY_PREFIX + "pool.queue";
+    private static final String PROPERTY_TIMEOUT = PROPERTY_PREFIX + "timeoutms";
+    private static final long DEFAULT_TIMEOUT_MS = 15000L;
+
+    private static ExecutorService executor;
+
 	@Override
     public void handleAction(final ActionParameters params) throws ActionException {
 	     
@@ -63,14 +86,14 @@ public class GetGeoPointDataHandler extends ActionHandler {
         }
 		final String srs = params.getHttpParam(PARAM_SRS, "EPSG:3067");
 
+		final List<String> requestedIds = new ArrayList<>();
+		final List<Callable<JSONObject>> requests = new ArrayList<>();
 		for (String id : layerIdsArr) {
 			if (id.indexOf('_') >= 0) {
 			    if (id.startsWith("myplaces_")) {
 			        // Myplaces wfs query modifier
-                    final JSONObject response = myplacesService.getFeatureInfo(lat, lon, zoom, id, user.getUuid(), srs);
-                    if(response != null) {
-                        data.put(response);
-                    }
+			        requestedIds.add(id);
+			        requests.add(() -> myplacesService.getFeatureInfo(lat, lon, zoom, id, user.getUuid(), srs));
 			    }
 			    continue;
 			}
@@ -82,6 +105,10 @@ public class GetGeoPointDataHandler extends ActionHandler {
 			}
 
 			final OskariLayer layer = mapLayerService.find(layerId);
+			if (layer == null) {
+			    log.warn("Layer not found", id);
+			    continue;
+			}
 			final String layerType = layer.getType();
 
 			if (OskariLayer.TYPE_WMS.equals(layerType)) {
@@ -97,11 +124,9 @@ public class GetGeoPointDataHandler extends ActionHandler {
 			    gfiParams.setY(params.getHttpParam(PARAM_Y));
 			    gfiParams.setZoom(zoom);
                 gfiParams.setSRSName(srs);
-			    
-			    final JSONObject response = geoPointService.getWMSFeatureInfo(gfiParams);
-                if(response != null) {
-                    data.put(response);
-                }
+
+                requestedIds.add(id);
+                requests.add(() -> geoPointService.getWMSFeatureInfo(gfiParams));
 				continue;
 			} else if (OskariLayer.TYPE_ARCGIS93.equals(layerType)) {
 				final GFIRestQueryParams gfiParams = new GFIRestQueryParams();
@@ -113,14 +138,22 @@ public class GetGeoPointDataHandler extends ActionHandler {
 
 				gfiParams.setSRSName(srs);
 
-				final JSONObject response = geoPointService.getRESTFeatureInfo(gfiParams);
-				if(response != null) {
-					data.put(response);
-				}
+				requestedIds.add(id);
+				requests.add(() -> geoPointService.getRESTFeatureInfo(gfiParams));
 				continue;
 			}
 		}
 
+		// the services are called concurrently, responses are added in the order of the requested layers
+		final long start = System.currentTimeMillis();
+		final List<Future<JSONObject>> futures = submit(requests);
+		for (int i = 0; i < futures.size(); i++) {
+		    final JSONObject response = getResult(requestedIds.get(i), futures.get(i), start);
+		    if (response != null) {
+		        data.put(response);
+		    }
+		}
+
 		try {
 	        final JSONObject rootJson = new JSONObject();
             rootJson.put("data", data);
@@ -130,4 +163,65 @@ public class GetGeoPointDataHandler extends ActionHandler {
 		    throw new ActionException("Could not populate GFI JSON: " + log.getAsString(data), je);
 		}
 	}
+
+    private List<Future<JSONObject>> submit(List<Callable<JSONObject>> requests) {
+        final List<Future<JSONObject>> futures = new ArrayList<>(requests.size());
+        for (Callable<JSONObject> request : requests) {
+            if (requests.size() == 1) {
+                // no need to hand over a single request to another thread (the timeout doesn't apply then)
+                FutureTask<JSONObject> task = new FutureTask<>(request);
+                task.run();
+                futures.add(task);
+            } else {
+                futures.add(getExecutor().submit(request));
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * Waits for the layer to respond until the timeout (counted from the start of the requests)
+     * @return the response or null if the layer didn't respond in time
+     */
+    private JSONObject getResult(String layerId, Future<JSONObject> future, long startTime) {
+        final long timeout = getTimeout(layerId) - (System.currentTimeMillis() - startTime);
+        try {
+            return future.get(Math.max(timeout, 0), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("GFI request to layer", layerId, "timed out after", getTimeout(layerId), "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error(e.getCause(), "GFI request to layer", layerId, "failed!");
+        }
+        future.cancel(true);
+        return null;
+    }
+
+    /**
+     * Timeout for the layer in ms: actionhandler.GetFeatureInfoWMS.layer.[layer id].timeoutms
+     * or actionhandler.GetFeatureInfoWMS.timeoutms
+     */
+    private static long getTimeout(String layerId) {
+        long defaultTimeout = PropertyUtil.getOptional(PROPERTY_TIMEOUT, DEFAULT_TIMEOUT_MS);
+        return PropertyUtil.getOptional(PROPERTY_PREFIX + "layer." + layerId + ".timeoutms", defaultTimeout);
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            int poolSize = PropertyUtil.getOptional(PROPERTY_POOL_SIZE, 16);
+            int queueSize = PropertyUtil.getOptional(PROPERTY_POOL_QUEUE, 100);
+            AtomicInteger threadNumber = new AtomicInteger();
+            // When the queue is full the request is run on the calling thread instead of failing it
+            executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueSize),
+                    r -> {
+                        Thread t = new Thread(r, "oskari-gfi-" + threadNumber.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return executor;
+    }
 }
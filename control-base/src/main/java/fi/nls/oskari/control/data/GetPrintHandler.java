@@ -1,14 +1,15 @@
 package fi.nls.oskari.control.data;
 
-import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
-import javax.imageio.ImageIO;
+
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.json.JSONArray;
@@ -17,12 +18,13 @@ import org.json.JSONObject;
 
 import org.opengis.referencing.FactoryException;
 import org.oskari.print.PrintService;
+import org.oskari.print.job.PrintJob;
+import org.oskari.print.job.PrintJobQueue;
 import org.oskari.print.request.PrintFormat;
 import org.oskari.print.request.PrintLayer;
 import org.oskari.print.request.PrintRequest;
 import org.oskari.print.request.PrintTile;
 import org.oskari.service.user.UserLayerService;
-import org.oskari.service.wfs.client.OskariWFSClient;
 
 import fi.nls.oskari.annotation.OskariActionRoute;
 import fi.nls.oskari.control.ActionException;
@@ -61,6 +63,8 @@ public class GetPrintHandler extends AbstractWFSFeaturesHandler {
     private static final String PARM_TIME = "time";
     private static final String PARM_FORMATTED_TIME = "formattedTime";
     private static final String PARM_TIMESERIES_LABEL = "timeseriesPrintLabel";
+    private static final String PARM_ASYNC = "async";
+    private static final int RETRY_AFTER_SECONDS = 30;
 
     private static final String ALLOWED_FORMATS = Arrays.toString(new String[] {
             PrintFormat.PDF.contentType, PrintFormat.PNG.contentType
@@ -83,6 +87,7 @@ public class GetPrintHandler extends AbstractWFSFeaturesHandler {
     private static final int MARGIN_HEIGHT = 15 * 2;
 
     private PrintService printService;
+    private PrintJobQueue printJobQueue;
 
     public static int mmToPx(int mm) {
         return (int) Math.round((OGC_DPI * mm) / MM_PER_INCH);
@@ -95,12 +100,9 @@ public class GetPrintHandler extends AbstractWFSFeaturesHandler {
         if (printService == null) {
             printService = new PrintService(featureClient);
         }
-    }
-
-    @Override
-    protected OskariWFSClient createWFSClient() {
-        // Don't cache features
-        return new OskariWFSClient();
+        if (printJobQueue == null) {
+            printJobQueue = PrintJobQueue.getInstance();
+        }
     }
 
     public void handleAction(ActionParameters params) throws ActionException {
@@ -108,6 +110,11 @@ public class GetPrintHandler extends AbstractWFSFeaturesHandler {
         for (PrintLayer layer : pr.getLayers()) {
             layerAccessHandlers.forEach(handler -> handler.handle(layer.getOskariLayer(), pr.getUser()));
         }
+        if (params.getHttpParam(PARM_ASYNC, false)) {
+            // render in the background, the result is available with GetPrintJob
+            handleAsync(pr, params);
+            return;
+        }
         switch (pr.getFormat()) {
         case PDF:
             handlePDF(pr, params);
@@ -122,6 +129,18 @@ public class GetPrintHandler extends AbstractWFSFeaturesHandler {
         }
     }
 
+    private void handleAsync(PrintRequest pr, ActionParameters params) throws ActionException {
+        final String owner = GetPrintJobHandler.getJobOwner(params);
+        try {
+            PrintJob job = printJobQueue.submit(owner, pr.getFormat(), out -> writePrint(pr, out));
+            ResponseHelper.writeResponse(params, GetPrintJobHandler.toJSON(job));
+        } catch (ServiceException e) {
+            // queue is full or the user has too many prints in progress, the client can try again later
+            params.getResponse().setHeader("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+            ResponseHelper.writeError(params, e.getMessage(), HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+    }
+
     private PrintRequest createPrintRequest(ActionParameters params)
             throws ActionException {
         PrintRequest request = new PrintRequest();
@@ -428,9 +447,8 @@ public class GetPrintHandler extends AbstractWFSFeaturesHandler {
 
     private void handlePNG(PrintRequest pr, ActionParameters params) throws ActionException {
         try {
-            BufferedImage bi = printService.getPNG(pr);
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ImageIO.write(bi, PrintFormat.PNG.fileExtension, baos);
+            writePNG(pr, baos);
             ResponseHelper.writeResponse(params, 200, PrintFormat.PNG.contentType, baos);
         } catch (IOException | ServiceException e) {
             throw new ActionException("Failed to create PNG", e);
@@ -438,16 +456,34 @@ public class GetPrintHandler extends AbstractWFSFeaturesHandler {
     }
 
     private void handlePDF(PrintRequest pr, ActionParameters params) throws ActionException {
-        try (PDDocument doc = new PDDocument()) {
-            printService.getPDF(pr, doc);
+        try {
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            doc.save(baos);
+            writePDF(pr, baos);
             ResponseHelper.writeResponse(params, 200, PrintFormat.PDF.contentType, baos);
         } catch (IOException | ServiceException e) {
             throw new ActionException("Failed to create PDF", e);
         }
     }
 
+    private void writePrint(PrintRequest pr, OutputStream out) throws IOException, ServiceException {
+        if (pr.getFormat() == PrintFormat.PNG) {
+            writePNG(pr, out);
+        } else {
+            writePDF(pr, out);
+        }
+    }
+
+    private void writePNG(PrintRequest pr, OutputStream out) throws IOException, ServiceException {
+        printService.writePNG(pr, out);
+    }
+
+    private void writePDF(PrintRequest pr, OutputStream out) throws IOException, ServiceException {
+        try (PDDocument doc = new PDDocument()) {
+            printService.getPDF(pr, doc);
+            doc.save(out);
+        }
+    }
+
     private static class LayerProperties {
 
         private final String id;
@@ -0,0 +1,111 @@
+package fi.nls.oskari.control.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONObject;
+import org.oskari.print.job.PrintJob;
+import org.oskari.print.job.PrintJobQueue;
+
+import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.control.ActionException;
+import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.control.ActionParamsException;
+import fi.nls.oskari.control.RestActionHandler;
+import fi.nls.oskari.domain.User;
+import fi.nls.oskari.util.IOHelper;
+import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.util.ResponseHelper;
+
+/**
+ * Status and results of prints requested with GetPrint&amp;async=true.
+ * GET returns the status of the job or the print itself with download=true. DELETE cancels the job.
+ * Jobs are only known to the node that rendered them, in a cluster the load balancer must route
+ * the requests of a session to the same node (sticky sessions).
+ */
+@OskariActionRoute("GetPrintJob")
+public class GetPrintJobHandler extends RestActionHandler {
+
+    private static final String PARAM_ID = "id";
+    private static final String PARAM_DOWNLOAD = "download";
+
+    private PrintJobQueue queue;
+
+    @Override
+    public void init() {
+        if (queue == null) {
+            queue = PrintJobQueue.getInstance();
+        }
+    }
+
+    public void setQueue(PrintJobQueue queue) {
+        this.queue = queue;
+    }
+
+    @Override
+    public void handleGet(ActionParameters params) throws ActionException {
+        PrintJob job = getJob(params);
+        if (!params.getHttpParam(PARAM_DOWNLOAD, false)) {
+            ResponseHelper.writeResponse(params, toJSON(job));
+            return;
+        }
+        File file = job.getFile();
+        if (job.getStatus() != PrintJob.Status.DONE || file == null) {
+            throw new ActionParamsException("Print is not ready: " + job.getStatus());
+        }
+        writeFile(params.getResponse(), job, file);
+    }
+
+    @Override
+    public void handleDelete(ActionParameters params) throws ActionException {
+        PrintJob job = getJob(params);
+        queue.cancel(job.getId(), job.getOwner());
+        ResponseHelper.writeResponse(params, toJSON(job));
+    }
+
+    private PrintJob getJob(ActionParameters params) throws ActionException {
+        PrintJob job = queue.getJob(params.getRequiredParam(PARAM_ID), getJobOwner(params));
+        if (job == null) {
+            // expired, owned by another user or requested from another node (jobs are node-local)
+            throw new ActionParamsException("Print job not found");
+        }
+        return job;
+    }
+
+    private void writeFile(HttpServletResponse response, PrintJob job, File file) throws ActionException {
+        response.setContentType(job.getFormat().contentType);
+        response.setHeader("Content-Disposition", "attachment;filename=print." + job.getFormat().fileExtension);
+        response.setContentLengthLong(file.length());
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            IOHelper.copy(in, response.getOutputStream());
+        } catch (IOException e) {
+            throw new ActionException("Failed to write print", e);
+        }
+    }
+
+    /**
+     * Jobs are only available to the user who requested them. Guests are identified by their session.
+     */
+    static String getJobOwner(ActionParameters params) {
+        User user = params.getUser();
+        if (user != null && !user.isGuest()) {
+            return "user_" + user.getId();
+        }
+        return "session_" + params.getRequest().getSession(true).getId();
+    }
+
+    static JSONObject toJSON(PrintJob job) {
+        JSONObject json = new JSONObject();
+        JSONHelper.putValue(json, "id", job.getId());
+        JSONHelper.putValue(json, "status", job.getStatus().name());
+        JSONHelper.putValue(json, "format", job.getFormat().contentType);
+        if (job.getError() != null) {
+            JSONHelper.putValue(json, "error", job.getError());
+        }
+        return json;
+    }
+}
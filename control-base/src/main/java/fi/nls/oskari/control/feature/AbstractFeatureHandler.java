@@ -14,6 +14,7 @@ import fi.nls.oskari.domain.map.Feature;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.domain.map.wfs.WFSLayerAttributes;
 import fi.nls.oskari.domain.map.wfs.WFSLayerCapabilities;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 
 import fi.nls.oskari.map.geometry.ProjectionHelper;
 
@@ -23,7 +24,6 @@ import fi.nls.oskari.util.ConversionHelper;
 import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.PropertyUtil;
-import org.geotools.referencing.CRS;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -104,7 +104,7 @@ public abstract class AbstractFeatureHandler extends RestActionHandler {
         Feature feature = new Feature();
         OskariLayer layer = getLayer(jsonObject.optString("layerId"));
         String srsName = JSONHelper.getStringFromJSON(jsonObject, "srsName", "EPSG:3067");
-        CoordinateReferenceSystem crs = CRS.decode(srsName);
+        CoordinateReferenceSystem crs = CRSRegistry.decode(srsName);
         WFSLayerAttributes attrs = new WFSLayerAttributes(layer.getAttributes());
         WFSLayerCapabilities caps = new WFSLayerCapabilities(layer.getCapabilities());
         String layerName = layer.getName();
@@ -10,7 +10,7 @@ import org.oskari.permissions.PermissionService;
 import org.oskari.service.user.LayerAccessHandler;
 import org.oskari.service.user.UserLayerService;
 import org.oskari.service.util.ServiceFactory;
-import org.oskari.service.wfs.client.CachingOskariWFSClient;
+import org.oskari.service.wfs.client.CachingOskariFeatureClient;
 import org.oskari.service.wfs.client.OskariFeatureClient;
 import org.oskari.service.wfs.client.OskariWFSClient;
 
@@ -38,7 +38,7 @@ public abstract class AbstractWFSFeaturesHandler extends ActionHandler {
     @Override
     public void init() {
         if (featureClient == null) {
-            featureClient = new OskariFeatureClient(createWFSClient());
+            featureClient = createFeatureClient();
         }
         if (permissionHelper == null) {
             permissionHelper = new PermissionHelper(
@@ -52,8 +52,15 @@ public abstract class AbstractWFSFeaturesHandler extends ActionHandler {
         this.layerAccessHandlers = handlerComponents.values();
     }
 
+    /**
+     * Features are cached per tile by default, see {@link CachingOskariFeatureClient}
+     */
+    protected OskariFeatureClient createFeatureClient() {
+        return new CachingOskariFeatureClient(createWFSClient());
+    }
+
     protected OskariWFSClient createWFSClient() {
-        return new CachingOskariWFSClient();
+        return new OskariWFSClient();
     }
 
     protected Optional<UserLayerService> getUserContentProsessor(String layerId) {
@@ -28,10 +28,12 @@ import org.oskari.permissions.PermissionService;
 import org.oskari.permissions.model.PermissionType;
 import org.oskari.permissions.model.ResourceType;
 import org.oskari.service.user.UserLayerService;
+import org.oskari.service.user.VectorTileQuery;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 @Oskari
@@ -112,12 +114,21 @@ public class AnalysisWFSHelper extends UserLayerService {
                                 ResourceType.analysislayer, user, PermissionType.VIEW_PUBLISHED));
     }
 
+    @Override
+    public Optional<byte[]> getVectorTile(String layerId, User user, VectorTileQuery query) {
+        return Optional.of(getService().getVectorTile(parseId(layerId), user, query));
+    }
+
     protected Analysis getLayer(int id) {
+        return getService().getAnalysisById(id);
+    }
+
+    private AnalysisDbService getService() {
         if (service == null) {
             // might cause problems with timing of components being initialized if done in init/constructor
             service = OskariComponentManager.getComponentOfType(AnalysisDbService.class);
         }
-        return service.getAnalysisById(id);
+        return service;
     }
     protected OskariLayer getBaseLayer() {
         return AnalysisDataService.getBaseLayer();
@@ -10,10 +10,8 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.geojson.feature.FeatureJSON;
 import org.geotools.geojson.geom.GeometryJSON;
 import org.geotools.geometry.jts.ReferencedEnvelope;
-import org.geotools.referencing.CRS;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.oskari.service.user.UserLayerService;
-import org.oskari.service.wfs.client.OskariWFSClient;
 
 import com.netflix.hystrix.exception.HystrixRuntimeException;
 import com.netflix.hystrix.exception.HystrixRuntimeException.FailureType;
@@ -25,6 +23,7 @@ import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionParameters;
 import fi.nls.oskari.control.ActionParamsException;
 import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.service.ServiceRuntimeException;
 import fi.nls.oskari.util.ResponseHelper;
 
@@ -59,7 +58,7 @@ public class GetWFSFeaturesHandler extends AbstractWFSFeaturesHandler {
         String targetSRS = params.getHttpParam(ActionConstants.PARAM_SRS, "EPSG:3857");
         CoordinateReferenceSystem targetCRS;
         try {
-            targetCRS = CRS.decode(targetSRS);
+            targetCRS = CRSRegistry.decode(targetSRS);
         } catch (Exception e) {
             throw new ActionParamsException("Invalid " + ActionConstants.PARAM_SRS);
         }
@@ -84,12 +83,6 @@ public class GetWFSFeaturesHandler extends AbstractWFSFeaturesHandler {
         }
     }
 
-    @Override
-    protected OskariWFSClient createWFSClient() {
-        // Override the default functionality, return non-caching OskariWFSClient
-        return new OskariWFSClient();
-    }
-
     protected ReferencedEnvelope parseBbox(String bbox, CoordinateReferenceSystem crs)
             throws ActionParamsException {
         String[] a = bbox.split(",", 4);
@@ -10,6 +10,7 @@ import fi.nls.oskari.map.layer.OskariLayerService;
 import fi.nls.oskari.map.layer.OskariLayerServiceMybatisImpl;
 import fi.nls.oskari.util.PropertyUtil;
 import org.oskari.log.AuditLog;
+import org.oskari.service.mvt.FileTileStore;
 
 /**
  * Admin WMS layer delete for single layer, for base/group layers -> use DeleteOrganizationHandler
@@ -38,6 +39,7 @@ public class DeleteLayerHandler extends AbstractLayerAdminHandler {
 
         try {
             mapLayerService.delete(layer.getId());
+            FileTileStore.getInstance().ifPresent(store -> store.invalidate(Integer.toString(layer.getId())));
 
             AuditLog.user(params.getClientIp(), params.getUser())
                     .withParam("id", layer.getId())
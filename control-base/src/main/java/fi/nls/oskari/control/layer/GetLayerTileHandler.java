@@ -145,7 +145,7 @@ public class GetLayerTileHandler extends ActionHandler {
                 actionTimer.stop();
             }
             if(con != null) {
-                con.disconnect();
+                IOHelper.disconnect(con);
             }
         }
     }
@@ -5,6 +5,8 @@ import static fi.nls.oskari.control.ActionConstants.PARAM_LANGUAGE;
 import static fi.nls.oskari.control.ActionConstants.PARAM_SRS;
 import static fi.nls.oskari.control.ActionConstants.PARAM_ID;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -16,6 +18,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import org.oskari.service.maplayer.OskariMapLayerGroupService;
+import fi.mml.map.mapwindow.util.OskariLayerCatalog;
 import fi.mml.map.mapwindow.util.OskariLayerWorker;
 import fi.nls.oskari.annotation.OskariActionRoute;
 import fi.nls.oskari.control.ActionException;
@@ -91,26 +94,70 @@ public class GetMapLayerGroupsHandler extends ActionHandler {
         Map<Integer, List<OskariLayerGroupLink>> linksByGroupId = linkService.findAll().stream()
                 .collect(Collectors.groupingBy(OskariLayerGroupLink::getGroupId));
 
-        // Get all layers instead of using OskariLayerWorker.getLayersForUser() so we don't check permissions twice
-        List<OskariLayer> layers = getLayers(params.getHttpParam(PARAM_ID));
-        if (params.getHttpParam(PARAM_FORCE_PROXY, false)) {
-            layers.stream()
-                    .filter(layer -> PROXY_LYR_TYPES.contains(layer.getType()))
-                    .forEach(layer -> layer.addAttribute("forceProxy", true));
-        }
-
-        int[] sortedLayerIds = layers.stream().mapToInt(OskariLayer::getId).toArray();
-        Arrays.sort(sortedLayerIds);
+        final String requestedLayers = params.getHttpParam(PARAM_ID);
+        final boolean forceProxy = params.getHttpParam(PARAM_FORCE_PROXY, false);
+        final boolean listAll = requestedLayers == null || requestedLayers.isEmpty();
         try {
+            if (listAll && !forceProxy) {
+                // the full listing is cached per role set, forceProxy modifies the layers so it can't be cached
+                OskariLayerCatalog.Listing listing = OskariLayerWorker.getListOfAllMapLayers(user, lang, crs, isPublished, isSecure);
+                int[] sortedLayerIds = getSortedIds(OskariLayerWorker.getCatalog().getLayers());
+                writeListing(params, listing, getGroupJSON(groupsByParentId, linksByGroupId, sortedLayerIds, -1));
+                return;
+            }
+            // Get all layers instead of using OskariLayerWorker.getLayersForUser() so we don't check permissions twice
+            List<OskariLayer> layers = getLayers(requestedLayers);
+            if (forceProxy) {
+                layers.stream()
+                        .filter(layer -> PROXY_LYR_TYPES.contains(layer.getType()))
+                        .forEach(layer -> layer.addAttribute("forceProxy", true));
+            }
             // getListOfMapLayers checks permissions
             JSONObject response = OskariLayerWorker.getListOfMapLayers(layers, user, lang, crs, isPublished, isSecure);
-            response.put(KEY_GROUPS, getGroupJSON(groupsByParentId, linksByGroupId, sortedLayerIds, -1));
+            response.put(KEY_GROUPS, getGroupJSON(groupsByParentId, linksByGroupId, getSortedIds(layers), -1));
             ResponseHelper.writeResponse(params, response);
         } catch (JSONException e) {
             throw new ActionException("Failed to add groups", e);
         }
     }
 
+    private int[] getSortedIds(List<OskariLayer> layers) {
+        int[] sortedLayerIds = layers.stream().mapToInt(OskariLayer::getId).toArray();
+        Arrays.sort(sortedLayerIds);
+        return sortedLayerIds;
+    }
+
+    /**
+     * Writes the cached layer array as is instead of parsing it to a JSONArray:
+     * {"layers":[...],"groups":[...]}
+     */
+    private void writeListing(ActionParameters params, OskariLayerCatalog.Listing listing, JSONArray groups) {
+        byte[] layers = listing.getLayersJSON();
+        byte[] groupsJSON = groups == null ? null : groups.toString().getBytes(StandardCharsets.UTF_8);
+        String etag = groupsJSON == null ? listing.getVersion()
+                : listing.getVersion() + "-" + Integer.toHexString(Arrays.hashCode(groupsJSON));
+        if (ResponseHelper.checkNotModified(params, etag)) {
+            return;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(layers.length + (groupsJSON == null ? 0 : groupsJSON.length) + 32);
+        out.write('{');
+        writeKey(out, KEY_LAYERS);
+        out.write(layers, 0, layers.length);
+        if (groupsJSON != null) {
+            out.write(',');
+            writeKey(out, KEY_GROUPS);
+            out.write(groupsJSON, 0, groupsJSON.length);
+        }
+        out.write('}');
+        ResponseHelper.writeResponse(params, 200, ResponseHelper.CONTENT_TYPE_JSON_UTF8, out.toByteArray(), etag);
+    }
+
+    private static void writeKey(ByteArrayOutputStream out, String key) {
+        byte[] quoted = JSONObject.quote(key).getBytes(StandardCharsets.UTF_8);
+        out.write(quoted, 0, quoted.length);
+        out.write(':');
+    }
+
     private List<OskariLayer> getLayers(String requestedLayers) {
         if (requestedLayers == null || requestedLayers.isEmpty()) {
             // nothing requested/default -> return all
@@ -27,6 +27,7 @@ import fi.nls.oskari.wmts.domain.WMTSCapabilities;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.oskari.permissions.model.*;
+import org.oskari.service.mvt.FileTileStore;
 import org.oskari.service.util.ServiceFactory;
 
 import javax.servlet.http.HttpServletRequest;
@@ -185,6 +186,8 @@ public class SaveLayerHandler extends AbstractLayerAdminHandler {
 
                 ml.setUpdated(new Date(System.currentTimeMillis()));
                 mapLayerService.update(ml);
+                // stored MVT tiles might no longer match the layer config (url, filters etc)
+                FileTileStore.getInstance().ifPresent(store -> store.invalidate(Integer.toString(ml.getId())));
 
                 AuditLog.user(params.getClientIp(), params.getUser())
                         .withParam("id", ml.getId())
@@ -75,7 +75,7 @@ public class WFSGetLayerFields {
         try {
             final HttpURLConnection conn = IOHelper.getConnection(path, layer.getUsername(), layer.getPassword(), queryParams, headers);
             OskariWFS3Client.validateResponse(conn, CONTENT_TYPE_GEOJSON);
-            final String rawResponse = IOHelper.readString(conn.getInputStream());
+            final String rawResponse = IOHelper.readString(conn);
             final JSONObject response = new JSONObject(rawResponse);
             return response.getJSONArray("features");
         } catch (IOException ex) {
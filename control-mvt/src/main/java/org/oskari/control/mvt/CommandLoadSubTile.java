@@ -0,0 +1,77 @@
+package org.oskari.control.mvt;
+
+import java.util.Optional;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.oskari.service.user.UserLayerService;
+import org.oskari.service.wfs.client.OskariFeatureClient;
+
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.netflix.hystrix.HystrixThreadPoolKey;
+import com.netflix.hystrix.HystrixThreadPoolProperties;
+
+import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Loads the features of a single sub-tile (tile on cache zoom level) for a MVT tile.
+ * Each layer gets its own thread pool so one slow service can't hog the threads of other layers.
+ * On timeout or failure an empty collection is returned so the tile can be created from the other sub-tiles.
+ */
+public class CommandLoadSubTile extends HystrixCommand<SimpleFeatureCollection> {
+
+    private static final Logger LOG = LogFactory.getLogger(CommandLoadSubTile.class);
+    private static final String GROUP_KEY = "mvt";
+
+    private final OskariFeatureClient featureClient;
+    private final String id;
+    private final OskariLayer layer;
+    private final ReferencedEnvelope bbox;
+    private final CoordinateReferenceSystem crs;
+    private final Optional<UserLayerService> processor;
+
+    public CommandLoadSubTile(OskariFeatureClient featureClient, String id, OskariLayer layer,
+            ReferencedEnvelope bbox, CoordinateReferenceSystem crs, Optional<UserLayerService> processor) {
+        super(Setter
+                .withGroupKey(HystrixCommandGroupKey.Factory.asKey(GROUP_KEY))
+                .andCommandKey(HystrixCommandKey.Factory.asKey(GROUP_KEY + "_" + id))
+                .andThreadPoolKey(HystrixThreadPoolKey.Factory.asKey(GROUP_KEY + "_" + id))
+                .andThreadPoolPropertiesDefaults(
+                        HystrixThreadPoolProperties.Setter()
+                        .withCoreSize(PropertyUtil.getOptional("oskari." + GROUP_KEY + ".job.pool.size", 4))
+                        .withMaxQueueSize(PropertyUtil.getOptional("oskari." + GROUP_KEY + ".job.pool.limit", 100))
+                        .withQueueSizeRejectionThreshold(PropertyUtil.getOptional("oskari." + GROUP_KEY + ".job.pool.queue", 100)))
+                .andCommandPropertiesDefaults(
+                        HystrixCommandProperties.Setter()
+                        .withExecutionTimeoutInMilliseconds(PropertyUtil.getOptional("oskari." + GROUP_KEY + ".job.timeoutms", 15000))
+                        .withCircuitBreakerRequestVolumeThreshold(PropertyUtil.getOptional("oskari." + GROUP_KEY + ".failrequests", 5))
+                        .withMetricsRollingStatisticalWindowInMilliseconds(PropertyUtil.getOptional("oskari." + GROUP_KEY + ".rollingwindow", 100000))
+                        .withCircuitBreakerSleepWindowInMilliseconds(PropertyUtil.getOptional("oskari." + GROUP_KEY + ".sleepwindow", 20000))));
+        this.featureClient = featureClient;
+        this.id = id;
+        this.layer = layer;
+        this.bbox = bbox;
+        this.crs = crs;
+        this.processor = processor;
+    }
+
+    @Override
+    protected SimpleFeatureCollection run() throws Exception {
+        return featureClient.getFeatures(id, layer, bbox, crs, processor);
+    }
+
+    @Override
+    protected SimpleFeatureCollection getFallback() {
+        LOG.warn("Failed to load features for layer:", id, "bbox:", bbox, "-", getExecutionException());
+        return new DefaultFeatureCollection();
+    }
+
+}
@@ -1,34 +1,22 @@
 package org.oskari.control.mvt;
 
-import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import fi.nls.oskari.control.feature.AbstractWFSFeaturesHandler;
 import fi.nls.oskari.control.view.modifier.bundle.BundleHandler;
 import fi.nls.oskari.control.view.modifier.bundle.MapfullHandler;
 import fi.nls.oskari.view.modifier.ViewModifierManager;
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
-import org.geotools.feature.DefaultFeatureCollection;
-import org.geotools.geometry.jts.ReferencedEnvelope;
-import org.geotools.referencing.CRS;
-import org.opengis.feature.simple.SimpleFeatureType;
-import org.opengis.feature.type.GeometryDescriptor;
-import org.opengis.feature.type.GeometryType;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
-import org.oskari.service.mvt.SimpleFeaturesMVTEncoder;
+import org.oskari.service.mvt.FileTileStore;
 import org.oskari.service.mvt.TileCoord;
 import org.oskari.service.mvt.WFSTileGrid;
 import org.oskari.service.user.UserLayerService;
 
-import org.locationtech.jts.geom.Envelope;
-import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.MultiPoint;
-import org.locationtech.jts.geom.Point;
-
 import fi.nls.oskari.annotation.OskariActionRoute;
 import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.cache.CacheSerializer;
 import fi.nls.oskari.cache.ComputeOnceCache;
 import fi.nls.oskari.control.ActionCommonException;
 import fi.nls.oskari.control.ActionConstants;
@@ -36,37 +24,30 @@ import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionParameters;
 import fi.nls.oskari.control.ActionParamsException;
 
+import fi.nls.oskari.domain.User;
 import fi.nls.oskari.domain.map.OskariLayer;
-import fi.nls.oskari.service.ServiceRuntimeException;
-import fi.nls.oskari.util.IOHelper;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
+import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.util.ResponseHelper;
 import org.oskari.service.mvt.WFSTileGridProperties;
 
 @OskariActionRoute("GetWFSVectorTile")
 public class GetWFSVectorTileHandler extends AbstractWFSFeaturesHandler {
 
+    private static final Logger LOG = LogFactory.getLogger(GetWFSVectorTileHandler.class);
+
+    // opt-in: create tiles of my places, user layers and analysis in the database (PostGIS ST_AsMVT) instead of WFS
+    protected static final String PROP_USER_CONTENT_DB_TILES = "oskari.mvt.usercontent.database";
+
     protected static final String MVT_CONTENT_TYPE = "application/vnd.mapbox-vector-tile";
     protected static final String PARAM_Z = "z";
     protected static final String PARAM_X = "x";
     protected static final String PARAM_Y = "y";
 
-    // Resolution (metres per px) we are aiming for with the WFS requests
-    // This value is used to find the zoom level that is closest to the resolution specified here
-    // For ETRS-TME35FIN TileGrid this translates to z=8
-    private static final int TARGET_ZOOM_LEVEL_RESOLUTION = 8192 / 256;
-
     private static final int DEFAULT_CACHE_ZOOM_LEVEL = 8;
     private static final int MIN_ZOOM_OVER_CACHE_ZOOM = 1;
-    private static final Map<String, WFSTileGrid> KNOWN_TILE_GRIDS;
-    static {
-        KNOWN_TILE_GRIDS = new HashMap<>();
-        KNOWN_TILE_GRIDS.put("EPSG:3067", new WFSTileGrid(new double[] { -548576, 6291456, -548576 + (8192*256), 6291456 + (8192*256) }, 15));
-        KNOWN_TILE_GRIDS.put("EPSG:3857", new WFSTileGrid(new double[] { -20037508.3427892, -20037508.3427892, 20037508.3427892, 20037508.3427892 }, 18));
-    }
-
-    private static final int TILE_EXTENT = 4096;
-    private static final int TILE_BUFFER = 256;
-    private static final int TILE_BUFFER_POINT = 1024;
 
     private static final int CACHE_LIMIT = 256;
     private static final long CACHE_EXPIRATION = TimeUnit.MINUTES.toMillis(5);
@@ -74,12 +55,20 @@ public class GetWFSVectorTileHandler extends AbstractWFSFeaturesHandler {
     private ComputeOnceCache<byte[]> tileCache;
     private WFSTileGridProperties tileGridProperties;
     private Map<String, Integer> cacheZLevels;
+    private WFSTileCreator tileCreator;
+    private Optional<FileTileStore> tileStore;
+    private boolean userContentDbTiles;
 
     @Override
     public void init() {
         super.init();
         tileCache = CacheManager.getCache(getClass().getName(),
                 () -> new ComputeOnceCache<>(CACHE_LIMIT, CACHE_EXPIRATION));
+        // allows storing tiles in a second level cache (configured with oskari.cache.tier.[cache name])
+        tileCache.setSerializer(CacheSerializer.BYTES);
+        tileCreator = new WFSTileCreator(featureClient);
+        tileStore = FileTileStore.getInstance();
+        userContentDbTiles = PropertyUtil.getOptional(PROP_USER_CONTENT_DB_TILES, false);
         tileGridProperties = new WFSTileGridProperties();
         cacheZLevels = new HashMap<>();
         final Map<String, BundleHandler> handlers = ViewModifierManager.getModifiersOfType(BundleHandler.class);
@@ -89,8 +78,13 @@ public class GetWFSVectorTileHandler extends AbstractWFSFeaturesHandler {
 
         Map<String, WFSTileGrid> propTileGrids = tileGridProperties.getTileGridMap();
 
-        KNOWN_TILE_GRIDS.entrySet().stream().forEach(set -> setGridToModifiers(pluginHandler, set.getKey(), set.getValue()));
+        WFSTileGridProperties.getKnownTileGrids().entrySet().stream().forEach(set -> setGridToModifiers(pluginHandler, set.getKey(), set.getValue()));
         propTileGrids.entrySet().stream().forEach(set -> setGridToModifiers(pluginHandler, set.getKey(), set.getValue()));
+
+        // decode the projections we have tile grids for so the first tile requests don't pay for it
+        Set<String> gridSrs = new HashSet<>(WFSTileGridProperties.getKnownTileGrids().keySet());
+        gridSrs.addAll(propTileGrids.keySet());
+        CRSRegistry.warmUp(gridSrs);
     }
 
     @Override
@@ -104,8 +98,7 @@ public class GetWFSVectorTileHandler extends AbstractWFSFeaturesHandler {
         final Optional<UserLayerService> contentProcessor = getUserContentProsessor(id);
         final OskariLayer layer = findLayer(id, params.getUser(), contentProcessor);
 
-        final WFSTileGrid gridFromProps = tileGridProperties.getTileGrid(srs.toUpperCase());
-        final WFSTileGrid grid = gridFromProps != null ? gridFromProps : KNOWN_TILE_GRIDS.get(srs.toUpperCase());
+        final WFSTileGrid grid = tileGridProperties.getTileGridOrDefault(srs);
         final int targetZ = cacheZLevels.getOrDefault(srs, DEFAULT_CACHE_ZOOM_LEVEL);
         final int minZoom =  targetZ - MIN_ZOOM_OVER_CACHE_ZOOM;
         validateTile(grid, z, x, y, minZoom);
@@ -113,19 +106,21 @@ public class GetWFSVectorTileHandler extends AbstractWFSFeaturesHandler {
 
         final CoordinateReferenceSystem crs;
         try {
-            crs = CRS.decode(srs, true);
+            crs = CRSRegistry.decode(srs, true);
         } catch (Exception e) {
             throw new ActionParamsException("Invalid srs!");
         }
 
-        final String cacheKey = getCacheKey(id, srs, z, x, y);
+        final String cacheKey = getCacheKey(id, layer, srs, z, x, y);
+        final AtomicBoolean complete = new AtomicBoolean(true);
         final byte[] resp;
         try {
             if (contentProcessor.isPresent() && contentProcessor.get().isUserContentLayer(id)) {
                 // Don't cache user content tiles
-                resp = createTile(id, layer, crs, grid, targetZ, z, x, y, contentProcessor);
+                resp = getUserContentTile(id, layer, params.getUser(), srs, crs, grid, targetZ, z, x, y,
+                        contentProcessor.get(), complete);
             } else {
-                resp = tileCache.get(cacheKey, __ -> createTile(id, layer, crs, grid, targetZ, z, x, y, contentProcessor));
+                resp = getCachedTile(cacheKey, id, srs, layer, crs, grid, targetZ, z, x, y);
             }
         } catch (Exception e) {
             throw new ActionCommonException(e.getMessage(), e);
@@ -135,8 +130,82 @@ public class GetWFSVectorTileHandler extends AbstractWFSFeaturesHandler {
         ResponseHelper.writeResponse(params, 200, MVT_CONTENT_TYPE, resp);
     }
 
+    private byte[] getCachedTile(String cacheKey, String id, String srs, OskariLayer layer, CoordinateReferenceSystem crs,
+            WFSTileGrid grid, int targetZ, int z, int x, int y) {
+        try {
+            return tileCache.get(cacheKey, __ -> {
+                AtomicBoolean complete = new AtomicBoolean(true);
+                byte[] tile = getStoredTileOrCreate(id, srs, layer, crs, grid, targetZ, z, x, y, complete);
+                if (!complete.get()) {
+                    // Some of the sub-tiles failed to load, serve the tile without caching it
+                    throw new PartialTileException(tile);
+                }
+                return tile;
+            });
+        } catch (PartialTileException e) {
+            return e.getTile();
+        }
+    }
+
+    /**
+     * Thrown from the cache loader so that a partial tile is never put to the cache
+     */
+    private static class PartialTileException extends RuntimeException {
+        private final byte[] tile;
+
+        private PartialTileException(byte[] tile) {
+            super("Partial tile", null, false, false);
+            this.tile = tile;
+        }
+
+        private byte[] getTile() {
+            return tile;
+        }
+    }
+
+    private byte[] getUserContentTile(String id, OskariLayer layer, User user, String srs, CoordinateReferenceSystem crs,
+            WFSTileGrid grid, int targetZ, int z, int x, int y, UserLayerService contentProcessor, AtomicBoolean complete) {
+        if (userContentDbTiles) {
+            try {
+                Optional<byte[]> tile = tileCreator.createUserContentTile(id, layer, user, srs, grid, z, x, y, contentProcessor);
+                if (tile.isPresent()) {
+                    return tile.get();
+                }
+            } catch (Exception e) {
+                // f.ex. PostGIS version without ST_AsMVT, fallback to WFS
+                LOG.warn(e, "Failed to create tile in database for layer:", id, "- using WFS instead");
+            }
+        }
+        return tileCreator.createTile(id, layer, crs, grid, targetZ, z, x, y, Optional.of(contentProcessor), complete);
+    }
+
+    private byte[] getStoredTileOrCreate(String id, String srs, OskariLayer layer, CoordinateReferenceSystem crs,
+            WFSTileGrid grid, int targetZ, int z, int x, int y, AtomicBoolean complete) {
+        long ttl = getTileStoreTTL(layer);
+        if (!tileStore.isPresent() || ttl <= 0) {
+            return tileCreator.createTile(id, layer, crs, grid, targetZ, z, x, y, Optional.empty(), complete);
+        }
+        TileCoord tile = new TileCoord(z, x, y);
+        byte[] stored = tileStore.get().get(id, srs, tile, ttl);
+        if (stored != null) {
+            return stored;
+        }
+        byte[] created = tileCreator.createTile(id, layer, crs, grid, targetZ, z, x, y, Optional.empty(), complete);
+        if (complete.get()) {
+            tileStore.get().put(id, srs, tile, created);
+        }
+        return created;
+    }
+
+    /**
+     * @return time in seconds to keep tiles of the layer in the tile store, 0 if tiles shouldn't be stored
+     */
+    protected static long getTileStoreTTL(OskariLayer layer) {
+        return layer.getAttributes().optLong(FileTileStore.KEY_LAYER_TTL, FileTileStore.getDefaultTTL());
+    }
+
     private void setGridToModifiers (WFSVectorLayerPluginViewModifier handler, String srsName, WFSTileGrid grid) {
-        int z = grid.getZForResolution(TARGET_ZOOM_LEVEL_RESOLUTION, 0);
+        int z = WFSTileGridProperties.getCacheZoom(grid);
         cacheZLevels.put(srsName, z);
         handler.setMinZoomLevelForSRS(srsName, z - MIN_ZOOM_OVER_CACHE_ZOOM);
         handler.setTileGridForSRS(srsName, grid);
@@ -198,128 +267,17 @@ public class GetWFSVectorTileHandler extends AbstractWFSFeaturesHandler {
         return resolution * 1000 / 0.28; // OGC WMTS 0.28 mm/px
     }
 
-    private String getCacheKey(String id, String srs, int z, int x, int y) {
-        return "WFS_" + id + "_" + srs + "_" + z + "_" + x + "_" + y;
-    }
-
     /**
-     * Creates the actual MVT tile
-     * @return an MVT tile as a GZipped byte array
-     * @throws ActionException
+     * The key includes the time the layer was last saved so tiles created with an old layer config
+     * are no longer served from the in-heap or shared cache after the layer has been modified.
      */
-    private byte[] createTile(String id, OskariLayer layer, CoordinateReferenceSystem crs,
-            WFSTileGrid grid, int targetZ, int z, int x, int y,
-            Optional<UserLayerService> contentProcessor) {
-        List<TileCoord> tilesToLoad = getTilesToLoad(targetZ, z, x, y);
-
-        DefaultFeatureCollection sfc = new DefaultFeatureCollection();
-        for (TileCoord tile : tilesToLoad) {
-            SimpleFeatureCollection tileFeatures = getFeatures(id, layer, crs, grid, tile, contentProcessor);
-            sfc.addAll(tileFeatures);
-        }
-
-        String mvtLayer = layer.getName();
-        double[] bbox = grid.getTileExtent(new TileCoord(z, x, y));
-        int extent = TILE_EXTENT;
-        int buffer = isOnlyPointFeatures(sfc) ? TILE_BUFFER_POINT : TILE_BUFFER;
-
-        byte[] encoded = SimpleFeaturesMVTEncoder.encodeToByteArray(sfc, mvtLayer, bbox, extent, buffer);
-        try {
-            return IOHelper.gzip(encoded).toByteArray();
-        } catch (IOException e) {
-            throw new ServiceRuntimeException("Unexpected IOException occured");
-        }
+    protected static String getCacheKey(String id, OskariLayer layer, String srs, int z, int x, int y) {
+        long updated = layer.getUpdated() == null ? 0L : layer.getUpdated().getTime();
+        return "WFS_" + id + "_" + updated + "_" + srs + "_" + z + "_" + x + "_" + y;
     }
 
     protected static List<TileCoord> getTilesToLoad(int targetZ, int z, int x, int y) {
-        int x1;
-        int y1;
-        int x2;
-        int y2;
-
-        // Always load tiles at zoom level targetZ so that we don't cache same features on multiple zoom levels
-        // Also we can reduce the amount of requests we make to the background services, for example for
-        // high zoom levels we can send only one request and use the cached FeatureCollection for multiple tiles
-        int dz = z - targetZ;
-
-        if (dz == 0) {
-            // this is the sweet spot zoom level wise
-            // Load the target tile and the tiles next to (around) it (buffer)
-            x1 = x - 1;
-            y1 = y - 1;
-            x2 = x + 1;
-            y2 = y + 1;
-        } else if (dz < 0) {
-            // Calculate all tiles inside our target tile
-            int d = (int) Math.pow(2, -dz);
-            x1 = x * d;
-            y1 = y * d;
-            x2 = (x+1) * d;
-            y2 = (y+1) * d;
-            // And include tiles around them (buffer)
-            x1--;
-            y1--;
-        } else {
-            // Calculate the tile (of lower zoom level) which contains the target tile
-            int div = (int) Math.pow(2, dz);
-            x1 = x / div;
-            y1 = y / div;
-            // And include tiles around them (buffer)
-            x2 = x1 + 1;
-            y2 = y1 + 1;
-            x1--;
-            y1--;
-        }
-
-        int tileZ = targetZ;
-        List<TileCoord> wfsTiles = new ArrayList<>();
-        for (int tileX = x1; tileX <= x2; tileX++) {
-            for (int tileY = y1; tileY <= y2; tileY++) {
-                wfsTiles.add(new TileCoord(tileZ, tileX, tileY));
-            }
-        }
-        return wfsTiles;
-    }
-
-    private SimpleFeatureCollection getFeatures(String id, OskariLayer layer,
-            CoordinateReferenceSystem crs, WFSTileGrid grid, TileCoord tile,
-            Optional<UserLayerService> processor) {
-        double[] box = grid.getTileExtent(tile);
-        Envelope envelope = new Envelope(box[0], box[2], box[1], box[3]);
-        ReferencedEnvelope bbox = new ReferencedEnvelope(envelope, crs);
-        return featureClient.getFeatures(id, layer, bbox, crs, processor);
-    }
-
-    private boolean isOnlyPointFeatures(SimpleFeatureCollection sfc) {
-        SimpleFeatureType sft = sfc.getSchema();
-        if (sft == null) {
-            return isOnlyPointFeaturesIterate(sfc);
-        }
-        GeometryDescriptor geomDesc = sft.getGeometryDescriptor();
-        if (geomDesc == null) {
-            return isOnlyPointFeaturesIterate(sfc);
-        }
-        GeometryType geomType = geomDesc.getType();
-        if (geomType == null) {
-            return isOnlyPointFeaturesIterate(sfc);
-        }
-        Class<?> binding = geomType.getBinding();
-        if (binding == null) {
-            return isOnlyPointFeaturesIterate(sfc);
-        }
-        return binding == Point.class || binding == MultiPoint.class;
-    }
-
-    private boolean isOnlyPointFeaturesIterate(SimpleFeatureCollection sfc) {
-        SimpleFeatureIterator it = sfc.features();
-        while (it.hasNext()) {
-            Geometry g = (Geometry) it.next().getDefaultGeometry();
-            if (g == null || g instanceof Point || g instanceof MultiPoint) {
-                continue;
-            }
-            return false;
-        }
-        return true;
+        return WFSTileCreator.getTilesToLoad(targetZ, z, x, y);
     }
 
 }
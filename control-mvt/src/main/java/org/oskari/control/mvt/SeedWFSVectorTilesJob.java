@@ -0,0 +1,165 @@
+package org.oskari.control.mvt;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.oskari.cluster.ClusterManager;
+import org.oskari.service.mvt.FileTileStore;
+import org.oskari.service.mvt.TileCoord;
+import org.oskari.service.mvt.WFSTileGrid;
+import org.oskari.service.mvt.WFSTileGridProperties;
+import org.oskari.service.util.ServiceFactory;
+import org.oskari.service.wfs.client.OskariFeatureClient;
+import org.oskari.service.wfs.client.OskariWFSClient;
+
+import fi.nls.oskari.annotation.Oskari;
+import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
+import fi.nls.oskari.map.layer.OskariLayerService;
+import fi.nls.oskari.util.ConversionHelper;
+import fi.nls.oskari.util.PropertyUtil;
+import fi.nls.oskari.worker.ScheduledJob;
+
+/**
+ * Creates MVT tiles for configured layers to the tile store so they can be served without requests to the WFS service.
+ * Requires oskari.mvt.store.dir to be configured. Configure with:
+ * <pre>
+ * oskari.scheduler.job.SeedWFSVectorTilesJob.cronLine=0 0 3 * * ?
+ * oskari.mvt.seed.layers=1,2
+ * oskari.mvt.seed.srs=EPSG:3067
+ * oskari.mvt.seed.bbox=minX,minY,maxX,maxY (in seed srs)
+ * oskari.mvt.seed.minZoom=7 (defaults to the minimum zoom level served by GetWFSVectorTile)
+ * oskari.mvt.seed.maxZoom=9 (defaults to the cache zoom level of the tile grid)
+ * oskari.mvt.seed.lockSeconds=21600 (clustered environments only, see below)
+ * </pre>
+ * Tiles that are still valid (see FileTileStore.KEY_LAYER_TTL) are skipped.
+ * In a clustered environment a lock in Redis makes sure only one node seeds at a time
+ * (the tile store directory is expected to be shared between the nodes).
+ */
+@Oskari("SeedWFSVectorTilesJob")
+public class SeedWFSVectorTilesJob extends ScheduledJob {
+
+    private static final Logger LOG = LogFactory.getLogger(SeedWFSVectorTilesJob.class);
+    private static final String PROPERTY_PREFIX = "oskari.mvt.seed.";
+    private static final String LOCK_KEY = "oskari:mvt:seed";
+    private static final int DEFAULT_LOCK_SECONDS = 6 * 60 * 60;
+
+    private final OskariLayerService layerService;
+    private final WFSTileCreator tileCreator;
+
+    public SeedWFSVectorTilesJob() {
+        // seeded features are written to the tile store, don't push live entries out of the shared feature cache
+        this(ServiceFactory.getMapLayerService(),
+                new WFSTileCreator(new OskariFeatureClient(new OskariWFSClient())));
+    }
+
+    public SeedWFSVectorTilesJob(OskariLayerService layerService, WFSTileCreator tileCreator) {
+        this.layerService = layerService;
+        this.tileCreator = tileCreator;
+    }
+
+    @Override
+    public void execute(Map<String, Object> params) {
+        Optional<FileTileStore> store = FileTileStore.getInstance();
+        if (!store.isPresent()) {
+            LOG.warn("Tile store not configured, set", FileTileStore.PROPERTY_DIR, "to enable seeding");
+            return;
+        }
+        final String lockValue = UUID.randomUUID().toString();
+        final boolean clustered = ClusterManager.isClustered();
+        if (clustered && !JedisManager.setIfAbsent(LOCK_KEY,
+                PropertyUtil.getOptional(PROPERTY_PREFIX + "lockSeconds", DEFAULT_LOCK_SECONDS), lockValue)) {
+            LOG.info("Tiles are being seeded on another node. Skipping seeding.");
+            return;
+        }
+        try {
+            seed(store.get());
+        } finally {
+            if (clustered) {
+                JedisManager.delIfEquals(LOCK_KEY, lockValue);
+            }
+        }
+    }
+
+    private void seed(FileTileStore store) {
+        String srs = PropertyUtil.get(PROPERTY_PREFIX + "srs", PropertyUtil.get("oskari.native.srs", "EPSG:3067"));
+        WFSTileGrid grid = new WFSTileGridProperties().getTileGridOrDefault(srs);
+        double[] bbox = getBBOX();
+        if (grid == null || bbox == null) {
+            LOG.warn("Unknown tile grid for", srs, "or invalid", PROPERTY_PREFIX + "bbox", "- skipping seeding");
+            return;
+        }
+        CoordinateReferenceSystem crs;
+        try {
+            crs = CRSRegistry.decode(srs, true);
+        } catch (Exception e) {
+            LOG.warn(e, "Failed to decode", srs);
+            return;
+        }
+        int targetZ = WFSTileGridProperties.getCacheZoom(grid);
+        int minZoom = PropertyUtil.getOptional(PROPERTY_PREFIX + "minZoom", targetZ - 1);
+        int maxZoom = PropertyUtil.getOptional(PROPERTY_PREFIX + "maxZoom", targetZ);
+
+        for (String id : PropertyUtil.getCommaSeparatedList(PROPERTY_PREFIX + "layers")) {
+            OskariLayer layer = layerService.find(ConversionHelper.getInt(id, -1));
+            if (layer == null || !OskariLayer.TYPE_WFS.equals(layer.getType())) {
+                LOG.warn("Skipping seeding for layer:", id, "- not a WFS layer");
+                continue;
+            }
+            long ttl = GetWFSVectorTileHandler.getTileStoreTTL(layer);
+            if (ttl <= 0) {
+                LOG.warn("Skipping seeding for layer:", id, "- tile store TTL not configured");
+                continue;
+            }
+            LOG.info("Seeding tiles for layer:", id, "zoom levels:", minZoom, "-", maxZoom);
+            for (int z = minZoom; z <= maxZoom; z++) {
+                seed(store, id, layer, srs, crs, grid, targetZ, z, bbox, ttl);
+            }
+        }
+    }
+
+    private void seed(FileTileStore store, String id, OskariLayer layer, String srs, CoordinateReferenceSystem crs,
+            WFSTileGrid grid, int targetZ, int z, double[] bbox, long ttl) {
+        List<TileCoord> tiles = grid.getTilesInExtent(z, bbox);
+        int created = 0;
+        for (TileCoord tile : tiles) {
+            if (store.get(id, srs, tile, ttl) != null) {
+                continue;
+            }
+            try {
+                AtomicBoolean complete = new AtomicBoolean(true);
+                byte[] data = tileCreator.createTile(id, layer, crs, grid, targetZ,
+                        tile.getZ(), tile.getX(), tile.getY(), Optional.empty(), complete);
+                if (complete.get()) {
+                    store.put(id, srs, tile, data);
+                    created++;
+                }
+            } catch (Exception e) {
+                LOG.warn(e, "Failed to seed tile", tile, "for layer:", id);
+            }
+        }
+        LOG.info("Seeded", created, "/", tiles.size(), "tiles for layer:", id, "on zoom level:", z);
+    }
+
+    private double[] getBBOX() {
+        String[] parts = PropertyUtil.getCommaSeparatedList(PROPERTY_PREFIX + "bbox");
+        if (parts.length != 4) {
+            return null;
+        }
+        double[] bbox = new double[4];
+        for (int i = 0; i < 4; i++) {
+            bbox[i] = ConversionHelper.getDouble(parts[i], Double.NaN);
+            if (Double.isNaN(bbox[i])) {
+                return null;
+            }
+        }
+        return bbox;
+    }
+}
@@ -0,0 +1,223 @@
+package org.oskari.control.mvt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.feature.type.GeometryType;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.oskari.service.mvt.SimpleFeaturesMVTEncoder;
+import org.oskari.service.mvt.TileCoord;
+import org.oskari.service.mvt.WFSTileGrid;
+import org.oskari.service.user.UserLayerService;
+import org.oskari.service.user.VectorTileQuery;
+import org.oskari.service.wfs.client.OskariFeatureClient;
+
+import fi.nls.oskari.domain.User;
+import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.service.ServiceRuntimeException;
+
+/**
+ * Creates MVT tiles from WFS features. Used by GetWFSVectorTileHandler and for seeding the tile store.
+ */
+public class WFSTileCreator {
+
+    private static final Logger LOG = LogFactory.getLogger(WFSTileCreator.class);
+
+    private static final int TILE_EXTENT = 4096;
+    private static final int TILE_BUFFER = 256;
+    private static final int TILE_BUFFER_POINT = 1024;
+
+    private final OskariFeatureClient featureClient;
+
+    public WFSTileCreator(OskariFeatureClient featureClient) {
+        this.featureClient = featureClient;
+    }
+
+    /**
+     * Creates the actual MVT tile. The sub-tiles are loaded concurrently and
+     * sub-tiles that fail to load (or time out) are left out of the tile.
+     * @param complete set to false if any of the sub-tiles failed to load
+     * @return an MVT tile as a GZipped byte array
+     */
+    public byte[] createTile(String id, OskariLayer layer, CoordinateReferenceSystem crs,
+            WFSTileGrid grid, int targetZ, int z, int x, int y,
+            Optional<UserLayerService> contentProcessor, AtomicBoolean complete) {
+        List<TileCoord> tilesToLoad = getTilesToLoad(targetZ, z, x, y);
+
+        List<CommandLoadSubTile> commands = new ArrayList<>(tilesToLoad.size());
+        List<Future<SimpleFeatureCollection>> futures = new ArrayList<>(tilesToLoad.size());
+        for (TileCoord tile : tilesToLoad) {
+            CommandLoadSubTile cmd = new CommandLoadSubTile(featureClient, id, layer,
+                    getTileBBOX(crs, grid, tile), crs, contentProcessor);
+            commands.add(cmd);
+            futures.add(cmd.queue());
+        }
+
+        // The sub-tile collections are passed to the encoder as is, copying the features to
+        // a single collection would only duplicate the (possibly cached) features in memory
+        List<SimpleFeatureCollection> subTiles = new ArrayList<>(futures.size());
+        int failed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                // Commands time out on their own and fallback to an empty collection
+                subTiles.add(futures.get(i).get());
+                if (commands.get(i).isResponseFromFallback()) {
+                    failed++;
+                }
+            } catch (Exception e) {
+                LOG.warn(e, "Failed to load sub-tile", tilesToLoad.get(i), "for layer:", id);
+                failed++;
+            }
+        }
+        if (failed == futures.size()) {
+            throw new ServiceRuntimeException("Failed to load features for layer: " + id);
+        }
+        if (failed > 0) {
+            complete.set(false);
+        }
+
+        String mvtLayer = layer.getName();
+        double[] bbox = grid.getTileExtent(new TileCoord(z, x, y));
+        int extent = TILE_EXTENT;
+        int buffer = subTiles.stream().allMatch(this::isOnlyPointFeatures) ? TILE_BUFFER_POINT : TILE_BUFFER;
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
+            SimpleFeaturesMVTEncoder.encode(subTiles, mvtLayer, bbox, extent, buffer, gzip);
+        } catch (IOException e) {
+            throw new ServiceRuntimeException("Unexpected IOException occured");
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Creates the MVT tile of user content directly in the database if the content processor supports it.
+     * The features are selected with the bounds of the requested tile so no sub-tiles are loaded.
+     * UserLayerService.postProcess() isn't applied, the database query selects the post-processed attributes.
+     * @return an MVT tile as a GZipped byte array or empty if the tile can't be created in the database
+     */
+    public Optional<byte[]> createUserContentTile(String id, OskariLayer layer, User user, String srs,
+            WFSTileGrid grid, int z, int x, int y, UserLayerService contentProcessor) {
+        double[] bbox = grid.getTileExtent(new TileCoord(z, x, y));
+        VectorTileQuery query = new VectorTileQuery(layer.getName(), srs, bbox,
+                TILE_EXTENT, TILE_BUFFER, TILE_BUFFER_POINT);
+        Optional<byte[]> mvt = contentProcessor.getVectorTile(id, user, query);
+        if (!mvt.isPresent()) {
+            return Optional.empty();
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
+            gzip.write(mvt.get());
+        } catch (IOException e) {
+            throw new ServiceRuntimeException("Unexpected IOException occured");
+        }
+        return Optional.of(baos.toByteArray());
+    }
+
+    protected static List<TileCoord> getTilesToLoad(int targetZ, int z, int x, int y) {
+        int x1;
+        int y1;
+        int x2;
+        int y2;
+
+        // Always load tiles at zoom level targetZ so that we don't cache same features on multiple zoom levels
+        // Also we can reduce the amount of requests we make to the background services, for example for
+        // high zoom levels we can send only one request and use the cached FeatureCollection for multiple tiles
+        int dz = z - targetZ;
+
+        if (dz == 0) {
+            // this is the sweet spot zoom level wise
+            // Load the target tile and the tiles next to (around) it (buffer)
+            x1 = x - 1;
+            y1 = y - 1;
+            x2 = x + 1;
+            y2 = y + 1;
+        } else if (dz < 0) {
+            // Calculate all tiles inside our target tile
+            int d = (int) Math.pow(2, -dz);
+            x1 = x * d;
+            y1 = y * d;
+            x2 = (x+1) * d;
+            y2 = (y+1) * d;
+            // And include tiles around them (buffer)
+            x1--;
+            y1--;
+        } else {
+            // Calculate the tile (of lower zoom level) which contains the target tile
+            int div = (int) Math.pow(2, dz);
+            x1 = x / div;
+            y1 = y / div;
+            // And include tiles around them (buffer)
+            x2 = x1 + 1;
+            y2 = y1 + 1;
+            x1--;
+            y1--;
+        }
+
+        int tileZ = targetZ;
+        List<TileCoord> wfsTiles = new ArrayList<>();
+        for (int tileX = x1; tileX <= x2; tileX++) {
+            for (int tileY = y1; tileY <= y2; tileY++) {
+                wfsTiles.add(new TileCoord(tileZ, tileX, tileY));
+            }
+        }
+        return wfsTiles;
+    }
+
+    private ReferencedEnvelope getTileBBOX(CoordinateReferenceSystem crs, WFSTileGrid grid, TileCoord tile) {
+        double[] box = grid.getTileExtent(tile);
+        Envelope envelope = new Envelope(box[0], box[2], box[1], box[3]);
+        return new ReferencedEnvelope(envelope, crs);
+    }
+
+    private boolean isOnlyPointFeatures(SimpleFeatureCollection sfc) {
+        SimpleFeatureType sft = sfc.getSchema();
+        if (sft == null) {
+            return isOnlyPointFeaturesIterate(sfc);
+        }
+        GeometryDescriptor geomDesc = sft.getGeometryDescriptor();
+        if (geomDesc == null) {
+            return isOnlyPointFeaturesIterate(sfc);
+        }
+        GeometryType geomType = geomDesc.getType();
+        if (geomType == null) {
+            return isOnlyPointFeaturesIterate(sfc);
+        }
+        Class<?> binding = geomType.getBinding();
+        if (binding == null) {
+            return isOnlyPointFeaturesIterate(sfc);
+        }
+        return binding == Point.class || binding == MultiPoint.class;
+    }
+
+    private boolean isOnlyPointFeaturesIterate(SimpleFeatureCollection sfc) {
+        try (SimpleFeatureIterator it = sfc.features()) {
+            while (it.hasNext()) {
+                Geometry g = (Geometry) it.next().getDefaultGeometry();
+                if (g == null || g instanceof Point || g instanceof MultiPoint) {
+                    continue;
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
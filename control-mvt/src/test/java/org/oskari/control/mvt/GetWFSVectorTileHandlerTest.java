@@ -1,14 +1,18 @@
 package org.oskari.control.mvt;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
 
 import org.junit.Test;
 import org.oskari.service.mvt.TileCoord;
 
+import fi.nls.oskari.domain.map.OskariLayer;
+
 public class GetWFSVectorTileHandlerTest {
 
     @Test
@@ -128,4 +132,13 @@ public class GetWFSVectorTileHandlerTest {
         }
     }
 
+    @Test
+    public void testCacheKeyChangesWhenLayerIsSaved() {
+        OskariLayer layer = new OskariLayer();
+        layer.setUpdated(new Date(1000L));
+        String before = GetWFSVectorTileHandler.getCacheKey("1", layer, "EPSG:3067", 5, 1, 2);
+        layer.setUpdated(new Date(2000L));
+        assertNotEquals(before, GetWFSVectorTileHandler.getCacheKey("1", layer, "EPSG:3067", 5, 1, 2));
+    }
+
 }
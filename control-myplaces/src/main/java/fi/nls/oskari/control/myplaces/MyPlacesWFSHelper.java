@@ -30,6 +30,7 @@ import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.util.PropertyUtil;
 import org.oskari.geojson.GeoJSONFeatureCollection;
 import org.oskari.service.user.UserLayerService;
+import org.oskari.service.user.VectorTileQuery;
 
 @Oskari
 public class MyPlacesWFSHelper extends UserLayerService {
@@ -103,12 +104,21 @@ public class MyPlacesWFSHelper extends UserLayerService {
         return layer.isOwnedBy(user.getUuid()) || layer.isPublished();
     }
 
+    @Override
+    public Optional<byte[]> getVectorTile(String layerId, User user, VectorTileQuery query) {
+        return Optional.of(getService().getVectorTile(parseId(layerId), user.getUuid(), query));
+    }
+
     protected MyPlaceCategory getLayer(int id) {
+        return getService().findCategory(id);
+    }
+
+    private MyPlacesService getService() {
         if (service == null) {
             // might cause problems with timing of components being initialized if done in init/constructor
             service = OskariComponentManager.getComponentOfType(MyPlacesService.class);
         }
-        return service.findCategory(id);
+        return service;
     }
 
     public SimpleFeatureCollection postProcess(SimpleFeatureCollection sfc) throws Exception {
@@ -1,15 +1,12 @@
 package fi.nls.oskari.control.statistics;
 
 import fi.nls.oskari.annotation.OskariActionRoute;
-import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionHandler;
 import fi.nls.oskari.control.ActionParameters;
 import fi.nls.oskari.control.ActionParamsException;
 import fi.nls.oskari.control.statistics.data.*;
 import fi.nls.oskari.control.statistics.plugins.*;
-import fi.nls.oskari.domain.User;
-import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.ResponseHelper;
 
 import org.json.JSONException;
@@ -48,32 +45,37 @@ public class GetIndicatorDataHandler extends ActionHandler {
             throw new ActionParamsException("Invalid parameter value for key: "
                     + PARAM_SELECTORS + " - expected JSON object");
         }
-        JSONObject response = getIndicatorDataJSON(params.getUser(),
-                pluginId, indicatorId, layerId, selectorsJSON);
-        ResponseHelper.writeResponse(params, response);
-    }
-
-    private JSONObject getIndicatorDataJSON(User user, long pluginId, String indicatorId,
-            long layerId, JSONObject selectorJSON) throws ActionException {
         StatisticalDatasourcePlugin plugin = PLUGIN_MANAGER.getPlugin(pluginId);
         if (plugin == null) {
             throw new ActionParamsException("No such datasource: " + pluginId);
         }
 
-        StatisticalIndicator indicator = plugin.getIndicator(user, indicatorId);
+        StatisticalIndicator indicator = plugin.getIndicator(params.getUser(), indicatorId);
         if (indicator == null) {
             // indicator can be null if user doesn't have permission to it
             throw new ActionParamsException("No such indicator: " + indicatorId + " on datasource: " + pluginId);
         }
 
-        String cacheKey = StatisticsHelper.getIndicatorDataCacheKey(pluginId, indicatorId, layerId, selectorJSON);
-        if (plugin.canCache()) {
-            JSONObject cached = getFromCache(cacheKey);
-            if (cached != null) {
-                return cached;
-            }
+        if (!plugin.canCache()) {
+            ResponseHelper.writeResponse(params, getIndicatorDataJSON(plugin, indicator, layerId, selectorsJSON));
+            return;
         }
 
+        // cached data is kept gzipped and written to the client as is
+        String cacheKey = StatisticsHelper.getIndicatorDataCacheKey(pluginId, indicatorId, layerId, selectorsJSON);
+        byte[] cached = StatisticsHelper.DATA_CACHE.get(cacheKey);
+        if (cached == null) {
+            // Note that there is an another layer of caches in the plugins doing the web queries.
+            // Two layers are necessary, because deserialization and conversion to the internal data model
+            // is a pretty heavy operation.
+            cached = StatisticsHelper.DATA_CACHE.put(cacheKey,
+                    getIndicatorDataJSON(plugin, indicator, layerId, selectorsJSON));
+        }
+        StatisticsResponseCache.write(params, cached);
+    }
+
+    private JSONObject getIndicatorDataJSON(StatisticalDatasourcePlugin plugin, StatisticalIndicator indicator,
+            long layerId, JSONObject selectorJSON) throws ActionException {
         StatisticalIndicatorLayer layer = indicator.getLayer(layerId);
         if (layer == null) {
             throw new ActionParamsException("No such regionset: " + layerId);
@@ -81,24 +83,9 @@ public class GetIndicatorDataHandler extends ActionHandler {
 
         StatisticalIndicatorDataModel selectors = StatisticsHelper.getIndicatorDataModel(selectorJSON);
         Map<String, IndicatorValue> values = plugin.getIndicatorValues(indicator, selectors, layer);
-        JSONObject response = toJSON(values);
-
-        // Note that there is an another layer of caches in the plugins doing the web queries.
-        // Two layers are necessary, because deserialization and conversion to the internal data model
-        // is a pretty heavy operation.
-        if (plugin.canCache()) {
-            JedisManager.setex(cacheKey, JedisManager.EXPIRY_TIME_DAY, response.toString());
-        }
-
-        return response;
+        return toJSON(values);
     }
 
-    private JSONObject getFromCache(String cacheKey) {
-        String cachedData = JedisManager.get(cacheKey);
-        return JSONHelper.createJSONObject(cachedData);
-    }
-
-
     private JSONObject toJSON(Map<String, IndicatorValue> values) throws ActionException {
         try {
             JSONObject json = new JSONObject();
@@ -0,0 +1,143 @@
+package fi.nls.oskari.control.statistics;
+
+import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.cache.CacheSerializer;
+import fi.nls.oskari.cache.ComputeOnceCache;
+import fi.nls.oskari.control.*;
+import fi.nls.oskari.control.statistics.db.RegionSet;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.service.OskariComponentManager;
+import fi.nls.oskari.service.ServiceRuntimeException;
+import fi.nls.oskari.util.ResponseHelper;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.oskari.service.mvt.SimpleFeaturesMVTEncoder;
+import org.oskari.service.mvt.TileCoord;
+import org.oskari.service.mvt.WFSTileGrid;
+import org.oskari.service.mvt.WFSTileGridProperties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Returns the regions of a regionset as Mapbox vector tiles. Features have properties "id" and "name"
+ * matching the ones in GetRegions response. Geometries are simplified for the zoom level of the tile
+ * so thematic maps on small scales load only a fraction of the full resolution geometries.
+ * Uses the same tile grids as GetWFSVectorTile.
+ */
+@OskariActionRoute("GetRegionTile")
+public class GetRegionTileHandler extends ActionHandler {
+
+    private static final Logger LOG = LogFactory.getLogger(GetRegionTileHandler.class);
+
+    private static final String MVT_CONTENT_TYPE = "application/vnd.mapbox-vector-tile";
+    private static final String MVT_LAYER = "regions";
+    private static final String PARAM_Z = "z";
+    private static final String PARAM_X = "x";
+    private static final String PARAM_Y = "y";
+
+    private static final int TILE_EXTENT = 4096;
+    private static final int TILE_BUFFER = 256;
+
+    private static final int FEATURE_CACHE_LIMIT = 32;
+    private static final int TILE_CACHE_LIMIT = 1024;
+    private static final long CACHE_EXPIRATION = TimeUnit.HOURS.toMillis(1);
+
+    private RegionSetService service;
+    private WFSTileGridProperties tileGridProperties;
+    private ComputeOnceCache<SimpleFeatureCollection> featureCache;
+    private ComputeOnceCache<byte[]> tileCache;
+
+    public void setRegionsetService(final RegionSetService service) {
+        this.service = service;
+    }
+
+    @Override
+    public void init() {
+        if (service == null) {
+            setRegionsetService(OskariComponentManager.getComponentOfType(RegionSetService.class));
+        }
+        tileGridProperties = new WFSTileGridProperties();
+        featureCache = CacheManager.getCache(getClass().getName() + ".features",
+                () -> new ComputeOnceCache<>(FEATURE_CACHE_LIMIT, CACHE_EXPIRATION));
+        tileCache = CacheManager.getCache(getClass().getName(),
+                () -> new ComputeOnceCache<>(TILE_CACHE_LIMIT, CACHE_EXPIRATION));
+        // allows storing tiles in a second level cache (configured with oskari.cache.tier.[cache name])
+        tileCache.setSerializer(CacheSerializer.BYTES);
+    }
+
+    @Override
+    public void handleAction(ActionParameters params) throws ActionException {
+        final int regionsetId = params.getRequiredParamInt(StatisticsHelper.PARAM_REGIONSET);
+        final String srs = params.getRequiredParam(ActionConstants.PARAM_SRS);
+        final int z = params.getRequiredParamInt(PARAM_Z);
+        final int x = params.getRequiredParamInt(PARAM_X);
+        final int y = params.getRequiredParamInt(PARAM_Y);
+
+        final WFSTileGrid grid = tileGridProperties.getTileGridOrDefault(srs);
+        validateTile(grid, z, x, y);
+        final RegionSet regionset = service.getRegionSet(regionsetId);
+        if (regionset == null) {
+            throw new ActionParamsException("Regionset not found");
+        }
+
+        final String cacheKey = regionsetId + "_" + srs + "_" + z + "_" + x + "_" + y;
+        final byte[] tile;
+        try {
+            tile = tileCache.get(cacheKey, __ -> createTile(regionset, srs, grid, z, x, y));
+        } catch (ServiceRuntimeException e) {
+            throw new ActionException(e.getMessage(), e.getCause());
+        }
+        params.getResponse().addHeader("Access-Control-Allow-Origin", "*");
+        ResponseHelper.writeGzippedResponse(params, 200, MVT_CONTENT_TYPE, tile, null);
+    }
+
+    private SimpleFeatureCollection getFeatures(RegionSet regionset, String srs) {
+        return featureCache.get(regionset.getId() + "_" + srs, __ -> {
+            try {
+                return RegionSetHelper.getRegionFeatures(regionset, srs);
+            } catch (Exception e) {
+                LOG.warn(e, "Failed to load regions for regionset:", regionset.getId());
+                throw new ServiceRuntimeException("Failed to load regions", e);
+            }
+        });
+    }
+
+    /**
+     * @return MVT tile as a gzipped byte array
+     */
+    private byte[] createTile(RegionSet regionset, String srs, WFSTileGrid grid, int z, int x, int y) {
+        SimpleFeatureCollection features = getFeatures(regionset, srs);
+        double[] bbox = grid.getTileExtent(new TileCoord(z, x, y));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
+            // geometries are clipped to the tile and simplified in tile pixel space
+            SimpleFeaturesMVTEncoder.encode(Collections.singletonList(features), MVT_LAYER,
+                    bbox, TILE_EXTENT, TILE_BUFFER, gzip);
+        } catch (IOException e) {
+            throw new ServiceRuntimeException("Unexpected IOException occured", e);
+        }
+        return baos.toByteArray();
+    }
+
+    private void validateTile(WFSTileGrid grid, int z, int x, int y) throws ActionParamsException {
+        if (grid == null) {
+            throw new ActionParamsException("Unknown srs");
+        }
+        if (z < 0 || z > grid.getMaxZoom()) {
+            throw new ActionParamsException("z must be between 0 and " + grid.getMaxZoom());
+        }
+        int matrixWidthHeight = WFSTileGrid.getMatrixSize(z);
+        if (x < 0 || x >= matrixWidthHeight) {
+            throw new ActionParamsException("x must be between 0 and " + (matrixWidthHeight - 1));
+        }
+        if (y < 0 || y >= matrixWidthHeight) {
+            throw new ActionParamsException("y must be between 0 and " + (matrixWidthHeight - 1));
+        }
+    }
+
+}
@@ -8,9 +8,7 @@ import fi.nls.oskari.service.OskariComponentManager;
 import fi.nls.oskari.service.ServiceException;
 import fi.nls.oskari.service.ServiceRuntimeException;
 import fi.nls.oskari.util.JSONHelper;
-import fi.nls.oskari.util.ResponseHelper;
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 import org.opengis.geometry.MismatchedDimensionException;
 import org.opengis.referencing.FactoryException;
@@ -32,12 +30,17 @@ import java.util.List;
          },
          "geojson" : { ... }
      }, ...]
+ * Optional parameter "simplify" (1-3) returns simplified geometries for smaller scales.
  */
 @OskariActionRoute("GetRegions")
 public class GetRegionsHandler extends ActionHandler {
 
     private static final String CACHE_KEY_PREFIX = "oskari:stats:regionset:";
     private static final String KEY_REGIONS = "regions";
+    private static final String PARAM_SIMPLIFY = "simplify";
+    // regionsets with geometries can be several MB, keep them gzipped and serve as is
+    private static final StatisticsResponseCache CACHE =
+            new StatisticsResponseCache(GetRegionsHandler.class.getName(), JedisManager.EXPIRY_TIME_DAY);
 
     private RegionSetService service;
 
@@ -55,8 +58,11 @@ public class GetRegionsHandler extends ActionHandler {
     public void handleAction(ActionParameters ap) throws ActionException {
         final int layerId = ap.getRequiredParamInt("regionset");
         final String srs = ap.getRequiredParam(ActionConstants.PARAM_SRS);
-        JSONObject response = getRegionInfoJSON(layerId, srs);
-        ResponseHelper.writeResponse(ap, response);
+        final int simplify = ap.getHttpParam(PARAM_SIMPLIFY, 0);
+        if (simplify < 0 || simplify > RegionSetHelper.MAX_SIMPLIFY_LEVEL) {
+            throw new ActionParamsException(PARAM_SIMPLIFY + " must be between 0 and " + RegionSetHelper.MAX_SIMPLIFY_LEVEL);
+        }
+        StatisticsResponseCache.write(ap, getRegionInfo(layerId, srs, simplify));
     }
 
     /**
@@ -65,30 +71,55 @@ public class GetRegionsHandler extends ActionHandler {
      * @throws ActionException
      */
     public JSONObject getRegionInfoJSON(long layerId, final String srs) throws ActionException {
+        return StatisticsResponseCache.toJSON(getRegionInfo(layerId, srs));
+    }
+
+    /**
+     * @return gzipped region information JSON
+     */
+    public byte[] getRegionInfo(long layerId, final String srs) throws ActionException {
+        return getRegionInfo(layerId, srs, 0);
+    }
+
+    /**
+     * @param simplify 0 for full resolution geometries, 1-RegionSetHelper.MAX_SIMPLIFY_LEVEL for simplified ones
+     * @return gzipped region information JSON
+     */
+    public byte[] getRegionInfo(long layerId, final String srs, int simplify) throws ActionException {
         final RegionSet regionset = service.getRegionSet(layerId);
 
         if (regionset == null) {
             throw new ActionParamsException("Regionset not found");
         }
-        return requestRegionInfoJSON(layerId, regionset, srs);
+        return requestRegionInfo(layerId, regionset, srs, simplify);
     }
 
     public JSONObject requestRegionInfoJSON(long id, RegionSet regionset, final String srs) throws ActionException {
-        final String cacheKey = CACHE_KEY_PREFIX + id + ":" + srs;
-        final String cachedData = JedisManager.get(cacheKey);
-        if (cachedData != null && !cachedData.isEmpty()) {
-            try {
-                return new JSONObject(cachedData);
-            } catch (JSONException e) {
-                // Failed serializing. Skipping the cache.
-            }
+        return StatisticsResponseCache.toJSON(requestRegionInfo(id, regionset, srs, 0));
+    }
+
+    private byte[] requestRegionInfo(long id, RegionSet regionset, final String srs, int simplify) throws ActionException {
+        final String cacheKey = getCacheKey(id, srs, simplify);
+        final byte[] cached = CACHE.get(cacheKey);
+        if (cached != null) {
+            return cached;
         }
+        return CACHE.put(cacheKey, createRegionInfoJSON(regionset, srs, simplify));
+    }
+
+    protected static String getCacheKey(long id, String srs, int simplify) {
+        // full resolution geometries are stored with the same key as before simplification was supported
+        String key = CACHE_KEY_PREFIX + id + ":" + srs;
+        return simplify > 0 ? key + ":simplify:" + simplify : key;
+    }
+
+    private JSONObject createRegionInfoJSON(RegionSet regionset, final String srs, int simplify) throws ActionException {
         final JSONObject response = new JSONObject();
         final JSONArray regions = new JSONArray();
         JSONHelper.putValue(response, KEY_REGIONS, regions);
 
         try {
-            final List<Region> result = RegionSetHelper.getRegions(regionset, srs);
+            final List<Region> result = RegionSetHelper.getRegions(regionset, srs, simplify);
             for (Region region : result) {
                 regions.put(region.toJSON());
             }
@@ -104,7 +135,6 @@ public class GetRegionsHandler extends ActionHandler {
             throw new ActionException("Failed to perform transformation", e);
         }
 
-        JedisManager.setex(cacheKey, JedisManager.EXPIRY_TIME_DAY, response.toString());
         return response;
     }
 
@@ -27,6 +27,10 @@ public class StatisticsHelper {
     public static final String PARAM_SELECTORS = "selectors";
     public static final String PARAM_REGIONSET = "regionset";
 
+    // indicator data responses, flushed with flushDataFromCache()
+    static final StatisticsResponseCache DATA_CACHE =
+            new StatisticsResponseCache(GetIndicatorDataHandler.class.getName(), JedisManager.EXPIRY_TIME_DAY);
+
     public static String getIndicatorMetadataCacheKey(long datasourceId, String indicatorId) {
         return "oskari_get_indicator_metadata_handler_" + datasourceId + ":" + indicatorId;
     }
@@ -56,7 +60,7 @@ public class StatisticsHelper {
 
     public static void flushDataFromCache(long pluginId, String indicatorId, long layerId, JSONObject selectorJSON) {
         String cacheKey = getIndicatorDataCacheKey(pluginId, indicatorId, layerId, selectorJSON);
-        JedisManager.del(cacheKey);
+        DATA_CACHE.remove(cacheKey);
     }
 
     public static StatisticalIndicatorDataModel getIndicatorDataModel(JSONObject selectorJSON) {
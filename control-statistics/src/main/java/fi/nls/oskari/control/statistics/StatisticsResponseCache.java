@@ -0,0 +1,148 @@
+package fi.nls.oskari.control.statistics;
+
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.control.ActionException;
+import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.IOHelper;
+import fi.nls.oskari.util.ResponseHelper;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps JSON responses of the statistics handlers gzipped in Redis with an in-heap
+ * cache in front of it. Cached responses are written to the client as is without
+ * parsing them to JSONObject and serializing back.
+ * The size of the in-heap cache can be configured with oskari.cache.maxWeight.[cache name] (bytes).
+ */
+public class StatisticsResponseCache {
+
+    private static final Logger LOG = LogFactory.getLogger(StatisticsResponseCache.class);
+
+    private static final long DEFAULT_MAX_WEIGHT = 64L * 1024L * 1024L;
+    private static final long LOCAL_EXPIRATION = TimeUnit.HOURS.toMillis(1);
+
+    private final String name;
+    private final int expirySeconds;
+
+    /**
+     * @param name name of the in-heap cache
+     * @param expirySeconds time to keep the responses in Redis
+     */
+    public StatisticsResponseCache(String name, int expirySeconds) {
+        this.name = name;
+        this.expirySeconds = expirySeconds;
+    }
+
+    private Cache<byte[]> getLocal() {
+        return CacheManager.getCache(name, () -> {
+            Cache<byte[]> cache = new Cache<>();
+            cache.setExpiration(LOCAL_EXPIRATION);
+            cache.setMaxWeight(DEFAULT_MAX_WEIGHT);
+            return cache;
+        });
+    }
+
+    /**
+     * @return gzipped JSON or null if not cached
+     */
+    public byte[] get(String key) {
+        Cache<byte[]> local = getLocal();
+        byte[] gzipped = local.get(key);
+        if (gzipped != null) {
+            return gzipped;
+        }
+        byte[] stored = JedisManager.get(getRedisKey(key));
+        if (stored == null || stored.length == 0) {
+            return null;
+        }
+        if (isGzipped(stored)) {
+            gzipped = stored;
+        } else {
+            // stored as plain JSON string by a previous version
+            try {
+                gzipped = IOHelper.gzip(stored).toByteArray();
+            } catch (IOException e) {
+                LOG.warn(e, "Failed to compress cached response:", key);
+                return null;
+            }
+            JedisManager.setex(getRedisKey(key), expirySeconds, gzipped);
+        }
+        local.put(key, gzipped);
+        return gzipped;
+    }
+
+    /**
+     * Caches the given response
+     * @return gzipped JSON
+     */
+    public byte[] put(String key, JSONObject json) throws ActionException {
+        byte[] gzipped = gzip(json);
+        getLocal().put(key, gzipped);
+        JedisManager.setex(getRedisKey(key), expirySeconds, gzipped);
+        return gzipped;
+    }
+
+    public void remove(String key) {
+        getLocal().remove(key);
+        JedisManager.del(key);
+    }
+
+    /**
+     * Writes the gzipped JSON to the client or 304 Not Modified if the client already has it
+     */
+    public static void write(ActionParameters params, byte[] gzipped) {
+        final String etag = getETag(gzipped);
+        if (ResponseHelper.checkNotModified(params, etag)) {
+            return;
+        }
+        ResponseHelper.writeGzippedResponse(params, 200, ResponseHelper.CONTENT_TYPE_JSON_UTF8, gzipped, etag);
+    }
+
+    public static JSONObject toJSON(byte[] gzipped) throws ActionException {
+        try {
+            return new JSONObject(new String(IOHelper.ungzip(gzipped).toByteArray(), StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            throw new ActionException("Failed to read cached response", e);
+        }
+    }
+
+    protected static String getETag(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return Long.toHexString(crc.getValue()) + '-' + Integer.toHexString(bytes.length);
+    }
+
+    protected static byte[] gzip(JSONObject json) throws ActionException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(baos), StandardCharsets.UTF_8)) {
+            json.write(writer);
+        } catch (IOException | JSONException e) {
+            throw new ActionException("Failed to serialize response", e);
+        }
+        return baos.toByteArray();
+    }
+
+    private static boolean isGzipped(byte[] bytes) {
+        return bytes.length > 2
+                && bytes[0] == (byte) GZIPInputStream.GZIP_MAGIC
+                && bytes[1] == (byte) (GZIPInputStream.GZIP_MAGIC >> 8);
+    }
+
+    private static byte[] getRedisKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
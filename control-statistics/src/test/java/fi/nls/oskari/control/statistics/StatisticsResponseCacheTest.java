@@ -0,0 +1,25 @@
+package fi.nls.oskari.control.statistics;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StatisticsResponseCacheTest {
+
+    @Test
+    public void testGzipRoundTrip() throws Exception {
+        JSONObject json = new JSONObject("{\"regions\":[{\"id\":\"091\",\"name\":\"Lappeenranta\"}]}");
+        byte[] gzipped = StatisticsResponseCache.gzip(json);
+        Assert.assertEquals((byte) 0x1f, gzipped[0]);
+        Assert.assertEquals(json.toString(), StatisticsResponseCache.toJSON(gzipped).toString());
+    }
+
+    @Test
+    public void testETag() throws Exception {
+        byte[] a = StatisticsResponseCache.gzip(new JSONObject("{\"a\":1}"));
+        byte[] b = StatisticsResponseCache.gzip(new JSONObject("{\"a\":2}"));
+        Assert.assertEquals(StatisticsResponseCache.getETag(a), StatisticsResponseCache.getETag(a.clone()));
+        Assert.assertNotEquals(StatisticsResponseCache.getETag(a), StatisticsResponseCache.getETag(b));
+    }
+
+}
@@ -29,6 +29,7 @@ import org.oskari.geojson.GeoJSONFeatureCollection;
 import org.oskari.map.userlayer.service.UserLayerDataService;
 import org.oskari.map.userlayer.service.UserLayerDbService;
 import org.oskari.service.user.UserLayerService;
+import org.oskari.service.user.VectorTileQuery;
 
 @Oskari
 public class UserLayerWFSHelper extends UserLayerService {
@@ -135,12 +136,21 @@ public class UserLayerWFSHelper extends UserLayerService {
         return layer.isOwnedBy(user.getUuid()) || layer.isPublished();
     }
 
+    @Override
+    public Optional<byte[]> getVectorTile(String layerId, User user, VectorTileQuery query) {
+        return Optional.of(getService().getVectorTile(parseId(layerId), user.getUuid(), query));
+    }
+
     protected UserLayer getLayer(int id) {
+        return getService().getUserLayerById(id);
+    }
+
+    private UserLayerDbService getService() {
         if (service == null) {
             // might cause problems with timing of components being initialized if done in init/constructor
             service = OskariComponentManager.getComponentOfType(UserLayerDbService.class);
         }
-        return service.getUserLayerById(id);
+        return service;
     }
 
     protected OskariLayer getBaseLayer() {
@@ -66,6 +66,10 @@ public class GeoJSONSchemaDetector {
             return null;
         }
 
+        return createType(bindings, crs);
+    }
+
+    static SimpleFeatureType createType(Map<String, Class<?>> bindings, CoordinateReferenceSystem crs) {
         SimpleFeatureTypeBuilder sftb = new SimpleFeatureTypeBuilder();
         sftb.setName("FeatureType");
         sftb.setNamespaceURI("http://oskari.org");
@@ -85,7 +89,6 @@ public class GeoJSONSchemaDetector {
         return sftb.buildFeatureType();
     }
 
-    @SuppressWarnings("unchecked")
     private static void addAttributes(Map<String, Object> json,
             Map<String, Class<?>> bindings) {
         if (!GeoJSON.FEATURE.equals(GeoJSONUtil.getString(json, GeoJSON.TYPE))) {
@@ -94,13 +97,7 @@ public class GeoJSONSchemaDetector {
 
         Object geom = json.get(GeoJSON.GEOMETRY);
         if (geom != null) {
-            String key = GeoJSONUtil.DEFAULT_GEOMETRY_ATTRIBUTE_NAME;
-            Class<? extends Geometry> geometryType = (Class<? extends Geometry>) geom.getClass();
-            Class<? extends Geometry> currentType = (Class<? extends Geometry>) bindings.get(key);
-            Class<? extends Geometry> newType = getOverrideGeometryType(geometryType, currentType);
-            if (newType != null) {
-                bindings.put(key, newType);
-            }
+            addGeometryBinding(GeoJSONUtil.DEFAULT_GEOMETRY_ATTRIBUTE_NAME, (Geometry) geom, bindings);
         }
 
         Map<String, Object> properties = GeoJSONUtil.getMap(json, GeoJSON.PROPERTIES);
@@ -108,36 +105,48 @@ public class GeoJSONSchemaDetector {
             return;
         }
         for (Map.Entry<String, Object> e : properties.entrySet()) {
-            String key = e.getKey();
-            if (GeoJSONUtil.DEFAULT_GEOMETRY_ATTRIBUTE_NAME.equals(key)) {
-                continue;
-            }
-            Object value = e.getValue();
-            if (value == null) {
-                continue;
-            }
-            if (value instanceof Geometry) {
-                Class<? extends Geometry> geometryType = (Class<? extends Geometry>) value.getClass();
-                Class<? extends Geometry> currentType = (Class<? extends Geometry>) bindings.get(key);
-                Class<? extends Geometry> newType = getOverrideGeometryType(geometryType, currentType);
-                if (newType != null) {
-                    bindings.put(key, newType);
-                }
-                continue;
-            }
-            Class<?> currentClass = value.getClass();
-            Class<?> storedClass = bindings.get(key);
-            if (storedClass == null) {
-                bindings.put(key, currentClass);
-                continue;
-            }
-            if (storedClass != currentClass) {
-                Class<?> newClass = getOverrideType(currentClass, storedClass);
-                if (newClass != null) {
-                    bindings.put(key, newClass);
-                }
+            addBinding(e.getKey(), e.getValue(), bindings);
+        }
+    }
+
+    /**
+     * Adds or widens the binding of a property based on its value
+     * @return true if bindings were modified
+     */
+    static boolean addBinding(String key, Object value, Map<String, Class<?>> bindings) {
+        if (GeoJSONUtil.DEFAULT_GEOMETRY_ATTRIBUTE_NAME.equals(key)) {
+            return false;
+        }
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Geometry) {
+            return addGeometryBinding(key, (Geometry) value, bindings);
+        }
+        Class<?> currentClass = value.getClass();
+        Class<?> storedClass = bindings.get(key);
+        if (storedClass == null) {
+            bindings.put(key, currentClass);
+            return true;
+        }
+        if (storedClass != currentClass) {
+            Class<?> newClass = getOverrideType(currentClass, storedClass);
+            if (newClass != null) {
+                return bindings.put(key, newClass) != newClass;
             }
         }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    static boolean addGeometryBinding(String key, Geometry value, Map<String, Class<?>> bindings) {
+        Class<? extends Geometry> geometryType = value.getClass();
+        Class<? extends Geometry> currentType = (Class<? extends Geometry>) bindings.get(key);
+        Class<? extends Geometry> newType = getOverrideGeometryType(geometryType, currentType);
+        if (newType != null) {
+            return bindings.put(key, newType) != newType;
+        }
+        return false;
     }
 
     private static Class<? extends Geometry> getOverrideGeometryType(
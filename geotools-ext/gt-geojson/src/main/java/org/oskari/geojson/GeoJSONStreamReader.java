@@ -0,0 +1,642 @@
+package org.oskari.geojson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTS;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Reads GeoJSON FeatureCollections from a stream straight to GeoTools SimpleFeatures
+ * without deserializing the document to a Map<String, Object> tree first. Coordinates
+ * are read directly to JTS CoordinateSequences.
+ *
+ * The schema is detected from the first features (sampleSize). If a later feature
+ * doesn't fit the schema (new properties, wider geometry type) the schema is widened
+ * and the features read so far are rebuilt with it, the result is the same as with
+ * GeoJSONSchemaDetector and GeoJSONReader2.
+ *
+ * Not thread-safe, create a new reader for each thread.
+ * For invalid input we throw IllegalArgumentExceptions
+ */
+public class GeoJSONStreamReader {
+
+    public static final int DEFAULT_SAMPLE_SIZE = 100;
+
+    private static final JsonFactory JF = new JsonFactory();
+    private static final GeometryFactory GF = new GeometryFactory();
+
+    private final CoordinateReferenceSystem crs;
+    private final boolean ignoreGeometryProperties;
+    private final MathTransform transform;
+    private final int sampleSize;
+    private final Map<String, Object> members = new HashMap<>();
+
+    // x,y pairs of the coordinate array being read
+    private double[] ordinates = new double[256];
+
+    public GeoJSONStreamReader(CoordinateReferenceSystem crs) {
+        this(crs, false, null);
+    }
+
+    public GeoJSONStreamReader(CoordinateReferenceSystem crs, boolean ignoreGeometryProperties, MathTransform transform) {
+        this(crs, ignoreGeometryProperties, transform, DEFAULT_SAMPLE_SIZE);
+    }
+
+    /**
+     * @param crs crs of the detected schema
+     * @param ignoreGeometryProperties leave geometries in feature properties out of the features
+     * @param transform transform to apply to the geometries, null to keep the geometries as is
+     * @param sampleSize number of features to detect the schema from before building features
+     */
+    public GeoJSONStreamReader(CoordinateReferenceSystem crs, boolean ignoreGeometryProperties,
+            MathTransform transform, int sampleSize) {
+        this.crs = crs;
+        this.ignoreGeometryProperties = ignoreGeometryProperties;
+        this.transform = transform;
+        this.sampleSize = Math.max(1, sampleSize);
+    }
+
+    /**
+     * @return members of the last read FeatureCollection other than "features", for example "links"
+     */
+    public Map<String, Object> getMembers() {
+        return members;
+    }
+
+    public SimpleFeatureCollection read(InputStream in) throws IOException, TransformException {
+        return read(in, null);
+    }
+
+    /**
+     * Reads all the features of a FeatureCollection. The stream is closed after reading.
+     * @param schema schema of the features, null to detect it from the features
+     */
+    public SimpleFeatureCollection read(InputStream in, SimpleFeatureType schema)
+            throws IOException, TransformException {
+        members.clear();
+        try (JsonParser parser = JF.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Invalid GeoJSON object");
+            }
+
+            boolean detectSchema = schema == null;
+            SimpleFeatureBuilder builder = detectSchema ? null : new SimpleFeatureBuilder(schema);
+            Map<String, Class<?>> bindings = new HashMap<>();
+            List<RawFeature> sample = new ArrayList<>();
+            List<SimpleFeature> features = new ArrayList<>();
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if (!GeoJSON.FEATURES.equals(name)) {
+                    members.put(name, readValue(parser));
+                    continue;
+                }
+                if (parser.currentToken() != JsonToken.START_ARRAY) {
+                    throw new IllegalArgumentException("features was not an array");
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    RawFeature raw = readFeature(parser);
+                    if (builder == null) {
+                        sample.add(raw);
+                        addBindings(raw, bindings);
+                        if (sample.size() >= sampleSize) {
+                            builder = createBuilder(bindings);
+                            for (RawFeature f : sample) {
+                                features.add(toFeature(f, builder));
+                            }
+                            sample.clear();
+                        }
+                    } else if (detectSchema && addBindings(raw, bindings)) {
+                        // Feature doesn't fit the schema detected so far, widen the schema
+                        builder = createBuilder(bindings);
+                        features = rebuild(features, builder);
+                        features.add(toFeature(raw, builder));
+                    } else {
+                        features.add(toFeature(raw, builder));
+                    }
+                }
+                if (parser.currentToken() != JsonToken.END_ARRAY) {
+                    throw new IllegalArgumentException("Invalid feature");
+                }
+            }
+            checkType();
+
+            if (builder == null) {
+                if (bindings.isEmpty()) {
+                    // Empty FeatureCollection
+                    return new GeoJSONFeatureCollection(Collections.emptyList(), null);
+                }
+                builder = createBuilder(bindings);
+                for (RawFeature f : sample) {
+                    features.add(toFeature(f, builder));
+                }
+            }
+            return new GeoJSONFeatureCollection(features, builder.getFeatureType());
+        }
+    }
+
+    /**
+     * Iterates the features of a FeatureCollection lazily, features are read from the stream
+     * as they are requested. Closing the iterator closes the stream. Members following the
+     * "features" array are available from getMembers() after the iterator is exhausted.
+     * @param schema schema of the features, null to detect it from the first sampleSize
+     *        features. Properties of later features not in the detected schema are left out.
+     */
+    public SimpleFeatureIterator features(InputStream in, SimpleFeatureType schema) throws IOException {
+        members.clear();
+        JsonParser parser = JF.createParser(in);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Invalid GeoJSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if (GeoJSON.FEATURES.equals(name)) {
+                    if (parser.currentToken() != JsonToken.START_ARRAY) {
+                        throw new IllegalArgumentException("features was not an array");
+                    }
+                    return new StreamingFeatureIterator(parser, schema);
+                }
+                members.put(name, readValue(parser));
+            }
+            // No features
+            checkType();
+            return new StreamingFeatureIterator(parser);
+        } catch (IOException | RuntimeException e) {
+            parser.close();
+            throw e;
+        }
+    }
+
+    private void checkType() {
+        Object type = members.get(GeoJSON.TYPE);
+        if (type != null && !GeoJSON.FEATURE_COLLECTION.equals(type)) {
+            throw new IllegalArgumentException("type was not " + GeoJSON.FEATURE_COLLECTION);
+        }
+    }
+
+    private SimpleFeatureBuilder createBuilder(Map<String, Class<?>> bindings) {
+        return new SimpleFeatureBuilder(GeoJSONSchemaDetector.createType(bindings, crs));
+    }
+
+    private static boolean addBindings(RawFeature f, Map<String, Class<?>> bindings) {
+        boolean modified = false;
+        if (f.geometry != null) {
+            modified |= GeoJSONSchemaDetector.addGeometryBinding(
+                    GeoJSONUtil.DEFAULT_GEOMETRY_ATTRIBUTE_NAME, f.geometry, bindings);
+        }
+        if (f.properties != null) {
+            for (Map.Entry<String, Object> e : f.properties.entrySet()) {
+                modified |= GeoJSONSchemaDetector.addBinding(e.getKey(), e.getValue(), bindings);
+            }
+        }
+        return modified;
+    }
+
+    private static SimpleFeature toFeature(RawFeature f, SimpleFeatureBuilder builder) {
+        builder.reset();
+        if (f.geometry != null) {
+            builder.set(GeoJSONUtil.DEFAULT_GEOMETRY_ATTRIBUTE_NAME, f.geometry);
+        }
+        if (f.properties != null) {
+            SimpleFeatureType schema = builder.getFeatureType();
+            for (int i = 0; i < schema.getAttributeCount(); i++) {
+                String name = schema.getDescriptor(i).getLocalName();
+                if (GeoJSONUtil.DEFAULT_GEOMETRY_ATTRIBUTE_NAME.equals(name)) {
+                    continue;
+                }
+                Object value = f.properties.get(name);
+                if (value != null) {
+                    // Trust GeoTools to convert the value to proper class
+                    builder.set(i, value);
+                }
+            }
+        }
+        // If id is null SimpleFeatureBuilder will create one
+        return builder.buildFeature(f.id);
+    }
+
+    private static List<SimpleFeature> rebuild(List<SimpleFeature> features, SimpleFeatureBuilder builder) {
+        SimpleFeatureType schema = builder.getFeatureType();
+        List<SimpleFeature> rebuilt = new ArrayList<>(features.size() + 1);
+        for (SimpleFeature f : features) {
+            builder.reset();
+            for (int i = 0; i < schema.getAttributeCount(); i++) {
+                Object value = f.getAttribute(schema.getDescriptor(i).getLocalName());
+                if (value != null) {
+                    builder.set(i, value);
+                }
+            }
+            rebuilt.add(builder.buildFeature(f.getID()));
+        }
+        return rebuilt;
+    }
+
+    private RawFeature readFeature(JsonParser parser) throws IOException, TransformException {
+        String type = null;
+        RawFeature f = new RawFeature();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (GeoJSON.TYPE.equals(name)) {
+                type = parser.getText();
+            } else if (GeoJSON.ID.equals(name)) {
+                f.id = token == JsonToken.VALUE_NULL ? null : parser.getText();
+            } else if (GeoJSON.GEOMETRY.equals(name)) {
+                f.geometry = token == JsonToken.VALUE_NULL ? null : transform(readGeometry(parser));
+            } else if (GeoJSON.PROPERTIES.equals(name)) {
+                f.properties = token == JsonToken.VALUE_NULL ? null : readProperties(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (!GeoJSON.FEATURE.equals(type)) {
+            throw new IllegalArgumentException("type was not " + GeoJSON.FEATURE);
+        }
+        return f;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readProperties(JsonParser parser) throws IOException, TransformException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("properties was not an object");
+        }
+        Map<String, Object> properties = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            Object value = readValue(parser);
+            if (value instanceof Map) {
+                // Map properties of type Map<String, Object> to JTS geometries if possible, otherwise leave as is
+                Geometry g = null;
+                try {
+                    g = GeoJSONReader2.toGeometry((Map<String, Object>) value);
+                } catch (Exception ignore) {
+                    // Not a geometry
+                }
+                if (g != null) {
+                    value = ignoreGeometryProperties ? null : transform(g);
+                }
+            }
+            properties.put(name, value);
+        }
+        return properties;
+    }
+
+    private Geometry transform(Geometry geom) throws TransformException {
+        return transform == null ? geom : JTS.transform(geom, transform);
+    }
+
+    /**
+     * Reads the current value as Jackson would deserialize it to Object
+     */
+    private static Object readValue(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == null) {
+            throw new IllegalArgumentException("Unexpected end of input");
+        }
+        switch (token) {
+        case START_OBJECT:
+            Map<String, Object> map = new LinkedHashMap<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                map.put(name, readValue(parser));
+            }
+            return map;
+        case START_ARRAY:
+            List<Object> list = new ArrayList<>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                list.add(readValue(parser));
+            }
+            return list;
+        case VALUE_STRING:
+            return parser.getText();
+        case VALUE_NUMBER_INT:
+            return parser.getNumberValue();
+        case VALUE_NUMBER_FLOAT:
+            return parser.getDoubleValue();
+        case VALUE_TRUE:
+            return Boolean.TRUE;
+        case VALUE_FALSE:
+            return Boolean.FALSE;
+        case VALUE_NULL:
+            return null;
+        default:
+            throw new IllegalArgumentException("Unexpected token " + token);
+        }
+    }
+
+    private Geometry readGeometry(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Invalid geometry");
+        }
+        String type = null;
+        Object coordinates = null;
+        List<Geometry> geometries = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (GeoJSON.TYPE.equals(name)) {
+                type = parser.getText();
+            } else if (GeoJSON.COORDINATES.equals(name) && token == JsonToken.START_ARRAY) {
+                coordinates = readCoordinates(parser, parser.nextToken());
+            } else if (GeoJSON.GEOMETRIES.equals(name) && token == JsonToken.START_ARRAY) {
+                geometries = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    geometries.add(readGeometry(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (type == null) {
+            throw new IllegalArgumentException("Invalid geometry type");
+        }
+        switch (type) {
+        case GeoJSON.POINT:
+            return coordinates instanceof Coordinate
+                    ? GF.createPoint((Coordinate) coordinates)
+                    : GF.createPoint(toSequence(coordinates));
+        case GeoJSON.LINESTRING:
+            return GF.createLineString(toSequence(coordinates));
+        case GeoJSON.POLYGON:
+            return toPolygon(toList(coordinates));
+        case GeoJSON.MULTI_POINT:
+            return GF.createMultiPoint(toSequence(coordinates));
+        case GeoJSON.MULTI_LINESTRING:
+            List<Object> lines = toList(coordinates);
+            LineString[] lineStrings = new LineString[lines.size()];
+            for (int i = 0; i < lineStrings.length; i++) {
+                lineStrings[i] = GF.createLineString(toSequence(lines.get(i)));
+            }
+            return GF.createMultiLineString(lineStrings);
+        case GeoJSON.MULTI_POLYGON:
+            List<Object> arrayOfPolygons = toList(coordinates);
+            Polygon[] polygons = new Polygon[arrayOfPolygons.size()];
+            for (int i = 0; i < polygons.length; i++) {
+                polygons[i] = toPolygon(toList(arrayOfPolygons.get(i)));
+            }
+            return GF.createMultiPolygon(polygons);
+        case GeoJSON.GEOMETRY_COLLECTION:
+            if (geometries == null) {
+                throw new IllegalArgumentException("Invalid geometry collection");
+            }
+            return GF.createGeometryCollection(geometries.toArray(new Geometry[geometries.size()]));
+        }
+        throw new IllegalArgumentException("Invalid geometry type");
+    }
+
+    private static Polygon toPolygon(List<Object> rings) {
+        if (rings.isEmpty()) {
+            return GF.createPolygon();
+        }
+        LinearRing exterior = GF.createLinearRing(toSequence(rings.get(0)));
+        LinearRing[] interiors = new LinearRing[rings.size() - 1];
+        for (int i = 1; i < rings.size(); i++) {
+            interiors[i - 1] = GF.createLinearRing(toSequence(rings.get(i)));
+        }
+        return GF.createPolygon(exterior, interiors);
+    }
+
+    private static CoordinateSequence toSequence(Object coordinates) {
+        if (coordinates instanceof CoordinateSequence) {
+            return (CoordinateSequence) coordinates;
+        }
+        throw new IllegalArgumentException("Invalid coordinates");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> toList(Object coordinates) {
+        if (coordinates instanceof List) {
+            return (List<Object>) coordinates;
+        }
+        if (coordinates instanceof CoordinateSequence && ((CoordinateSequence) coordinates).size() == 0) {
+            return Collections.emptyList();
+        }
+        throw new IllegalArgumentException("Invalid coordinates");
+    }
+
+    /**
+     * Reads an array of the "coordinates" member. The START_ARRAY of the array has been consumed.
+     * @param first token of the first element of the array
+     * @return Coordinate for a position, CoordinateSequence for an array of positions
+     *         (or an empty array), List of these for deeper arrays
+     */
+    private Object readCoordinates(JsonParser parser, JsonToken first) throws IOException {
+        if (first == JsonToken.END_ARRAY) {
+            return GF.getCoordinateSequenceFactory().create(0, 3);
+        }
+        if (first.isNumeric()) {
+            double x = parser.getDoubleValue();
+            double y = readY(parser);
+            return new Coordinate(x, y);
+        }
+        if (first != JsonToken.START_ARRAY) {
+            throw new IllegalArgumentException("Invalid coordinates");
+        }
+        JsonToken inner = parser.nextToken();
+        if (inner != null && inner.isNumeric()) {
+            return readPositions(parser);
+        }
+        List<Object> list = new ArrayList<>();
+        list.add(readCoordinates(parser, inner));
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Invalid coordinates");
+            }
+            list.add(readCoordinates(parser, parser.nextToken()));
+        }
+        return list;
+    }
+
+    /**
+     * Reads an array of positions straight to a CoordinateSequence
+     * Current token is the first number of the first position
+     */
+    private CoordinateSequence readPositions(JsonParser parser) throws IOException {
+        int n = 0;
+        while (true) {
+            if (ordinates.length < (n + 1) * 2) {
+                ordinates = Arrays.copyOf(ordinates, ordinates.length * 2);
+            }
+            ordinates[n * 2] = parser.getDoubleValue();
+            ordinates[n * 2 + 1] = readY(parser);
+            n++;
+
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.END_ARRAY) {
+                break;
+            }
+            if (token != JsonToken.START_ARRAY || !isNumeric(parser.nextToken())) {
+                throw new IllegalArgumentException("Invalid coordinates");
+            }
+        }
+        // Same dimension as the sequences GeometryFactory creates from Coordinate[] (z = NaN)
+        CoordinateSequence seq = GF.getCoordinateSequenceFactory().create(n, 3);
+        for (int i = 0; i < n; i++) {
+            seq.setOrdinate(i, CoordinateSequence.X, ordinates[i * 2]);
+            seq.setOrdinate(i, CoordinateSequence.Y, ordinates[i * 2 + 1]);
+        }
+        return seq;
+    }
+
+    /**
+     * Reads the y ordinate of a position and skips the rest of the position (z, m)
+     * Current token is the x ordinate
+     */
+    private static double readY(JsonParser parser) throws IOException {
+        if (!isNumeric(parser.nextToken())) {
+            throw new IllegalArgumentException("Invalid coordinate");
+        }
+        double y = parser.getDoubleValue();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (!isNumeric(token)) {
+                throw new IllegalArgumentException("Invalid coordinate");
+            }
+        }
+        return y;
+    }
+
+    private static boolean isNumeric(JsonToken token) {
+        return token != null && token.isNumeric();
+    }
+
+    private static class RawFeature {
+        private String id;
+        private Geometry geometry;
+        private Map<String, Object> properties;
+    }
+
+    private class StreamingFeatureIterator implements SimpleFeatureIterator {
+
+        private final JsonParser parser;
+        private final Deque<RawFeature> sample = new ArrayDeque<>();
+        private SimpleFeatureBuilder builder;
+        private SimpleFeature next;
+        private boolean done;
+
+        private StreamingFeatureIterator(JsonParser parser) {
+            this.parser = parser;
+            this.done = true;
+        }
+
+        private StreamingFeatureIterator(JsonParser parser, SimpleFeatureType schema) throws IOException {
+            this.parser = parser;
+            if (schema != null) {
+                builder = new SimpleFeatureBuilder(schema);
+                return;
+            }
+            Map<String, Class<?>> bindings = new HashMap<>();
+            RawFeature raw;
+            while (sample.size() < sampleSize && (raw = readNextRaw()) != null) {
+                sample.add(raw);
+                addBindings(raw, bindings);
+            }
+            if (bindings.isEmpty()) {
+                // Nothing to build features from
+                sample.clear();
+            } else {
+                builder = createBuilder(bindings);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (builder == null) {
+                return false;
+            }
+            RawFeature raw = sample.isEmpty() ? readNextRaw() : sample.poll();
+            if (raw == null) {
+                return false;
+            }
+            next = toFeature(raw, builder);
+            return true;
+        }
+
+        @Override
+        public SimpleFeature next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            SimpleFeature f = next;
+            next = null;
+            return f;
+        }
+
+        private RawFeature readNextRaw() {
+            if (done) {
+                return null;
+            }
+            try {
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_OBJECT) {
+                    return readFeature(parser);
+                }
+                if (token != JsonToken.END_ARRAY) {
+                    throw new IllegalArgumentException("Invalid feature");
+                }
+                done = true;
+                // Read the members following the features
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    members.put(name, readValue(parser));
+                }
+                checkType();
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (TransformException e) {
+                throw new IllegalStateException("Failed to transform geometry", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                parser.close();
+            } catch (IOException ignore) {
+                // Nothing we can do about it
+            }
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+package org.oskari.geojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.referencing.CRS;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.io.WKTReader;
+
+public class GeoJSONStreamReaderTest {
+
+    private static CoordinateReferenceSystem crs84;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        crs84 = CRS.decode("EPSG:4326", true);
+    }
+
+    private InputStream getResource(String res) {
+        return getClass().getResourceAsStream(res);
+    }
+
+    private static InputStream toStream(String json) {
+        return new ByteArrayInputStream(json.replace('\'', '"').getBytes(StandardCharsets.UTF_8));
+    }
+
+    private SimpleFeatureCollection readWithReader2(String res, boolean ignoreGeometryProperties) throws Exception {
+        TypeReference<Map<String, Object>> typeRef = new TypeReference<Map<String,Object>>() {};
+        Map<String, Object> json = new ObjectMapper().readValue(getResource(res), typeRef);
+        SimpleFeatureType schema = GeoJSONSchemaDetector.getSchema(json, crs84, ignoreGeometryProperties);
+        return GeoJSONReader2.toFeatureCollection(json, schema);
+    }
+
+    private static List<SimpleFeature> toList(SimpleFeatureCollection fc) {
+        List<SimpleFeature> list = new ArrayList<>();
+        try (SimpleFeatureIterator it = fc.features()) {
+            while (it.hasNext()) {
+                list.add(it.next());
+            }
+        }
+        return list;
+    }
+
+    @Test
+    public void testSameResultAsReader2() throws Exception {
+        String[] resources = {
+                "featureCollectionComplex.json",
+                "featureCollectionDeeplyComplex.json",
+                "featureCollectionDifferentId.json",
+                "featureCollectionMultipleGeometries.json",
+                "featureCollectionSimpleArray.json"
+        };
+        for (String res : resources) {
+            for (boolean ignoreGeometryProperties : new boolean[] { false, true }) {
+                SimpleFeatureCollection expected = readWithReader2(res, ignoreGeometryProperties);
+                for (int sampleSize : new int[] { 1, GeoJSONStreamReader.DEFAULT_SAMPLE_SIZE }) {
+                    GeoJSONStreamReader reader = new GeoJSONStreamReader(crs84, ignoreGeometryProperties, null, sampleSize);
+                    SimpleFeatureCollection actual = reader.read(getResource(res));
+                    assertSameFeatures(res, expected, actual);
+                }
+            }
+        }
+    }
+
+    private void assertSameFeatures(String res, SimpleFeatureCollection expected, SimpleFeatureCollection actual) {
+        SimpleFeatureType expectedSchema = expected.getSchema();
+        SimpleFeatureType actualSchema = actual.getSchema();
+        assertEquals(res, expectedSchema.getAttributeCount(), actualSchema.getAttributeCount());
+        for (AttributeDescriptor ad : expectedSchema.getAttributeDescriptors()) {
+            String name = ad.getLocalName();
+            assertEquals(res + " " + name, ad.getType().getBinding(), actualSchema.getDescriptor(name).getType().getBinding());
+        }
+
+        List<SimpleFeature> expectedFeatures = toList(expected);
+        List<SimpleFeature> actualFeatures = toList(actual);
+        assertEquals(res, expectedFeatures.size(), actualFeatures.size());
+        for (int i = 0; i < expectedFeatures.size(); i++) {
+            SimpleFeature e = expectedFeatures.get(i);
+            SimpleFeature a = actualFeatures.get(i);
+            if (!e.getID().startsWith("fid-")) {
+                // Don't compare generated ids
+                assertEquals(res, e.getID(), a.getID());
+            }
+            for (AttributeDescriptor ad : expectedSchema.getAttributeDescriptors()) {
+                String name = ad.getLocalName();
+                assertEquals(res + " " + name, e.getAttribute(name), a.getAttribute(name));
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyFeatureCollection() throws Exception {
+        SimpleFeatureCollection fc = new GeoJSONStreamReader(crs84).read(getResource("featureCollectionEmpty.json"));
+        assertNull(fc.getSchema());
+        try (SimpleFeatureIterator it = fc.features()) {
+            assertFalse(it.hasNext());
+        }
+    }
+
+    @Test
+    public void testSchemaIsWidenedWhenLaterFeaturesDisagree() throws Exception {
+        String json = "{'type':'FeatureCollection','features':["
+                + "{'type':'Feature','id':'a','properties':{'name':'first'},'geometry':{'type':'Point','coordinates':[1,2]}},"
+                + "{'type':'Feature','id':'b','properties':{'name':'second','extra':5},"
+                + "'geometry':{'type':'MultiPoint','coordinates':[[3,4],[5,6]]}}"
+                + "]}";
+        SimpleFeatureCollection fc = new GeoJSONStreamReader(crs84, false, null, 1).read(toStream(json));
+
+        SimpleFeatureType schema = fc.getSchema();
+        assertEquals(MultiPoint.class, schema.getDescriptor(GeoJSONUtil.DEFAULT_GEOMETRY_ATTRIBUTE_NAME).getType().getBinding());
+        assertEquals(Integer.class, schema.getDescriptor("extra").getType().getBinding());
+
+        List<SimpleFeature> features = toList(fc);
+        assertEquals(2, features.size());
+        // First feature was built before the schema was widened
+        assertEquals("a", features.get(0).getID());
+        assertEquals(schema, features.get(0).getFeatureType());
+        assertEquals("first", features.get(0).getAttribute("name"));
+        assertNull(features.get(0).getAttribute("extra"));
+        assertEquals(5, features.get(1).getAttribute("extra"));
+    }
+
+    @Test
+    public void testMemberOrderAndExtraOrdinates() throws Exception {
+        // coordinates before type, z values and members after the features
+        String json = "{'features':["
+                + "{'geometry':{'coordinates':[[[0,0,1],[1,0,1],[1,1,1],[0,0,1]]],'type':'Polygon'},"
+                + "'properties':{'name':'p'},'type':'Feature'}"
+                + "],'type':'FeatureCollection','links':[{'rel':'next','href':'http://foo'}]}";
+        GeoJSONStreamReader reader = new GeoJSONStreamReader(crs84);
+        SimpleFeatureCollection fc = reader.read(toStream(json));
+
+        List<SimpleFeature> features = toList(fc);
+        assertEquals(1, features.size());
+        assertEquals(new WKTReader().read("POLYGON ((0 0, 1 0, 1 1, 0 0))"), features.get(0).getDefaultGeometry());
+        assertEquals("FeatureCollection", reader.getMembers().get("type"));
+        assertTrue(reader.getMembers().get("links") instanceof List);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidType() throws Exception {
+        new GeoJSONStreamReader(crs84).read(toStream("{'type':'Foo','features':[]}"));
+    }
+
+    @Test
+    public void testLazyIterator() throws Exception {
+        SimpleFeatureCollection expected = readWithReader2("featureCollectionComplex.json", false);
+        GeoJSONStreamReader reader = new GeoJSONStreamReader(crs84);
+        List<SimpleFeature> actual = new ArrayList<>();
+        try (SimpleFeatureIterator it = reader.features(getResource("featureCollectionComplex.json"), expected.getSchema())) {
+            while (it.hasNext()) {
+                actual.add(it.next());
+            }
+        }
+        List<SimpleFeature> expectedFeatures = toList(expected);
+        assertEquals(expectedFeatures.size(), actual.size());
+        for (int i = 0; i < actual.size(); i++) {
+            assertEquals(expectedFeatures.get(i).getID(), actual.get(i).getID());
+            assertEquals(expectedFeatures.get(i).getAttributes(), actual.get(i).getAttributes());
+        }
+    }
+
+}
@@ -5,34 +5,86 @@ import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.PropertyUtil;
 import org.oskari.cluster.ClusterManager;
 
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentNavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
 
 /**
- * Simple generic in memory cache
+ * Simple generic in memory cache.
+ * Items expire individually after expiration time has passed since they were added.
+ * When the cache is full the least recently used item is evicted. Reads don't lock the cache,
+ * they are recorded in a buffer that is applied to the eviction order on the next write. If
+ * the buffer is full the read is not recorded so the order is an approximation. In addition to the
+ * amount of items the cache can be limited by the total weight (size in bytes) of the items.
+ * Optionally a second level {@link CacheTier} can be configured with property
+ * oskari.cache.tier.[cache name]. The second level is only used for caches that
+ * have a {@link CacheSerializer} for the values.
  */
 public class Cache<T> {
 
     public static final String PROPERTY_LIMIT_PREFIX = "oskari.cache.limit.";
+    public static final String PROPERTY_MAX_WEIGHT_PREFIX = "oskari.cache.maxWeight.";
+    public static final String PROPERTY_TIER_PREFIX = "oskari.cache.tier.";
+    public static final String PROPERTY_OFFHEAP_MAX_BYTES_PREFIX = "oskari.cache.offheap.maxBytes.";
+    public static final String TIER_REDIS = "redis";
+    public static final String TIER_OFFHEAP = "offheap";
+    private static final long DEFAULT_OFFHEAP_MAX_BYTES = 64L * 1024L * 1024L;
 
     private static final Logger LOG = LogFactory.getLogger(Cache.class);
 
     protected static final String CLUSTER_CMD_FLUSH = "FLUSH";
     protected static final String CLUSTER_CMD_REMOVE_PREFIX = "REM: ";
 
-    // the items are sorted by key.compare(key) -> we should map the String to a "CacheKey" which compares insertion time
-    private final ConcurrentNavigableMap<String,T> items = new ConcurrentSkipListMap<>();
-    private final Queue<String> keys = new ConcurrentLinkedQueue<>();
+    private static final int ACCESS_BUFFER_SIZE = 1024;
+
+    private final ConcurrentHashMap<String, CacheEntry<T>> items = new ConcurrentHashMap<>();
+    // access ordered -> iteration starts from the least recently used item, guarded by this
+    private final LinkedHashMap<String, CacheEntry<T>> order = new LinkedHashMap<>(16, 0.75f, true);
+    // keys read since the last write, applied to order when holding the lock
+    private final Queue<String> accesses = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger accessCount = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
     private volatile int limit = 1000;
+    private volatile long maxWeight = -1;
     private volatile long expiration = 30L * 60L * 1000L;
+    // time in milliseconds, only differences between the values are meaningful
+    private volatile LongSupplier clock = Cache::systemTime;
     private volatile long lastFlush = currentTime();
+    private volatile ToLongFunction<T> weigher = Cache::estimateWeight;
+    private volatile CacheTier secondLevel;
+    private volatile CacheSerializer<T> serializer;
+    private long weight = 0;
     private String name;
     private boolean cacheSizeConfigured = false;
     private boolean cacheMissDebugEnabled = false;
 
+    private static class CacheEntry<T> {
+        private final T value;
+        private final long expires;
+        private final long weight;
+
+        private CacheEntry(T value, long expires, long weight) {
+            this.value = value;
+            this.expires = expires;
+            this.weight = weight;
+        }
+
+        private boolean isExpired(long now) {
+            return expires < now;
+        }
+    }
+
     public void setCacheMissDebugEnabled(boolean enabled) {
         cacheMissDebugEnabled = enabled;
     }
@@ -49,6 +101,19 @@ public class Cache<T> {
             cacheSizeConfigured = true;
             limit = configuredLimit;
         }
+        long configuredWeight = PropertyUtil.getOptional(PROPERTY_MAX_WEIGHT_PREFIX + getName(), -1L);
+        if(configuredWeight != -1) {
+            maxWeight = configuredWeight;
+        }
+        String tier = PropertyUtil.getOptional(PROPERTY_TIER_PREFIX + getName());
+        if (TIER_REDIS.equalsIgnoreCase(tier)) {
+            secondLevel = new RedisCacheTier(getName());
+        } else if (TIER_OFFHEAP.equalsIgnoreCase(tier)) {
+            long maxBytes = PropertyUtil.getOptional(PROPERTY_OFFHEAP_MAX_BYTES_PREFIX + getName(), DEFAULT_OFFHEAP_MAX_BYTES);
+            secondLevel = new OffHeapCacheTier(maxBytes);
+        } else if (tier != null) {
+            LOG.warn("Unknown cache tier", tier, "for cache:", getName());
+        }
         LOG.debug("Is clustered env:", ClusterManager.isClustered());
         if (ClusterManager.isClustered()) {
             LOG.info("Cluster aware cache:", getName());
@@ -80,7 +145,62 @@ public class Cache<T> {
     }
 
     /**
-     * Time between flushes to keep cached values
+     * Maximum total weight of the cached items. Non-positive value means no limit (default).
+     * Can be configured with property oskari.cache.maxWeight.[cache name]
+     * @return
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Function used to calculate the weight of an item. By default the size in bytes is estimated
+     * for byte arrays and strings and other items weigh nothing.
+     * @param weigher
+     */
+    public void setWeigher(ToLongFunction<T> weigher) {
+        this.weigher = weigher;
+    }
+
+    /**
+     * Second level storage for the cache. Overrides the one configured with properties.
+     * @param secondLevel null to use only the in-heap cache
+     */
+    public void setSecondLevel(CacheTier secondLevel) {
+        this.secondLevel = secondLevel;
+    }
+
+    public CacheTier getSecondLevel() {
+        return secondLevel;
+    }
+
+    /**
+     * Serializer for storing the values in second level storage. Second level
+     * storage is not used without a serializer.
+     * @param serializer
+     */
+    public void setSerializer(CacheSerializer<T> serializer) {
+        this.serializer = serializer;
+    }
+
+    private boolean hasSecondLevel() {
+        return secondLevel != null && serializer != null;
+    }
+
+    /**
+     * Returns total weight of cached items
+     * @return
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Time to keep cached values
      * @return
      */
     public long getExpiration() {
@@ -100,7 +220,7 @@ public class Cache<T> {
      * @return
      */
     public Set<String> getKeys() {
-        return items.keySet();
+        return new HashSet<>(items.keySet());
     }
 
     /**
@@ -111,31 +231,92 @@ public class Cache<T> {
         this.expiration = expiration;
     }
 
+    /**
+     * Time of the last check for expired items
+     * @return
+     */
     public long getLastFlush() {
         return lastFlush;
     }
 
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
     public T get(final String name) {
         flush(false);
-        T value = items.get(name);
-
-        if(cacheMissDebugEnabled && value == null) {
-            LOG.debug("Cache", getName(), "miss for name", name);
+        T value = null;
+        CacheEntry<T> entry = name == null ? null : items.get(name);
+        if (entry != null) {
+            if (entry.isExpired(currentTime())) {
+                synchronized (this) {
+                    if (items.get(name) == entry) {
+                        removeEntry(name);
+                    }
+                }
+            } else {
+                value = entry.value;
+                recordAccess(name);
+            }
+        }
+        if (value == null && hasSecondLevel()) {
+            value = getFromSecondLevel(name);
+        }
+        if (value == null) {
+            misses.increment();
+            if (cacheMissDebugEnabled) {
+                LOG.debug("Cache", getName(), "miss for name", name);
+            }
+        } else {
+            hits.increment();
         }
         return value;
     }
 
+    private T getFromSecondLevel(final String name) {
+        byte[] bytes = secondLevel.get(name);
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            T value = serializer.deserialize(bytes);
+            putLocal(name, value);
+            return value;
+        } catch (Exception e) {
+            LOG.warn(e, "Failed to deserialize cached item:", name, getName());
+            secondLevel.remove(name);
+            return null;
+        }
+    }
+
     public T remove(final String name) {
         notifyRemoval(name);
+        if (hasSecondLevel() && secondLevel.isShared()) {
+            secondLevel.remove(name);
+        }
         return removeSilent(name);
     }
 
     protected T removeSilent(final String name) {
         flush(false);
-        T value = items.remove(name);
-        keys.remove(name);
+        CacheEntry<T> entry;
+        synchronized (this) {
+            entry = removeEntry(name);
+        }
+        if (hasSecondLevel() && !secondLevel.isShared()) {
+            // shared second level is handled by the node that removed the item
+            secondLevel.remove(name);
+        }
         LOG.debug("Removed cached item:", name, getName());
-        return value;
+        return entry == null ? null : entry.value;
     }
 
     public boolean put(final String name, final T item) {
@@ -145,53 +326,194 @@ public class Cache<T> {
             remove(name);
             return false;
         }
-        final boolean overflowing = (items.size() >= limit);
+        final boolean existing;
+        final boolean overflowing;
+        synchronized (this) {
+            existing = items.containsKey(name);
+            overflowing = putLocal(name, item);
+        }
+        if (hasSecondLevel()) {
+            try {
+                secondLevel.put(name, serializer.serialize(item), expiration);
+            } catch (Exception e) {
+                LOG.warn(e, "Failed to store item in second level cache:", name, getName());
+            }
+        }
         if(overflowing) {
-            // limit reached - remove oldest object
-            LOG.warn("Cache", getName(), "overflowing! Limit is", limit);
+            LOG.warn("Cache", getName(), "overflowing! Limit is", limit, "- max weight is", maxWeight);
             LOG.info("Configure larger limit for cache by setting the property:", getLimitPropertyName());
-            final String key = keys.poll();
-            if(key != null) {
-                items.remove(key);
-            }
         }
-        T existing = items.put(name, item);
-        if (existing != null) {
+        if (existing) {
             // if we had it in cache, notify cluster it was updated
             notifyRemoval(name);
-            // also remove it from queue so its not there twice
-            keys.remove(name);
         }
-        keys.add(name);
         LOG.debug("Cached item:", name, getName());
         return overflowing;
     }
 
+    /**
+     * Adds the item to in-heap cache
+     * @return true if items had to be removed to make room for the item
+     */
+    private synchronized boolean putLocal(final String name, final T item) {
+        final CacheEntry<T> entry = new CacheEntry<>(item, currentTime() + expiration, weigher.applyAsLong(item));
+        drainAccesses();
+        removeEntry(name);
+        boolean overflowing = evict(entry.weight);
+        order.put(name, entry);
+        items.put(name, entry);
+        weight += entry.weight;
+        return overflowing;
+    }
+
+    private void recordAccess(final String name) {
+        if (accessCount.get() >= ACCESS_BUFFER_SIZE) {
+            // drop the read rather than make readers wait for the lock
+            return;
+        }
+        accessCount.incrementAndGet();
+        accesses.add(name);
+    }
+
+    /**
+     * Applies recorded reads to the eviction order, call only when holding the lock
+     */
+    private void drainAccesses() {
+        String name;
+        while ((name = accesses.poll()) != null) {
+            accessCount.decrementAndGet();
+            // get() moves the item to the end of the access ordered map
+            order.get(name);
+        }
+    }
+
+    /**
+     * Removes least recently used items until there's room for a new item with given weight
+     * @return true if items had to be removed
+     */
+    private boolean evict(long newWeight) {
+        boolean evicted = false;
+        Iterator<Map.Entry<String, CacheEntry<T>>> it = order.entrySet().iterator();
+        while (it.hasNext() && (items.size() >= limit || isOverweight(newWeight))) {
+            Map.Entry<String, CacheEntry<T>> eldest = it.next();
+            it.remove();
+            items.remove(eldest.getKey());
+            weight -= eldest.getValue().weight;
+            evictions.increment();
+            evicted = true;
+        }
+        return evicted;
+    }
+
+    private boolean isOverweight(long newWeight) {
+        return maxWeight > 0 && weight + newWeight > maxWeight;
+    }
+
+    private CacheEntry<T> removeEntry(String name) {
+        order.remove(name);
+        CacheEntry<T> entry = items.remove(name);
+        if (entry != null) {
+            weight -= entry.weight;
+        }
+        return entry;
+    }
+
+    /**
+     * Removes all items when forced. Otherwise removes expired items if expiration
+     * time has passed since the last check. A second level shared with other nodes is
+     * not cleared, use clear() to remove the items from it.
+     * @param force true to remove all items
+     * @return true if items were checked/removed
+     */
     public boolean flush(final boolean force) {
         final long now = currentTime();
-        if(force || isTimeToFlush(now)) {
-            // flushCache
+        if(force) {
             LOG.info("Flushing cache! Cache:", getName(), "Forced: ", force, getName());
-            items.clear();
-            keys.clear();
+            synchronized (this) {
+                items.clear();
+                order.clear();
+                accesses.clear();
+                accessCount.set(0);
+                weight = 0;
+            }
+            if (hasSecondLevel() && !secondLevel.isShared()) {
+                // shared second level is only cleared with clear()
+                secondLevel.clear();
+            }
+            lastFlush = now;
+            return true;
+        }
+        if(isTimeToFlush(now)) {
             lastFlush = now;
+            int removed = 0;
+            synchronized (this) {
+                Iterator<Map.Entry<String, CacheEntry<T>>> it = order.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, CacheEntry<T>> entry = it.next();
+                    if (entry.getValue().isExpired(now)) {
+                        it.remove();
+                        items.remove(entry.getKey());
+                        weight -= entry.getValue().weight;
+                        removed++;
+                    }
+                }
+            }
+            LOG.debug("Removed", removed, "expired items from cache:", getName());
             return true;
         }
         return false;
     }
 
+    /**
+     * Removes all items from the cache on all nodes of the cluster
+     */
+    public void clear() {
+        flush(true);
+        if (hasSecondLevel() && secondLevel.isShared()) {
+            // cleared once here, other nodes only flush their local items
+            secondLevel.clear();
+        }
+        notifyCluster(CLUSTER_CMD_FLUSH);
+    }
+
     public boolean isTimeToFlush(long now) {
         return (lastFlush + expiration < now);
     }
 
+    /**
+     * Time until the next check for expired items
+     * @return
+     */
     public long getTimeToExpirationMs() {
         return expiration - (currentTime() - lastFlush);
     }
 
-    private static long currentTime() {
+    /**
+     * Source of the time used for expiring items, allows tests to control the time
+     */
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+        lastFlush = currentTime();
+    }
+
+    private long currentTime() {
+        return clock.getAsLong();
+    }
+
+    private static long systemTime() {
         return System.nanoTime() / 1000000L;
     }
 
+    private static long estimateWeight(Object item) {
+        if (item instanceof byte[]) {
+            return ((byte[]) item).length;
+        }
+        if (item instanceof CharSequence) {
+            return 2L * ((CharSequence) item).length();
+        }
+        return 0;
+    }
+
     /* ************************************************
      * Cluster env methods
      * ************************************************
@@ -203,6 +525,7 @@ public class Cache<T> {
             return;
         }
         if (CLUSTER_CMD_FLUSH.equals(data)) {
+            // shared second level is cleared by the node that started the flush
             flush(true);
             return;
         }
@@ -26,6 +26,9 @@ import java.util.function.Supplier;
  *  }
  * }
  * </pre>
+ * The values of a cache can also be stored in a second level storage by configuring
+ * oskari.cache.tier.[cache name]=redis|offheap. The code using the cache needs to provide
+ * a {@link CacheSerializer} for the values with {@link Cache#setSerializer(CacheSerializer)}.
  */
 public class CacheManager {
 
@@ -0,0 +1,32 @@
+package fi.nls.oskari.cache;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts cached values to bytes and back for storing them in a {@link CacheTier}
+ */
+public interface CacheSerializer<T> {
+
+    CacheSerializer<byte[]> BYTES = new CacheSerializer<byte[]>() {
+        public byte[] serialize(byte[] value) {
+            return value;
+        }
+        public byte[] deserialize(byte[] bytes) {
+            return bytes;
+        }
+    };
+
+    CacheSerializer<String> STRING = new CacheSerializer<String>() {
+        public byte[] serialize(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+        public String deserialize(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    byte[] serialize(T value);
+
+    T deserialize(byte[] bytes);
+
+}
@@ -0,0 +1,29 @@
+package fi.nls.oskari.cache;
+
+/**
+ * Second level storage for a {@link Cache}. Values are stored as serialized bytes
+ * so the tier can be kept outside the Java heap or shared between cluster nodes.
+ * Select the tier for a cache with property oskari.cache.tier.[cache name]=redis|offheap
+ */
+public interface CacheTier {
+
+    /**
+     * @return serialized value or null if not found or expired
+     */
+    byte[] get(String key);
+
+    /**
+     * @param ttl time to keep the value in milliseconds
+     */
+    void put(String key, byte[] value, long ttl);
+
+    void remove(String key);
+
+    void clear();
+
+    /**
+     * @return true if the stored values are visible to other cluster nodes
+     */
+    boolean isShared();
+
+}
@@ -8,9 +8,14 @@ import fi.nls.oskari.util.PropertyUtil;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.params.SetParams;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -338,21 +343,123 @@ public class JedisManager {
     }
 
     /**
-     * Thread-safe Long DEL with key set
+     * Thread-safe Long DEL for Redis with binary keys
      *
      * @param key
      * @return long
      */
-    public static Long delAll(String key) {
+    public static Long del(byte[] key) {
         try (Jedis jedis = instance.getJedis()){
             if (jedis == null) {
                 return null;
             }
-            Set<String> keys = jedis.keys(key + "*");
-            if(keys.size() > 0) {
-                return jedis.del(keys.toArray(new String[keys.size()]));
+            return jedis.del(key);
+        } catch(JedisConnectionException e) {
+            log.error("Failed to delete binary key");
+            return null;
+        } catch (Exception e) {
+            log.error("Deleting binary key failed miserably");
+            return null;
+        }
+    }
+
+    /**
+     * Thread-safe SET NX EX for Redis. Can be used as a lock between cluster nodes.
+     *
+     * @param key
+     * @param seconds time to keep the key
+     * @param value
+     * @return true if the key was set, false if it already existed or Redis is not available
+     */
+    public static boolean setIfAbsent(String key, int seconds, String value) {
+        try (Jedis jedis = instance.getJedis()){
+            if (jedis == null) {
+                return false;
+            }
+            return "OK".equals(jedis.set(key, value, SetParams.setParams().nx().ex(seconds)));
+        } catch(JedisConnectionException e) {
+            log.error("Failed to set", key);
+            return false;
+        } catch (Exception e) {
+            log.error("Setting", key, "to Redis failed:", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Thread-safe DEL for a key that still has the given value (f.ex. releasing a lock set with setIfAbsent()
+     * without removing a lock that has since expired and been acquired by someone else)
+     *
+     * @param key
+     * @param value
+     * @return true if the key was removed
+     */
+    public static boolean delIfEquals(String key, String value) {
+        final String script = "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+        try (Jedis jedis = instance.getJedis()){
+            if (jedis == null) {
+                return false;
+            }
+            Object result = jedis.eval(script, Collections.singletonList(key), Collections.singletonList(value));
+            return Long.valueOf(1).equals(result);
+        } catch(JedisConnectionException e) {
+            log.error("Failed to delete", key);
+            return false;
+        } catch (Exception e) {
+            log.error("Deleting", key, "failed miserably");
+            return false;
+        }
+    }
+
+    /**
+     * Thread-safe EXPIRE for a key that still has the given value (f.ex. renewing a lock set with setIfAbsent())
+     *
+     * @param key
+     * @param seconds new time to keep the key
+     * @param value
+     * @return true if the expiration was set, false if the key has expired or has another value
+     */
+    public static boolean expireIfEquals(String key, int seconds, String value) {
+        final String script = "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('expire', KEYS[1], ARGV[2]) else return 0 end";
+        try (Jedis jedis = instance.getJedis()){
+            if (jedis == null) {
+                return false;
+            }
+            Object result = jedis.eval(script, Collections.singletonList(key), Arrays.asList(value, Integer.toString(seconds)));
+            return Long.valueOf(1).equals(result);
+        } catch(JedisConnectionException e) {
+            log.error("Failed to renew", key);
+            return false;
+        } catch (Exception e) {
+            log.error("Renewing", key, "failed miserably");
+            return false;
+        }
+    }
+
+    /**
+     * Thread-safe Long DEL for keys starting with given prefix. Uses SCAN instead of KEYS so
+     * Redis isn't blocked while the keys are searched.
+     *
+     * @param key prefix of the keys to remove
+     * @return long
+     */
+    public static Long delAll(String key) {
+        try (Jedis jedis = instance.getJedis()){
+            if (jedis == null) {
+                return null;
             }
-            return 0L;
+            ScanParams params = new ScanParams().match(key + "*").count(1000);
+            String cursor = ScanParams.SCAN_POINTER_START;
+            long removed = 0;
+            do {
+                ScanResult<String> result = jedis.scan(cursor, params);
+                List<String> keys = result.getResult();
+                if (!keys.isEmpty()) {
+                    removed += jedis.del(keys.toArray(new String[keys.size()]));
+                }
+                cursor = result.getCursor();
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+            return removed;
         } catch(JedisConnectionException e) {
             log.error("Failed to del", key + "*");
             return null;
@@ -0,0 +1,98 @@
+package fi.nls.oskari.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Stores cached values in direct byte buffers outside the Java heap.
+ * The least recently used values are removed when maxBytes is exceeded.
+ */
+public class OffHeapCacheTier implements CacheTier {
+
+    private final LinkedHashMap<String, Entry> items = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private long bytes = 0;
+
+    private static class Entry {
+        private final ByteBuffer buffer;
+        private final long expires;
+
+        private Entry(ByteBuffer buffer, long expires) {
+            this.buffer = buffer;
+            this.expires = expires;
+        }
+    }
+
+    public OffHeapCacheTier(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public synchronized byte[] get(String key) {
+        Entry entry = items.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expires < currentTime()) {
+            removeEntry(key);
+            return null;
+        }
+        ByteBuffer buffer = entry.buffer.duplicate();
+        byte[] value = new byte[buffer.remaining()];
+        buffer.get(value);
+        return value;
+    }
+
+    @Override
+    public synchronized void put(String key, byte[] value, long ttl) {
+        removeEntry(key);
+        if (value.length > maxBytes) {
+            return;
+        }
+        Iterator<Entry> it = items.values().iterator();
+        while (it.hasNext() && bytes + value.length > maxBytes) {
+            bytes -= it.next().buffer.capacity();
+            it.remove();
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(value.length);
+        buffer.put(value);
+        buffer.flip();
+        items.put(key, new Entry(buffer, currentTime() + ttl));
+        bytes += value.length;
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        removeEntry(key);
+    }
+
+    @Override
+    public synchronized void clear() {
+        items.clear();
+        bytes = 0;
+    }
+
+    @Override
+    public boolean isShared() {
+        return false;
+    }
+
+    /**
+     * @return amount of bytes currently stored
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    private void removeEntry(String key) {
+        Entry entry = items.remove(key);
+        if (entry != null) {
+            bytes -= entry.buffer.capacity();
+        }
+    }
+
+    private static long currentTime() {
+        return System.nanoTime() / 1000000L;
+    }
+}
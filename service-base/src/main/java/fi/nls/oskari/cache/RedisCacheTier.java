@@ -0,0 +1,48 @@
+package fi.nls.oskari.cache;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stores cached values in Redis using the connection pool of {@link JedisManager}.
+ * Values are shared between all the nodes of a cluster.
+ */
+public class RedisCacheTier implements CacheTier {
+
+    private static final String KEY_PREFIX = "oskari_cache_";
+
+    private final String prefix;
+
+    public RedisCacheTier(String cacheName) {
+        this.prefix = KEY_PREFIX + cacheName + ":";
+    }
+
+    @Override
+    public byte[] get(String key) {
+        return JedisManager.get(getKey(key));
+    }
+
+    @Override
+    public void put(String key, byte[] value, long ttl) {
+        int seconds = (int) Math.max(1, ttl / 1000);
+        JedisManager.setex(getKey(key), seconds, value);
+    }
+
+    @Override
+    public void remove(String key) {
+        JedisManager.del(getKey(key));
+    }
+
+    @Override
+    public void clear() {
+        JedisManager.delAll(prefix);
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    private byte[] getKey(String key) {
+        return (prefix + key).getBytes(StandardCharsets.UTF_8);
+    }
+}
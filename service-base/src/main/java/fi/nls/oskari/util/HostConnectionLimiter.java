@@ -0,0 +1,214 @@
+package fi.nls.oskari.util;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of concurrent requests IOHelper makes to a single host and keeps count of them.
+ * A connection is reserved in IOHelper.getConnection() (or when writing the request of a connection opened
+ * elsewhere) and freed when the response stream from IOHelper is closed, with IOHelper.closeSilently()
+ * or IOHelper.disconnect(). Requests waiting for a free connection fail with an IOException after the
+ * connection timeout. Connections are only tracked for hosts with a limit. A connection that is dropped
+ * without being freed releases its permit when it's garbage collected.
+ *
+ * Configuration:
+ * - oskari.http.maxConnectionsPerHost: concurrent requests per host, 0 for no limit (default 0)
+ * - oskari.http.maxConnectionsPerHost.[host]: overrides the limit for a single host
+ */
+public class HostConnectionLimiter {
+
+    private static final String PROPERTY_MAX_PER_HOST = "oskari.http.maxConnectionsPerHost";
+    private static final Map<String, HostConnectionLimiter> HOSTS = new ConcurrentHashMap<>();
+    // how often a waiting request checks for permits of dropped connections
+    private static final long RECLAIM_INTERVAL_MS = 500;
+
+    private final String host;
+    private final int limit;
+    private final Semaphore permits;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final Map<HttpURLConnection, ConnectionPermit> connections;
+    // keeps the permits reachable so that they are enqueued when the connection is garbage collected
+    private final Set<ConnectionPermit> held;
+    private final ReferenceQueue<HttpURLConnection> dropped;
+
+    /**
+     * Permit held by a connection. Released when the connection is freed or garbage collected.
+     */
+    private class ConnectionPermit extends WeakReference<HttpURLConnection> {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ConnectionPermit(HttpURLConnection conn) {
+            super(conn, dropped);
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                held.remove(this);
+                HostConnectionLimiter.this.release();
+            }
+        }
+    }
+
+    protected HostConnectionLimiter(String host, int limit) {
+        this.host = host;
+        this.limit = limit;
+        this.permits = limit > 0 ? new Semaphore(limit, true) : null;
+        this.connections = limit > 0 ? Collections.synchronizedMap(new WeakHashMap<>()) : null;
+        this.held = limit > 0 ? ConcurrentHashMap.newKeySet() : null;
+        this.dropped = limit > 0 ? new ReferenceQueue<>() : null;
+    }
+
+    public static HostConnectionLimiter get(String host) {
+        return HOSTS.computeIfAbsent(host, h -> new HostConnectionLimiter(h,
+                PropertyUtil.getOptional(PROPERTY_MAX_PER_HOST + "." + h,
+                        PropertyUtil.getOptional(PROPERTY_MAX_PER_HOST, 0))));
+    }
+
+    /**
+     * @return limiters of the hosts that have been requested so far
+     */
+    public static Map<String, HostConnectionLimiter> getHosts() {
+        return Collections.unmodifiableMap(HOSTS);
+    }
+
+    /**
+     * Waits for a free connection to the host
+     * @param timeoutMs time to wait for a free connection
+     * @throws IOException if no connection was freed during the timeout
+     */
+    public void acquire(long timeoutMs) throws IOException {
+        if (permits != null) {
+            waiting.incrementAndGet();
+            try {
+                if (!tryAcquire(timeoutMs)) {
+                    rejected.incrementAndGet();
+                    throw new IOException("Too many connections to host " + host);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a connection to host " + host);
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+        active.incrementAndGet();
+        requests.incrementAndGet();
+    }
+
+    private boolean tryAcquire(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (true) {
+            releaseDropped();
+            long remaining = deadline - System.currentTimeMillis();
+            if (permits.tryAcquire(Math.max(0, Math.min(remaining, RECLAIM_INTERVAL_MS)), TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            if (remaining <= RECLAIM_INTERVAL_MS) {
+                return false;
+            }
+        }
+    }
+
+    public void release() {
+        active.decrementAndGet();
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    /**
+     * Waits for a free connection to the host unless the connection already holds one.
+     * Only counts the request if the host isn't limited.
+     * @param conn connection to the host
+     * @param timeoutMs time to wait for a free connection
+     * @throws IOException if no connection was freed during the timeout
+     */
+    public void acquire(HttpURLConnection conn, long timeoutMs) throws IOException {
+        if (permits == null) {
+            requests.incrementAndGet();
+            return;
+        }
+        if (connections.containsKey(conn)) {
+            return;
+        }
+        acquire(timeoutMs);
+        ConnectionPermit permit = new ConnectionPermit(conn);
+        held.add(permit);
+        connections.put(conn, permit);
+    }
+
+    /**
+     * Frees the connection for the next request. Does nothing if the connection doesn't hold a permit.
+     */
+    public void release(HttpURLConnection conn) {
+        if (permits == null) {
+            return;
+        }
+        ConnectionPermit permit = connections.remove(conn);
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    private void releaseDropped() {
+        Reference<? extends HttpURLConnection> ref;
+        while ((ref = dropped.poll()) != null) {
+            ((ConnectionPermit) ref).release();
+        }
+    }
+
+    public void failed() {
+        failed.incrementAndGet();
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return max concurrent requests, 0 if not limited
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return requests holding a connection. IOHelper only tracks connections to hosts with a limit.
+     */
+    public int getActive() {
+        return active.get();
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+}
@@ -49,6 +49,7 @@ public class IOHelper {
     private static SSLSocketFactory TRUSTED_FACTORY;
     private static HostnameVerifier TRUSTED_VERIFIER;
     private static String userAgent;
+    private static volatile boolean keepAliveConfigured;
 
     public static int getConnectionTimeoutMs() {
         return PropertyUtil.getOptional("oskari.connection.timeout", 3000);
@@ -62,6 +63,22 @@ public class IOHelper {
     private static boolean getTrustAllHosts() {
         return "true".equals(PropertyUtil.getOptional("oskari.trustAllHosts"));
     }
+    /**
+     * HttpURLConnection keeps idle connections open for reuse when the response has been read
+     * fully and the stream is closed. The JDK reads the size of the pool (idle connections per host)
+     * from the system property http.maxConnections (default 5) when the first connection is opened
+     * so it's configured here unless it has been set explicitly.
+     */
+    private static void configureKeepAlive() {
+        if (keepAliveConfigured) {
+            return;
+        }
+        keepAliveConfigured = true;
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections",
+                    Integer.toString(PropertyUtil.getOptional("oskari.http.keepAlive.maxConnections", 20)));
+        }
+    }
     public static String getMyDomain() {
         return PropertyUtil.get("oskari.domain", "http://localhost:8080");
     }
@@ -90,14 +107,6 @@ public class IOHelper {
      * @throws IOException
      */
     public static String readString(HttpURLConnection conn) throws IOException {
-        try {
-            // addRequestProperty() will not overwrite if something else has been set so it's safe here
-            conn.addRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
-        } catch (IllegalStateException ignored) {
-            log.ignore("Tried to add gzip header but connection was opened already so we are too late", ignored);
-            // too late to add headers, something was posted as payload already.
-            // Just skip and move on to reading the response
-        }
         return readString(conn, DEFAULT_CHARSET);
     }
     /**
@@ -108,10 +117,8 @@ public class IOHelper {
      * @throws IOException
      */
     public static String readString(HttpURLConnection conn, final String charset) throws IOException {
-        try (InputStream in = conn.getInputStream()) {
-            try (InputStream inner = isResponseGZIPd(conn) ? new GZIPInputStream(in) : in) {
-                return readString(inner, charset);
-            }
+        try (InputStream in = getResponseStream(conn)) {
+            return readString(in, charset);
         }
     }
 
@@ -189,10 +196,8 @@ public class IOHelper {
      * @throws IOException
      */
     public static byte[] readBytes(HttpURLConnection conn) throws IOException {
-        try (InputStream in = conn.getInputStream()) {
-            try (InputStream inner = isResponseGZIPd(conn) ? new GZIPInputStream(in) : in) {
-                return readBytes(inner);
-            }
+        try (InputStream in = getResponseStream(conn)) {
+            return readBytes(in);
         }
     }
 
@@ -202,10 +207,92 @@ public class IOHelper {
      * @throws IOException
      */
     public static void readBytesTo(HttpURLConnection conn, OutputStream out) throws IOException {
-        try (InputStream in = conn.getInputStream()) {
-            try (InputStream inner = isResponseGZIPd(conn) ? new GZIPInputStream(in) : in) {
-                copy(inner, out);
+        try (InputStream in = getResponseStream(conn)) {
+            copy(in, out);
+        }
+    }
+
+    /**
+     * Returns the InputStream of HttpURLConnection, decompressed if the response is gzip encoded.
+     * Gzip encoding is requested if the request hasn't been sent yet.
+     * Closing the returned stream closes the InputStream of the connection and frees the connection
+     * for the next request to the same host (see HostConnectionLimiter).
+     * @param conn used to get inputstream and detect possible gzip encoding
+     * @throws IOException
+     */
+    public static InputStream getResponseStream(final HttpURLConnection conn) throws IOException {
+        acceptGzip(conn);
+        acquirePermit(conn);
+        InputStream in;
+        try {
+            in = conn.getInputStream();
+        } catch (IOException e) {
+            HostConnectionLimiter.get(conn.getURL().getHost()).failed();
+            // connection is only reused if the error response is read
+            drainErrorStream(conn);
+            releasePermit(conn);
+            throw e;
+        }
+        in = new FilterInputStream(in) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    releasePermit(conn);
+                }
+            }
+        };
+        if (!isResponseGZIPd(conn)) {
+            return in;
+        }
+        try {
+            return new GZIPInputStream(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for a free connection to the host unless the connection already has one
+     * @throws IOException if there are too many connections to the host
+     */
+    private static void acquirePermit(HttpURLConnection conn) throws IOException {
+        HostConnectionLimiter.get(conn.getURL().getHost()).acquire(conn, getConnectionTimeoutMs());
+    }
+
+    private static void releasePermit(HttpURLConnection conn) {
+        HostConnectionLimiter.get(conn.getURL().getHost()).release(conn);
+    }
+
+    /**
+     * Requests a gzip encoded response if the request hasn't been sent yet
+     */
+    private static void acceptGzip(HttpURLConnection conn) {
+        try {
+            // addRequestProperty() will not overwrite if something else has been set so it's safe here
+            conn.addRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+        } catch (IllegalStateException ignored) {
+            log.ignore("Tried to add gzip header but connection was opened already so we are too late", ignored);
+            // too late to add headers, something was posted as payload already.
+            // Just skip and move on to reading the response
+        }
+    }
+
+    /**
+     * Reads and closes the error stream so the underlying connection can be reused
+     */
+    private static void drainErrorStream(HttpURLConnection conn) {
+        try (InputStream err = conn.getErrorStream()) {
+            if (err != null) {
+                byte[] buf = new byte[4096];
+                while (err.read(buf) != -1) {
+                    // discard
+                }
             }
+        } catch (IOException ignored) {
+            log.ignore("Failed to read error response", ignored);
         }
     }
 
@@ -322,11 +409,14 @@ public class IOHelper {
     }
 
     /**
-     * Opens a HttpURLConnection to given url
+     * Opens a HttpURLConnection to given url. Waits for a free connection if the number of
+     * concurrent requests to the host is limited (see HostConnectionLimiter). The connection is freed
+     * when the response is read with IOHelper, with closeSilently() or with disconnect().
      */
     public static HttpURLConnection getConnection(final String pUrl)
             throws IOException {
         log.debug("Opening connection to", pUrl);
+        configureKeepAlive();
         final URL url = new URL(pUrl);
         HttpURLConnection conn = (HttpURLConnection) url.openConnection();
         conn.setConnectTimeout(getConnectionTimeoutMs());
@@ -334,6 +424,7 @@ public class IOHelper {
         conn.setRequestProperty(HEADER_ACCEPT_CHARSET, CHARSET_UTF8);
         if(getTrustAllCerts()) trustAllCerts(conn);
         if(getTrustAllHosts()) trustAllHosts(conn);
+        acquirePermit(conn);
         return conn;
     }
 
@@ -418,6 +509,8 @@ public class IOHelper {
             }
 
             log.info("Following redirect to", location);
+            // free the connection before waiting for a new one to the same host
+            releasePermit(conn);
             HttpURLConnection newConnection = getConnection(location, user, pass, query, headers);
             return followRedirect(newConnection, user, pass, query, headers, redirectLatch);
         } else {
@@ -506,6 +599,7 @@ public class IOHelper {
         if(log.isDebugEnabled()) {
             log.debug("Writing to connection:", con.getURL(), "\npayload:", new String(bytes));
         }
+        acquirePermit(con);
         if(!"POST".equals(con.getRequestMethod())) {
             con.setRequestMethod("POST");
             con.setDoOutput(true);
@@ -755,6 +849,7 @@ public class IOHelper {
 
     private static HttpURLConnection send(HttpURLConnection conn, String method,
             String contentType, byte[] body) throws IOException {
+        acquirePermit(conn);
         conn.setRequestMethod(method);
         conn.setDoOutput(true);
         conn.setDoInput(true);
@@ -768,6 +863,7 @@ public class IOHelper {
 
     private static HttpURLConnection send(HttpURLConnection conn, String method,
             String contentType, ByteArrayOutputStream baos) throws IOException {
+        acquirePermit(conn);
         conn.setRequestMethod(method);
         conn.setDoOutput(true);
         conn.setDoInput(true);
@@ -1121,9 +1217,19 @@ public class IOHelper {
             readFullyIgnoring(in);
         } catch (IOException ignore) {
             // Ignore
+        } finally {
+            releasePermit(c);
         }
     }
 
+    /**
+     * Closes the connection and frees it for the next request to the same host
+     */
+    public static void disconnect(HttpURLConnection c) {
+        releasePermit(c);
+        c.disconnect();
+    }
+
     private static InputStream getInputOrErrorStream(HttpURLConnection conn) {
         try {
             return conn.getInputStream();
@@ -5,6 +5,11 @@ import fi.nls.oskari.util.PropertyUtil;
 import org.junit.After;
 import org.junit.Test;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static org.junit.Assert.*;
 
 /**
@@ -79,4 +84,87 @@ public class CacheTest {
         assertTrue("Cache lastFlush + expiration + 10 should be cleared for flush", cache.isTimeToFlush(last + expiration + 10));
     }
 
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        Cache<String> cache = CacheManager.getCache("LeastRecentlyUsed");
+        cache.setLimit(3);
+        cache.put("a", "a");
+        cache.put("b", "b");
+        cache.put("c", "c");
+        // touch the oldest so "b" becomes the least recently used
+        assertEquals("a", cache.get("a"));
+        assertTrue("Overflowing", cache.put("d", "d"));
+        assertNull("Least recently used should be evicted", cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testItemsExpireIndividually() {
+        AtomicLong time = new AtomicLong();
+        Cache<String> cache = CacheManager.getCache("ItemExpiration");
+        cache.setClock(time::get);
+        cache.setExpiration(50);
+        cache.put("old", "old");
+        time.addAndGet(30);
+        cache.put("new", "new");
+        time.addAndGet(30);
+        assertNull("Older item should have expired", cache.get("old"));
+        assertEquals("Newer item should still be cached", "new", cache.get("new"));
+    }
+
+    @Test
+    public void testWeightLimit() {
+        Cache<byte[]> cache = CacheManager.getCache("WeightLimit");
+        cache.setMaxWeight(100);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        assertEquals(80, cache.getWeight());
+        assertTrue("Overflowing", cache.put("c", new byte[40]));
+        assertNull(cache.get("a"));
+        assertEquals(2, cache.getSize());
+        assertEquals(80, cache.getWeight());
+        cache.remove("b");
+        assertEquals(40, cache.getWeight());
+    }
+
+    @Test
+    public void testHitMissCounters() {
+        Cache<String> cache = CacheManager.getCache("Counters");
+        cache.put("a", "a");
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testReadsDontWaitForWriters() throws Exception {
+        Cache<String> cache = CacheManager.getCache("ConcurrentReads");
+        cache.put("a", "a");
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            synchronized (cache) {
+                locked.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        writer.start();
+        try {
+            locked.await();
+            assertEquals("a", CompletableFuture.supplyAsync(() -> cache.get("a")).get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            writer.join();
+        }
+    }
+
 }
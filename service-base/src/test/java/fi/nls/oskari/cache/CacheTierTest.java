@@ -0,0 +1,94 @@
+package fi.nls.oskari.cache;
+
+import fi.nls.oskari.util.PropertyUtil;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CacheTierTest {
+
+    @After
+    public void teardown() {
+        PropertyUtil.clearProperties();
+    }
+
+    @Test
+    public void testTierFromProperties() throws Exception {
+        final String cacheName = "OffHeapTier";
+        PropertyUtil.addProperty(Cache.PROPERTY_TIER_PREFIX + cacheName, Cache.TIER_OFFHEAP);
+        Cache<String> cache = CacheManager.getCache(cacheName);
+        assertTrue("Cache should have off-heap tier", cache.getSecondLevel() instanceof OffHeapCacheTier);
+    }
+
+    @Test
+    public void testSecondLevelIsUsedOnMiss() {
+        Cache<String> cache = new Cache<>();
+        cache.setName("SecondLevel");
+        OffHeapCacheTier tier = new OffHeapCacheTier(1024);
+        cache.setSecondLevel(tier);
+        cache.setSerializer(CacheSerializer.STRING);
+
+        cache.put("key", "value");
+        assertEquals(5, tier.getBytes());
+        cache.flush(true);
+        assertNull("Forced flush should clear second level too", cache.get("key"));
+
+        cache.put("key", "value");
+        cache.setLimit(1);
+        cache.put("other", "other");
+        assertEquals("Evicted item should be found from second level", "value", cache.get("key"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testSecondLevelNotUsedWithoutSerializer() {
+        Cache<String> cache = new Cache<>();
+        cache.setName("NoSerializer");
+        OffHeapCacheTier tier = new OffHeapCacheTier(1024);
+        cache.setSecondLevel(tier);
+        cache.put("key", "value");
+        assertEquals(0, tier.getBytes());
+    }
+
+    @Test
+    public void testOffHeapEviction() {
+        OffHeapCacheTier tier = new OffHeapCacheTier(10);
+        tier.put("a", new byte[4], 10000);
+        tier.put("b", new byte[4], 10000);
+        tier.get("a");
+        tier.put("c", new byte[4], 10000);
+        assertNull("Least recently used should be removed", tier.get("b"));
+        assertNotNull(tier.get("a"));
+        assertNotNull(tier.get("c"));
+        tier.put("too big", new byte[11], 10000);
+        assertNull(tier.get("too big"));
+    }
+    @Test
+    public void testSharedTierIsClearedOnlyByOriginatingNode() {
+        OffHeapCacheTier local = new OffHeapCacheTier(1024);
+        final int[] clears = new int[1];
+        CacheTier shared = new CacheTier() {
+            public byte[] get(String key) { return local.get(key); }
+            public void put(String key, byte[] value, long ttl) { local.put(key, value, ttl); }
+            public void remove(String key) { local.remove(key); }
+            public void clear() { clears[0]++; local.clear(); }
+            public boolean isShared() { return true; }
+        };
+        Cache<String> cache = new Cache<>();
+        cache.setName("SharedTier");
+        cache.setSecondLevel(shared);
+        cache.setSerializer(CacheSerializer.STRING);
+
+        cache.put("key", "value");
+        cache.handleClusterMsg(Cache.CLUSTER_CMD_FLUSH);
+        assertEquals("Flush from other node should not clear shared tier", 0, clears[0]);
+        assertEquals("Value should be found from shared tier", "value", cache.get("key"));
+
+        cache.clear();
+        assertEquals(1, clears[0]);
+        assertNull(cache.get("key"));
+    }
+
+}
@@ -0,0 +1,45 @@
+package fi.nls.oskari.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class HostConnectionLimiterTest {
+
+    @Test
+    public void testLimit() throws IOException {
+        HostConnectionLimiter limiter = new HostConnectionLimiter("example.com", 1);
+        limiter.acquire(10L);
+        assertEquals(1, limiter.getActive());
+        try {
+            limiter.acquire(10L);
+            fail("Should have rejected the second connection");
+        } catch (IOException expected) {
+            // no free connections
+        }
+        assertEquals(1, limiter.getRejectedCount());
+        limiter.release();
+        limiter.acquire(10L);
+        assertEquals(2, limiter.getRequestCount());
+        assertEquals(0, limiter.getWaiting());
+    }
+
+    @Test
+    public void testNoLimit() throws IOException {
+        HostConnectionLimiter limiter = new HostConnectionLimiter("example.com", 0);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire(0L);
+        }
+        assertEquals(100, limiter.getActive());
+        limiter.release();
+        assertEquals(99, limiter.getActive());
+    }
+
+    @Test
+    public void testLimiterIsSharedPerHost() {
+        assertSame(HostConnectionLimiter.get("a.example.com"), HostConnectionLimiter.get("a.example.com"));
+        assertNotSame(HostConnectionLimiter.get("a.example.com"), HostConnectionLimiter.get("b.example.com"));
+    }
+}
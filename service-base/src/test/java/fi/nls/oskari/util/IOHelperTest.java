@@ -1,11 +1,13 @@
 package fi.nls.oskari.util;
 
+import org.junit.After;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
@@ -24,6 +26,11 @@ import static org.junit.Assert.*;
  */
 public class IOHelperTest {
 
+    @After
+    public void teardown() {
+        PropertyUtil.clearProperties();
+    }
+
     @Test
     public void testConstructUrl() throws Exception {
         String baseUrl = "/testing";
@@ -52,6 +59,31 @@ public class IOHelperTest {
         assertEquals("Problematic params should return expected encoded URL", baseUrl + "test=testing&t2=3&t3=%26%26%26", IOHelper.constructUrl(baseUrl, params));
     }
 
+    @Test
+    public void testConnectionIsFreedOnDisconnect() throws Exception {
+        PropertyUtil.addProperty("oskari.http.maxConnectionsPerHost.permits.example.com", "1", true);
+        HostConnectionLimiter limiter = HostConnectionLimiter.get("permits.example.com");
+        HttpURLConnection conn = IOHelper.getConnection("http://permits.example.com/test");
+        assertEquals(1, limiter.getActive());
+        IOHelper.disconnect(conn);
+        assertEquals(0, limiter.getActive());
+        // the permit is only released once
+        IOHelper.disconnect(conn);
+        assertEquals(0, limiter.getActive());
+        IOHelper.disconnect(IOHelper.getConnection("http://permits.example.com/test"));
+        assertEquals(2, limiter.getRequestCount());
+    }
+
+    @Test
+    public void testConnectionIsNotTrackedWithoutLimit() throws Exception {
+        HostConnectionLimiter limiter = HostConnectionLimiter.get("nolimit.example.com");
+        HttpURLConnection conn = IOHelper.getConnection("http://nolimit.example.com/test");
+        assertEquals(0, limiter.getActive());
+        assertEquals(1, limiter.getRequestCount());
+        IOHelper.disconnect(conn);
+        assertEquals(0, limiter.getActive());
+    }
+
     @Test
     public void testFixPath() {
         assertEquals("Duplicate slashes should be removed", "http://testing/if/path/OK", IOHelper.fixPath("http://testing//if/path//OK"));
@@ -4,15 +4,25 @@ import static java.util.stream.Collectors.groupingBy;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.stream.XMLStreamException;
 
+import org.json.JSONObject;
+
 import fi.mml.map.mapwindow.service.wms.LayerNotFoundInCapabilitiesException;
 import fi.mml.map.mapwindow.service.wms.WebMapService;
+import fi.mml.map.mapwindow.service.wms.WebMapServiceIndex;
 import fi.mml.map.mapwindow.service.wms.WebMapServiceParseException;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
@@ -20,7 +30,10 @@ import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.map.layer.OskariLayerService;
 import fi.nls.oskari.service.ServiceException;
 import fi.nls.oskari.service.capabilities.CapabilitiesCacheService;
+import fi.nls.oskari.service.capabilities.OskariLayerCapabilities;
 import fi.nls.oskari.service.capabilities.OskariLayerCapabilitiesHelper;
+import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.wmts.WMTSCapabilitiesParser;
 import fi.nls.oskari.wmts.domain.WMTSCapabilities;
 
@@ -33,6 +46,12 @@ public class CapabilitiesUpdateService {
     private static final String ERR_LAYER_NOT_FOUND_IN_CAPABILITIES = "Could not find layer from Capabilities";
     private static final String ERR_FAILED_TO_PARSE_CAPABILITIES = "Failed to parse Capabilities";
 
+    private static final String PROP_THREADS = "capabilities.update.threads";
+    private static final int DEFAULT_THREADS = 4;
+
+    // ETag/Last-Modified of the capabilities currently saved in the cache, used for conditional requests
+    private static final Map<UrlTypeVersion, Map<String, String>> VALIDATORS = new ConcurrentHashMap<>();
+
     private final OskariLayerService layerService;
     private final CapabilitiesCacheService capabilitiesCacheService;
 
@@ -56,10 +75,37 @@ public class CapabilitiesUpdateService {
 
         Map<UrlTypeVersion, List<OskariLayer>> layersByUTV = updateableLayers.stream()
                 .collect(groupingBy(layer -> new UrlTypeVersion(layer)));
+        if (layersByUTV.isEmpty()) {
+            return results;
+        }
 
-        for (UrlTypeVersion utv : layersByUTV.keySet()) {
-            List<OskariLayer> layers = layersByUTV.get(utv);
-            updateCapabilities(utv, layers, systemCRSs, results);
+        // Different services are updated concurrently, requests to the same host are limited
+        // by IOHelper with oskari.http.maxConnectionsPerHost (see HostConnectionLimiter)
+        int threads = Math.min(layersByUTV.size(), Math.max(1, PropertyUtil.getOptional(PROP_THREADS, DEFAULT_THREADS)));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<CapabilitiesUpdateResult>>> futures = new ArrayList<>(layersByUTV.size());
+            for (Map.Entry<UrlTypeVersion, List<OskariLayer>> entry : layersByUTV.entrySet()) {
+                UrlTypeVersion utv = entry.getKey();
+                List<OskariLayer> layers = entry.getValue();
+                futures.add(executor.submit(() -> {
+                    List<CapabilitiesUpdateResult> groupResults = new ArrayList<>(layers.size());
+                    updateCapabilities(utv, layers, systemCRSs, groupResults);
+                    return groupResults;
+                }));
+            }
+            for (Future<List<CapabilitiesUpdateResult>> future : futures) {
+                try {
+                    results.addAll(future.get());
+                } catch (ExecutionException e) {
+                    LOG.warn(e.getCause(), "Failed to update Capabilities for a group of layers");
+                }
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while updating Capabilities");
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
         }
 
         return results;
@@ -87,9 +133,21 @@ public class CapabilitiesUpdateService {
         LOG.debug("Updating Capabilities for a group of layers - url:", url,
                 "type:", type, "version:", version, "ids:", Arrays.toString(ids));
 
-        final String data;
+        // validators of the response currently saved in capabilities cache (if any)
+        Map<String, String> validators = new HashMap<>(VALIDATORS.getOrDefault(utv, Collections.emptyMap()));
+        String data;
+        boolean notModified = false;
         try {
-            data = CapabilitiesCacheService.getFromService(url, type, version, user, pass);
+            data = CapabilitiesCacheService.getFromServiceIfModified(url, type, version, user, pass, validators);
+            if (data == null) {
+                data = getCachedData(utv);
+                notModified = data != null;
+                if (!notModified) {
+                    // nothing to compare against, get the full document
+                    validators.clear();
+                    data = CapabilitiesCacheService.getFromServiceIfModified(url, type, version, user, pass, validators);
+                }
+            }
         } catch (ServiceException e) {
             LOG.warn(e, "Could not find get Capabilities, url:", url,
                     "type:", type, "version:", version, "ids:", Arrays.toString(ids));
@@ -98,26 +156,63 @@ public class CapabilitiesUpdateService {
             }
             return;
         }
+        if (data == null) {
+            // Service responded 304 without us sending any validators
+            for (OskariLayer layer : layers) {
+                results.add(CapabilitiesUpdateResult.err(layer, ERR_FAILED_TO_FETCH_CAPABILITIES));
+            }
+            return;
+        }
+        if (notModified) {
+            LOG.debug("Capabilities not modified since the last update - url:", url, "type:", type, "version:", version);
+        }
 
+        boolean saved = false;
         switch (type) {
         case OskariLayer.TYPE_WMS:
-            updateWMSLayers(layers, data, systemCRSs, results);
+            saved = updateWMSLayers(layers, data, systemCRSs, results, !notModified);
             break;
         case OskariLayer.TYPE_WMTS:
-            updateWMTSLayers(layers, data, systemCRSs, results);
+            saved = updateWMTSLayers(layers, data, systemCRSs, results, !notModified);
             break;
         }
+        if (notModified || saved) {
+            VALIDATORS.put(utv, validators);
+        } else {
+            VALIDATORS.remove(utv);
+        }
     }
 
-    private void updateWMSLayers(List<OskariLayer> layers, String data,
-            Set<String> systemCRSs, List<CapabilitiesUpdateResult> results) {
+    private String getCachedData(UrlTypeVersion utv) {
+        OskariLayerCapabilities cached = capabilitiesCacheService.find(utv.url, utv.type, utv.version);
+        return cached == null ? null : cached.getData();
+    }
+
+    /**
+     * @return true if the capabilities document was saved to capabilities cache
+     */
+    private boolean updateWMSLayers(List<OskariLayer> layers, String data,
+            Set<String> systemCRSs, List<CapabilitiesUpdateResult> results, boolean saveData) {
+        final WebMapServiceIndex index;
+        try {
+            // parse the document once for all the layers
+            index = WebMapServiceIndex.parse(data);
+        } catch (WebMapServiceParseException e) {
+            int[] ids = layers.stream().mapToInt(OskariLayer::getId).toArray();
+            LOG.warn(e, "Failed to parse WMS GetCapabilities for layerIds:", Arrays.toString(ids));
+            for (OskariLayer layer : layers) {
+                results.add(CapabilitiesUpdateResult.err(layer, ERR_FAILED_TO_PARSE_CAPABILITIES));
+            }
+            return false;
+        }
         boolean shouldSaveCapabilities = false;
         for (OskariLayer layer : layers) {
             try {
-                WebMapService wms = OskariLayerCapabilitiesHelper.parseWMSCapabilities(data, layer);
+                WebMapService wms = OskariLayerCapabilitiesHelper.parseWMSCapabilities(index, layer);
+                LayerState before = new LayerState(layer);
                 OskariLayerCapabilitiesHelper.setPropertiesFromCapabilitiesWMS(wms, layer, systemCRSs);
                 shouldSaveCapabilities = true;
-                layerService.update(layer);
+                update(layer, before);
                 results.add(CapabilitiesUpdateResult.ok(layer));
             } catch (WebMapServiceParseException e) {
                 LOG.warn(e, "Failed to update Capabilities for layerId:", layer.getId());
@@ -127,13 +222,18 @@ public class CapabilitiesUpdateService {
                 results.add(CapabilitiesUpdateResult.err(layer, ERR_LAYER_NOT_FOUND_IN_CAPABILITIES));
             }
         }
-        if (shouldSaveCapabilities) {
+        if (shouldSaveCapabilities && saveData) {
             capabilitiesCacheService.save(layers.get(0), data);
+            return true;
         }
+        return false;
     }
 
-    private void updateWMTSLayers(List<OskariLayer> layers, String data,
-            Set<String> systemCRSs, List<CapabilitiesUpdateResult> results) {
+    /**
+     * @return true if the capabilities document was saved to capabilities cache
+     */
+    private boolean updateWMTSLayers(List<OskariLayer> layers, String data,
+            Set<String> systemCRSs, List<CapabilitiesUpdateResult> results, boolean saveData) {
         final WMTSCapabilities wmts;
         try {
             wmts = WMTSCapabilitiesParser.parseCapabilities(data);
@@ -143,22 +243,59 @@ public class CapabilitiesUpdateService {
             for (OskariLayer layer : layers) {
                 results.add(CapabilitiesUpdateResult.err(layer, ERR_FAILED_TO_PARSE_CAPABILITIES));
             }
-            return;
+            return false;
         }
         boolean shouldSaveCapabilities = false;
         for (OskariLayer layer : layers) {
             try {
+                LayerState before = new LayerState(layer);
                 OskariLayerCapabilitiesHelper.setPropertiesFromCapabilitiesWMTS(wmts, layer, systemCRSs);
                 shouldSaveCapabilities = true;
-                layerService.update(layer);
+                update(layer, before);
                 results.add(CapabilitiesUpdateResult.ok(layer));
             } catch (IllegalArgumentException e) {
                 results.add(CapabilitiesUpdateResult.err(layer, e.getMessage()));
             }
         }
-        if (shouldSaveCapabilities) {
+        if (shouldSaveCapabilities && saveData) {
             // First will do, since we only need the url type and version
             capabilitiesCacheService.save(layers.get(0), data);
+            return true;
+        }
+        return false;
+    }
+
+    private void update(OskariLayer layer, LayerState before) {
+        if (before.isUnchanged(layer)) {
+            LOG.debug("Capabilities unchanged for layerId:", layer.getId(), "- only updating the timestamp");
+            layerService.updateCapabilitiesLastUpdated(layer.getId(), layer.getCapabilitiesLastUpdated());
+            return;
+        }
+        layerService.update(layer);
+    }
+
+    /**
+     * The parts of a layer that are modified by updating capabilities
+     */
+    protected static class LayerState {
+
+        private final JSONObject capabilities;
+        private final JSONObject options;
+        private final String style;
+
+        protected LayerState(OskariLayer layer) {
+            // capabilities are replaced, options are modified in place
+            capabilities = layer.getCapabilities();
+            options = layer.getOptions() == null ? null : JSONHelper.createJSONObject(layer.getOptions().toString());
+            style = layer.getStyle();
+        }
+
+        protected boolean isUnchanged(OskariLayer layer) {
+            // layers that haven't been updated before have no capabilities
+            return capabilities != null
+                    && JSONHelper.isEqual(capabilities, layer.getCapabilities())
+                    && JSONHelper.isEqual(options, layer.getOptions())
+                    && Objects.equals(style, layer.getStyle());
         }
     }
 
@@ -3,9 +3,11 @@ package org.oskari.capabilities;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import org.json.JSONObject;
 import org.junit.Test;
 
 import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.util.JSONHelper;
 
 public class CapabilitiesUpdateServiceTest {
 
@@ -20,4 +22,21 @@ public class CapabilitiesUpdateServiceTest {
         assertFalse("Should NOT allow userlayer", CapabilitiesUpdateService.canUpdate(OskariLayer.TYPE_USERLAYER));
     }
 
+    @Test
+    public void testLayerState() {
+        OskariLayer layer = new OskariLayer();
+        layer.setOptions(new JSONObject());
+        assertFalse("Layer without capabilities should be updated",
+                new CapabilitiesUpdateService.LayerState(layer).isUnchanged(layer));
+
+        layer.setCapabilities(JSONHelper.createJSONObject("{\"formats\":[\"image/png\"],\"srs\":[\"EPSG:3067\"]}"));
+        CapabilitiesUpdateService.LayerState state = new CapabilitiesUpdateService.LayerState(layer);
+        // same content, new object, different order
+        layer.setCapabilities(JSONHelper.createJSONObject("{\"srs\":[\"EPSG:3067\"],\"formats\":[\"image/png\"]}"));
+        assertTrue(state.isUnchanged(layer));
+
+        JSONHelper.putValue(layer.getOptions(), "format", "image/png");
+        assertFalse("Options are modified in place", state.isUnchanged(layer));
+    }
+
 }
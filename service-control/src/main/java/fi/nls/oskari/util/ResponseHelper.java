@@ -1,24 +1,52 @@
 package fi.nls.oskari.util;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 
 import fi.nls.oskari.control.ActionParameters;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Convenience methods for writing a response.
+ * JSON responses are serialized directly to the response stream and compressed with gzip/deflate
+ * when the client accepts it (can be disabled with property oskari.response.compress=false).
  */
 public class ResponseHelper {
 
     public static final String CONTENT_TYPE_JSON_UTF8 = "application/json;charset=UTF-8";
 
+    public static final String HEADER_ETAG = "ETag";
+    public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    public static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    public static final String HEADER_VARY = "Vary";
+    public static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    public static final String ENCODING_GZIP = "gzip";
+    public static final String ENCODING_DEFLATE = "deflate";
+
+    private static final String PROP_COMPRESS = "oskari.response.compress";
+    // compressing small payloads isn't worth the trouble
+    private static final int MIN_COMPRESS_LENGTH = 1024;
+    private static final int BUFFER_SIZE = 8192;
+
     private static final Logger LOG = LogFactory.getLogger(ResponseHelper.class);
 
     /**
@@ -28,11 +56,11 @@ public class ResponseHelper {
      * @param response response to write
      */
     public static final void writeResponse(ActionParameters params, final Object response) {
+        if (response instanceof JSONObject || response instanceof JSONArray) {
+            writeJSON(params, HttpServletResponse.SC_OK, response, null);
+            return;
+        }
         try {
-            if(response instanceof JSONObject || response instanceof JSONArray) {
-                params.getResponse().setCharacterEncoding("UTF-8");
-                params.getResponse().setContentType("application/json;charset=UTF-8");
-            }
             params.getResponse().getWriter().print(response);
         } catch (IOException e) {
             LOG.info("Couldn't write answer:", e.getMessage());
@@ -48,8 +76,161 @@ public class ResponseHelper {
      * @param json JSONObject to send
      */
     public static final void writeResponse(ActionParameters params, int sc, JSONObject json) {
-        final byte[] b = json.toString().getBytes(StandardCharsets.UTF_8);
-        writeResponse(params, sc, CONTENT_TYPE_JSON_UTF8, b);
+        writeJSON(params, sc, json, null);
+    }
+
+    /**
+     * Writes out the given response as JSON with an ETag so the client can revalidate it
+     * with {@link #checkNotModified(ActionParameters, String)}
+     *
+     * @param params reference to ActionParams
+     * @param sc HTTP Status Code to send
+     * @param json JSONObject to send
+     * @param etag version of the response, null if unknown
+     */
+    public static final void writeResponse(ActionParameters params, int sc, JSONObject json, String etag) {
+        writeJSON(params, sc, json, etag);
+    }
+
+    private static void writeJSON(ActionParameters params, int sc, Object json, String etag) {
+        final HttpServletResponse resp = params.getResponse();
+        resp.setStatus(sc);
+        resp.setCharacterEncoding("UTF-8");
+        resp.setContentType(CONTENT_TYPE_JSON_UTF8);
+        setETag(resp, etag);
+        final String encoding = getAcceptedEncoding(params.getRequest());
+        setContentEncoding(resp, encoding);
+        try (OutputStream out = encode(resp.getOutputStream(), encoding);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            if (json instanceof JSONArray) {
+                ((JSONArray) json).write(writer);
+            } else {
+                ((JSONObject) json).write(writer);
+            }
+        } catch (IOException | JSONException e) {
+            LOG.info("Couldn't write answer:", e.getMessage());
+            LOG.debug(e);
+        }
+    }
+
+    /**
+     * Checks the If-None-Match header of the request against the current version of the response.
+     * If the client already has the current version 304 Not Modified is sent.
+     * Usage:
+     * <pre>
+     * {@code
+     *  if (ResponseHelper.checkNotModified(params, etag)) {
+     *      return;
+     *  }
+     *  ResponseHelper.writeResponse(params, 200, json, etag);
+     * }
+     * </pre>
+     *
+     * @param params reference to ActionParams
+     * @param etag current version of the response, null if unknown
+     * @return true if the response was written and the handler should stop processing the request
+     */
+    public static final boolean checkNotModified(ActionParameters params, String etag) {
+        if (etag == null) {
+            return false;
+        }
+        final String ifNoneMatch = params.getRequest().getHeader(HEADER_IF_NONE_MATCH);
+        if (ifNoneMatch == null || !matchesETag(ifNoneMatch, quoteETag(etag))) {
+            return false;
+        }
+        final HttpServletResponse resp = params.getResponse();
+        resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        setETag(resp, etag);
+        return true;
+    }
+
+    protected static boolean matchesETag(String ifNoneMatch, String quotedETag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                // weak comparison is fine for GET requests
+                candidate = candidate.substring(2);
+            }
+            if ("*".equals(candidate) || quotedETag.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String quoteETag(String etag) {
+        return etag.startsWith("\"") ? etag : '"' + etag + '"';
+    }
+
+    private static void setETag(HttpServletResponse resp, String etag) {
+        if (etag == null) {
+            return;
+        }
+        resp.setHeader(HEADER_ETAG, quoteETag(etag));
+        // responses might be user specific, let the browser cache but always revalidate
+        resp.setHeader(HEADER_CACHE_CONTROL, "private, no-cache");
+    }
+
+    /**
+     * Returns the content encoding to use for the response based on the Accept-Encoding header
+     * of the request. Prefers gzip over deflate.
+     * @return "gzip", "deflate" or null if the response shouldn't be compressed
+     */
+    protected static String getAcceptedEncoding(HttpServletRequest req) {
+        if (req == null || !PropertyUtil.getOptional(PROP_COMPRESS, true)) {
+            return null;
+        }
+        final String header = req.getHeader(HEADER_ACCEPT_ENCODING);
+        if (header == null) {
+            return null;
+        }
+        boolean deflate = false;
+        for (String part : header.toLowerCase(Locale.ROOT).split(",")) {
+            String[] tokens = part.split(";");
+            String coding = tokens[0].trim();
+            if (isRejected(tokens)) {
+                continue;
+            }
+            if (ENCODING_GZIP.equals(coding) || "*".equals(coding)) {
+                return ENCODING_GZIP;
+            }
+            if (ENCODING_DEFLATE.equals(coding)) {
+                deflate = true;
+            }
+        }
+        return deflate ? ENCODING_DEFLATE : null;
+    }
+
+    private static boolean isRejected(String[] tokens) {
+        // "gzip;q=0" means the client doesn't accept gzip
+        for (int i = 1; i < tokens.length; i++) {
+            String param = tokens[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2)) <= 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void setContentEncoding(HttpServletResponse resp, String encoding) {
+        resp.addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+        if (encoding != null) {
+            resp.setHeader(HEADER_CONTENT_ENCODING, encoding);
+        }
+    }
+
+    private static OutputStream encode(OutputStream out, String encoding) throws IOException {
+        if (ENCODING_GZIP.equals(encoding)) {
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+        if (ENCODING_DEFLATE.equals(encoding)) {
+            return new DeflaterOutputStream(out);
+        }
+        return out;
     }
 
     /**
@@ -74,6 +255,69 @@ public class ResponseHelper {
         }
     }
 
+    /**
+     * Writes out a pre-serialized response, for example one read from a cache.
+     * The response is compressed if the client accepts it.
+     *
+     * @param params reference to ActionParams
+     * @param sc HTTP Status Code to send
+     * @param contentType of the response
+     * @param b byte array containing the (uncompressed) response body
+     * @param etag version of the response, null if unknown
+     */
+    public static final void writeResponse(ActionParameters params, int sc, String contentType, byte[] b, String etag) {
+        final String encoding = b.length < MIN_COMPRESS_LENGTH ? null : getAcceptedEncoding(params.getRequest());
+        if (encoding == null) {
+            setETag(params.getResponse(), etag);
+            writeResponse(params, sc, contentType, b);
+            return;
+        }
+        final HttpServletResponse resp = params.getResponse();
+        resp.setStatus(sc);
+        resp.setContentType(contentType);
+        setETag(resp, etag);
+        setContentEncoding(resp, encoding);
+        try (OutputStream out = encode(resp.getOutputStream(), encoding)) {
+            out.write(b);
+        } catch (IOException e) {
+            LOG.info("Couldn't write answer:", e.getMessage());
+            LOG.debug(e);
+        }
+    }
+
+    /**
+     * Writes out a gzipped pre-serialized response, for example one read from a cache.
+     * The bytes are passed through as is if the client accepts gzip and decompressed otherwise.
+     *
+     * @param params reference to ActionParams
+     * @param sc HTTP Status Code to send
+     * @param contentType of the response
+     * @param gzipped gzipped response body
+     * @param etag version of the response, null if unknown
+     */
+    public static final void writeGzippedResponse(ActionParameters params, int sc, String contentType, byte[] gzipped, String etag) {
+        final HttpServletResponse resp = params.getResponse();
+        final boolean acceptsGzip = ENCODING_GZIP.equals(getAcceptedEncoding(params.getRequest()));
+        if (acceptsGzip) {
+            resp.setHeader(HEADER_CONTENT_ENCODING, ENCODING_GZIP);
+        }
+        resp.addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+        setETag(resp, etag);
+        if (acceptsGzip) {
+            writeResponse(params, sc, contentType, gzipped);
+            return;
+        }
+        resp.setStatus(sc);
+        resp.setContentType(contentType);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped), BUFFER_SIZE);
+             OutputStream out = resp.getOutputStream()) {
+            IOHelper.copy(in, out);
+        } catch (IOException e) {
+            LOG.info("Couldn't write answer:", e.getMessage());
+            LOG.debug(e);
+        }
+    }
+
     /**
      * Writes out the given response
      * This method avoids creating a copy of the byte array if it is
@@ -0,0 +1,63 @@
+package fi.nls.oskari.util;
+
+import fi.nls.oskari.control.ActionParameters;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ResponseHelperTest {
+
+    @Test
+    public void testGetAcceptedEncoding() {
+        assertNull(ResponseHelper.getAcceptedEncoding(null));
+        assertNull(ResponseHelper.getAcceptedEncoding(requestWithEncoding(null)));
+        assertNull(ResponseHelper.getAcceptedEncoding(requestWithEncoding("identity")));
+        assertEquals("gzip", ResponseHelper.getAcceptedEncoding(requestWithEncoding("gzip, deflate, br")));
+        assertEquals("gzip", ResponseHelper.getAcceptedEncoding(requestWithEncoding("deflate, GZIP;q=0.5")));
+        assertEquals("deflate", ResponseHelper.getAcceptedEncoding(requestWithEncoding("gzip;q=0, deflate")));
+        assertEquals("gzip", ResponseHelper.getAcceptedEncoding(requestWithEncoding("*")));
+    }
+
+    @Test
+    public void testMatchesETag() {
+        assertTrue(ResponseHelper.matchesETag("\"abc\"", "\"abc\""));
+        assertTrue(ResponseHelper.matchesETag("W/\"abc\"", "\"abc\""));
+        assertTrue(ResponseHelper.matchesETag("\"foo\", \"abc\"", "\"abc\""));
+        assertTrue(ResponseHelper.matchesETag("*", "\"abc\""));
+        assertFalse(ResponseHelper.matchesETag("\"abcd\"", "\"abc\""));
+    }
+
+    @Test
+    public void testCheckNotModified() {
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        doReturn("\"v1\"").when(req).getHeader(ResponseHelper.HEADER_IF_NONE_MATCH);
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        ActionParameters params = new ActionParameters();
+        params.setRequest(req);
+        params.setResponse(resp);
+
+        assertFalse(ResponseHelper.checkNotModified(params, null));
+        assertFalse(ResponseHelper.checkNotModified(params, "v2"));
+        verify(resp, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+
+        assertTrue(ResponseHelper.checkNotModified(params, "v1"));
+        verify(resp).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(resp).setHeader(ResponseHelper.HEADER_ETAG, "\"v1\"");
+    }
+
+    private HttpServletRequest requestWithEncoding(String acceptEncoding) {
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        doReturn(acceptEncoding).when(req).getHeader(ResponseHelper.HEADER_ACCEPT_ENCODING);
+        return req;
+    }
+}
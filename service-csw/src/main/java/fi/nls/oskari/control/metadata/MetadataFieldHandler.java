@@ -134,7 +134,7 @@ public class MetadataFieldHandler {
         DataInputStream dis = null;
         try {
             final HttpURLConnection con = IOHelper.getConnection(url);
-            dis = new DataInputStream(IOHelper.debugResponse(con.getInputStream()));
+            dis = new DataInputStream(IOHelper.debugResponse(IOHelper.getResponseStream(con)));
             final DocumentBuilder dBuilder = XmlHelper.newDocumentBuilderFactory().newDocumentBuilder();
             final Document doc = dBuilder.parse(dis);
             doc.getDocumentElement().normalize();
@@ -7,8 +7,8 @@ import fi.nls.oskari.csw.helper.CSWISORecordNamespaceContext;
 import fi.nls.oskari.csw.helper.CSWISORecordParser;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.util.XmlHelper;
-import org.geotools.referencing.CRS;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
@@ -69,10 +69,10 @@ public class CSWService {
 
         if (fromCRS != null && toCRS != null) {
             //output is always  lon,lat axis order
-            targetCRS = CRS.decode(toCRS,true);
+            targetCRS = CRSRegistry.decode(toCRS,true);
             //TOD0 find out source axis orientation
-            sourceCRS = CRS.decode(fromCRS);
-            transform = CRS.findMathTransform(sourceCRS, targetCRS);
+            sourceCRS = CRSRegistry.decode(fromCRS);
+            transform = CRSRegistry.findMathTransform(sourceCRS, targetCRS);
         }
     }
 
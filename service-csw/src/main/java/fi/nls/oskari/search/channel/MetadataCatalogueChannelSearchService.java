@@ -3,7 +3,6 @@ package fi.nls.oskari.search.channel;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Polygon;
 import org.geotools.geometry.jts.JTS;
-import org.geotools.referencing.CRS;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.locationtech.jts.geom.LineString;
@@ -18,6 +17,7 @@ import fi.nls.oskari.control.metadata.MetadataField;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.map.geometry.GeometryHelper;
 import fi.nls.oskari.map.geometry.WKTHelper;
 import fi.nls.oskari.map.layer.OskariLayerService;
@@ -251,7 +251,7 @@ public class MetadataCatalogueChannelSearchService extends SearchChannel {
 
             CoordinateReferenceSystem from = WKTHelper.getCRS(sourceSRS);
             CoordinateReferenceSystem to = WKTHelper.getCRS(targetSRS);
-            MathTransform mt = CRS.findMathTransform(from, to, true);
+            MathTransform mt = CRSRegistry.findMathTransform(from, to, true);
             Geometry projected = JTS.transform(polygon, mt);
 
             return WKTHelper.getWKT(projected);
@@ -321,7 +321,7 @@ public class MetadataCatalogueChannelSearchService extends SearchChannel {
 
         final long end =  System.currentTimeMillis();
 
-        final StAXOMBuilder stAXOMBuilder = new StAXOMBuilder(IOHelper.debugResponse(conn.getInputStream()));
+        final StAXOMBuilder stAXOMBuilder = new StAXOMBuilder(IOHelper.debugResponse(IOHelper.getResponseStream(conn)));
         log.debug("Querying metadata service took", (end-start), "ms");
         return stAXOMBuilder;
     }
@@ -5,11 +5,11 @@ import fi.mml.portti.service.search.SearchCriteria;
 import fi.nls.oskari.control.metadata.MetadataField;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.service.ServiceRuntimeException;
 import fi.nls.oskari.util.JSONHelper;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.geometry.jts.JTS;
-import org.geotools.referencing.CRS;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.opengis.filter.Filter;
@@ -214,10 +214,10 @@ public class MetadataCatalogueQueryHelper {
                     return null;
                 }
                 Geometry geom = GeoJSONReader.toGeometry(features.optJSONObject(0).optJSONObject("geometry"));
-                CoordinateReferenceSystem sourceCRS = CRS.decode(sourceSRS);
-                CoordinateReferenceSystem targetCRS = CRS.decode(TARGET_SRS, true);
+                CoordinateReferenceSystem sourceCRS = CRSRegistry.decode(sourceSRS);
+                CoordinateReferenceSystem targetCRS = CRSRegistry.decode(TARGET_SRS, true);
 
-                MathTransform transform = CRS.findMathTransform(sourceCRS, targetCRS, true);
+                MathTransform transform = CRSRegistry.findMathTransform(sourceCRS, targetCRS, true);
                 Geometry transformed = JTS.transform(geom, transform);
 
                 return filterFactory.intersects(
@@ -462,7 +462,7 @@ public class FeedbackImpl implements FeedbackService {
             //IOHelper.trustAllCerts(con);
             //IOHelper.trustAllHosts(con);
             IOHelper.writeHeaders(con, headers);
-            return IOHelper.readString(con.getInputStream(), "UTF-8");
+            return IOHelper.readString(con, "UTF-8");
         } catch (IOException e) {
             log.error("can't get Open311 feedback response: " + e.getMessage());
         }
@@ -81,7 +81,7 @@ public class WebMapServiceFactory {
     }
 
     public static void flushCache() {
-        wmsCache.flush(true);
+        wmsCache.clear();
     }
 
     /**
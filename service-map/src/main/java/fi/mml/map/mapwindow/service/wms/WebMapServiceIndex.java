@@ -0,0 +1,58 @@
+package fi.mml.map.mapwindow.service.wms;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import fi.mml.capabilities.WMSCapabilitiesDocument;
+import fi.mml.wms.v111.WMTMSCapabilitiesDocument;
+
+/**
+ * Parses a WMS GetCapabilities document once and creates {@link WebMapService}s
+ * for the layers of it. Created services are indexed by layer name so layers sharing
+ * a name are processed only once.
+ */
+public class WebMapServiceIndex {
+
+    private static final String SOURCE = "from DataBase";
+
+    private final WMSCapabilitiesDocument wms130;
+    private final WMTMSCapabilitiesDocument wms111;
+    private final Map<String, WebMapService> services = new HashMap<>();
+
+    private WebMapServiceIndex(WMSCapabilitiesDocument wms130, WMTMSCapabilitiesDocument wms111) {
+        this.wms130 = wms130;
+        this.wms111 = wms111;
+    }
+
+    public static WebMapServiceIndex parse(final String xml) throws WebMapServiceParseException {
+        if (WebMapServiceFactoryHelper.isVersion1_3_0(xml)) {
+            return new WebMapServiceIndex(WebMapServiceV1_3_0_Impl.parseDocument(xml), null);
+        } else if (WebMapServiceFactoryHelper.isVersion1_1_1(xml)) {
+            return new WebMapServiceIndex(null, WebMapServiceV1_1_1_Impl.parseDocument(xml));
+        } else {
+            throw new WebMapServiceParseException("Could not detect version to be 1.3.0 or 1.1.1");
+        }
+    }
+
+    /**
+     * Same as {@link WebMapServiceFactoryHelper#createFromXML(String, String)} without re-parsing the document
+     */
+    public synchronized WebMapService get(final String layerName)
+            throws WebMapServiceParseException, LayerNotFoundInCapabilitiesException {
+        WebMapService wms = services.get(layerName);
+        if (wms == null) {
+            wms = create(layerName);
+            services.put(layerName, wms);
+        }
+        return wms;
+    }
+
+    private WebMapService create(final String layerName)
+            throws WebMapServiceParseException, LayerNotFoundInCapabilitiesException {
+        if (wms130 != null) {
+            return new WebMapServiceV1_3_0_Impl(SOURCE, wms130, layerName, null);
+        }
+        return new WebMapServiceV1_1_1_Impl(SOURCE, wms111, layerName, null);
+    }
+
+}
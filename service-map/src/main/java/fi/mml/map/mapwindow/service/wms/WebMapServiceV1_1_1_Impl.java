@@ -43,14 +43,36 @@ public class WebMapServiceV1_1_1_Impl extends AbstractWebMapService {
         parseXML(data, layerName, allowedCRS);
     }
 
+    /**
+     * Use when creating services for multiple layers of the same capabilities document
+     * so the document needs to be parsed only once
+     */
+    public WebMapServiceV1_1_1_Impl(String url, WMTMSCapabilitiesDocument wmtms, String layerName, Set<String> allowedCRS)
+            throws WebMapServiceParseException, LayerNotFoundInCapabilitiesException {
+        super(url);
+        parseCapabilities(wmtms, layerName, allowedCRS);
+    }
+
     public String getVersion() {
         return "1.1.1";
     }
 
     private void parseXML(String data, String layerName, Set<String> allowedCRS)
             throws WebMapServiceParseException, LayerNotFoundInCapabilitiesException {
+        parseCapabilities(parseDocument(data), layerName, allowedCRS);
+    }
+
+    public static WMTMSCapabilitiesDocument parseDocument(String data) throws WebMapServiceParseException {
+        try {
+            return WMTMSCapabilitiesDocument.Factory.parse(data);
+        } catch (Exception e) {
+            throw new WebMapServiceParseException(e);
+        }
+    }
+
+    private void parseCapabilities(WMTMSCapabilitiesDocument wmtms, String layerName, Set<String> allowedCRS)
+            throws WebMapServiceParseException, LayerNotFoundInCapabilitiesException {
         try {
-            WMTMSCapabilitiesDocument wmtms = WMTMSCapabilitiesDocument.Factory.parse(data);
             Layer layerCapabilities = wmtms.getWMTMSCapabilities().getCapability().getLayer();
             LatLonBoundingBox bbox = layerCapabilities.getLatLonBoundingBox();
             if(bbox != null) {
@@ -10,7 +10,6 @@ import java.util.Map;
 import java.util.Set;
 
 import org.geotools.geometry.jts.ReferencedEnvelope;
-import org.geotools.referencing.CRS;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.TransformException;
@@ -22,6 +21,7 @@ import fi.mml.capabilities.LegendURLDocument.LegendURL;
 import fi.mml.capabilities.OperationType;
 import fi.mml.capabilities.StyleDocument.Style;
 import fi.mml.capabilities.WMSCapabilitiesDocument;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.map.geometry.WKTHelper;
 import fi.mml.capabilities.KeywordListDocument.KeywordList;
 
@@ -41,15 +41,36 @@ public class WebMapServiceV1_3_0_Impl extends AbstractWebMapService {
         parseXML(data, layerName, allowedCRS);
     }
 
+    /**
+     * Use when creating services for multiple layers of the same capabilities document
+     * so the document needs to be parsed only once
+     */
+    public WebMapServiceV1_3_0_Impl(String url, WMSCapabilitiesDocument wms, String layerName, Set<String> allowedCRS)
+            throws WebMapServiceParseException, LayerNotFoundInCapabilitiesException {
+        super(url);
+        parseCapabilities(wms, layerName, allowedCRS);
+    }
+
     public String getVersion() {
         return "1.3.0";
     }
 
     private void parseXML(String data, String layerName, Set<String> allowedCRS)
             throws WebMapServiceParseException, LayerNotFoundInCapabilitiesException {
+        parseCapabilities(parseDocument(data), layerName, allowedCRS);
+    }
+
+    public static WMSCapabilitiesDocument parseDocument(String data) throws WebMapServiceParseException {
         try {
-            WMSCapabilitiesDocument wms = WMSCapabilitiesDocument.Factory.parse(data);
+            return WMSCapabilitiesDocument.Factory.parse(data);
+        } catch (Exception e) {
+            throw new WebMapServiceParseException(e);
+        }
+    }
 
+    private void parseCapabilities(WMSCapabilitiesDocument wms, String layerName, Set<String> allowedCRS)
+            throws WebMapServiceParseException, LayerNotFoundInCapabilitiesException {
+        try {
             Layer layerCapabilities = wms.getWMSCapabilities().getCapability().getLayer();
             BoundingBox bbox = null;
             if (layerCapabilities.getBoundingBoxArray().length > 0) {
@@ -195,8 +216,8 @@ public class WebMapServiceV1_3_0_Impl extends AbstractWebMapService {
             // https://docs.geotools.org/latest/userguide/library/referencing/order.html
             return null;
         }
-        CoordinateReferenceSystem sourceCRS = CRS.decode(bbox.getCRS());
-        CoordinateReferenceSystem wgs84  = CRS.decode("EPSG:4326", true);
+        CoordinateReferenceSystem sourceCRS = CRSRegistry.decode(bbox.getCRS());
+        CoordinateReferenceSystem wgs84  = CRSRegistry.decode("EPSG:4326", true);
         ReferencedEnvelope env = new ReferencedEnvelope (bbox.getMinx(), bbox.getMaxx(),bbox.getMiny(), bbox.getMaxy(), sourceCRS);
         env = env.transform(wgs84, true);
         return WKTHelper.getBBOX(env.getMinX(), env.getMinY(), env.getMaxX(), env.getMaxY());
@@ -0,0 +1,280 @@
+package fi.mml.map.mapwindow.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import org.json.JSONArray;
+import org.oskari.cluster.ClusterManager;
+import org.oskari.permissions.PermissionService;
+import org.oskari.permissions.model.PermissionExternalType;
+import org.oskari.permissions.model.PermissionSet;
+import org.oskari.permissions.model.Resource;
+import org.oskari.permissions.model.ResourceType;
+
+import fi.nls.oskari.domain.Role;
+import fi.nls.oskari.domain.User;
+import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.layer.OskariLayerService;
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Keeps an in-memory snapshot of all map layers and map layer permissions so listing layers
+ * doesn't need to read all layers and permissions from the database on each request.
+ *
+ * Layer listings are computed once per role set (the roles of the user + user id if there are
+ * user specific permissions) and cached until layers or permissions are modified. Modifications
+ * are detected with change listeners on OskariLayerService and PermissionService and other nodes
+ * of a cluster are notified with cluster messages. The snapshot is also refreshed after
+ * oskari.layers.catalog.maxAge seconds (default 300) to limit staleness when layers are modified
+ * outside the services (f.ex. directly in the database or on a node without cluster messaging).
+ *
+ * Layers and permissions returned by the catalog are shared between requests and MUST NOT be modified.
+ */
+public class OskariLayerCatalog {
+
+    private static final Logger LOG = LogFactory.getLogger(OskariLayerCatalog.class);
+
+    private static final String CLUSTER_FUNCTIONALITY = "layercatalog";
+    private static final String CLUSTER_CHANNEL = "changes";
+    private static final String MSG_LAYERS = "layers";
+    private static final String MSG_PERMISSIONS = "permissions";
+
+    private static final String PROPERTY_MAX_AGE = "oskari.layers.catalog.maxAge";
+    private static final String PROPERTY_MAX_LISTINGS = "oskari.layers.catalog.maxListings";
+
+    private final OskariLayerService layerService;
+    private final PermissionService permissionService;
+    private final long maxAgeMs;
+    private final int maxListings;
+
+    private final AtomicLong layersVersion = new AtomicLong();
+    private final AtomicLong permissionsVersion = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    public OskariLayerCatalog(OskariLayerService layerService, PermissionService permissionService) {
+        this.layerService = layerService;
+        this.permissionService = permissionService;
+        this.maxAgeMs = TimeUnit.SECONDS.toMillis(PropertyUtil.getOptional(PROPERTY_MAX_AGE, 300));
+        this.maxListings = PropertyUtil.getOptional(PROPERTY_MAX_LISTINGS, 500);
+
+        OskariLayerService.addChangeListener(layerId -> {
+            layersChanged();
+            notifyCluster(MSG_LAYERS);
+        });
+        PermissionService.addChangeListener(resourceType -> {
+            if (ResourceType.maplayer.name().equals(resourceType)) {
+                permissionsChanged();
+                notifyCluster(MSG_PERMISSIONS);
+            }
+        });
+        if (ClusterManager.isClustered()) {
+            ClusterManager.getClientFor(CLUSTER_FUNCTIONALITY)
+                    .addListener(CLUSTER_CHANNEL, msg -> handleClusterMsg(msg));
+        }
+    }
+
+    /**
+     * @return all layers (including internal ones), not filtered by permissions
+     */
+    public List<OskariLayer> getLayers() {
+        return getSnapshot().layers;
+    }
+
+    /**
+     * @return all map layer resources
+     */
+    public PermissionSet getPermissionSet() {
+        return getSnapshot().permissions;
+    }
+
+    /**
+     * @return layers the user is permitted to view
+     */
+    public List<OskariLayer> getLayersForUser(User user, boolean isPublished) {
+        Snapshot s = getSnapshot();
+        String key = getRoleKey(s, user) + "|" + isPublished;
+        List<OskariLayer> layers = s.layersForUser.get(key);
+        if (layers == null) {
+            layers = OskariLayerWorker.filterLayersWithResources(s.layers, s.permissions, user, isPublished);
+            if (s.layersForUser.size() >= maxListings) {
+                s.layersForUser.clear();
+            }
+            s.layersForUser.put(key, layers);
+        }
+        return layers;
+    }
+
+    /**
+     * Returns the layer listing for the user. The listing is created with renderer on the first call
+     * for a role set and reused for users with the same roles until layers or permissions are modified.
+     * @return serialized listing shared between requests
+     */
+    public Listing getListing(User user, String lang, String crs, boolean isPublished, boolean isSecure,
+            BiFunction<List<OskariLayer>, PermissionSet, JSONArray> renderer) {
+        Snapshot s = getSnapshot();
+        String key = String.join("|", getRoleKey(s, user), lang, crs, Boolean.toString(isPublished), Boolean.toString(isSecure));
+        Listing listing = s.listings.get(key);
+        if (listing == null) {
+            listing = new Listing(renderer.apply(s.layers, s.permissions).toString().getBytes(StandardCharsets.UTF_8));
+            if (s.listings.size() >= maxListings) {
+                // lots of different role sets, start over instead of tracking usage
+                s.listings.clear();
+            }
+            s.listings.put(key, listing);
+        }
+        return listing;
+    }
+
+    /**
+     * Marks the layers as modified, the next call will read the layers from the database
+     */
+    public void layersChanged() {
+        layersVersion.incrementAndGet();
+    }
+
+    /**
+     * Marks the permissions as modified, the next call will read the permissions from the database
+     */
+    public void permissionsChanged() {
+        permissionsVersion.incrementAndGet();
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot s = snapshot;
+        if (isValid(s)) {
+            return s;
+        }
+        synchronized (this) {
+            s = snapshot;
+            if (isValid(s)) {
+                return s;
+            }
+            snapshot = s = createSnapshot(s);
+            return s;
+        }
+    }
+
+    private boolean isValid(Snapshot s) {
+        return s != null
+                && s.layersVersion == layersVersion.get()
+                && s.permissionsVersion == permissionsVersion.get()
+                && (maxAgeMs <= 0 || System.currentTimeMillis() - s.created < maxAgeMs);
+    }
+
+    private Snapshot createSnapshot(Snapshot previous) {
+        // read versions before the data so a change made while reading triggers another refresh
+        long currentLayersVersion = layersVersion.get();
+        long currentPermissionsVersion = permissionsVersion.get();
+        boolean expired = previous == null || maxAgeMs > 0 && System.currentTimeMillis() - previous.created >= maxAgeMs;
+
+        List<OskariLayer> layers;
+        if (!expired && previous.layersVersion == currentLayersVersion) {
+            layers = previous.layers;
+        } else {
+            long start = System.currentTimeMillis();
+            layers = layerService.findAll();
+            LOG.info("Layers read in", System.currentTimeMillis() - start, "ms");
+        }
+        PermissionSet permissions;
+        if (!expired && previous.permissionsVersion == currentPermissionsVersion) {
+            permissions = previous.permissions;
+        } else {
+            long start = System.currentTimeMillis();
+            permissions = new PermissionSet(permissionService.findResourcesByType(ResourceType.maplayer));
+            LOG.info("Permissions read in", System.currentTimeMillis() - start, "ms");
+        }
+        return new Snapshot(currentLayersVersion, currentPermissionsVersion, layers, permissions);
+    }
+
+    /**
+     * Users with the same roles see the same layers unless there are permissions given to specific users
+     */
+    private static String getRoleKey(Snapshot s, User user) {
+        if (user == null) {
+            return "";
+        }
+        String roles = user.getRoles().stream()
+                .map(Role::getId)
+                .sorted()
+                .map(Object::toString)
+                .collect(Collectors.joining(","));
+        if (s.hasUserPermissions && !user.isGuest()) {
+            return roles + "|u" + user.getId();
+        }
+        return roles;
+    }
+
+    private void notifyCluster(String msg) {
+        if (!ClusterManager.isClustered()) {
+            return;
+        }
+        ClusterManager.getClientFor(CLUSTER_FUNCTIONALITY).sendMessage(CLUSTER_CHANNEL, msg);
+    }
+
+    private void handleClusterMsg(String msg) {
+        LOG.debug("Got layer catalog change from cluster:", msg);
+        if (MSG_LAYERS.equals(msg)) {
+            layersChanged();
+        } else if (MSG_PERMISSIONS.equals(msg)) {
+            permissionsChanged();
+        }
+    }
+
+    private static class Snapshot {
+        private final long created = System.currentTimeMillis();
+        private final long layersVersion;
+        private final long permissionsVersion;
+        private final List<OskariLayer> layers;
+        private final PermissionSet permissions;
+        private final boolean hasUserPermissions;
+        private final Map<String, List<OskariLayer>> layersForUser = new ConcurrentHashMap<>();
+        private final Map<String, Listing> listings = new ConcurrentHashMap<>();
+
+        private Snapshot(long layersVersion, long permissionsVersion, List<OskariLayer> layers, PermissionSet permissions) {
+            this.layersVersion = layersVersion;
+            this.permissionsVersion = permissionsVersion;
+            this.layers = layers;
+            this.permissions = permissions;
+            this.hasUserPermissions = permissions.getResources().stream()
+                    .map(Resource::getPermissions)
+                    .flatMap(List::stream)
+                    .anyMatch(p -> p.getExternalType() == PermissionExternalType.USER);
+        }
+    }
+
+    /**
+     * Layer listing serialized as UTF-8 encoded JSON array. The version is computed from the content
+     * so it's the same on all nodes of a cluster and can be used as an ETag.
+     */
+    public static class Listing {
+        private final byte[] json;
+        private final String version;
+
+        private Listing(byte[] json) {
+            this.json = json;
+            CRC32 crc = new CRC32();
+            crc.update(json);
+            this.version = Long.toHexString(crc.getValue());
+        }
+
+        /**
+         * @return the layers as a JSON array, MUST NOT be modified
+         */
+        public byte[] getLayersJSON() {
+            return json;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+    }
+}
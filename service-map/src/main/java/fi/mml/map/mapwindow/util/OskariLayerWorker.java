@@ -38,6 +38,12 @@ public class OskariLayerWorker {
 
     private final static LayerJSONFormatter FORMATTER = new LayerJSONFormatter();
 
+    private static OskariLayerCatalog catalog = new OskariLayerCatalog(mapLayerService, permissionService);
+
+    public static OskariLayerCatalog getCatalog() {
+        return catalog;
+    }
+
     /**
      * Gets all the selected map layers
      *
@@ -80,18 +86,30 @@ public class OskariLayerWorker {
      */
     public static JSONObject getListOfMapLayers(final List<OskariLayer> layers, final User user,
             final String lang, final String crs, final boolean isPublished, final boolean isSecure) {
-        List<Resource> resources = permissionService.findResourcesByUser(user, ResourceType.maplayer);
-        return getListOfMapLayers(layers, user, lang, isSecure, crs, isPublished, new PermissionSet(resources));
+        return getListOfMapLayers(layers, user, lang, isSecure, crs, isPublished, catalog.getPermissionSet());
     }
 
+    /**
+     * Gets all the map layers the user is permitted to view. The listing is cached per role set
+     * and reused until layers or permissions are modified.
+     *
+     * @param user        User
+     * @param lang        Language
+     * @param isPublished Determines the permission type used for the layers (view/published view)
+     * @param isSecure    true to modify urls for easier proxy forwarding/false to keep as is
+     * @return map layers serialized as JSON
+     */
+    public static OskariLayerCatalog.Listing getListOfAllMapLayers(final User user, final String lang, final String crs,
+            final boolean isPublished, final boolean isSecure) {
+        return catalog.getListing(user, lang, crs, isPublished, isSecure,
+                (layers, permissionSet) -> getLayersJSON(layers, user, lang, isSecure, crs, isPublished, permissionSet));
+    }
+
+    /**
+     * Note! The returned layers are shared between requests and must not be modified.
+     */
     public static List<OskariLayer> getLayersForUser(User user, boolean isPublished) {
-        long start = System.currentTimeMillis();
-        List<OskariLayer> layers = mapLayerService.findAll();
-        LOG.info("Layers read in", System.currentTimeMillis() - start, "ms");
-        start = System.currentTimeMillis();
-        List<Resource> resources = permissionService.findResourcesByUser(user, ResourceType.maplayer);
-        LOG.info("Permissions read in", System.currentTimeMillis() - start, "ms");
-        return filterLayersWithResources(layers, new PermissionSet(resources), user, isPublished);
+        return catalog.getLayersForUser(user, isPublished);
     }
 
     public static List<OskariLayer> filterLayersWithResources(List<OskariLayer> layers, PermissionSet permissionSet, User user, boolean isPublished) {
@@ -112,6 +130,21 @@ public class OskariLayerWorker {
             final String crs,
             final boolean isPublished,
             final PermissionSet permissionSet) {
+        final JSONObject result = new JSONObject();
+        JSONHelper.putValue(result, KEY_LAYERS, getLayersJSON(layers, user, lang, isSecure, crs, isPublished, permissionSet));
+        return result;
+    }
+
+    /**
+     * @return the layers the user is permitted to view as JSON (the value of "layers" in getListOfMapLayers())
+     */
+    public static JSONArray getLayersJSON(final List<OskariLayer> layers,
+            final User user,
+            final String lang,
+            final boolean isSecure,
+            final String crs,
+            final boolean isPublished,
+            final PermissionSet permissionSet) {
         final List<OskariLayer> filtered = filterLayersWithResources(layers, permissionSet, user, isPublished);
         final JSONArray layersList = new JSONArray();
         long start = System.currentTimeMillis();
@@ -139,10 +172,7 @@ public class OskariLayerWorker {
         }
         LOG.info("Created JSON in", System.currentTimeMillis() - start, "ms");
         LOG.info("Returning", layersList.length(), "/", layers.size(),"layers");
-
-        final JSONObject result = new JSONObject();
-        JSONHelper.putValue(result, KEY_LAYERS, layersList);
-        return result;
+        return layersList;
     }
 
     public static String getPermissionKey(OskariLayer layer) {
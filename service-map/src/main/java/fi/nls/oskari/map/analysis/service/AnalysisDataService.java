@@ -93,7 +93,7 @@ public class AnalysisDataService {
 
             final HttpURLConnection conn = IOHelper.getConnection(wfsURL, wpsUser, wpsUserPass);
             IOHelper.post(conn, "application/xml", wfst);
-            final String response = IOHelper.readString(conn.getInputStream());
+            final String response = IOHelper.readString(conn);
             log.debug("Posted WFS-T, got", response);
 
             // If exceptions, return null
@@ -1,8 +1,10 @@
 package fi.nls.oskari.map.analysis.service;
 
+import fi.nls.oskari.domain.User;
 import fi.nls.oskari.domain.map.analysis.Analysis;
 import fi.nls.oskari.service.OskariComponent;
 import fi.nls.oskari.service.ServiceException;
+import org.oskari.service.user.VectorTileQuery;
 
 import java.util.HashMap;
 import java.util.List;
@@ -20,4 +22,8 @@ public abstract class AnalysisDbService extends OskariComponent {
         public abstract void deleteAnalysis(final Analysis analysis) throws ServiceException;
         public abstract void mergeAnalysis(final Analysis analysis, final List<Long> ids) throws ServiceException;
         public abstract long updatePublisherName(final long id, final String uuid, final String name);
+        /**
+         * @return MVT tile of the analysis, empty tile if the user isn't permitted to view the analysis
+         */
+        public abstract byte[] getVectorTile(final long id, final User user, final VectorTileQuery query);
 }
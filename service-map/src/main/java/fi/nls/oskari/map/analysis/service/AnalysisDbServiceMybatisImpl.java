@@ -4,6 +4,7 @@ import fi.nls.oskari.annotation.Oskari;
 import fi.nls.oskari.cache.Cache;
 import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.db.DatasourceHelper;
+import fi.nls.oskari.domain.User;
 import fi.nls.oskari.domain.map.analysis.Analysis;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
@@ -17,12 +18,14 @@ import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
 import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.oskari.service.user.VectorTileQuery;
 
 import javax.sql.DataSource;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 @Oskari
 public class AnalysisDbServiceMybatisImpl extends AnalysisDbService {
@@ -311,4 +314,15 @@ public class AnalysisDbServiceMybatisImpl extends AnalysisDbService {
         }
         return id;
     }
+
+    public byte[] getVectorTile(final long id, final User user, final VectorTileQuery query) {
+        List<String> roleIds = user.getRoles().stream()
+                .map(role -> Long.toString(role.getId()))
+                .collect(Collectors.toList());
+        try (SqlSession session = factory.openSession()) {
+            AnalysisMapper mapper = session.getMapper(AnalysisMapper.class);
+            byte[] tile = mapper.getVectorTile(id, user.getUuid(), Long.toString(user.getId()), roleIds, query);
+            return tile != null ? tile : new byte[0];
+        }
+    }
 }
@@ -1,6 +1,8 @@
 package fi.nls.oskari.map.analysis.service;
 
 import fi.nls.oskari.domain.map.analysis.Analysis;
+import org.apache.ibatis.annotations.Param;
+import org.oskari.service.user.VectorTileQuery;
 
 import java.util.HashMap;
 import java.util.List;
@@ -18,4 +20,7 @@ public interface AnalysisMapper {
     void deleteAnalysisDataById(final long id);
     void updatePublisherName(final Map<String, Object> params);
     void mergeAnalysisData(final Analysis analysis);
+    byte[] getVectorTile(@Param("analysisId") long analysisId, @Param("uuid") String uuid,
+                         @Param("userId") String userId, @Param("roleIds") List<String> roleIds,
+                         @Param("tile") VectorTileQuery tile);
 }
@@ -97,7 +97,7 @@ public class AnalysisWebProcessingService {
             }
             // 4) Returned WPS result
             outs.close();
-            inp = connection.getInputStream();
+            inp = IOHelper.getResponseStream(connection);
             final String results = IOHelper.readString(inp);
             // log.debug("We got results from GeoServer WPS", results);
             log.debug("We got results from GeoServer WPS");
@@ -159,7 +159,7 @@ public class AnalysisWebProcessingService {
             if (request_data != null && !request_data.isEmpty()) {
                 IOHelper.post(conn, "application/xml", request_data);
             }
-            return IOHelper.readString(conn.getInputStream());
+            return IOHelper.readString(conn);
         } catch (IOException e) {
             throw new ServiceException("request GetFeature failed due to", e);
         }
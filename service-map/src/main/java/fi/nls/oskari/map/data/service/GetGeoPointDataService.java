@@ -1,5 +1,7 @@
 package fi.nls.oskari.map.data.service;
 
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.map.data.domain.GFIRequestParams;
@@ -16,6 +18,7 @@ import org.w3c.dom.Document;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
@@ -49,6 +52,20 @@ public class GetGeoPointDataService {
     public static final String PRESENTATION_TYPE_TEXT = "TEXT";
 
     private static final String CONFIG_KEY_FOR_SANITIZE = "gfi";
+    private static final String XSLT_CACHE_NAME = GetGeoPointDataService.class.getName() + ".xslt";
+
+    /**
+     * Compiled gfi_xslt of a layer. The source is kept so changes to the layer can be detected.
+     */
+    private static class CompiledXslt {
+        private final String xslt;
+        private final Templates templates;
+
+        private CompiledXslt(String xslt, Templates templates) {
+            this.xslt = xslt;
+            this.templates = templates;
+        }
+    }
 
     public JSONObject getWMSFeatureInfo(final GFIRequestParams params) {
 
@@ -64,7 +81,7 @@ public class GetGeoPointDataService {
         final String xslt = params.getLayer().getGfiXslt();
         JSONObject respObj = null;
         if (xslt != null && !xslt.isEmpty()) {
-            final String transformedResult = transformResponse(xslt, gfiResponse);
+            final String transformedResult = transformResponse(params.getLayer().getId(), xslt, gfiResponse);
             respObj = JSONHelper.createJSONObject(transformedResult);
             if(respObj != null) {
                 JSONHelper.putValue(response, PRESENTATION_TYPE, PRESENTATION_TYPE_JSON);
@@ -155,6 +172,14 @@ public class GetGeoPointDataService {
     }
 
     protected String transformResponse(final String xslt, final String response) {
+        return transformResponse(-1, xslt, response);
+    }
+
+    /**
+     * Transforms the response with the XSLT. The compiled XSLT is cached for the layer.
+     * @param layerId id of the layer the XSLT is configured to, negative to skip caching
+     */
+    protected String transformResponse(final int layerId, final String xslt, final String response) {
 
         if (xslt == null || "".equals(xslt)) {
             // if not found, return as is
@@ -162,7 +187,6 @@ public class GetGeoPointDataService {
         }
 
         ByteArrayInputStream respInStream = null;
-        ByteArrayInputStream xsltInStream = null;
         Writer outWriter = null;
         try {
             final DocumentBuilderFactory factory = XmlHelper.newDocumentBuilderFactory();
@@ -171,9 +195,7 @@ public class GetGeoPointDataService {
 
             respInStream = new ByteArrayInputStream(response.getBytes("UTF-8"));
             final Document document = builder.parse(respInStream);
-            xsltInStream = new ByteArrayInputStream(xslt.getBytes());
-            final StreamSource stylesource = new StreamSource(xsltInStream);
-            final String transformedResponse = getFormattedJSONString(document, stylesource);
+            final String transformedResponse = getFormattedJSONString(document, getTemplates(layerId, xslt));
             
             if (transformedResponse == null
                     || transformedResponse.isEmpty()) {
@@ -192,12 +214,6 @@ public class GetGeoPointDataService {
                 } catch (Exception ignored) {
                 }
             }
-            if (xsltInStream != null) {
-                try {
-                    xsltInStream.close();
-                } catch (Exception ignored) {
-                }
-            }
             if (outWriter != null) {
                 try {
                     outWriter.close();
@@ -209,9 +225,36 @@ public class GetGeoPointDataService {
         return Jsoup.clean(response, Whitelist.relaxed());
     }
 
+    /**
+     * Returns the compiled XSLT for the layer. Templates are thread-safe so the same instance
+     * is shared by all the GFI requests to the layer.
+     */
+    protected Templates getTemplates(final int layerId, final String xslt) throws TransformerException {
+        if (layerId < 0) {
+            return compile(xslt);
+        }
+        final Cache<CompiledXslt> cache = CacheManager.getCache(XSLT_CACHE_NAME);
+        final String key = Integer.toString(layerId);
+        CompiledXslt compiled = cache.get(key);
+        if (compiled == null || !compiled.xslt.equals(xslt)) {
+            compiled = new CompiledXslt(xslt, compile(xslt));
+            cache.put(key, compiled);
+        }
+        return compiled.templates;
+    }
+
+    private static Templates compile(final String xslt) throws TransformerException {
+        final TransformerFactory transformerFactory = XmlHelper.newTransformerFactory();
+        return transformerFactory.newTemplates(new StreamSource(new ByteArrayInputStream(xslt.getBytes())));
+    }
+
     public static String getFormattedJSONString(Document document, StreamSource stylesource) throws TransformerException {
         final TransformerFactory transformerFactory = XmlHelper.newTransformerFactory();
-        final Transformer transformer = transformerFactory.newTransformer(stylesource);
+        return getFormattedJSONString(document, transformerFactory.newTemplates(stylesource));
+    }
+
+    public static String getFormattedJSONString(Document document, Templates templates) throws TransformerException {
+        final Transformer transformer = templates.newTransformer();
 
         final DOMSource source = new DOMSource(document);
         final StringWriter outWriter = new StringWriter();
@@ -10,7 +10,6 @@ import org.locationtech.jts.io.WKTWriter;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import org.geotools.geometry.jts.JTS;
-import org.geotools.referencing.CRS;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
 
@@ -57,7 +56,7 @@ public class WKTHelper {
             return null;
         }
         try {
-            MathTransform transform = CRS.findMathTransform(sourceCRS, targetCRS, true);
+            MathTransform transform = CRSRegistry.findMathTransform(sourceCRS, targetCRS, true);
             return JTS.transform(geometry, transform);
         } catch (Exception ex) {
             log.error(ex, "Couldn't transform geometry to new projection");
@@ -153,7 +152,7 @@ public class WKTHelper {
 
     public static CoordinateReferenceSystem getCRS(final String srs) {
         try {
-            return CRS.decode(srs,true);  // true --> lon always 1st
+            return CRSRegistry.decode(srs,true);  // true --> lon always 1st
         } catch (Exception e) {
             log.error(e, "CRS decoding failed");
         }
@@ -138,6 +138,8 @@ public class DataProviderServiceMybatisImpl extends DataProviderService {
             ID_CACHE.remove(id);
             mapper.delete(id);
             session.commit();
+            // data provider names are part of the layer listing
+            OskariLayerService.notifyChange(OskariLayerService.ALL_LAYERS);
         } catch (Exception e) {
             log.warn("Unable to delete data provider with id: " + id);
         } finally {
@@ -153,6 +155,7 @@ public class DataProviderServiceMybatisImpl extends DataProviderService {
             mapper.update(group.getLocale(), group.getId());
             session.commit();
             ID_CACHE.put(group.getId(), group);
+            OskariLayerService.notifyChange(OskariLayerService.ALL_LAYERS);
         } catch (Exception e) {
             log.warn("Unable to update data provider with id: " + group.getId());
         } finally {
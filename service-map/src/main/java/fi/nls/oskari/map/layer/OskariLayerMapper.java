@@ -2,11 +2,13 @@ package fi.nls.oskari.map.layer;
 
 import fi.nls.oskari.domain.map.OskariLayer;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 
 public interface OskariLayerMapper {
 
@@ -22,6 +24,8 @@ public interface OskariLayerMapper {
     @Select ("select * from oskari_maplayer where dataprovider_id = #{dataProviderId}")
     List<Map<String,Object>> findByDataProviderId(@Param("dataProviderId") final int dataProviderId);
     int update(final OskariLayer layer);
+    @Update ("update oskari_maplayer set capabilities_last_updated = #{date} where id = #{id}")
+    int updateCapabilitiesLastUpdated(@Param("id") final int id, @Param("date") final Date date);
     void insert(final OskariLayer layer);
     int delete(final int layerId);
 
@@ -3,11 +3,39 @@ package fi.nls.oskari.map.layer;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.service.OskariComponent;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntConsumer;
 
 public abstract class OskariLayerService extends OskariComponent {
 
+    /**
+     * Passed to change listeners when the change affects all layers (f.ex. data provider modified)
+     */
+    public static final int ALL_LAYERS = -1;
+
+    private static final List<IntConsumer> CHANGE_LISTENERS = new CopyOnWriteArrayList<>();
+
+    /**
+     * Listeners are called with the id of the layer when a layer is inserted, updated or removed on this node.
+     * Listeners are responsible for notifying other nodes of the cluster if needed.
+     */
+    public static void addChangeListener(IntConsumer listener) {
+        CHANGE_LISTENERS.add(listener);
+    }
+
+    public static void removeChangeListener(IntConsumer listener) {
+        CHANGE_LISTENERS.remove(listener);
+    }
+
+    public static void notifyChange(int layerId) {
+        for (IntConsumer listener : CHANGE_LISTENERS) {
+            listener.accept(layerId);
+        }
+    }
+
     public abstract OskariLayer find(int id);
     public abstract List<OskariLayer> findByIdList(final List<Integer> idList);
     public abstract List<OskariLayer> findAll();
@@ -19,6 +47,11 @@ public abstract class OskariLayerService extends OskariComponent {
     public abstract Map<String, List<Integer>> findNamesAndIdsByUrl(final String url, final String type);
     public abstract int insert(final OskariLayer layer);
     public abstract void update(final OskariLayer layer);
+    /**
+     * Only sets the time of the last capabilities update, f.ex. when the capabilities haven't changed.
+     * Change listeners are not notified.
+     */
+    public abstract void updateCapabilitiesLastUpdated(final int layerId, final Date date);
     public abstract void delete(final int layerId);
 
 }
@@ -386,6 +386,7 @@ public class OskariLayerServiceMybatisImpl extends OskariLayerService {
             mapper.update(layer);
             flushFromCache(layer.getId());
             session.commit();
+            notifyChange(layer.getId());
         } catch (Exception e) {
             throw new RuntimeException("Failed to update", e);
         } finally {
@@ -393,6 +394,16 @@ public class OskariLayerServiceMybatisImpl extends OskariLayerService {
         }
     }
 
+    public void updateCapabilitiesLastUpdated(final int layerId, final Date date) {
+        try (SqlSession session = factory.openSession()) {
+            session.getMapper(OskariLayerMapper.class).updateCapabilitiesLastUpdated(layerId, date);
+            session.commit();
+            flushFromCache(layerId);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to update capabilities timestamp", e);
+        }
+    }
+
     public synchronized int insert(final OskariLayer layer) {
         LOG.debug("insert new layer");
         final SqlSession session = factory.openSession();
@@ -400,6 +411,7 @@ public class OskariLayerServiceMybatisImpl extends OskariLayerService {
             final OskariLayerMapper mapper = session.getMapper(OskariLayerMapper.class);
             mapper.insert(layer);
             session.commit();
+            notifyChange(layer.getId());
         } catch (Exception e) {
             throw new RuntimeException("Failed to insert", e);
         } finally {
@@ -416,6 +428,7 @@ public class OskariLayerServiceMybatisImpl extends OskariLayerService {
             mapper.delete(id);
             flushFromCache(id);
             session.commit();
+            notifyChange(id);
         } catch (Exception e) {
             LOG.error(e, "Couldn't delete with id:", id);
         } finally {
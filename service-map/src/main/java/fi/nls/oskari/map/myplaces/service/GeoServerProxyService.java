@@ -80,7 +80,7 @@ public class GeoServerProxyService {
             }
             return IOHelper.readString(con);
         } finally {
-            con.disconnect();
+            IOHelper.disconnect(con);
         }
     }
 
@@ -105,7 +105,7 @@ public class GeoServerProxyService {
 
             DocumentBuilder builder = factory.newDocumentBuilder();
             log.debug("Got response for myplaces GFI:");
-            respInStream = IOHelper.debugResponse(connection.getInputStream());
+            respInStream = IOHelper.debugResponse(IOHelper.getResponseStream(connection));
 
             org.w3c.dom.Document document = builder.parse(respInStream);
             xsltInStream = this.getClass().getResourceAsStream(MY_PLACE_FEATURE_FILTER_XSL);
@@ -139,7 +139,7 @@ public class GeoServerProxyService {
             IOHelper.close(respInStream);
             IOHelper.close(xsltInStream);
             if (connection != null) {
-                connection.disconnect();
+                IOHelper.disconnect(connection);
             }
         }
         return null;
@@ -15,6 +15,7 @@ import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
@@ -34,6 +35,13 @@ public abstract class CapabilitiesCacheService extends OskariComponent {
     private static final int TIMEOUT_SECONDS = PropertyUtil.getOptional(PROP_TIMEOUT, 30);
     private static final int TIMEOUT_MS = TIMEOUT_SECONDS * 1000;
 
+    // validators of a response used for conditional requests
+    public static final String HEADER_ETAG = "ETag";
+    public static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String[] VALIDATOR_HEADERS = { HEADER_ETAG, HEADER_LAST_MODIFIED };
+
     private static final String NAMESPACE_WMS = "http://www.opengis.net/wms";
     private static final String NAMESPACE_WFS = "http://www.opengis.net/wfs";
     private static final String NAMESPACE_WMTS = "http://www.opengis.net/wmts";
@@ -94,14 +102,42 @@ public abstract class CapabilitiesCacheService extends OskariComponent {
 
     public static String getFromService(String url, String type,
             String version, String user, String pass) throws ServiceException {
+        return getFromService(url, type, version, user, pass, null);
+    }
+
+    /**
+     * Sends a conditional request using the validators (ETag and Last-Modified headers) of
+     * an earlier response. The validators are replaced with the ones of the new response.
+     * @param validators header name to value, modified in place. Use an empty map for the first request
+     * @return null if the service responded with 304 Not Modified, otherwise the same as
+     *          {@link #getFromService(String, String, String, String, String)}
+     */
+    public static String getFromServiceIfModified(String url, String type,
+            String version, String user, String pass, Map<String, String> validators) throws ServiceException {
+        return getFromService(url, type, version, user, pass, Objects.requireNonNull(validators));
+    }
+
+    private static String getFromService(String url, String type,
+            String version, String user, String pass, Map<String, String> validators) throws ServiceException {
         String request = contructCapabilitiesUrl(url, type, version);
         String encoding = null;
         byte[] data = null;
+        Map<String, String> responseValidators = new HashMap<>();
         try {
             HttpURLConnection conn = IOHelper.getConnection(request, user, pass);
             conn.setReadTimeout(TIMEOUT_MS);
+            if (validators != null) {
+                writeConditionalHeaders(conn, validators);
+            }
 
             int sc = conn.getResponseCode();
+            if (sc != HttpURLConnection.HTTP_OK) {
+                // frees the connection for the next request to the host
+                IOHelper.closeSilently(conn);
+            }
+            if (sc == HttpURLConnection.HTTP_NOT_MODIFIED && validators != null && !validators.isEmpty()) {
+                return null;
+            }
             if (sc == HttpURLConnection.HTTP_FORBIDDEN || sc == HttpURLConnection.HTTP_UNAUTHORIZED) {
                 throw new ServiceUnauthorizedException("Wrong credentials for service");
             }
@@ -112,11 +148,18 @@ public abstract class CapabilitiesCacheService extends OskariComponent {
 
             String contentType = conn.getContentType();
             if (contentType != null && contentType.toLowerCase().indexOf("xml") == -1) {
+                IOHelper.closeSilently(conn);
                 throw new ServiceException("Unexpected Content-Type: " + contentType);
             }
 
             encoding = IOHelper.getCharset(conn);
             data = IOHelper.readBytes(conn);
+            for (String header : VALIDATOR_HEADERS) {
+                String value = conn.getHeaderField(header);
+                if (value != null) {
+                    responseValidators.put(header, value);
+                }
+            }
         } catch (IOException e) {
             throw new ServiceException("IOException occured", e);
         }
@@ -145,6 +188,11 @@ public abstract class CapabilitiesCacheService extends OskariComponent {
             // Convert "utf-8" to "UTF-8" for example
             encoding = encoding.toUpperCase();
             String xml = new String(data, encoding);
+            if (validators != null) {
+                // only remember the validators of a valid response
+                validators.clear();
+                validators.putAll(responseValidators);
+            }
             // Strip the potential prolog from XML so that we
             // don't have to worry about the specified charset
             return XmlHelper.stripPrologFromXML(xml);
@@ -155,6 +203,17 @@ public abstract class CapabilitiesCacheService extends OskariComponent {
         }
     }
 
+    private static void writeConditionalHeaders(HttpURLConnection conn, Map<String, String> validators) {
+        String etag = validators.get(HEADER_ETAG);
+        if (etag != null) {
+            conn.setRequestProperty(HEADER_IF_NONE_MATCH, etag);
+        }
+        String lastModified = validators.get(HEADER_LAST_MODIFIED);
+        if (lastModified != null) {
+            conn.setRequestProperty(HEADER_IF_MODIFIED_SINCE, lastModified);
+        }
+    }
+
     private static XMLInputFactory getXMLInputFactory() {
         XMLInputFactory xif = XMLInputFactory.newInstance();
         xif.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
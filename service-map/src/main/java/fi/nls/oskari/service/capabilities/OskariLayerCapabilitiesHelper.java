@@ -3,6 +3,7 @@ package fi.nls.oskari.service.capabilities;
 import fi.mml.map.mapwindow.service.wms.LayerNotFoundInCapabilitiesException;
 import fi.mml.map.mapwindow.service.wms.WebMapService;
 import fi.mml.map.mapwindow.service.wms.WebMapServiceFactory;
+import fi.mml.map.mapwindow.service.wms.WebMapServiceIndex;
 import fi.mml.map.mapwindow.service.wms.WebMapServiceParseException;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
@@ -47,6 +48,16 @@ public class OskariLayerCapabilitiesHelper {
         return WebMapServiceFactory.createFromXML(ml.getName(), xml);
     }
 
+    /**
+     * Same as {@link #parseWMSCapabilities(String, OskariLayer)} but uses an already parsed capabilities document
+     */
+    public static WebMapService parseWMSCapabilities(WebMapServiceIndex index, OskariLayer ml)
+            throws WebMapServiceParseException, LayerNotFoundInCapabilitiesException {
+        // flush cache, otherwise only db is updated but code retains the old cached version
+        WebMapServiceFactory.flushCache(ml.getId());
+        return index.get(ml.getName());
+    }
+
     /**
      * @deprecated use {@link #setPropertiesFromCapabilitiesWMS(WebMapService, OskariLayer, Set)}
      */
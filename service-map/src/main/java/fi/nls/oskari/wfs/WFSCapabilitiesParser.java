@@ -46,7 +46,7 @@ public class WFSCapabilitiesParser {
             final HttpURLConnection con = IOHelper.getConnection(IOHelper.constructUrl(layer.getUrl(), params),
                     layer.getUsername(), layer.getPassword());
 
-            response = (Map) parser.parse(con.getInputStream());
+            response = (Map) parser.parse(IOHelper.getResponseStream(con));
         } catch (Exception ex) {
             throw new ServiceException("Error getting capabilities for layer", ex);
         }
@@ -133,6 +133,6 @@ public class OskariMapLayerGroupServiceMybatisImpl extends OskariMapLayerGroupSe
 
     @Override
     public void flushCache() {
-        cache.flush(true);
+        cache.clear();
     }
 }
@@ -10,6 +10,8 @@ import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.json.JSONObject;
 import org.opengis.filter.Filter;
 
+import java.util.Optional;
+
 public abstract class UserLayerService extends OskariComponent {
     //public abstract void getLayers(User user) throws ServiceException;
     //public abstract void getLayer(String layerId, User user) throws ServiceException;
@@ -33,6 +35,17 @@ public abstract class UserLayerService extends OskariComponent {
 
     public abstract boolean hasViewPermission(String id, User user);
 
+    /**
+     * Creates a MVT tile of the layer directly in the database. Features the user isn't
+     * permitted to view are filtered out in the query. postProcess() isn't called for these tiles so
+     * the query must select the same attributes postProcess() leaves to the features. The "_oid"
+     * attribute of the WFS based tiles is kept and the numeric id of the feature is used as the MVT feature id.
+     * @return MVT tile (uncompressed) or empty if the layer type doesn't support creating tiles in the database
+     */
+    public Optional<byte[]> getVectorTile(String layerId, User user, VectorTileQuery query) {
+        return Optional.empty();
+    }
+
     public WFSLayerOptions getWFSLayerOptions(String layerId) {
         int id = parseId(layerId);
         WFSLayerOptions wfsOpts = getLayer(id).getWFSLayerOptions();
@@ -0,0 +1,103 @@
+package org.oskari.service.user;
+
+import fi.nls.oskari.service.ServiceRuntimeException;
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Parameters for creating a MVT tile of user content (my places, user layers, analysis) with
+ * PostGIS ST_AsMVT. User content geometries are stored in the native projection of the
+ * installation (oskari.native.srs) so the tile bounds are transformed to it for the spatial index.
+ *
+ * Requires PostGIS 3.0+ (ST_AsMVT with jsonb attributes).
+ */
+public class VectorTileQuery {
+
+    private static final String PROPERTY_NATIVE_SRS = "oskari.native.srs";
+
+    private final String layerName;
+    private final int srid;
+    private final int nativeSrid;
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    private final int extent;
+    private final int buffer;
+    private final int pointBuffer;
+
+    /**
+     * @param layerName name of the layer in the MVT tile
+     * @param srs projection of the tile (f.ex. "EPSG:3067")
+     * @param bbox tile extent (minX, minY, maxX, maxY) in srs
+     * @param extent tile extent in MVT space
+     * @param buffer buffer around the tile in MVT space for lines and polygons
+     * @param pointBuffer buffer around the tile in MVT space for points (symbols and labels reaching over tile boundaries)
+     */
+    public VectorTileQuery(String layerName, String srs, double[] bbox, int extent, int buffer, int pointBuffer) {
+        this.layerName = layerName;
+        this.srid = getSrid(srs);
+        this.nativeSrid = getSrid(PropertyUtil.get(PROPERTY_NATIVE_SRS, srs));
+        this.minX = bbox[0];
+        this.minY = bbox[1];
+        this.maxX = bbox[2];
+        this.maxY = bbox[3];
+        this.extent = extent;
+        this.buffer = buffer;
+        this.pointBuffer = pointBuffer;
+    }
+
+    protected static int getSrid(String srs) {
+        try {
+            return Integer.parseInt(srs.substring(srs.lastIndexOf(':') + 1));
+        } catch (Exception e) {
+            throw new ServiceRuntimeException("Unable to parse srid from: " + srs);
+        }
+    }
+
+    public String getLayerName() {
+        return layerName;
+    }
+
+    public int getSrid() {
+        return srid;
+    }
+
+    public int getNativeSrid() {
+        return nativeSrid;
+    }
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getMaxX() {
+        return maxX;
+    }
+
+    public double getMaxY() {
+        return maxY;
+    }
+
+    public int getExtent() {
+        return extent;
+    }
+
+    public int getBuffer() {
+        return buffer;
+    }
+
+    public int getPointBuffer() {
+        return pointBuffer;
+    }
+
+    /**
+     * @return the largest buffer in map units, used for expanding the bbox filter
+     */
+    public double getBufferSize() {
+        return (maxX - minX) * Math.max(buffer, pointBuffer) / extent;
+    }
+}
@@ -0,0 +1,51 @@
+package fi.mml.map.mapwindow.service.wms;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import fi.nls.oskari.util.IOHelper;
+
+public class WebMapServiceIndexTest {
+
+    private static final String INSPIRE_CP = "capabilities_cp_1_3_0.xml";
+
+    @Test
+    public void testSameResultAsParsingPerLayer() throws Exception {
+        String xml = readResource(INSPIRE_CP);
+        WebMapServiceIndex index = WebMapServiceIndex.parse(xml);
+
+        WebMapService expected = WebMapServiceFactoryHelper.createFromXML("CP.CadastralBoundary", xml);
+        WebMapService actual = index.get("CP.CadastralBoundary");
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertArrayEquals(expected.getCRSs(), actual.getCRSs());
+        assertArrayEquals(expected.getFormats(), actual.getFormats());
+        assertEquals(expected.getGeom(), actual.getGeom());
+        assertEquals(expected.getSupportedStyles(), actual.getSupportedStyles());
+
+        assertSame("Layers are indexed by name", actual, index.get("CP.CadastralBoundary"));
+    }
+
+    @Test(expected = WebMapServiceParseException.class)
+    public void testUnknownLayer() throws Exception {
+        WebMapServiceIndex.parse(readResource(INSPIRE_CP)).get("does.not.exist");
+    }
+
+    @Test(expected = WebMapServiceParseException.class)
+    public void testUnknownVersion() throws Exception {
+        WebMapServiceIndex.parse("<foo />");
+    }
+
+    private String readResource(String p) throws IOException {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(p)) {
+            return new String(IOHelper.readBytes(in), StandardCharsets.UTF_8);
+        }
+    }
+
+}
@@ -15,6 +15,7 @@ import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import javax.xml.transform.Templates;
 import java.io.IOException;
 
 import static org.junit.Assert.*;
@@ -47,6 +48,17 @@ public class GetGeoPointDataServiceTest {
 
     }
 
+    @Test
+    public void testCompiledXsltIsCachedPerLayer()
+            throws Exception {
+        final String xslt = IOHelper.readString(this.getClass().getResourceAsStream("iceland.xsl"));
+        GetGeoPointDataService service = new GetGeoPointDataService();
+        Templates templates = service.getTemplates(1, xslt);
+        assertSame("Should reuse compiled XSLT", templates, service.getTemplates(1, xslt));
+        assertNotSame("Should compile XSLT for another layer", templates, service.getTemplates(2, xslt));
+        assertNotSame("Should compile modified XSLT", templates, service.getTemplates(1, xslt + " "));
+    }
+
     @Test
     public void testResponseCleaning()
             throws Exception {
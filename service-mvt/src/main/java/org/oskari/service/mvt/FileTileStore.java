@@ -0,0 +1,144 @@
+package org.oskari.service.mvt;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
+import org.oskari.cluster.ClusterManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Persistent store for (gzipped) MVT tiles on local disk. Tiles are written to
+ * [oskari.mvt.store.dir]/[layer id]/[srs]/[z]/[x]/[y].mvt.gz and survive restarts.
+ * The store is only available when oskari.mvt.store.dir has been configured.
+ * Invalidating a layer removes the tiles on every node of the cluster.
+ */
+public class FileTileStore {
+
+    private static final Logger LOG = LogFactory.getLogger(FileTileStore.class);
+
+    public static final String PROPERTY_DIR = "oskari.mvt.store.dir";
+    public static final String PROPERTY_TTL = "oskari.mvt.store.ttl";
+    // Layer attribute for overriding the time to keep tiles (in seconds) for a layer, 0 to disable storing
+    public static final String KEY_LAYER_TTL = "tileStoreTTL";
+
+    private static final String CLUSTER_FUNCTIONALITY_ID = "mvt";
+    private static final String CLUSTER_CHANNEL = "tilestore";
+    private static final String FILE_SUFFIX = ".mvt.gz";
+
+    private static FileTileStore instance;
+
+    private final Path root;
+
+    public FileTileStore(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * @return the store if one has been configured with oskari.mvt.store.dir
+     */
+    public static synchronized Optional<FileTileStore> getInstance() {
+        if (instance == null) {
+            String dir = PropertyUtil.getOptional(PROPERTY_DIR);
+            if (dir == null || dir.trim().isEmpty()) {
+                return Optional.empty();
+            }
+            instance = new FileTileStore(Paths.get(dir.trim()));
+            if (ClusterManager.isClustered()) {
+                ClusterManager
+                        .getClientFor(CLUSTER_FUNCTIONALITY_ID)
+                        .addListener(CLUSTER_CHANNEL, (layerId) -> instance.removeLayer(layerId));
+            }
+        }
+        return Optional.of(instance);
+    }
+
+    /**
+     * Default time to keep tiles in seconds. Layers are not stored by default (0).
+     */
+    public static long getDefaultTTL() {
+        return PropertyUtil.getOptional(PROPERTY_TTL, 0L);
+    }
+
+    /**
+     * @param ttl time in seconds to keep the tile
+     * @return stored tile or null if not found or older than ttl
+     */
+    public byte[] get(String layerId, String srs, TileCoord tile, long ttl) {
+        Path file = getPath(layerId, srs, tile);
+        try {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            long age = System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis();
+            if (age > TimeUnit.SECONDS.toMillis(ttl)) {
+                return null;
+            }
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            LOG.warn(e, "Failed to read stored tile:", file);
+            return null;
+        }
+    }
+
+    public void put(String layerId, String srs, TileCoord tile, byte[] data) {
+        Path file = getPath(layerId, srs, tile);
+        try {
+            Files.createDirectories(file.getParent());
+            // Write to a temp file first so readers never see a partially written tile
+            Path tmp = Files.createTempFile(file.getParent(), null, ".tmp");
+            Files.write(tmp, data);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn(e, "Failed to store tile:", file);
+        }
+    }
+
+    /**
+     * Removes stored tiles of the layer on all nodes of the cluster
+     */
+    public void invalidate(String layerId) {
+        removeLayer(layerId);
+        if (ClusterManager.isClustered()) {
+            ClusterManager
+                    .getClientFor(CLUSTER_FUNCTIONALITY_ID)
+                    .sendMessage(CLUSTER_CHANNEL, layerId);
+        }
+    }
+
+    private void removeLayer(String layerId) {
+        Path dir = root.resolve(sanitize(layerId));
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder())
+                    .forEach(p -> p.toFile().delete());
+            LOG.info("Removed stored tiles for layer:", layerId);
+        } catch (IOException e) {
+            LOG.warn(e, "Failed to remove stored tiles for layer:", layerId);
+        }
+    }
+
+    protected Path getPath(String layerId, String srs, TileCoord tile) {
+        return root.resolve(sanitize(layerId))
+                .resolve(sanitize(srs))
+                .resolve(Integer.toString(tile.getZ()))
+                .resolve(Integer.toString(tile.getX()))
+                .resolve(tile.getY() + FILE_SUFFIX);
+    }
+
+    private static String sanitize(String str) {
+        // layer ids and srs names are used as directory names
+        return str.replaceAll("[^a-zA-Z0-9_.-]", "_");
+    }
+
+}
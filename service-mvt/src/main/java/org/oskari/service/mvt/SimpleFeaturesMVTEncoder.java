@@ -1,10 +1,16 @@
 package org.oskari.service.mvt;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
@@ -25,6 +31,8 @@ import org.locationtech.jts.geom.TopologyException;
 import org.locationtech.jts.geom.util.GeometryEditor;
 import org.locationtech.jts.operation.predicate.RectangleIntersects;
 import org.locationtech.jts.simplify.VWSimplifier;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
 import com.wdtinc.mapbox_vector_tile.VectorTile;
 import com.wdtinc.mapbox_vector_tile.adapt.jts.IUserDataConverter;
 import com.wdtinc.mapbox_vector_tile.adapt.jts.JtsAdapter;
@@ -34,6 +42,8 @@ import com.wdtinc.mapbox_vector_tile.build.MvtLayerProps;
 public class SimpleFeaturesMVTEncoder {
 
     private static final GeometryFactory GF = new GeometryFactory();
+    private static final ThreadLocal<ReusableByteArrayOutputStream> FEATURE_BUFFER =
+            ThreadLocal.withInitial(ReusableByteArrayOutputStream::new);
 
     public static byte[] encodeToByteArray(SimpleFeatureCollection sfc,
             String layer, double[] bbox, int extent, int buffer) {
@@ -98,92 +108,200 @@ public class SimpleFeaturesMVTEncoder {
             return Collections.emptyList();
         }
 
-        Envelope tileEnvelope = new Envelope(bbox[0], bbox[2], bbox[1], bbox[3]);
-        Envelope clipEnvelope = new Envelope(tileEnvelope);
-        if (buffer > 0) {
-            double bufferSizePercent = (double) buffer / extent;
-            double deltaX = bufferSizePercent * tileEnvelope.getWidth();
-            double deltaY = bufferSizePercent * tileEnvelope.getHeight();
-            clipEnvelope.expandBy(deltaX, deltaY);
-        }
-
-        RectangleIntersects tileIntersects = new RectangleIntersects((Polygon) GF.toGeometry(tileEnvelope));
-
-        Envelope mvtBufferedEnvelope = new Envelope(-buffer, extent + buffer, -buffer, extent + buffer);
-        Geometry mvtClipGeom = GF.toGeometry(mvtBufferedEnvelope);
-
-        double translateX = tileEnvelope.getMinX();
-        double translateY = tileEnvelope.getMaxY();
-        double scaleX = (double) extent / tileEnvelope.getWidth();
-        double scaleY = -((double) extent / tileEnvelope.getHeight());
-        ToMVTSpace snapToGrid = new ToMVTSpace(translateX, translateY, scaleX, scaleY);
-
-        GeometryEditor editor = new GeometryEditor(GF);
-
+        TileClipper clipper = new TileClipper(bbox, extent, buffer);
         List<Geometry> mvtGeoms = new ArrayList<>();
         try (SimpleFeatureIterator it = sfc.features()) {
             while (it.hasNext()) {
                 SimpleFeature sf = it.next();
-                Geometry geom = (Geometry) sf.getDefaultGeometry();
-                if (geom == null || geom.isEmpty()) {
+                Geometry geom = clipper.toMVTGeom((Geometry) sf.getDefaultGeometry());
+                if (geom == null) {
                     continue;
                 }
+                geom.setUserData(sf);
+                mvtGeoms.add(geom);
+            }
+        }
+        return mvtGeoms;
+    }
 
-                geom = multiGeometriesWithOneGeometryToSingle(geom);
-
-                if (geom instanceof Point) {
-                    // Check that clipEnvelope (buffered) and the geometry's envelope are not disjoint
-                    if (!clipEnvelope.intersects(geom.getEnvelopeInternal())) {
-                        continue;
-                    }
-                } else if (geom instanceof MultiPoint) {
-                    // Check that clipEnvelope (buffered) and the geometry's envelope are not disjoint
-                    if (!clipEnvelope.intersects(geom.getEnvelopeInternal())) {
-                        continue;
-                    }
-                    geom = removePointsOutsideOfEnvelope((MultiPoint) geom, clipEnvelope);
-                } else {
-                    // Check that tileEnvelope and geometry's envelope are not disjoint
-                    if (!tileEnvelope.intersects(geom.getEnvelopeInternal())) {
-                        continue;
+    /**
+     * Encodes the features of multiple collections (for example sub-tiles loaded separately) to
+     * a single layer MVT tile without collecting the features or geometries to intermediate lists.
+     * Features are read straight from the iterators of the collections and each feature is
+     * clipped, simplified and written to the tile as it arrives. Features with the same id
+     * (features intersecting multiple sub-tiles) are only encoded once.
+     * @param out the encoded tile is written here, the stream is not closed
+     */
+    public static void encode(Collection<SimpleFeatureCollection> collections,
+            String layer, double[] bbox, int extent, int buffer, OutputStream out) throws IOException {
+        TileClipper clipper = new TileClipper(bbox, extent, buffer);
+        MvtLayerProps layerProps = new MvtLayerProps();
+        IUserDataConverter converter = new SimpleFeatureConverter();
+        Set<String> encodedIds = new HashSet<>();
+
+        ReusableByteArrayOutputStream featureBytes = FEATURE_BUFFER.get();
+        featureBytes.reset();
+        try {
+            CodedOutputStream features = CodedOutputStream.newInstance(featureBytes);
+            for (SimpleFeatureCollection sfc : collections) {
+                try (SimpleFeatureIterator it = sfc.features()) {
+                    while (it.hasNext()) {
+                        SimpleFeature sf = it.next();
+                        String id = sf.getID();
+                        if (id != null && encodedIds.contains(id)) {
+                            continue;
+                        }
+                        Geometry geom = clipper.toMVTGeom((Geometry) sf.getDefaultGeometry());
+                        if (geom == null) {
+                            continue;
+                        }
+                        if (id != null) {
+                            encodedIds.add(id);
+                        }
+                        geom.setUserData(sf);
+                        for (VectorTile.Tile.Feature f : JtsAdapter.toFeatures(Collections.singletonList(geom), layerProps, converter)) {
+                            features.writeMessage(VectorTile.Tile.Layer.FEATURES_FIELD_NUMBER, f);
+                        }
                     }
+                }
+            }
+            features.flush();
+
+            // Fields of a protobuf message can be written in any order so the layer
+            // is written as its "header" (name, keys, values...) followed by the features
+            VectorTile.Tile.Layer.Builder layerBuilder = VectorTile.Tile.Layer.newBuilder();
+            layerBuilder.setVersion(2);
+            layerBuilder.setName(layer);
+            layerBuilder.setExtent(extent);
+            MvtLayerBuild.writeProps(layerBuilder, layerProps);
+            VectorTile.Tile.Layer layerHeader = layerBuilder.build();
+
+            CodedOutputStream tile = CodedOutputStream.newInstance(out);
+            tile.writeTag(VectorTile.Tile.LAYERS_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            tile.writeUInt32NoTag(layerHeader.getSerializedSize() + featureBytes.size());
+            layerHeader.writeTo(tile);
+            tile.flush();
+            featureBytes.writeTo(out);
+        } finally {
+            featureBytes.release();
+        }
+    }
 
-                    // Remove parts of the geometry that are disjoint with our tileEnvelope
-                    geom = notDisjoint(tileIntersects, geom);
-                    if (geom == null || geom.isEmpty()) {
-                        continue;
-                    }
+    /**
+     * Transforms geometries to the MVT space of a single tile
+     */
+    private static class TileClipper {
+
+        private final Envelope tileEnvelope;
+        private final Envelope clipEnvelope;
+        private final RectangleIntersects tileIntersects;
+        private final Geometry mvtClipGeom;
+        private final ToMVTSpace snapToGrid;
+        private final GeometryEditor editor;
+
+        private TileClipper(double[] bbox, int extent, int buffer) {
+            tileEnvelope = new Envelope(bbox[0], bbox[2], bbox[1], bbox[3]);
+            clipEnvelope = new Envelope(tileEnvelope);
+            if (buffer > 0) {
+                double bufferSizePercent = (double) buffer / extent;
+                double deltaX = bufferSizePercent * tileEnvelope.getWidth();
+                double deltaY = bufferSizePercent * tileEnvelope.getHeight();
+                clipEnvelope.expandBy(deltaX, deltaY);
+            }
+
+            tileIntersects = new RectangleIntersects((Polygon) GF.toGeometry(tileEnvelope));
+
+            Envelope mvtBufferedEnvelope = new Envelope(-buffer, extent + buffer, -buffer, extent + buffer);
+            mvtClipGeom = GF.toGeometry(mvtBufferedEnvelope);
+
+            double translateX = tileEnvelope.getMinX();
+            double translateY = tileEnvelope.getMaxY();
+            double scaleX = (double) extent / tileEnvelope.getWidth();
+            double scaleY = -((double) extent / tileEnvelope.getHeight());
+            snapToGrid = new ToMVTSpace(translateX, translateY, scaleX, scaleY);
+
+            editor = new GeometryEditor(GF);
+        }
+
+        /**
+         * @return geometry in MVT space or null if nothing of the geometry is left inside the tile
+         */
+        private Geometry toMVTGeom(Geometry geom) {
+            if (geom == null || geom.isEmpty()) {
+                return null;
+            }
+
+            geom = multiGeometriesWithOneGeometryToSingle(geom);
+
+            if (geom instanceof Point) {
+                // Check that clipEnvelope (buffered) and the geometry's envelope are not disjoint
+                if (!clipEnvelope.intersects(geom.getEnvelopeInternal())) {
+                    return null;
+                }
+            } else if (geom instanceof MultiPoint) {
+                // Check that clipEnvelope (buffered) and the geometry's envelope are not disjoint
+                if (!clipEnvelope.intersects(geom.getEnvelopeInternal())) {
+                    return null;
+                }
+                geom = removePointsOutsideOfEnvelope((MultiPoint) geom, clipEnvelope);
+            } else {
+                // Check that tileEnvelope and geometry's envelope are not disjoint
+                if (!tileEnvelope.intersects(geom.getEnvelopeInternal())) {
+                    return null;
                 }
 
-                // Snap the geometry to MVT grid (integer coordinates)
-                geom = editor.edit(geom, snapToGrid);
+                // Remove parts of the geometry that are disjoint with our tileEnvelope
+                geom = notDisjoint(tileIntersects, geom);
                 if (geom == null || geom.isEmpty()) {
-                    // Which might make the geometry disappear (for example LineString collapsed to a Point)
-                    continue;
+                    return null;
                 }
+            }
 
-                geom = multiGeometriesWithOneGeometryToSingle(geom);
+            // Snap the geometry to MVT grid (integer coordinates)
+            geom = editor.edit(geom, snapToGrid);
+            if (geom == null || geom.isEmpty()) {
+                // Which might make the geometry disappear (for example LineString collapsed to a Point)
+                return null;
+            }
 
-                if (!(geom instanceof Point || geom instanceof MultiPoint)) {
-                    geom = VWSimplifier.simplify(geom, 0.5);
-                    try {
-                        // Calculate the intersection with our buffered envelope
-                        geom = mvtClipGeom.intersection(geom);
-                        if (geom == null || geom.isEmpty()) {
-                            // Which might not exist - skip the geometry
-                            continue;
-                        }
-                    } catch (TopologyException ignore) {
-                        // Calculating the intersection failed
-                        continue;
+            geom = multiGeometriesWithOneGeometryToSingle(geom);
+
+            if (!(geom instanceof Point || geom instanceof MultiPoint)) {
+                geom = VWSimplifier.simplify(geom, 0.5);
+                try {
+                    // Calculate the intersection with our buffered envelope
+                    geom = mvtClipGeom.intersection(geom);
+                    if (geom == null || geom.isEmpty()) {
+                        // Which might not exist - skip the geometry
+                        return null;
                     }
+                } catch (TopologyException ignore) {
+                    // Calculating the intersection failed
+                    return null;
                 }
+            }
+            return geom;
+        }
+    }
 
-                geom.setUserData(sf);
-                mvtGeoms.add(geom);
+    /**
+     * Per thread buffer for the encoded features, reused between tiles unless it has grown too large
+     */
+    private static class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+
+        private static final int INITIAL_SIZE = 64 * 1024;
+        private static final int MAX_RETAINED_SIZE = 4 * 1024 * 1024;
+
+        private ReusableByteArrayOutputStream() {
+            super(INITIAL_SIZE);
+        }
+
+        private void release() {
+            reset();
+            if (buf.length > MAX_RETAINED_SIZE) {
+                buf = new byte[INITIAL_SIZE];
             }
         }
-        return mvtGeoms;
     }
 
     private static Geometry notDisjoint(RectangleIntersects rectIntersects, Geometry geom) {
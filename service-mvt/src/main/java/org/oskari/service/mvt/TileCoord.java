@@ -25,4 +25,9 @@ public class TileCoord {
         return y;
     }
 
+    @Override
+    public String toString() {
+        return z + "/" + x + "/" + y;
+    }
+
 }
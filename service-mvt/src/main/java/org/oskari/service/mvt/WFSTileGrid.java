@@ -1,8 +1,13 @@
 package org.oskari.service.mvt;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class WFSTileGrid {
 
     public static final int TILE_SIZE = 256;
+    // Tolerance (in tiles) for extents that are exactly on tile edges
+    private static final double EDGE_TOLERANCE = 1e-6;
     private final double originX;
     private final double originY;
     private final double[] origin;
@@ -50,6 +55,28 @@ public class WFSTileGrid {
         return new double[] { x1, y1 - tileSizeInNature, x1 + tileSizeInNature, y1 };
     }
 
+    /**
+     * Returns the tiles of zoom level z that intersect with the extent
+     * @param extent { minX, minY, maxX, maxY }
+     * @return tiles covering the extent, empty list if the extent is outside the grid
+     */
+    public List<TileCoord> getTilesInExtent(int z, double[] extent) {
+        double tileSizeInNature = TILE_SIZE * resolutions[z];
+        int max = getMatrixSize(z) - 1;
+        int x1 = Math.max(0, (int) Math.floor((extent[0] - originX) / tileSizeInNature + EDGE_TOLERANCE));
+        int x2 = Math.min(max, (int) Math.ceil((extent[2] - originX) / tileSizeInNature - EDGE_TOLERANCE) - 1);
+        int y1 = Math.max(0, (int) Math.floor((originY - extent[3]) / tileSizeInNature + EDGE_TOLERANCE));
+        int y2 = Math.min(max, (int) Math.ceil((originY - extent[1]) / tileSizeInNature - EDGE_TOLERANCE) - 1);
+
+        List<TileCoord> tiles = new ArrayList<>();
+        for (int x = x1; x <= x2; x++) {
+            for (int y = y1; y <= y2; y++) {
+                tiles.add(new TileCoord(z, x, y));
+            }
+        }
+        return tiles;
+    }
+
     public static int getMatrixSize(int z) {
         return 1 << z; // 2^z
     }
@@ -5,15 +5,28 @@ import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.PropertyUtil;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
 
 public class WFSTileGridProperties {
 
     private static final Logger LOG = LogFactory.getLogger(WFSTileGridProperties.class);
     private static final String WFS_MVT_PROPERTY_NAMESPACE = "oskari.wfs.mvt";
 
+    // Resolution (metres per px) we are aiming for with the WFS requests
+    // This value is used to find the zoom level that is closest to the resolution specified here
+    // For ETRS-TME35FIN TileGrid this translates to z=8
+    private static final int TARGET_ZOOM_LEVEL_RESOLUTION = 8192 / 256;
+
+    private static final Map<String, WFSTileGrid> KNOWN_TILE_GRIDS;
+    static {
+        Map<String, WFSTileGrid> grids = new HashMap<>();
+        grids.put("EPSG:3067", new WFSTileGrid(new double[] { -548576, 6291456, -548576 + (8192*256), 6291456 + (8192*256) }, 15));
+        grids.put("EPSG:3857", new WFSTileGrid(new double[] { -20037508.3427892, -20037508.3427892, 20037508.3427892, 20037508.3427892 }, 18));
+        KNOWN_TILE_GRIDS = Collections.unmodifiableMap(grids);
+    }
+
     private Map<String, WFSTileGrid> tileGridMap;
 
     public WFSTileGridProperties () {
@@ -48,6 +61,29 @@ public class WFSTileGridProperties {
         return tileGridMap.get(srs.toUpperCase());
     }
 
+    /**
+     * @return tile grid configured for srs or a built-in one if srs has no configured tile grid
+     */
+    public WFSTileGrid getTileGridOrDefault(String srs) {
+        WFSTileGrid grid = getTileGrid(srs);
+        return grid != null ? grid : KNOWN_TILE_GRIDS.get(srs.toUpperCase());
+    }
+
+    /**
+     * @return built-in tile grids by srs
+     */
+    public static Map<String, WFSTileGrid> getKnownTileGrids() {
+        return KNOWN_TILE_GRIDS;
+    }
+
+    /**
+     * Features are requested and cached per tile on this zoom level of the grid
+     * @return zoom level of the grid used for loading features
+     */
+    public static int getCacheZoom(WFSTileGrid grid) {
+        return grid.getZForResolution(TARGET_ZOOM_LEVEL_RESOLUTION, 0);
+    }
+
     public Map<String, WFSTileGrid> getTileGridMap() {
         return tileGridMap;
     }
@@ -0,0 +1,55 @@
+package org.oskari.service.mvt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileTileStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPutAndGet() throws IOException {
+        FileTileStore store = new FileTileStore(folder.getRoot().toPath());
+        TileCoord tile = new TileCoord(8, 12, 34);
+        byte[] data = { 1, 2, 3 };
+
+        assertNull(store.get("1", "EPSG:3067", tile, 60));
+        store.put("1", "EPSG:3067", tile, data);
+        assertArrayEquals(data, store.get("1", "EPSG:3067", tile, 60));
+        assertNull(store.get("1", "EPSG:3857", tile, 60));
+        assertNull(store.get("2", "EPSG:3067", tile, 60));
+    }
+
+    @Test
+    public void testExpiredTileIsNotReturned() throws IOException {
+        FileTileStore store = new FileTileStore(folder.getRoot().toPath());
+        TileCoord tile = new TileCoord(8, 12, 34);
+        store.put("1", "EPSG:3067", tile, new byte[] { 1 });
+
+        long twoMinutesAgo = System.currentTimeMillis() - 120_000L;
+        Files.setLastModifiedTime(store.getPath("1", "EPSG:3067", tile), FileTime.fromMillis(twoMinutesAgo));
+        assertNull(store.get("1", "EPSG:3067", tile, 60));
+    }
+
+    @Test
+    public void testInvalidate() throws IOException {
+        FileTileStore store = new FileTileStore(folder.getRoot().toPath());
+        TileCoord tile = new TileCoord(8, 12, 34);
+        store.put("1", "EPSG:3067", tile, new byte[] { 1 });
+        store.put("2", "EPSG:3067", tile, new byte[] { 2 });
+
+        store.invalidate("1");
+        assertNull(store.get("1", "EPSG:3067", tile, 60));
+        assertArrayEquals(new byte[] { 2 }, store.get("2", "EPSG:3067", tile, 60));
+    }
+
+}
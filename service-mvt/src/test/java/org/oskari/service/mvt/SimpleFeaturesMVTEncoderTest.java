@@ -3,6 +3,7 @@ package org.oskari.service.mvt;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -24,6 +25,7 @@ import org.oskari.geojson.GeoJSONSchemaDetector;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wdtinc.mapbox_vector_tile.VectorTile;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
@@ -282,4 +284,50 @@ public class SimpleFeaturesMVTEncoderTest {
         List<Geometry> mvtGeoms = SimpleFeaturesMVTEncoder.asMVTGeoms(sfc, bbox, 4096, 256);
         assertEquals(1, mvtGeoms.size());
     }
+
+    @Test
+    public void streamingEncodeSkipsDuplicateFeatures() throws Exception {
+        SimpleFeatureTypeBuilder tBuilder = new SimpleFeatureTypeBuilder();
+        tBuilder.setName("test");
+        tBuilder.add("geom", Point.class);
+        tBuilder.add("name", String.class);
+        SimpleFeatureType featureType = tBuilder.buildFeatureType();
+
+        GeometryFactory gf = new GeometryFactory();
+        SimpleFeatureBuilder fBuilder = new SimpleFeatureBuilder(featureType);
+        DefaultFeatureCollection a = new DefaultFeatureCollection("a", featureType);
+        DefaultFeatureCollection b = new DefaultFeatureCollection("b", featureType);
+        for (int i = 0; i < 3; i++) {
+            fBuilder.set("geom", gf.createPoint(new Coordinate(10 + i, 10 + i)));
+            fBuilder.set("name", "f" + i);
+            SimpleFeature f = fBuilder.buildFeature("test." + i);
+            a.add(f);
+            // Feature intersecting both sub-tiles
+            if (i == 2) {
+                b.add(f);
+            }
+        }
+        fBuilder.set("geom", gf.createPoint(new Coordinate(50, 50)));
+        fBuilder.set("name", "f3");
+        b.add(fBuilder.buildFeature("test.3"));
+
+        double[] bbox = { 0, 0, 100, 100 };
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        SimpleFeaturesMVTEncoder.encode(Arrays.asList(a, b), "test", bbox, 4096, 256, baos);
+        VectorTile.Tile streamed = VectorTile.Tile.parseFrom(baos.toByteArray());
+
+        assertEquals(1, streamed.getLayersCount());
+        VectorTile.Tile.Layer layer = streamed.getLayers(0);
+        assertEquals("test", layer.getName());
+        assertEquals(4096, layer.getExtent());
+        assertEquals(4, layer.getFeaturesCount());
+
+        DefaultFeatureCollection all = new DefaultFeatureCollection("all", featureType);
+        all.addAll(a);
+        all.addAll(b);
+        VectorTile.Tile.Layer expected = SimpleFeaturesMVTEncoder.encode(all, "test", bbox, 4096, 256).getLayers(0);
+        assertEquals(expected.getKeysList(), layer.getKeysList());
+        assertEquals(expected.getValuesList(), layer.getValuesList());
+        assertEquals(expected.getFeaturesList(), layer.getFeaturesList());
+    }
 }
@@ -1,6 +1,10 @@
 package org.oskari.service.mvt;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
 
 import org.junit.Test;
 
@@ -23,4 +27,29 @@ public class WFSTileGridTest {
         assertArrayEquals(expecteds3, actuals3, 0);
     }
 
+    @Test
+    public void testGetTilesInExtent() {
+        WFSTileGrid etrsTM35fin = new WFSTileGrid(new double[] { -548576, 6291456, 1548576, 8388608 }, 15);
+
+        // Exact tile extent should only return the tile itself
+        double[] extent = etrsTM35fin.getTileExtent(new TileCoord(8, 100, 120));
+        List<TileCoord> tiles = etrsTM35fin.getTilesInExtent(8, extent);
+        assertEquals(1, tiles.size());
+        assertEquals(100, tiles.get(0).getX());
+        assertEquals(120, tiles.get(0).getY());
+
+        // Extent crossing tile edges
+        double[] extent2 = { extent[0] - 1, extent[1] - 1, extent[2] + 1, extent[3] + 1 };
+        List<TileCoord> tiles2 = etrsTM35fin.getTilesInExtent(8, extent2);
+        assertEquals(9, tiles2.size());
+        for (TileCoord tile : tiles2) {
+            assertTrue(tile.getX() >= 99 && tile.getX() <= 101);
+            assertTrue(tile.getY() >= 119 && tile.getY() <= 121);
+        }
+
+        // Extent outside the grid
+        double[] outside = { -1548576, 0, -1048576, 100 };
+        assertTrue(etrsTM35fin.getTilesInExtent(8, outside).isEmpty());
+    }
+
 }
@@ -5,6 +5,7 @@ import fi.nls.oskari.domain.map.MyPlaceCategory;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Update;
+import org.oskari.service.user.VectorTileQuery;
 
 import java.util.List;
 import java.util.Map;
@@ -24,4 +25,5 @@ public interface MyPlaceMapper {
     List<MyPlaceCategory> findAll();
     @Delete("delete from categories where uuid = #{uid}")
     void deleteByUid(String uid);
+    byte[] getVectorTile(@Param("categoryId") long categoryId, @Param("uuid") String uuid, @Param("tile") VectorTileQuery tile);
 }
@@ -17,6 +17,7 @@ import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.wms.WMSCapabilities;
 import org.json.JSONObject;
 import org.oskari.permissions.model.Resource;
+import org.oskari.service.user.VectorTileQuery;
 
 import java.util.List;
 
@@ -60,6 +61,11 @@ public abstract class MyPlacesService extends OskariComponent {
 
     public abstract void deleteByUid(final String uid);
 
+    /**
+     * @return MVT tile of the places in the category, empty tile if the user with uuid isn't permitted to view the category
+     */
+    public abstract byte[] getVectorTile(final long categoryId, final String uuid, final VectorTileQuery query);
+
     public MyPlacesService() {
         // default 'myplaces.client.wmsurl' to ajax url for tiles if not configured
         if (MYPLACES_CLIENT_WMS_URL == null) {
@@ -22,6 +22,7 @@ import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 import org.oskari.permissions.PermissionService;
 import org.oskari.permissions.model.Resource;
 import org.oskari.permissions.model.ResourceType;
+import org.oskari.service.user.VectorTileQuery;
 
 import javax.sql.DataSource;
 import java.util.Collections;
@@ -254,4 +255,12 @@ public class MyPlacesServiceMybatisImpl extends MyPlacesService {
             LOG.error(e, "Failed delete by uid ", uid);
         }
     }
+
+    public byte[] getVectorTile(final long categoryId, final String uuid, final VectorTileQuery query) {
+        try (final SqlSession session = factory.openSession()) {
+            final MyPlaceMapper mapper = session.getMapper(MyPlaceMapper.class);
+            byte[] tile = mapper.getVectorTile(categoryId, uuid, query);
+            return tile != null ? tile : new byte[0];
+        }
+    }
 }
@@ -4,6 +4,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 import fi.nls.oskari.domain.User;
 import fi.nls.oskari.util.ConversionHelper;
@@ -17,6 +19,8 @@ import fi.nls.oskari.service.OskariComponent;
 public abstract class PermissionService extends OskariComponent {
     public static final String GENERIC_FUNCTIONALITY = "generic-functionality";
 
+    private static final List<Consumer<String>> CHANGE_LISTENERS = new CopyOnWriteArrayList<>();
+
     private Set<String> DYNAMIC_PERMISSIONS;
 
     public PermissionService() {
@@ -59,6 +63,24 @@ public abstract class PermissionService extends OskariComponent {
         return permissionId;
     }
 
+    /**
+     * Listeners are called with the type of the resource when permissions are modified on this node.
+     * Listeners are responsible for notifying other nodes of the cluster if needed.
+     */
+    public static void addChangeListener(Consumer<String> listener) {
+        CHANGE_LISTENERS.add(listener);
+    }
+
+    public static void removeChangeListener(Consumer<String> listener) {
+        CHANGE_LISTENERS.remove(listener);
+    }
+
+    protected static void notifyChange(String resourceType) {
+        for (Consumer<String> listener : CHANGE_LISTENERS) {
+            listener.accept(resourceType);
+        }
+    }
+
     public abstract Optional<Resource> findResource(int id);
     public abstract Optional<Resource> findResource(ResourceType type, String mapping);
     public abstract Optional<Resource> findResource(String type, String mapping);
@@ -11,14 +11,21 @@ import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.mybatis.MyBatisHelper;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
+import org.oskari.cluster.ClusterManager;
 import org.oskari.permissions.model.Permission;
 import org.oskari.permissions.model.PermissionExternalType;
 import org.oskari.permissions.model.Resource;
 import org.oskari.permissions.model.ResourceType;
 
 import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -29,8 +36,14 @@ public class PermissionServiceMybatisImpl extends PermissionService {
     private static final Class<ResourceMapper> MAPPER = ResourceMapper.class;
     private static final Logger LOG = LogFactory.getLogger(PermissionServiceMybatisImpl.class);
 
+    private static final String CLUSTER_FUNCTIONALITY = "permissions";
+    private static final String CLUSTER_CHANNEL = "resources";
+    // prefix for cache keys of user specific permissions, role sets are cached with the role ids
+    private static final String USER_KEY_PREFIX = "u";
+
     private final SqlSessionFactory factory;
     private final Cache<Resource> cache;
+    private final Cache<List<Resource>> userResourcesCache;
 
     public PermissionServiceMybatisImpl() {
         this(DatasourceHelper.getInstance().getDataSource());
@@ -45,33 +58,73 @@ public class PermissionServiceMybatisImpl extends PermissionService {
             factory = MyBatisHelper.initMyBatis(ds, MAPPER);
         }
         cache = CacheManager.getCache(PermissionServiceMybatisImpl.class.getName());
+        userResourcesCache = CacheManager.getCache(PermissionServiceMybatisImpl.class.getName() + ".byUser");
+        if (ClusterManager.isClustered()) {
+            // other nodes may have cached role sets this node doesn't know about
+            ClusterManager.getClientFor(CLUSTER_FUNCTIONALITY)
+                    .addListener(CLUSTER_CHANNEL, msg -> handleClusterMsg(msg));
+        }
     }
 
+    /**
+     * Returns resources of given type the user has any permissions for. The resources only include the permissions
+     * matching the user. Role based permissions are cached by the role set of the user and shared between users
+     * with the same roles so the results MUST NOT be modified. User specific permissions are cached per user
+     * and merged to the role based ones.
+     */
     public List<Resource> findResourcesByUser(User user, ResourceType type) {
-        // TODO: add userId and user.getRoles() to query and remove filtering on code
-        List<Resource> all = findResourcesByType(type);
-        return all.stream()
-                .filter(resource -> hasUserAnyPermission(user, resource))
+        List<String> roleIds = user.getRoles().stream()
+                .map(Role::getId)
+                .sorted()
+                .map(id -> Long.toString(id))
                 .collect(Collectors.toList());
+        List<Resource> byRoles = findResources(type, getRoleSetKey(type.name(), roleIds), roleIds, null);
+        if (user.isGuest()) {
+            // user id based permissions are only valid for non-guests
+            return byRoles;
+        }
+        String userId = Long.toString(user.getId());
+        List<Resource> byUser = findResources(type, getUserKey(type.name(), userId), null, userId);
+        if (byUser.isEmpty()) {
+            return byRoles;
+        }
+        return merge(byRoles, byUser);
     }
 
-    private boolean hasUserAnyPermission(User user, Resource resource) {
-        return resource.getPermissions().stream()
-                .anyMatch(p -> hasUserPermission(user, p));
+    private List<Resource> findResources(ResourceType type, String cacheKey, List<String> roleIds, String userId) {
+        List<Resource> resources = userResourcesCache.get(cacheKey);
+        if (resources == null) {
+            try (SqlSession session = factory.openSession()) {
+                resources = session.getMapper(MAPPER).findByTypeAndUser(type.name(), roleIds, userId);
+            }
+            userResourcesCache.put(cacheKey, resources);
+        }
+        return resources;
     }
 
-    private boolean hasUserPermission(User user, Permission permission) {
-        boolean userHasRoleWithId = permission.getExternalType() == PermissionExternalType.ROLE
-                && user.hasRoleWithId(permission.getExternalId());
-
-        if (userHasRoleWithId) {
-            return true;
-        } else if(user.isGuest()) {
-            return false;
+    /**
+     * Combines the permissions of resources found in both lists without modifying the (cached) resources
+     */
+    private static List<Resource> merge(List<Resource> byRoles, List<Resource> byUser) {
+        Map<Integer, Resource> merged = new LinkedHashMap<>();
+        for (Resource resource : byRoles) {
+            merged.put(resource.getId(), resource);
         }
-
-        return permission.getExternalType() == PermissionExternalType.USER
-                && user.getId() == permission.getExternalId();
+        for (Resource resource : byUser) {
+            merged.merge(resource.getId(), resource, (a, b) -> {
+                Resource combined = new Resource();
+                combined.setId(a.getId());
+                combined.setType(a.getType());
+                combined.setMapping(a.getMapping());
+                List<Permission> permissions = new ArrayList<>(a.getPermissions());
+                permissions.addAll(b.getPermissions());
+                combined.setPermissions(permissions);
+                return combined;
+            });
+        }
+        List<Resource> resources = new ArrayList<>(merged.values());
+        resources.sort(Comparator.comparingInt(Resource::getId));
+        return resources;
     }
 
     /**
@@ -119,8 +172,9 @@ public class PermissionServiceMybatisImpl extends PermissionService {
         }
 
         if (exists(resource)) {
-            setPermissions(resource.getId(), resource.getPermissions());
+            List<Permission> previous = setPermissions(resource.getId(), resource.getPermissions());
             cache.remove(getCacheKey(resource));
+            resourcesChanged(resource.getType(), previous, resource.getPermissions());
         } else {
             insertResource(resource);
         }
@@ -192,28 +246,99 @@ public class PermissionServiceMybatisImpl extends PermissionService {
             session.commit();
         }
         cache.put(getCacheKey(resource), resource);
+        resourcesChanged(resource.getType(), Collections.emptyList(), resource.getPermissions());
     }
 
-    private void setPermissions(int resourceId, List<Permission> permissions) {
+    /**
+     * @return the permissions that were replaced
+     */
+    private List<Permission> setPermissions(int resourceId, List<Permission> permissions) {
         try (SqlSession session = factory.openSession(false)) {
             ResourceMapper mapper = session.getMapper(MAPPER);
+            List<Permission> previous = mapper.findPermissionsByResourceId(resourceId);
             mapper.deletePermissions(resourceId);
             for (Permission permission : permissions) {
                 mapper.insertPermission(permission, resourceId);
             }
             session.commit();
+            return previous;
         }
     }
 
     @Override
     public void deleteResource(Resource resource) {
+        List<Permission> previous;
         try (SqlSession session = factory.openSession(false)) {
             ResourceMapper mapper = session.getMapper(MAPPER);
+            previous = mapper.findPermissionsByResourceId(resource.getId());
             mapper.deletePermissions(resource.getId());
             mapper.deleteResource(resource);
             session.commit();
         }
         cache.remove(getCacheKey(resource));
+        resourcesChanged(resource.getType(), previous, Collections.emptyList());
+    }
+
+    /**
+     * Removes the cached results of the roles and users whose permissions were modified
+     */
+    private void resourcesChanged(String resourceType, List<Permission> previous, List<Permission> current) {
+        Set<String> roleIds = new HashSet<>();
+        Set<String> userIds = new HashSet<>();
+        for (List<Permission> permissions : Arrays.asList(previous, current)) {
+            for (Permission p : permissions) {
+                if (p.getExternalType() == PermissionExternalType.ROLE) {
+                    roleIds.add(Integer.toString(p.getExternalId()));
+                } else if (p.getExternalType() == PermissionExternalType.USER) {
+                    userIds.add(Integer.toString(p.getExternalId()));
+                }
+            }
+        }
+        evict(resourceType, roleIds, userIds);
+        if (ClusterManager.isClustered() && !roleIds.isEmpty()) {
+            // resourceType|roleId,roleId,...
+            ClusterManager.getClientFor(CLUSTER_FUNCTIONALITY)
+                    .sendMessage(CLUSTER_CHANNEL, resourceType + "|" + String.join(",", roleIds));
+        }
+        notifyChange(resourceType);
+    }
+
+    private void evict(String resourceType, Set<String> roleIds, Set<String> userIds) {
+        for (String userId : userIds) {
+            // the key is the same on all nodes, removal is passed to the other nodes by the cache
+            userResourcesCache.remove(getUserKey(resourceType, userId));
+        }
+        if (roleIds.isEmpty()) {
+            return;
+        }
+        String prefix = resourceType + "|";
+        for (String key : userResourcesCache.getKeys()) {
+            if (!key.startsWith(prefix) || key.startsWith(prefix + USER_KEY_PREFIX)) {
+                continue;
+            }
+            String roleSet = key.substring(prefix.length());
+            if (Arrays.stream(roleSet.split(",")).anyMatch(roleIds::contains)) {
+                userResourcesCache.remove(key);
+            }
+        }
+    }
+
+    private void handleClusterMsg(String msg) {
+        int i = msg.indexOf('|');
+        if (i < 0) {
+            LOG.warn("Received unrecognized cluster msg:", msg);
+            return;
+        }
+        Set<String> roleIds = new HashSet<>(Arrays.asList(msg.substring(i + 1).split(",")));
+        evict(msg.substring(0, i), roleIds, Collections.emptySet());
+    }
+
+    private String getRoleSetKey(String resourceType, List<String> sortedRoleIds) {
+        return resourceType + "|" + String.join(",", sortedRoleIds);
+    }
+
+    private String getUserKey(String resourceType, String userId) {
+        return resourceType + "|" + USER_KEY_PREFIX + userId;
     }
 
     private String getCacheKey(Resource resource) {
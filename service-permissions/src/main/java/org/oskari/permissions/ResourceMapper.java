@@ -64,6 +64,42 @@ public interface ResourceMapper {
     @Select("SELECT EXISTS (SELECT 1 FROM oskari_resource WHERE resource_type = #{type} AND resource_mapping = #{mapping})")
     boolean existsByTypeAndMapping(@Param("type") String type, @Param("mapping") String mapping);
 
+    /**
+     * Returns resources of given type that have permissions for any of the roles or the user.
+     * Only the permissions matching the roles/user are included in the resources.
+     */
+    @Results(id = "ResourceWithPermissionsResult", value = {
+            @Result(property="id", column="id", id=true),
+            @Result(property="type", column="resource_type"),
+            @Result(property="mapping", column="resource_mapping"),
+            @Result(property="permissions", javaType=List.class,
+                    many=@Many(resultMap="PermissionResult", columnPrefix="p_"))
+    })
+    @Select({"<script>",
+            "SELECT r.id,",
+            "r.resource_type,",
+            "r.resource_mapping,",
+            "p.id AS p_id,",
+            "p.external_type AS p_external_type,",
+            "p.permission AS p_permission,",
+            "p.external_id AS p_external_id",
+            "FROM oskari_resource r",
+            "JOIN oskari_resource_permission p ON r.id = p.resource_id",
+            "WHERE r.resource_type = #{type}",
+            "AND (",
+            "<if test='roleIds != null and !roleIds.isEmpty()'>",
+            "(p.external_type = 'ROLE' AND p.external_id IN",
+            "<foreach item='roleId' collection='roleIds' open='(' separator=',' close=')'>#{roleId}</foreach>)",
+            "OR",
+            "</if>",
+            "(p.external_type = 'USER' AND p.external_id = #{userId})",
+            ")",
+            "ORDER BY r.id",
+            "</script>"})
+    List<Resource> findByTypeAndUser(@Param("type") String type,
+                                     @Param("roleIds") List<String> roleIds,
+                                     @Param("userId") String userId);
+
     @Select("select distinct\n" +
             "            r.resource_mapping\n" +
             "        from\n" +
@@ -79,7 +115,7 @@ public interface ResourceMapper {
                                           @Param("permission") String permission,
                                           @Param("external_id") String external_id);
 
-    @Results({
+    @Results(id = "PermissionResult", value = {
         @Result(property="id", column="id", id=true),
         @Result(property="type", column="permission"),
         @Result(property="externalType", column="external_type"),
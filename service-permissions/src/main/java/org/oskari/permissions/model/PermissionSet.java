@@ -1,14 +1,22 @@
 package org.oskari.permissions.model;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class PermissionSet {
 
     private final List<Resource> resources;
+    // lookups are done for each layer in layer listings so resources are indexed by type and mapping
+    private final Map<String, Resource> index;
 
     public PermissionSet(List<Resource> resources) {
         this.resources = resources;
+        this.index = new HashMap<>(resources.size() * 2);
+        for (Resource res : resources) {
+            index.putIfAbsent(getKey(res.getType(), res.getMapping()), res);
+        }
     }
 
     public Optional<Resource> get(ResourceType type, String mapping) {
@@ -16,9 +24,14 @@ public class PermissionSet {
     }
 
     public Optional<Resource> get(String type, String mapping) {
-        return resources.stream()
-                .filter(res-> res.isOfType(type))
-                .filter(res-> res.getMapping().equals(mapping))
-                .findFirst();
+        return Optional.ofNullable(index.get(getKey(type, mapping)));
+    }
+
+    public List<Resource> getResources() {
+        return resources;
+    }
+
+    private static String getKey(String type, String mapping) {
+        return type + "_" + mapping;
     }
 }
@@ -17,7 +17,8 @@ public class Resource {
     private int id = -1;
     private String  type;
     private String mapping;
-    private List<Permission> permissions;
+    // mybatis adds permissions to the list when mapping joined results
+    private List<Permission> permissions = new ArrayList<>();
 
     public int getId() {
         return id;
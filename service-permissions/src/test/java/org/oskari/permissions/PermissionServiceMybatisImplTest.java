@@ -1,5 +1,6 @@
 package org.oskari.permissions;
 
+import fi.nls.oskari.domain.User;
 import fi.nls.test.util.ResourceHelper;
 import fi.nls.test.util.TestHelper;
 import org.junit.Before;
@@ -82,6 +83,63 @@ public class PermissionServiceMybatisImplTest {
         // TODO: Verify that the oskari_resource_permission rows are also deleted
     }
 
+    @Test
+    public void testFindResourcesByUser() {
+        Resource byRole = new OskariLayerResource(1001);
+        byRole.addPermission(createPermission(PermissionExternalType.ROLE, 10, PermissionType.VIEW_LAYER));
+        byRole.addPermission(createPermission(PermissionExternalType.ROLE, 20, PermissionType.EDIT_LAYER));
+        Resource byUser = new OskariLayerResource(1002);
+        byUser.addPermission(createPermission(PermissionExternalType.USER, 5, PermissionType.VIEW_LAYER));
+        Resource other = new OskariLayerResource(1003);
+        other.addPermission(createPermission(PermissionExternalType.ROLE, 30, PermissionType.VIEW_LAYER));
+        permissionService.insertResource(byRole);
+        permissionService.insertResource(byUser);
+        permissionService.insertResource(other);
+        try {
+            User user = new User();
+            user.setId(5);
+            user.addRole(10, "role");
+
+            List<Resource> resources = permissionService.findResourcesByUser(user, ResourceType.maplayer);
+            assertEquals(2, resources.size());
+            Resource actual = resources.stream().filter(r -> r.getId() == byRole.getId()).findAny().get();
+            assertEquals("Only permissions matching the user should be returned", 1, actual.getPermissions().size());
+            assertTrue(actual.hasPermission(user, PermissionType.VIEW_LAYER));
+            assertTrue(resources.stream().anyMatch(r -> r.getId() == byUser.getId()));
+
+            User otherUser = new User();
+            otherUser.setId(6);
+            otherUser.addRole(10, "role");
+            List<Resource> byRoles = permissionService.findResourcesByUser(otherUser, ResourceType.maplayer);
+            assertEquals(1, byRoles.size());
+            assertSame("Results are shared between users with the same roles",
+                    byRoles, permissionService.findResourcesByUser(otherUser, ResourceType.maplayer));
+
+            // permissions for other roles don't affect the cached results
+            other.addPermission(createPermission(PermissionExternalType.ROLE, 20, PermissionType.VIEW_LAYER));
+            permissionService.saveResource(other);
+            assertSame(byRoles, permissionService.findResourcesByUser(otherUser, ResourceType.maplayer));
+
+            // results are cached by role set, saving a resource with permissions for the role should invalidate them
+            other.addPermission(createPermission(PermissionExternalType.ROLE, 10, PermissionType.VIEW_LAYER));
+            permissionService.saveResource(other);
+            assertEquals(3, permissionService.findResourcesByUser(user, ResourceType.maplayer).size());
+            assertEquals(2, permissionService.findResourcesByUser(otherUser, ResourceType.maplayer).size());
+        } finally {
+            permissionService.deleteResource(byRole);
+            permissionService.deleteResource(byUser);
+            permissionService.deleteResource(other);
+        }
+    }
+
+    private Permission createPermission(PermissionExternalType externalType, int externalId, PermissionType type) {
+        Permission permission = new Permission();
+        permission.setExternalType(externalType);
+        permission.setExternalId(externalId);
+        permission.setType(type);
+        return permission;
+    }
+
     private Permission findPermissionWithId(List<Permission> permissions, int id) {
         return permissions.stream()
                 .filter(p -> p.getId() == id)
@@ -43,7 +43,6 @@ import org.apache.pdfbox.util.Matrix;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.referencing.CRS;
 import org.json.JSONObject;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.FilterFactory2;
@@ -77,6 +76,7 @@ import org.locationtech.jts.geom.util.AffineTransformation;
 
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.service.ServiceException;
 import fi.nls.oskari.util.PropertyUtil;
 
@@ -186,8 +186,16 @@ public class PDF {
         float mapHeight = pixelsToPoints(mapHeightPx);
 
         // Init requests to run in the background
-        Map<Integer, Future<BufferedImage>> layerImages = AsyncImageLoader.initLayers(request, wmtsCapsCache);
-        Map<Integer, Future<SimpleFeatureCollection>> featureCollections = AsyncFeatureLoader.initLayers(request, featureClient);
+        StripRenderer strips = null;
+        Map<Integer, Future<BufferedImage>> layerImages = null;
+        Map<Integer, Future<SimpleFeatureCollection>> featureCollections = null;
+        if (StripRenderer.isEnabledForPDF(request)) {
+            // markers are drawn as vectors on top of the strips
+            strips = new StripRenderer(request, wmtsCapsCache, featureClient, false);
+        } else {
+            layerImages = AsyncImageLoader.initLayers(request, wmtsCapsCache);
+            featureCollections = AsyncFeatureLoader.initLayers(request, featureClient);
+        }
 
         PDPage page = new PDPage(pageSize);
         doc.addPage(page);
@@ -202,9 +210,17 @@ public class PDF {
             drawScale(stream, request);
             drawDate(stream, request, pageSize);
             drawTimeseriesTexts(stream, request, pageSize);
-            drawLayers(doc, stream, request, layerImages, featureCollections,
-                    x, y, mapWidth, mapHeight);
+            if (strips != null) {
+                drawStrips(doc, stream, request, strips, x, y, mapWidth, mapHeight);
+            } else {
+                drawLayers(doc, stream, request, layerImages, featureCollections,
+                        x, y, mapWidth, mapHeight);
+            }
             drawBorder(stream, x, y, mapWidth, mapHeight);
+        } finally {
+            if (strips != null) {
+                strips.close();
+            }
         }
     }
     protected static BufferedImage getVectorLayerImage (PrintLayer layer, Future<SimpleFeatureCollection> ffc, double [] bbox, int w, int h )
@@ -426,7 +442,7 @@ public class PDF {
 
     private static String getUnits(String srsName) {
         try {
-            CoordinateReferenceSystem crs = CRS.decode(srsName);
+            CoordinateReferenceSystem crs = CRSRegistry.decode(srsName);
             return crs.getCoordinateSystem().getAxis(0).getUnit().toString();
         } catch (FactoryException e) {
             LOG.warn(e, "Unable to decode CRS from", srsName);
@@ -459,6 +475,28 @@ public class PDF {
         drawMarkers(doc, stream, request.getMarkers(), transformation, x, y, w, h);
     }
 
+    /**
+     * Draws the layers flattened into one image per strip. The layers can't be toggled
+     * separately, the strips are in a single optional content group. Vector layers are
+     * rasterized into the strips to keep them in their z-order between the raster layers,
+     * only the markers are drawn as vectors on top of the strips.
+     */
+    private static void drawStrips(PDDocument doc, PDPageContentStream stream,
+            PrintRequest request, StripRenderer strips,
+            float x, float y, float w, float h) throws IOException, ServiceException {
+        PDOptionalContentGroup ocg = PDFBoxUtil.getOCG(doc, "Map");
+        float pointsPerPixel = h / request.getHeight();
+        for (int i = 0; i < strips.getStripCount(); i++) {
+            PDImageXObject imgObject = LosslessFactory.createFromImage(doc, strips.render(i));
+            PDFBoxUtil.setOCG(imgObject, ocg);
+            // PDF y-axis points up, strips are rendered from the top
+            float stripY = y + h - (strips.getY(i) + strips.getHeight(i)) * pointsPerPixel;
+            stream.drawImage(imgObject, x, stripY, w, strips.getHeight(i) * pointsPerPixel);
+        }
+        AffineTransformation transformation = getTransform(request.getBoundingBox(), w, h);
+        drawMarkers(doc, stream, request.getMarkers(), transformation, x, y, w, h);
+    }
+
     private static void drawImageLayer(PDDocument doc, PDPageContentStream stream,
             PrintLayer layer, Future<BufferedImage> future,
             float x, float y, float w, float h) throws IOException {
@@ -35,8 +35,33 @@ public class PNG {
 
         final List<PrintLayer> layers = request.getLayers();
 
-        Map<Integer, Future<BufferedImage>> images = AsyncImageLoader.initLayers(request, tmsCache);
+        // layers are flattened so tiles hidden under opaque layers don't need to be loaded
+        Map<Integer, Future<BufferedImage>> images = AsyncImageLoader.initLayers(request, tmsCache, true);
         Map<Integer, Future<SimpleFeatureCollection>> featureCollections = AsyncFeatureLoader.initLayers(request, featureClient);
+        BufferedImage canvas;
+        try {
+            canvas = flatten(layers, images, featureCollections, request.getMarkers(), bbox, width, height);
+        } catch (Exception e) {
+            LOG.warn(e);
+            return null;
+        }
+
+        BufferedImage scaled = scale(canvas,
+                request.getTargetWidth(),
+                request.getTargetHeight(),
+                RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+
+        return scaled;
+    }
+
+    /**
+     * Draws the layers and the markers on top of each other
+     * @param markers markers to draw on top of the layers, null or empty to skip
+     */
+    protected static BufferedImage flatten(List<PrintLayer> layers,
+            Map<Integer, Future<BufferedImage>> images,
+            Map<Integer, Future<SimpleFeatureCollection>> featureCollections,
+            String markers, double[] bbox, int width, int height) throws Exception {
         BufferedImage canvas = new BufferedImage(width, height,
                 BufferedImage.TYPE_INT_ARGB);
 
@@ -63,24 +88,17 @@ public class PNG {
                 g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
                 g2d.drawImage(bi, 0, 0, null);
             }
-            BufferedImage bi = PDF.getMarkersImage(request.getMarkers(), bbox, width, height);
-            if (bi != null) {
-                g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1f));
-                g2d.drawImage(bi, 0, 0, null);
+            if (markers != null && !markers.isEmpty()) {
+                BufferedImage bi = PDF.getMarkersImage(markers, bbox, width, height);
+                if (bi != null) {
+                    g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1f));
+                    g2d.drawImage(bi, 0, 0, null);
+                }
             }
-        } catch (Exception e) {
-            LOG.warn(e);
-            return null;
         } finally {
             g2d.dispose();
         }
-
-        BufferedImage scaled = scale(canvas,
-                request.getTargetWidth(),
-                request.getTargetHeight(),
-                RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-
-        return scaled;
+        return canvas;
     }
 
     private static float getAlpha(int opacity) {
@@ -4,10 +4,15 @@ import fi.nls.oskari.service.ServiceException;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.imageio.ImageIO;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.oskari.print.request.PrintFormat;
 import org.oskari.print.request.PrintRequest;
 import org.oskari.print.wmts.WMTSCapabilitiesCache;
+import org.oskari.service.wfs.client.CachingOskariFeatureClient;
 import org.oskari.service.wfs.client.OskariFeatureClient;
 import org.oskari.service.wfs.client.OskariWFSClient;
 
@@ -38,14 +43,31 @@ public class PrintService {
     }
     
     private static OskariFeatureClient getDefaultFeatureClient() {
-        // Use non caching OskariWFSClient by default
-        return new OskariFeatureClient(new OskariWFSClient());
+        // Share the tile based feature cache with MVT and GeoJSON requests
+        return new CachingOskariFeatureClient(new OskariWFSClient());
     }
 
     public BufferedImage getPNG(PrintRequest request) throws ServiceException {
         return PNG.getBufferedImage(request, wmtsCapsCache, featureClient);
     }
 
+    /**
+     * Writes the map as PNG. Large maps are rendered and encoded in strips
+     * instead of creating the whole image in memory.
+     */
+    public void writePNG(PrintRequest request, OutputStream out) throws IOException, ServiceException {
+        if (!StripRenderer.isEnabled(request)) {
+            ImageIO.write(getPNG(request), PrintFormat.PNG.fileExtension, out);
+            return;
+        }
+        try (StripRenderer renderer = new StripRenderer(request, wmtsCapsCache, featureClient, true)) {
+            ImageIO.write(new StripImage(renderer, request.getWidth(), request.getHeight()),
+                    PrintFormat.PNG.fileExtension, out);
+        } catch (IllegalStateException e) {
+            throw new ServiceException("Failed to create PNG", e);
+        }
+    }
+
     public void getPDF(PrintRequest request, PDDocument doc)
             throws IOException, ServiceException {
         PDF.getPDF(request, wmtsCapsCache, featureClient, doc);
@@ -0,0 +1,177 @@
+package org.oskari.print;
+
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Vector;
+
+import fi.nls.oskari.service.ServiceException;
+
+/**
+ * Image that renders its rows on demand one strip at a time. Only the current strip is kept in
+ * memory so the rows must be requested from top to bottom which is what image encoders such as
+ * the PNG writer of ImageIO do. Failures to render a strip are thrown as IllegalStateException.
+ */
+class StripImage implements RenderedImage {
+
+    private final StripRenderer renderer;
+    private final int width;
+    private final int height;
+    private final ColorModel colorModel;
+    private final SampleModel sampleModel;
+
+    private int currentStrip = -1;
+    private Raster current;
+
+    StripImage(StripRenderer renderer, int width, int height) {
+        this.renderer = renderer;
+        this.width = width;
+        this.height = height;
+        this.colorModel = ColorModel.getRGBdefault();
+        this.sampleModel = colorModel.createCompatibleSampleModel(width, renderer.getHeight(0));
+    }
+
+    @Override
+    public Raster getData(Rectangle rect) {
+        Rectangle bounds = rect.intersection(new Rectangle(width, height));
+        WritableRaster raster = Raster.createWritableRaster(
+                sampleModel.createCompatibleSampleModel(bounds.width, bounds.height),
+                new Point(bounds.x, bounds.y));
+        for (int y = bounds.y; y < bounds.y + bounds.height; ) {
+            Raster strip = getStripContaining(y);
+            raster.setRect(strip);
+            y = strip.getMinY() + strip.getHeight();
+        }
+        return raster;
+    }
+
+    private Raster getStripContaining(int y) {
+        if (current != null && y >= current.getMinY() && y < current.getMinY() + current.getHeight()) {
+            return current;
+        }
+        int strip = currentStrip + 1;
+        if (y < renderer.getY(strip) || y >= renderer.getY(strip) + renderer.getHeight(strip)) {
+            throw new IllegalStateException("Rows must be read in order, requested row " + y);
+        }
+        // release the previous strip before rendering the next one
+        current = null;
+        try {
+            BufferedImage bi = renderer.render(strip);
+            current = bi.getRaster().createTranslatedChild(0, renderer.getY(strip));
+            currentStrip = strip;
+        } catch (ServiceException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        return current;
+    }
+
+    @Override
+    public Raster getData() {
+        return getData(new Rectangle(width, height));
+    }
+
+    @Override
+    public WritableRaster copyData(WritableRaster raster) {
+        if (raster == null) {
+            return (WritableRaster) getData();
+        }
+        raster.setRect(getData(raster.getBounds()));
+        return raster;
+    }
+
+    @Override
+    public Raster getTile(int tileX, int tileY) {
+        return getData(new Rectangle(0, renderer.getY(tileY), width, renderer.getHeight(tileY)));
+    }
+
+    @Override
+    public Vector<RenderedImage> getSources() {
+        return null;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return Image.UndefinedProperty;
+    }
+
+    @Override
+    public String[] getPropertyNames() {
+        return null;
+    }
+
+    @Override
+    public ColorModel getColorModel() {
+        return colorModel;
+    }
+
+    @Override
+    public SampleModel getSampleModel() {
+        return sampleModel;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getMinX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinY() {
+        return 0;
+    }
+
+    @Override
+    public int getNumXTiles() {
+        return 1;
+    }
+
+    @Override
+    public int getNumYTiles() {
+        return renderer.getStripCount();
+    }
+
+    @Override
+    public int getMinTileX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinTileY() {
+        return 0;
+    }
+
+    @Override
+    public int getTileWidth() {
+        return width;
+    }
+
+    @Override
+    public int getTileHeight() {
+        return renderer.getHeight(0);
+    }
+
+    @Override
+    public int getTileGridXOffset() {
+        return 0;
+    }
+
+    @Override
+    public int getTileGridYOffset() {
+        return 0;
+    }
+}
@@ -0,0 +1,208 @@
+package org.oskari.print;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeature;
+import org.oskari.print.loader.AsyncFeatureLoader;
+import org.oskari.print.loader.AsyncImageLoader;
+import org.oskari.print.request.PrintLayer;
+import org.oskari.print.request.PrintRequest;
+import org.oskari.print.wmts.WMTSCapabilitiesCache;
+import org.oskari.service.wfs.client.OskariFeatureClient;
+
+import fi.nls.oskari.service.ServiceException;
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Renders the map in horizontal strips so that large prints don't need a full size image per layer.
+ * Each strip is loaded and flattened separately, the images of the next strip are loaded while the
+ * current one is being written. Feature layers are loaded once for the whole map and each strip
+ * only draws the features near it.
+ *
+ * Vector layers are rasterized into the strips with the other layers so the z-order of the layers is kept.
+ * Raster layers are requested once per strip. WMS servers render each strip separately so labels and
+ * symbols crossing the boundary of two strips can be cut or drawn differently on each side of the seam.
+ *
+ * In a PDF the strips replace the optional content group of each layer with a single group for the map,
+ * so the layers can't be toggled separately. Strips are used for PDFs only when print.strip.pdf=true.
+ *
+ * Configuration:
+ * - print.strip.threshold: maps with more pixels than this are rendered in strips (default 4000000)
+ * - print.strip.pdf: true to render large PDF prints in strips as well (default false, PNG prints always use strips)
+ * - print.strip.height: number of rows in a strip (default 512)
+ * - print.strip.buffer: features this many pixels outside the strip are drawn so that their
+ *   symbols and strokes continue to the strip (default 64)
+ */
+class StripRenderer implements AutoCloseable {
+
+    private static final long THRESHOLD = PropertyUtil.getOptional("print.strip.threshold", 4000000L);
+    private static final int STRIP_HEIGHT = PropertyUtil.getOptional("print.strip.height", 512);
+    private static final int STRIP_BUFFER = PropertyUtil.getOptional("print.strip.buffer", 64);
+    private static final boolean PDF_ENABLED = PropertyUtil.getOptional("print.strip.pdf", false);
+
+    private final PrintRequest request;
+    private final WMTSCapabilitiesCache wmtsCapsCache;
+    private final boolean drawMarkers;
+    private final int stripHeight;
+    private final List<PrintLayer> layers;
+    private final Map<Integer, Future<SimpleFeatureCollection>> featureCollections;
+
+    private int next;
+    private Map<Integer, Future<BufferedImage>> nextImages;
+
+    /**
+     * @param drawMarkers false if the markers are drawn separately on top of the strips
+     */
+    StripRenderer(PrintRequest request, WMTSCapabilitiesCache wmtsCapsCache, OskariFeatureClient featureClient,
+            boolean drawMarkers) throws ServiceException {
+        this(request, wmtsCapsCache, featureClient, drawMarkers, STRIP_HEIGHT);
+    }
+
+    StripRenderer(PrintRequest request, WMTSCapabilitiesCache wmtsCapsCache, OskariFeatureClient featureClient,
+            boolean drawMarkers, int stripHeight) throws ServiceException {
+        this.request = request;
+        this.wmtsCapsCache = wmtsCapsCache;
+        this.drawMarkers = drawMarkers;
+        this.stripHeight = Math.max(1, stripHeight);
+        this.layers = request.getLayers() == null ? Collections.emptyList() : new ArrayList<>(request.getLayers());
+        this.layers.sort(Comparator.comparing(PrintLayer::getZIndex));
+        this.featureCollections = AsyncFeatureLoader.initLayers(request, featureClient);
+        this.nextImages = initStrip(0);
+    }
+
+    /**
+     * Strips can only be used when the map isn't scaled to a different target size
+     * @return true if the map is large enough to be rendered in strips
+     */
+    static boolean isEnabled(PrintRequest request) {
+        boolean scaled = request.getTargetWidth() > 0 && request.getTargetWidth() != request.getWidth()
+                || request.getTargetHeight() > 0 && request.getTargetHeight() != request.getHeight();
+        return !scaled && (long) request.getWidth() * request.getHeight() > THRESHOLD;
+    }
+
+    /**
+     * @return true if the PDF map should be rendered in strips
+     */
+    static boolean isEnabledForPDF(PrintRequest request) {
+        return PDF_ENABLED && isEnabled(request);
+    }
+
+    int getStripCount() {
+        return (request.getHeight() + stripHeight - 1) / stripHeight;
+    }
+
+    /**
+     * @return first row of the strip
+     */
+    int getY(int strip) {
+        return strip * stripHeight;
+    }
+
+    int getHeight(int strip) {
+        return Math.min(stripHeight, request.getHeight() - getY(strip));
+    }
+
+    /**
+     * Strips must be rendered in order starting from the top
+     */
+    BufferedImage render(int strip) throws ServiceException {
+        if (strip != next) {
+            throw new IllegalStateException("Expected strip " + next + ", got " + strip);
+        }
+        PrintRequest stripRequest = request.getStrip(getY(strip), getHeight(strip));
+        Map<Integer, Future<BufferedImage>> images = nextImages;
+        next++;
+        // start loading the next strip before flattening this one
+        nextImages = next < getStripCount() ? initStrip(next) : null;
+        try {
+            double[] bbox = stripRequest.getBoundingBox();
+            return PNG.flatten(layers, images, getFeatures(bbox, STRIP_BUFFER * request.getResolution()),
+                    drawMarkers ? request.getMarkers() : null,
+                    bbox, stripRequest.getWidth(), stripRequest.getHeight());
+        } catch (ServiceException e) {
+            cancel(images);
+            close();
+            throw e;
+        } catch (Exception e) {
+            cancel(images);
+            close();
+            throw new ServiceException("Failed to render strip " + strip, e);
+        }
+    }
+
+    /**
+     * Cancels loading the strips that haven't been rendered. Call when the rendering stops
+     * before the last strip (f.ex. the client disconnected while the image was being written).
+     */
+    @Override
+    public void close() {
+        cancel(nextImages);
+        nextImages = null;
+        cancel(featureCollections);
+    }
+
+    private static void cancel(Map<Integer, ? extends Future<?>> futures) {
+        if (futures != null) {
+            futures.values().forEach(f -> f.cancel(true));
+        }
+    }
+
+    /**
+     * @param buffer distance in map units to extend the bbox with
+     * @return feature layers with only the features intersecting the buffered bbox
+     */
+    private Map<Integer, Future<SimpleFeatureCollection>> getFeatures(double[] bbox, double buffer)
+            throws InterruptedException {
+        Envelope env = new Envelope(bbox[0], bbox[2], bbox[1], bbox[3]);
+        env.expandBy(buffer);
+        Map<Integer, Future<SimpleFeatureCollection>> features = new HashMap<>();
+        for (Map.Entry<Integer, Future<SimpleFeatureCollection>> e : featureCollections.entrySet()) {
+            CompletableFuture<SimpleFeatureCollection> f = new CompletableFuture<>();
+            try {
+                f.complete(filter(e.getValue().get(), env));
+            } catch (ExecutionException ex) {
+                // fails when the layer is drawn like it does without strips
+                f.completeExceptionally(ex.getCause());
+            }
+            features.put(e.getKey(), f);
+        }
+        return features;
+    }
+
+    static SimpleFeatureCollection filter(SimpleFeatureCollection fc, Envelope env) {
+        if (fc == null) {
+            return null;
+        }
+        List<SimpleFeature> features = new ArrayList<>();
+        try (SimpleFeatureIterator it = fc.features()) {
+            while (it.hasNext()) {
+                SimpleFeature f = it.next();
+                Geometry geom = (Geometry) f.getDefaultGeometry();
+                if (geom != null && geom.getEnvelopeInternal().intersects(env)) {
+                    features.add(f);
+                }
+            }
+        }
+        return new ListFeatureCollection(fc.getSchema(), features);
+    }
+
+    private Map<Integer, Future<BufferedImage>> initStrip(int strip) throws ServiceException {
+        PrintRequest stripRequest = request.getStrip(getY(strip), getHeight(strip));
+        // strips are flattened so tiles hidden under opaque layers don't need to be loaded
+        return AsyncImageLoader.initLayers(stripRequest, wmtsCapsCache, true);
+    }
+}
@@ -0,0 +1,122 @@
+package org.oskari.print.job;
+
+import org.oskari.print.request.PrintFormat;
+
+import java.io.File;
+import java.util.concurrent.Future;
+
+/**
+ * State of a print rendered in the background by PrintJobQueue
+ */
+public class PrintJob {
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED;
+
+        public boolean isActive() {
+            return this == QUEUED || this == RUNNING;
+        }
+    }
+
+    private final String id;
+    private final String owner;
+    private final PrintFormat format;
+    private final long created;
+
+    private volatile Status status = Status.QUEUED;
+    private volatile long finished;
+    private volatile File file;
+    private volatile String error;
+    private volatile Future<?> future;
+
+    PrintJob(String id, String owner, PrintFormat format) {
+        this.id = id;
+        this.owner = owner;
+        this.format = format;
+        this.created = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public PrintFormat getFormat() {
+        return format;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return time the job was done, failed or cancelled, 0 if it's still active
+     */
+    public long getFinished() {
+        return finished;
+    }
+
+    /**
+     * @return the rendered print, null unless status is DONE
+     */
+    public File getFile() {
+        return file;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    synchronized boolean start() {
+        if (status != Status.QUEUED) {
+            return false;
+        }
+        status = Status.RUNNING;
+        return true;
+    }
+
+    synchronized boolean complete(File file) {
+        if (status != Status.RUNNING) {
+            return false;
+        }
+        this.file = file;
+        finish(Status.DONE);
+        return true;
+    }
+
+    synchronized void fail(String error) {
+        if (!status.isActive()) {
+            return;
+        }
+        this.error = error;
+        finish(Status.FAILED);
+    }
+
+    synchronized boolean cancel() {
+        if (!status.isActive()) {
+            return false;
+        }
+        finish(Status.CANCELLED);
+        Future<?> f = future;
+        if (f != null) {
+            f.cancel(true);
+        }
+        return true;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    private void finish(Status status) {
+        this.status = status;
+        this.finished = System.currentTimeMillis();
+    }
+}
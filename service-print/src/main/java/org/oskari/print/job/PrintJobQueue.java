@@ -0,0 +1,246 @@
+package org.oskari.print.job;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import fi.nls.oskari.control.ActionControl;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.service.ServiceException;
+import fi.nls.oskari.util.PropertyUtil;
+import org.oskari.print.request.PrintFormat;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders prints on a bounded pool of worker threads instead of the request thread. Rendered prints
+ * are written to files and removed after print.queue.ttlms. Clients poll the status of the job and
+ * download the result when it's done.
+ *
+ * Jobs and the rendered prints are kept on the node that received the print request and aren't
+ * shared with other nodes of a cluster. Clustered environments need sticky sessions so the status
+ * and download requests of a job reach the same node.
+ *
+ * Configuration:
+ * - print.queue.pool.size: number of prints rendered at the same time (default 2)
+ * - print.queue.pool.queue: number of prints waiting to be rendered (default 20)
+ * - print.queue.user.limit: number of queued and running prints per user (default 2)
+ * - print.queue.ttlms: time to keep the rendered prints (default 1 hour)
+ * - print.queue.dir: directory for the rendered prints (default [java.io.tmpdir]/oskari-print)
+ */
+public class PrintJobQueue {
+
+    private static final Logger LOG = LogFactory.getLogger(PrintJobQueue.class);
+
+    private static final String PROPERTY_PREFIX = "print.queue.";
+    private static final String METRICS_PREFIX = "Oskari.Print";
+    private static final long DEFAULT_TTL_MS = TimeUnit.HOURS.toMillis(1);
+
+    private static PrintJobQueue instance;
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService cleaner;
+    private final Map<String, PrintJob> jobs = new ConcurrentHashMap<>();
+    private final int userLimit;
+    private final long ttl;
+    private final File dir;
+
+    /**
+     * Writes the print to the given stream
+     */
+    @FunctionalInterface
+    public interface Renderer {
+        void render(OutputStream out) throws IOException, ServiceException;
+    }
+
+    public PrintJobQueue(int poolSize, int queueSize, int userLimit, long ttl, File dir) {
+        this.userLimit = userLimit;
+        this.ttl = ttl;
+        this.dir = dir;
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                r -> {
+                    Thread t = new Thread(r, "oskari-print-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "oskari-print-cleaner");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = Math.max(ttl / 4, 1000L);
+        cleaner.scheduleWithFixedDelay(this::removeExpired, interval, interval, TimeUnit.MILLISECONDS);
+        registerGauges();
+    }
+
+    public static synchronized PrintJobQueue getInstance() {
+        if (instance == null) {
+            File defaultDir = new File(System.getProperty("java.io.tmpdir"), "oskari-print");
+            instance = new PrintJobQueue(
+                    PropertyUtil.getOptional(PROPERTY_PREFIX + "pool.size", 2),
+                    PropertyUtil.getOptional(PROPERTY_PREFIX + "pool.queue", 20),
+                    PropertyUtil.getOptional(PROPERTY_PREFIX + "user.limit", 2),
+                    PropertyUtil.getOptional(PROPERTY_PREFIX + "ttlms", DEFAULT_TTL_MS),
+                    new File(PropertyUtil.get(PROPERTY_PREFIX + "dir", defaultDir.getAbsolutePath())));
+        }
+        return instance;
+    }
+
+    /**
+     * Queues the print for rendering
+     * @param owner identifies the user, the job is only available to the same owner
+     * @throws ServiceException if the owner already has too many prints in progress or the queue is full
+     */
+    public PrintJob submit(String owner, PrintFormat format, Renderer renderer) throws ServiceException {
+        final PrintJob job = new PrintJob(UUID.randomUUID().toString(), owner, format);
+        synchronized (this) {
+            long active = jobs.values().stream()
+                    .filter(j -> j.getOwner().equals(owner) && j.getStatus().isActive())
+                    .count();
+            if (active >= userLimit) {
+                getMetrics().meter(METRICS_PREFIX + ".rejected").mark();
+                throw new ServiceException("Too many prints in progress");
+            }
+            jobs.put(job.getId(), job);
+        }
+        try {
+            job.setFuture(executor.submit(() -> run(job, renderer)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            getMetrics().meter(METRICS_PREFIX + ".rejected").mark();
+            throw new ServiceException("Print queue is full");
+        }
+        return job;
+    }
+
+    /**
+     * @return the job or null if not found or owned by someone else
+     */
+    public PrintJob getJob(String id, String owner) {
+        PrintJob job = id == null ? null : jobs.get(id);
+        if (job == null || !job.getOwner().equals(owner)) {
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * Cancels the job if it's still queued or running and removes the rendered print
+     * @return false if the job wasn't found
+     */
+    public boolean cancel(String id, String owner) {
+        PrintJob job = getJob(id, owner);
+        if (job == null) {
+            return false;
+        }
+        job.cancel();
+        remove(job);
+        return true;
+    }
+
+    /**
+     * @return number of prints waiting for a worker thread
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    private void run(PrintJob job, Renderer renderer) {
+        if (!job.start()) {
+            // cancelled while in queue
+            return;
+        }
+        File file = null;
+        final Timer.Context timer = getMetrics().timer(METRICS_PREFIX + ".render").time();
+        try {
+            Files.createDirectories(dir.toPath());
+            file = File.createTempFile("print-", "." + job.getFormat().fileExtension, dir);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.toPath()))) {
+                renderer.render(out);
+            }
+            if (job.complete(file)) {
+                file = null;
+            }
+        } catch (Exception e) {
+            if (job.getStatus() != PrintJob.Status.CANCELLED) {
+                LOG.warn(e, "Failed to render print");
+                getMetrics().meter(METRICS_PREFIX + ".failed").mark();
+                job.fail(e.getMessage());
+            }
+        } finally {
+            timer.stop();
+            // not needed if the job failed or was cancelled
+            delete(file);
+        }
+    }
+
+    protected void removeExpired() {
+        final long now = System.currentTimeMillis();
+        Iterator<PrintJob> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            PrintJob job = it.next();
+            long finished = job.getFinished();
+            if (finished > 0 && now - finished > ttl) {
+                it.remove();
+                delete(job.getFile());
+            }
+        }
+    }
+
+    private void remove(PrintJob job) {
+        jobs.remove(job.getId());
+        delete(job.getFile());
+    }
+
+    private static void delete(File file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            LOG.warn(e, "Failed to delete print:", file.getAbsolutePath());
+        }
+    }
+
+    private void registerGauges() {
+        final Gauge<Integer> queued = this::getQueueDepth;
+        final Gauge<Integer> running = executor::getActiveCount;
+        getMetrics().gauge(METRICS_PREFIX + ".queue", () -> queued);
+        getMetrics().gauge(METRICS_PREFIX + ".running", () -> running);
+    }
+
+    private static MetricRegistry getMetrics() {
+        return ActionControl.getMetrics();
+    }
+
+    /**
+     * Stops the worker threads and removes the rendered prints
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        cleaner.shutdownNow();
+        jobs.values().forEach(job -> {
+            job.cancel();
+            delete(job.getFile());
+        });
+        jobs.clear();
+    }
+}
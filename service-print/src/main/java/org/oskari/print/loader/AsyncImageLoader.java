@@ -1,6 +1,9 @@
 package org.oskari.print.loader;
 
+import java.awt.geom.Area;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,6 +22,15 @@ public class AsyncImageLoader {
 
     public static Map<Integer, Future<BufferedImage>> initLayers(PrintRequest request, WMTSCapabilitiesCache wmtsCapsCache)
             throws ServiceException {
+        return initLayers(request, wmtsCapsCache, false);
+    }
+
+    /**
+     * @param skipHidden true to skip loading WMTS tiles that are completely covered by cached tiles of
+     *                   opaque WMTS layers on top of them. Only usable when the layers are flattened to a single image.
+     */
+    public static Map<Integer, Future<BufferedImage>> initLayers(PrintRequest request, WMTSCapabilitiesCache wmtsCapsCache,
+            boolean skipHidden) throws ServiceException {
         final Map<Integer, Future<BufferedImage>> images = new HashMap<>();
 
         final List<PrintLayer> requestedLayers = request.getLayers();
@@ -31,15 +43,28 @@ public class AsyncImageLoader {
         final double[] bbox = request.getBoundingBox();
         final String srsName = request.getSrsName();
 
-        for (PrintLayer layer : requestedLayers) {
+        // go through the layers from top to bottom to know what's covered by the layers on top
+        final List<PrintLayer> topToBottom = new ArrayList<>(requestedLayers);
+        topToBottom.sort(Comparator.comparing(PrintLayer::getZIndex).reversed());
+        final Area covered = new Area();
+
+        for (PrintLayer layer : topToBottom) {
             switch (layer.getType()) { 
             case OskariLayer.TYPE_WMS:
                 images.put(layer.getZIndex(), new CommandLoadImageWMS(layer, 
                         width, height, bbox, srsName,request.getTime()).queue());
                 break;
             case OskariLayer.TYPE_WMTS:
-                images.put(layer.getZIndex(), new CommandLoadImageWMTS(layer, width, height, bbox, srsName,
-                        wmtsCapsCache.get(layer), request.getResolution()).queue());
+                CommandLoadImageWMTS wmts = new CommandLoadImageWMTS(layer, width, height, bbox, srsName,
+                        wmtsCapsCache.get(layer), request.getResolution(),
+                        skipHidden && !covered.isEmpty() ? new Area(covered) : null);
+                if (skipHidden) {
+                    Area opaque = wmts.getOpaqueArea();
+                    if (opaque != null) {
+                        covered.add(opaque);
+                    }
+                }
+                images.put(layer.getZIndex(), wmts.queue());
                 break;
             case OskariLayer.TYPE_ARCGIS93:
                 images.put(layer.getZIndex(), new CommandLoadImageArcGISREST(layer,
@@ -1,9 +1,8 @@
 package org.oskari.print.loader;
 
 import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.HttpURLConnection;
 
 import javax.imageio.ImageIO;
@@ -39,21 +38,33 @@ public class CommandLoadImageFromURL extends CommandLoadImageBase {
     }
 
     public static BufferedImage load(String uri, String user, String pass) throws InterruptedException, IOException {
+        byte[] bytes = loadBytes(uri, user, pass);
+        return bytes == null ? null : decode(bytes);
+    }
+
+    /**
+     * Loads the encoded image without decoding it
+     * @return null if the image couldn't be loaded
+     */
+    public static byte[] loadBytes(String uri, String user, String pass) throws InterruptedException {
         LOG.info("Loading image from:", uri);
         for (int i = 0; i < RETRY_COUNT; i++) {
             try {
                 HttpURLConnection conn = IOHelper.getConnection(uri, user, pass);
-                if (conn.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
-                    // short-circuit 404 as we get these a lot in the log
-                    return null;
-                }
-                if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
-                    // Try again after sleep if not ok
-                    Thread.sleep(SLEEP_BETWEEN_RETRIES_MS);
-                    continue;
-                }
-                try (InputStream in = new BufferedInputStream(conn.getInputStream())) {
-                    return ImageIO.read(in);
+                try {
+                    if (conn.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+                        // short-circuit 404 as we get these a lot in the log
+                        return null;
+                    }
+                    if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                        // Try again after sleep if not ok
+                        Thread.sleep(SLEEP_BETWEEN_RETRIES_MS);
+                        continue;
+                    }
+                    return IOHelper.readBytes(conn);
+                } finally {
+                    // frees the connection for the next request to the host if the response wasn't read
+                    IOHelper.closeSilently(conn);
                 }
             } catch (IOException e) {
                 LOG.warn(e, "Failed to load image from:", uri);
@@ -64,6 +75,10 @@ public class CommandLoadImageFromURL extends CommandLoadImageBase {
         return null;
     }
 
+    public static BufferedImage decode(byte[] bytes) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(bytes));
+    }
+
     @Override
     public BufferedImage getFallback() {
         return null;
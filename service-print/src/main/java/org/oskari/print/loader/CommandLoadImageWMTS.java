@@ -1,6 +1,8 @@
 package org.oskari.print.loader;
 
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Area;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
@@ -12,6 +14,7 @@ import org.oskari.print.util.Units;
 import org.oskari.print.wmts.GetTileRequestBuilder;
 import org.oskari.print.wmts.GetTileRequestBuilderKVP;
 import org.oskari.print.wmts.GetTileRequestBuilderREST;
+import org.oskari.print.wmts.WMTSTileCache;
 
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
@@ -33,6 +36,7 @@ public class CommandLoadImageWMTS extends CommandLoadImageBase {
 
     private static final Logger LOG = LogFactory.getLogger(CommandLoadImageWMTS.class);
     private static final double EPSILON = 0.015625;
+    private static final String OPAQUE_FORMAT = "image/jpeg";
 
     private static final String[] FORMAT_TO_USE = new String[]{
         "image/png",
@@ -50,6 +54,9 @@ public class CommandLoadImageWMTS extends CommandLoadImageBase {
 
     private final OskariLayerService layerService = new OskariLayerServiceMybatisImpl();
 
+    private Area covered;
+    private TileGrid grid;
+
     public CommandLoadImageWMTS(PrintLayer layer,
             int width,
             int height,
@@ -68,95 +75,204 @@ public class CommandLoadImageWMTS extends CommandLoadImageBase {
         this.resolution = resolution;
     }
 
-    @Override
-    public BufferedImage run() throws Exception {
-        WMTSCapabilitiesLayer layerCapabilities = getLayerCapabilities();
-        TileMatrixSet tms = getTileMatrixSet();
-        TileMatrix tm = getTileMatrix(tms);
-
-        int tileWidth = tm.getTileWidth();
-        int tileHeight = tm.getTileHeight();
-
-        double[] topLeft = tm.getTopLeftCorner();
-        double minX = topLeft[0];
-        double maxY = topLeft[1];
+    /**
+     * @param covered area of the print (in pixels) covered by opaque layers on top of this one,
+     *                tiles inside it are not loaded. Null to load all the tiles.
+     */
+    public CommandLoadImageWMTS(PrintLayer layer,
+            int width,
+            int height,
+            double[] bbox,
+            String srs,
+            WMTSCapabilities capabilities,
+            double resolution,
+            Area covered) {
+        this(layer, width, height, bbox, srs, capabilities, resolution);
+        this.covered = covered;
+    }
 
-        // Round to the nearest px
-        long minXPx = Math.round((bbox[0] - minX) / resolution);
-        long maxYPx = Math.round((maxY - bbox[3]) / resolution);
+    /**
+     * Tiles of the layer that intersect the print area
+     */
+    private class TileGrid {
+        private final WMTSCapabilitiesLayer layerCapabilities;
+        private final TileMatrixSet tms;
+        private final TileMatrix tm;
+        private final int tileWidth;
+        private final int tileHeight;
+        private final int minTileCol;
+        private final int minTileRow;
+        private final int offsetXPixels;
+        private final int offsetYPixels;
+        private final int countTileCols;
+        private final int countTileRows;
+
+        private TileGrid() {
+            layerCapabilities = getLayerCapabilities();
+            tms = getTileMatrixSet();
+            tm = getTileMatrix(tms);
+
+            tileWidth = tm.getTileWidth();
+            tileHeight = tm.getTileHeight();
+
+            double[] topLeft = tm.getTopLeftCorner();
+            double minX = topLeft[0];
+            double maxY = topLeft[1];
+
+            // Round to the nearest px
+            long minXPx = Math.round((bbox[0] - minX) / resolution);
+            long maxYPx = Math.round((maxY - bbox[3]) / resolution);
+
+            minTileCol = (int) (minXPx / tileWidth);
+            minTileRow = (int) (maxYPx / tileHeight);
+
+            double minTileX = minX + minTileCol * tileWidth * resolution;
+            double maxTileY = maxY - minTileRow * tileHeight * resolution;
+
+            double offsetX = bbox[0] - minTileX;
+            double offsetY = maxTileY - bbox[3];
+
+            offsetXPixels = (int) Math.round((offsetX / resolution));
+            offsetYPixels = (int) Math.round((offsetY / resolution));
+
+            int cols = 1 + (width + offsetXPixels) / tileWidth;
+            int rows = 1 + (height + offsetYPixels) / tileHeight;
+
+            // If the tile happens to fit perfectly don't fetch unnecessary tiles
+            if (offsetXPixels == 0 && width % tileWidth == 0) {
+                cols--;
+            }
+            if (offsetYPixels == 0 && height % tileHeight == 0) {
+                rows--;
+            }
+            countTileCols = cols;
+            countTileRows = rows;
+        }
 
-        int minTileCol = (int) (minXPx / tileWidth);
-        int minTileRow = (int) (maxYPx / tileHeight);
+        private boolean isInMatrix(int row, int col) {
+            int r = minTileRow + row;
+            int c = minTileCol + col;
+            return r >= 0 && r < tm.getMatrixHeight() && c >= 0 && c < tm.getMatrixWidth();
+        }
 
-        double minTileX = minX + minTileCol * tileWidth * resolution;
-        double maxTileY = maxY - minTileRow * tileHeight * resolution;
+        private int getX(int col) {
+            return tileWidth * col - offsetXPixels;
+        }
 
-        double offsetX = bbox[0] - minTileX;
-        double offsetY = maxTileY - bbox[3];
+        private int getY(int row) {
+            return tileHeight * row - offsetYPixels;
+        }
 
-        int offsetXPixels = (int) Math.round((offsetX / resolution));
-        int offsetYPixels = (int) Math.round((offsetY / resolution));
+        /**
+         * @return the part of the print area covered by the tile (in pixels)
+         */
+        private Rectangle getTileArea(int row, int col) {
+            return new Rectangle(getX(col), getY(row), tileWidth, tileHeight)
+                    .intersection(new Rectangle(0, 0, width, height));
+        }
+    }
 
-        int countTileCols = 1 + (width + offsetXPixels) / tileWidth;
-        int countTileRows = 1 + (height + offsetYPixels) / tileHeight;
+    private TileGrid getGrid() {
+        if (grid == null) {
+            grid = new TileGrid();
+        }
+        return grid;
+    }
 
-        // If the tile happens to fit perfectly don't fetch unnecessary tiles
-        if (offsetXPixels == 0 && width % tileWidth == 0) {
-            countTileCols--;
+    /**
+     * Returns the area of the print the layer covers completely so layers below it don't need
+     * to be loaded there. Only layers without transparency (JPEG tiles at full opacity) are considered opaque.
+     * Only tiles that are already in WMTSTileCache are counted so a tile that fails to load
+     * doesn't leave a hole in the print where the layers below it were skipped.
+     * @return area in pixels or null if the layer isn't opaque
+     */
+    public Area getOpaqueArea() {
+        if (layer.getOpacity() < 100) {
+            return null;
         }
-        if (offsetYPixels == 0 && height % tileHeight == 0) {
-            countTileRows--;
+        try {
+            TileGrid g = getGrid();
+            if (!OPAQUE_FORMAT.equals(getTileFormat(g.layerCapabilities))) {
+                return null;
+            }
+            Area opaque = new Area();
+            for (int row = 0; row < g.countTileRows; row++) {
+                for (int col = 0; col < g.countTileCols; col++) {
+                    if (!g.isInMatrix(row, col)) {
+                        continue;
+                    }
+                    String key = WMTSTileCache.getKey(layer, g.tms.getId(), g.tm.getId(),
+                            g.minTileRow + row, g.minTileCol + col);
+                    if (WMTSTileCache.contains(key)) {
+                        opaque.add(new Area(g.getTileArea(row, col)));
+                    }
+                }
+            }
+            return opaque.isEmpty() ? null : opaque;
+        } catch (RuntimeException e) {
+            // the error is reported when the layer is loaded
+            return null;
         }
+    }
+
+    @Override
+    public BufferedImage run() throws Exception {
+        TileGrid g = getGrid();
+        TileMatrixSet tms = g.tms;
+        TileMatrix tm = g.tm;
 
         List<Future<BufferedImage>> futureTiles
-                = new ArrayList<Future<BufferedImage>>(countTileRows * countTileCols);
+                = new ArrayList<Future<BufferedImage>>(g.countTileRows * g.countTileCols);
 
-        ResourceUrl tileResourceUrl = layerCapabilities.getResourceUrlByType("tile");
+        ResourceUrl tileResourceUrl = g.layerCapabilities.getResourceUrlByType("tile");
         GetTileRequestBuilder requestBuilder;
         if (tileResourceUrl != null) {
             requestBuilder = getTileRequestBuilderREST(tms.getId(), tm.getId(), tileResourceUrl);
         } else {
-            requestBuilder = getTileRequestBuilderKVP(tms.getId(), tm.getId(), layerCapabilities);
+            requestBuilder = getTileRequestBuilderKVP(tms.getId(), tm.getId(), g.layerCapabilities);
         }
 
-        for (int row = 0; row < countTileRows; row++) {
-            int r = minTileRow + row;
-            if (r < 0 || r >= tm.getMatrixHeight()) {
-                // Don't request tiles outside of TileMatrix limits
-                // Add nulls instead so that the calculations are easier
-                for (int col = 0; col < countTileCols; col++) {
-                    futureTiles.add(null);
-                }
-                continue;
-            }
+        int skipped = 0;
+        for (int row = 0; row < g.countTileRows; row++) {
+            int r = g.minTileRow + row;
             requestBuilder.tileRow(r);
-            for (int col = 0; col < countTileCols; col++) {
-                int c = minTileCol + col;
-                if (c < 0 || c >= tm.getMatrixWidth()) {
+            for (int col = 0; col < g.countTileCols; col++) {
+                if (!g.isInMatrix(row, col)) {
                     // Don't request tiles outside of TileMatrix limits
-                    // Add nulls so that the calculations are easier
+                    // Add nulls instead so that the calculations are easier
                     futureTiles.add(null);
                     continue;
                 }
+                if (isCovered(g, row, col)) {
+                    // Hidden under opaque layers, don't load or decode
+                    futureTiles.add(null);
+                    skipped++;
+                    continue;
+                }
+                int c = g.minTileCol + col;
                 requestBuilder.tileCol(c);
                 String uri = requestBuilder.build();
-                futureTiles.add(new CommandLoadImageFromURL(
-                        Integer.toString(layer.getId()), uri,
+                String key = WMTSTileCache.getKey(layer, tms.getId(), tm.getId(), r, c);
+                futureTiles.add(new CommandLoadTileWMTS(
+                        Integer.toString(layer.getId()), key, uri,
                         layer.getUsername(), layer.getPassword()).queue());
             }
         }
+        if (skipped > 0) {
+            LOG.debug("Skipped", skipped, "tiles of layer", layer.getId(), "covered by opaque layers");
+        }
 
         BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         Graphics2D g2d = bi.createGraphics();
 
         int tileIndex = 0;
-        for (int row = 0; row < countTileRows; row++) {
-            int y = tileHeight * row - offsetYPixels;
-            for (int col = 0; col < countTileCols; col++) {
-                int x = tileWidth * col - offsetXPixels;
+        for (int row = 0; row < g.countTileRows; row++) {
+            int y = g.getY(row);
+            for (int col = 0; col < g.countTileCols; col++) {
+                int x = g.getX(col);
                 Future<BufferedImage> futureTile = futureTiles.get(tileIndex++);
                 if (futureTile == null) {
-                    // futureTile is null if the the tile is outside TileMatrix limits
+                    // futureTile is null if the the tile is outside TileMatrix limits or covered
                     continue;
                 }
                 BufferedImage tile = futureTile.get();
@@ -172,6 +288,22 @@ public class CommandLoadImageWMTS extends CommandLoadImageBase {
         return bi;
     }
 
+    private boolean isCovered(TileGrid g, int row, int col) {
+        if (covered == null) {
+            return false;
+        }
+        Rectangle tile = g.getTileArea(row, col);
+        return tile.isEmpty() || covered.contains(tile);
+    }
+
+    private String getTileFormat(WMTSCapabilitiesLayer layerCapabilities) {
+        ResourceUrl tileResourceUrl = layerCapabilities.getResourceUrlByType("tile");
+        if (tileResourceUrl != null) {
+            return tileResourceUrl.getFormat();
+        }
+        return getFormat(layerCapabilities.getFormats());
+    }
+
     private WMTSCapabilitiesLayer getLayerCapabilities() throws IllegalArgumentException {
         WMTSCapabilitiesLayer layerCapabilities = capabilities.getLayer(layer.getName());
         if (layerCapabilities != null) {
@@ -0,0 +1,44 @@
+package org.oskari.print.loader;
+
+import java.awt.image.BufferedImage;
+
+import org.oskari.print.wmts.WMTSTileCache;
+
+/**
+ * HystrixCommand that loads a single WMTS tile. Encoded tiles are shared
+ * between prints with WMTSTileCache.
+ */
+public class CommandLoadTileWMTS extends CommandLoadImageBase {
+
+    private final String key;
+    private final String uri;
+    private final String user;
+    private final String pass;
+
+    protected CommandLoadTileWMTS(String commandName, String key, String uri, String user, String pass) {
+        super(commandName);
+        this.key = key;
+        this.uri = uri;
+        this.user = user;
+        this.pass = pass;
+    }
+
+    @Override
+    public BufferedImage run() throws Exception {
+        byte[] tile = WMTSTileCache.get(key, __ -> {
+            try {
+                return CommandLoadImageFromURL.loadBytes(uri, user, pass);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        });
+        return tile == null ? null : CommandLoadImageFromURL.decode(tile);
+    }
+
+    @Override
+    public BufferedImage getFallback() {
+        return null;
+    }
+
+}
@@ -2,11 +2,11 @@ package org.oskari.print.request;
 
 import java.util.List;
 
-import org.geotools.referencing.CRS;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import fi.nls.oskari.domain.User;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 
 public class PrintRequest {
     
@@ -63,7 +63,7 @@ public class PrintRequest {
 
     public void setSrsName(String srsName) throws FactoryException {
         this.srsName = srsName;
-        this.crs = CRS.decode(srsName, true);
+        this.crs = CRSRegistry.decode(srsName, true);
     }
 
     public CoordinateReferenceSystem getCrs() {
@@ -200,6 +200,28 @@ public class PrintRequest {
         };
     }
     
+    /**
+     * Request for a horizontal strip of the map with the same resolution and width
+     * @param y first row of the strip, 0 being the top row of the map
+     * @param stripHeight number of rows in the strip
+     */
+    public PrintRequest getStrip(int y, int stripHeight) {
+        PrintRequest strip = new PrintRequest();
+        strip.user = user;
+        strip.east = east;
+        strip.north = north + (height * 0.5 - y - stripHeight * 0.5) * resolution;
+        strip.srsName = srsName;
+        strip.crs = crs;
+        strip.resolution = resolution;
+        strip.width = width;
+        strip.height = stripHeight;
+        strip.format = format;
+        strip.layers = layers;
+        strip.markers = markers;
+        strip.time = time;
+        return strip;
+    }
+
     public String getTime() {
         return time;
     }
@@ -0,0 +1,53 @@
+package org.oskari.print.wmts;
+
+import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.cache.CacheSerializer;
+import fi.nls.oskari.cache.ComputeOnceCache;
+import org.oskari.print.request.PrintLayer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Caches encoded WMTS tiles so prints of the same area share the tiles instead of
+ * downloading them again. Concurrent requests for the same tile are made only once.
+ * The size of the in-heap cache can be configured with oskari.cache.maxWeight.[cache name] (bytes)
+ * and a second tier with oskari.cache.tier.[cache name]=redis|offheap.
+ */
+public class WMTSTileCache {
+
+    private static final String CACHE_NAME = WMTSTileCache.class.getName();
+    private static final int LIMIT = 10000;
+    private static final long MAX_WEIGHT = 128L * 1024L * 1024L;
+    private static final long EXPIRATION = TimeUnit.HOURS.toMillis(1);
+
+    private WMTSTileCache() {}
+
+    private static ComputeOnceCache<byte[]> getCache() {
+        return CacheManager.getCache(CACHE_NAME, () -> {
+            ComputeOnceCache<byte[]> cache = new ComputeOnceCache<>(LIMIT, EXPIRATION);
+            cache.setMaxWeight(MAX_WEIGHT);
+            cache.setSerializer(CacheSerializer.BYTES);
+            return cache;
+        });
+    }
+
+    public static String getKey(PrintLayer layer, String tileMatrixSet, String tileMatrix, int row, int col) {
+        return layer.getId() + "_" + layer.getStyle() + "_" + tileMatrixSet + "_" + tileMatrix + "_" + row + "_" + col;
+    }
+
+    /**
+     * @return true if the tile is cached and can be used without loading it
+     */
+    public static boolean contains(String key) {
+        return getCache().get(key) != null;
+    }
+
+    /**
+     * @param loader loads the encoded tile if it's not cached, can return null if the tile is not available
+     * @return encoded tile or null if not available
+     */
+    public static byte[] get(String key, Function<String, byte[]> loader) {
+        return getCache().get(key, loader);
+    }
+}
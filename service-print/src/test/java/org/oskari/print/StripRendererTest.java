@@ -0,0 +1,99 @@
+package org.oskari.print;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+
+import javax.imageio.ImageIO;
+
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.oskari.print.request.PrintFormat;
+import org.oskari.print.request.PrintRequest;
+
+import fi.nls.oskari.domain.User;
+
+import static org.junit.Assert.*;
+
+public class StripRendererTest {
+
+    @Test
+    public void testStripsCoverTheMap() throws Exception {
+        PrintRequest request = getRequest(300, 250);
+        StripRenderer renderer = new StripRenderer(request, null, null, true, 100);
+        assertEquals(3, renderer.getStripCount());
+        assertEquals(200, renderer.getY(2));
+        assertEquals(50, renderer.getHeight(2));
+
+        double[] bbox = request.getBoundingBox();
+        double top = bbox[3];
+        for (int i = 0; i < renderer.getStripCount(); i++) {
+            double[] strip = request.getStrip(renderer.getY(i), renderer.getHeight(i)).getBoundingBox();
+            assertEquals(bbox[0], strip[0], 1e-6);
+            assertEquals(bbox[2], strip[2], 1e-6);
+            assertEquals(top, strip[3], 1e-6);
+            assertEquals(renderer.getHeight(i) * request.getResolution(), strip[3] - strip[1], 1e-6);
+            top = strip[1];
+        }
+        assertEquals(bbox[1], top, 1e-6);
+    }
+
+    @Test
+    public void testPNGIsWrittenInStrips() throws Exception {
+        PrintRequest request = getRequest(300, 250);
+        StripRenderer renderer = new StripRenderer(request, null, null, true, 100);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(new StripImage(renderer, 300, 250), PrintFormat.PNG.fileExtension, baos));
+
+        BufferedImage bi = ImageIO.read(new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals(300, bi.getWidth());
+        assertEquals(250, bi.getHeight());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStripsMustBeRenderedInOrder() throws Exception {
+        StripRenderer renderer = new StripRenderer(getRequest(300, 250), null, null, true, 100);
+        renderer.render(1);
+    }
+
+    @Test
+    public void testStripOnlyHasNearbyFeatures() {
+        SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+        typeBuilder.setName("test");
+        typeBuilder.add("geom", Point.class);
+        SimpleFeatureType type = typeBuilder.buildFeatureType();
+        GeometryFactory gf = new GeometryFactory();
+        ListFeatureCollection fc = new ListFeatureCollection(type);
+        for (int y = 0; y < 10; y++) {
+            SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+            builder.add(gf.createPoint(new Coordinate(5, y * 10)));
+            fc.add(builder.buildFeature("f" + y));
+        }
+
+        SimpleFeatureCollection strip = StripRenderer.filter(fc, new Envelope(0, 10, 20, 40));
+        assertEquals(3, strip.size());
+        assertNull(StripRenderer.filter(null, new Envelope(0, 10, 20, 40)));
+    }
+
+    private static PrintRequest getRequest(int width, int height) {
+        PrintRequest request = new PrintRequest();
+        request.setUser(new User());
+        request.setEast(500000);
+        request.setNorth(7000000);
+        request.setResolution(2.5);
+        request.setWidth(width);
+        request.setHeight(height);
+        request.setLayers(new ArrayList<>());
+        request.setMarkers("");
+        return request;
+    }
+}
@@ -0,0 +1,113 @@
+package org.oskari.print.job;
+
+import fi.nls.oskari.service.ServiceException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.oskari.print.request.PrintFormat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PrintJobQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PrintJobQueue queue;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        queue = new PrintJobQueue(1, 10, 2, 50L, folder.newFolder("prints"));
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        queue.shutdown();
+    }
+
+    @Test
+    public void testPrintIsWrittenToFile() throws Exception {
+        PrintJob job = queue.submit("a", PrintFormat.PNG, out -> out.write("print".getBytes(StandardCharsets.UTF_8)));
+        waitFor(job);
+        assertEquals(PrintJob.Status.DONE, job.getStatus());
+        assertTrue(job.getFile().getName().endsWith(".png"));
+        assertEquals("print", new String(Files.readAllBytes(job.getFile().toPath()), StandardCharsets.UTF_8));
+        assertSame(job, queue.getJob(job.getId(), "a"));
+        assertNull("Job should only be available to its owner", queue.getJob(job.getId(), "b"));
+    }
+
+    @Test
+    public void testFailedPrint() throws Exception {
+        PrintJob job = queue.submit("a", PrintFormat.PDF, out -> {
+            throw new ServiceException("Failed");
+        });
+        waitFor(job);
+        assertEquals(PrintJob.Status.FAILED, job.getStatus());
+        assertEquals("Failed", job.getError());
+        assertNull(job.getFile());
+    }
+
+    @Test
+    public void testUserLimit() throws Exception {
+        queue.submit("a", PrintFormat.PDF, out -> await());
+        queue.submit("a", PrintFormat.PDF, out -> await());
+        try {
+            queue.submit("a", PrintFormat.PDF, out -> await());
+            fail("Should have rejected the third print");
+        } catch (ServiceException expected) {
+            // user limit reached
+        }
+        assertNotNull("Other users should be able to print", queue.submit("b", PrintFormat.PDF, out -> await()));
+    }
+
+    @Test
+    public void testCancelQueuedJob() throws Exception {
+        PrintJob running = queue.submit("a", PrintFormat.PDF, out -> await());
+        PrintJob queued = queue.submit("a", PrintFormat.PDF, out -> out.write(1));
+        assertEquals(1, queue.getQueueDepth());
+        assertTrue(queue.cancel(queued.getId(), "a"));
+        assertEquals(PrintJob.Status.CANCELLED, queued.getStatus());
+        assertNull(queue.getJob(queued.getId(), "a"));
+
+        release.countDown();
+        waitFor(running);
+        assertEquals(PrintJob.Status.DONE, running.getStatus());
+        assertEquals(PrintJob.Status.CANCELLED, queued.getStatus());
+    }
+
+    @Test
+    public void testExpiredJobsAreRemoved() throws Exception {
+        PrintJob job = queue.submit("a", PrintFormat.PNG, out -> out.write(1));
+        waitFor(job);
+        File file = job.getFile();
+        Thread.sleep(100L);
+        queue.removeExpired();
+        assertNull(queue.getJob(job.getId(), "a"));
+        assertFalse("File should be removed", file.exists());
+    }
+
+    private void await() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(PrintJob job) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000L;
+        while (job.getStatus().isActive() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10L);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.oskari.print.wmts;
+
+import fi.nls.oskari.domain.map.OskariLayer;
+import org.junit.Test;
+import org.oskari.print.request.PrintLayer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class WMTSTileCacheTest {
+
+    @Test
+    public void testTileIsLoadedOnce() {
+        AtomicInteger loads = new AtomicInteger();
+        String key = WMTSTileCache.getKey(layer(1, null), "EPSG:3067", "5", 10, 20);
+        byte[] tile = WMTSTileCache.get(key, __ -> {
+            loads.incrementAndGet();
+            return new byte[] { 1, 2, 3 };
+        });
+        assertSame(tile, WMTSTileCache.get(key, __ -> {
+            loads.incrementAndGet();
+            return new byte[] { 4, 5, 6 };
+        }));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testMissingTileIsNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        String key = WMTSTileCache.getKey(layer(2, null), "EPSG:3067", "5", 10, 20);
+        assertNull(WMTSTileCache.get(key, __ -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        WMTSTileCache.get(key, __ -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testContains() {
+        String key = WMTSTileCache.getKey(layer(4, null), "EPSG:3067", "5", 10, 20);
+        assertFalse(WMTSTileCache.contains(key));
+        WMTSTileCache.get(key, __ -> new byte[] { 1 });
+        assertTrue(WMTSTileCache.contains(key));
+    }
+
+    @Test
+    public void testKeyHasStyle() {
+        assertNotEquals(WMTSTileCache.getKey(layer(3, "a"), "EPSG:3067", "5", 10, 20),
+                WMTSTileCache.getKey(layer(3, "b"), "EPSG:3067", "5", 10, 20));
+    }
+
+    private static PrintLayer layer(int id, String style) {
+        OskariLayer oskariLayer = new OskariLayer();
+        oskariLayer.setId(id);
+        PrintLayer layer = new PrintLayer(0);
+        layer.setOskariLayer(oskariLayer);
+        layer.setStyle(style);
+        return layer;
+    }
+}
@@ -7,12 +7,12 @@ import fi.nls.oskari.annotation.Oskari;
 import fi.nls.oskari.domain.geo.Point;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.map.geometry.ProjectionHelper;
 import fi.nls.oskari.search.channel.SearchChannel;
 import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.PropertyUtil;
-import org.geotools.referencing.CRS;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -99,8 +99,8 @@ public class OpenStreetMapSearchChannel extends SearchChannel {
 
         try {
             // Lon,lat  (east coordinate is always first in transformation input and output
-            CoordinateReferenceSystem sourceCrs = CRS.decode(SERVICE_SRS, true);
-            CoordinateReferenceSystem targetCrs = CRS.decode(srs, true);
+            CoordinateReferenceSystem sourceCrs = CRSRegistry.decode(SERVICE_SRS, true);
+            CoordinateReferenceSystem targetCrs = CRSRegistry.decode(srs, true);
             final JSONArray data = getData(searchCriteria);
             for (int i = 0; i < data.length(); i++) {
                 JSONObject dataItem = data.getJSONObject(i);
@@ -7,13 +7,13 @@ import fi.nls.oskari.annotation.Oskari;
 import fi.nls.oskari.domain.geo.Point;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.map.geometry.ProjectionHelper;
 import fi.nls.oskari.search.channel.SearchChannel;
 import fi.nls.oskari.util.ConversionHelper;
 import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.PropertyUtil;
-import org.geotools.referencing.CRS;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
@@ -139,8 +139,8 @@ public class What3WordsSearchChannel extends SearchChannel {
     }
 
     public Point getServiceCoordinates(double lon, double lat, String srs) throws Exception {
-        final CoordinateReferenceSystem sourceCrs = CRS.decode(srs);
-        final CoordinateReferenceSystem targetCrs = CRS.decode(SERVICE_SRS);
+        final CoordinateReferenceSystem sourceCrs = CRSRegistry.decode(srs);
+        final CoordinateReferenceSystem targetCrs = CRSRegistry.decode(SERVICE_SRS);
 
         Point point = new Point(lon, lat);
         final Point transformed = ProjectionHelper.transformPoint(point, sourceCrs, targetCrs);
@@ -188,8 +188,8 @@ public class What3WordsSearchChannel extends SearchChannel {
     }
 
     public SearchResultItem parseResult(JSONObject dataItem, String targetSrs) throws Exception {
-        final CoordinateReferenceSystem sourceCrs = CRS.decode(SERVICE_SRS);
-        final CoordinateReferenceSystem targetCrs = CRS.decode(targetSrs);
+        final CoordinateReferenceSystem sourceCrs = CRSRegistry.decode(SERVICE_SRS);
+        final CoordinateReferenceSystem targetCrs = CRSRegistry.decode(targetSrs);
         // geoserver seems to setup the forced XY direction so check if it's in effect
         // http://docs.geotools.org/stable/userguide/library/referencing/order.html
 
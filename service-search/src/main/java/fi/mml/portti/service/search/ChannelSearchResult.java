@@ -19,6 +19,8 @@ public class ChannelSearchResult  implements Serializable {
 	private boolean available;
 	private boolean truncated;
 	private boolean queryFailed;
+	private boolean timedOut;
+	private long queryTime;
 
 	private List<SearchResultItem> searchResultItems = new ArrayList<>();
 	private String searchMethod;
@@ -35,6 +37,28 @@ public class ChannelSearchResult  implements Serializable {
 		this.queryFailed = queryFailed;
 	}
 
+	/**
+	 * @return true if the channel didn't respond in time (query is also marked as failed)
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	public void setTimedOut(boolean timedOut) {
+		this.timedOut = timedOut;
+	}
+
+	/**
+	 * @return time in ms it took for the channel to respond
+	 */
+	public long getQueryTime() {
+		return queryTime;
+	}
+
+	public void setQueryTime(long queryTime) {
+		this.queryTime = queryTime;
+	}
+
 	public String getChannelId() {
 		return channelId;
 	}
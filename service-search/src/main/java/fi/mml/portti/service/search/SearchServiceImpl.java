@@ -1,6 +1,8 @@
 package fi.mml.portti.service.search;
 
+import com.codahale.metrics.MetricRegistry;
 import fi.nls.oskari.annotation.Oskari;
+import fi.nls.oskari.control.ActionControl;
 import fi.nls.oskari.domain.User;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
@@ -14,6 +16,9 @@ import org.json.JSONObject;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 @Oskari
 public class SearchServiceImpl extends SearchService implements SearchChannelChangeListener {
@@ -21,6 +26,15 @@ public class SearchServiceImpl extends SearchService implements SearchChannelCha
     /** logger */
     private static final Logger LOG = LogFactory.getLogger(SearchServiceImpl.class);
 
+    private static final String PROPERTY_POOL_SIZE = "search.pool.size";
+    private static final String PROPERTY_POOL_QUEUE = "search.pool.queue";
+    private static final String PROPERTY_TIMEOUT = "search.timeoutms";
+    private static final long DEFAULT_TIMEOUT_MS = 15000L;
+    private static final boolean GATHER_METRICS = PropertyUtil.getOptional("search.metrics", true);
+    private static final String METRICS_PREFIX = "Oskari.Search";
+
+    private static ExecutorService executor;
+
     /** Available channels */
     private volatile Map<String, SearchableChannel> availableChannels = null;
 
@@ -158,11 +172,12 @@ public class SearchServiceImpl extends SearchService implements SearchChannelCha
         final Query query = new Query();
         query.setSearchCriteria(searchCriteria);
 
+        // Channels are queried concurrently so the search takes as long as the slowest channel
+        List<SearchableChannel> channels = new ArrayList<>();
         for (String channelId : searchCriteria.getChannels()) {
             if (!availableChannels.containsKey(channelId)) {
                 continue;
             }
-            long timeStart = System.currentTimeMillis();
             SearchableChannel channel = availableChannels.get(channelId);
             User user = searchCriteria.getUser();
             if(!channel.hasPermission(user)) {
@@ -181,18 +196,34 @@ public class SearchServiceImpl extends SearchService implements SearchChannelCha
                 LOG.debug(e, "Skipping ", channel.getId(), "- criteria not valid");
                 continue;
             }
+            channels.add(channel);
+        }
+
+        List<Future<ChannelSearchResult>> futures = submit(channels, channel -> {
+            long timeStart = System.currentTimeMillis();
             ChannelSearchResult result = handleChannelSearch(searchCriteria, channel);
-            int numResults = -1;
-            if(result != null) {
-                LOG.debug("Result", result);
-                result.setChannelId(channel.getId());
-                query.addChannelSearchResult(result);
-                numResults = result.getNumberOfResults();
+            result.setQueryTime(System.currentTimeMillis() - timeStart);
+            return result;
+        });
+        for (int i = 0; i < channels.size(); i++) {
+            SearchableChannel channel = channels.get(i);
+            ChannelSearchResult result;
+            try {
+                result = getResult(channel, futures.get(i), fullQueryStartTime);
+            } catch (TimeoutException e) {
+                // didn't respond in time, the results from other channels are still returned
+                result = getFailedResult(fullQueryStartTime);
+                result.setTimedOut(true);
+            }
+            if (result == null) {
+                result = getFailedResult(fullQueryStartTime);
             }
-            long timeEnd = System.currentTimeMillis();
+            result.setChannelId(channel.getId());
+            query.addChannelSearchResult(result);
+            updateMetrics(channel.getId(), result);
             LOG.debug("Search query to", channel.getId(),
-                    "took", (timeEnd - timeStart), "ms",
-                    "- got", numResults, "results");
+                    "took", result.getQueryTime(), "ms",
+                    "- got", result.getNumberOfResults(), "results");
         }
 
         long fullQueryEndTime = System.currentTimeMillis();
@@ -209,14 +240,12 @@ public class SearchServiceImpl extends SearchService implements SearchChannelCha
 
         long fullQueryStartTime = System.currentTimeMillis();
 
-        List<String> resultList = null;
+        List<SearchableChannel> channels = new ArrayList<>();
         for (String channelId : searchCriteria.getChannels()) {
             if (!availableChannels.containsKey(channelId)) {
                 continue;
             }
 
-            long timeStart = System.currentTimeMillis();
-
             SearchableChannel channel = availableChannels.get(channelId);
             if (!(channel instanceof SearchAutocomplete)) {
                 continue;
@@ -227,20 +256,29 @@ public class SearchServiceImpl extends SearchService implements SearchChannelCha
                 LOG.debug("Skipping ", channel.getId(), "- User doesn't have permission to access");
                 continue;
             }
+            channels.add(channel);
+        }
 
-
+        List<Future<List<String>>> futures = submit(channels, channel -> {
             try {
-                 resultList = ((SearchAutocomplete) channel).doSearchAutocomplete(searchCriteria.getSearchString());
+                return ((SearchAutocomplete) channel).doSearchAutocomplete(searchCriteria.getSearchString());
             } catch (Exception e) {
                 LOG.error(e, "Search query to", channel.getId(), "failed! Searchstring was '", searchCriteria.getSearchString(), "'");
-                resultList = new ArrayList<String>();
+                return Collections.emptyList();
+            }
+        });
+        List<String> resultList = new ArrayList<>();
+        for (int i = 0; i < channels.size(); i++) {
+            List<String> channelResults;
+            try {
+                channelResults = getResult(channels.get(i), futures.get(i), fullQueryStartTime);
+            } catch (TimeoutException e) {
+                continue;
+            }
+            LOG.debug("Result", channelResults);
+            if (channelResults != null) {
+                resultList.addAll(channelResults);
             }
-
-            LOG.debug("Result", resultList);
-
-            long timeEnd = System.currentTimeMillis();
-            LOG.debug("Search query to", channel.getId(),
-                    "took", (timeEnd - timeStart), "ms");
         }
 
         long fullQueryEndTime = System.currentTimeMillis();
@@ -252,6 +290,89 @@ public class SearchServiceImpl extends SearchService implements SearchChannelCha
         return jsonObject;
     }
 
+    private <T> List<Future<T>> submit(List<SearchableChannel> channels, Function<SearchableChannel, T> search) {
+        List<Future<T>> futures = new ArrayList<>(channels.size());
+        for (SearchableChannel channel : channels) {
+            if (channels.size() == 1) {
+                // no need to hand over a single channel to another thread (the timeout doesn't apply then)
+                FutureTask<T> task = new FutureTask<>(() -> search.apply(channel));
+                task.run();
+                futures.add(task);
+            } else {
+                futures.add(getExecutor().submit(() -> search.apply(channel)));
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * Waits for the channel to respond until the timeout of the channel (counted from start of the search)
+     * @return the result or null if the search failed
+     * @throws TimeoutException if the channel didn't respond in time
+     */
+    private <T> T getResult(SearchableChannel channel, Future<T> future, long searchStartTime) throws TimeoutException {
+        long timeout = getTimeout(channel.getId()) - (System.currentTimeMillis() - searchStartTime);
+        try {
+            return future.get(Math.max(timeout, 0), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOG.warn("Search query to", channel.getId(), "timed out after", getTimeout(channel.getId()), "ms");
+            future.cancel(true);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.error(e.getCause(), "Search query to", channel.getId(), "failed!");
+        }
+        future.cancel(true);
+        return null;
+    }
+
+    private static ChannelSearchResult getFailedResult(long searchStartTime) {
+        ChannelSearchResult result = new ChannelSearchResult();
+        result.setQueryFailed(true);
+        result.setQueryTime(System.currentTimeMillis() - searchStartTime);
+        return result;
+    }
+
+    /**
+     * Timeout for the channel in ms: search.channel.[channel id].timeoutms or search.timeoutms
+     */
+    private static long getTimeout(String channelId) {
+        long defaultTimeout = PropertyUtil.getOptional(PROPERTY_TIMEOUT, DEFAULT_TIMEOUT_MS);
+        return PropertyUtil.getOptional("search.channel." + channelId + ".timeoutms", defaultTimeout);
+    }
+
+    private static void updateMetrics(String channelId, ChannelSearchResult result) {
+        if (!GATHER_METRICS) {
+            return;
+        }
+        MetricRegistry metrics = ActionControl.getMetrics();
+        metrics.timer(METRICS_PREFIX + "." + channelId).update(result.getQueryTime(), TimeUnit.MILLISECONDS);
+        if (result.isTimedOut()) {
+            metrics.meter(METRICS_PREFIX + "." + channelId + ".timeout").mark();
+        } else if (result.isQueryFailed()) {
+            metrics.meter(METRICS_PREFIX + "." + channelId + ".failed").mark();
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            int poolSize = PropertyUtil.getOptional(PROPERTY_POOL_SIZE, 8);
+            int queueSize = PropertyUtil.getOptional(PROPERTY_POOL_QUEUE, 100);
+            AtomicInteger threadNumber = new AtomicInteger();
+            // When the queue is full the search is run on the calling thread instead of failing it
+            executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueSize),
+                    r -> {
+                        Thread t = new Thread(r, "oskari-search-" + threadNumber.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return executor;
+    }
+
     /**
      * Handles actual channel search and catches exceptions
      *
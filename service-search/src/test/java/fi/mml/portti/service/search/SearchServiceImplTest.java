@@ -0,0 +1,129 @@
+package fi.mml.portti.service.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fi.nls.oskari.search.channel.SearchChannel;
+import fi.nls.oskari.util.PropertyUtil;
+
+public class SearchServiceImplTest {
+
+    private static final long WAIT_MS = 5000;
+
+    // released after each test so the timed out search thread can finish
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        PropertyUtil.addProperty("search.channels", "none", true);
+        PropertyUtil.addProperty("search.channel.TimingOutChannel.timeoutms", "100", true);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        PropertyUtil.clearProperties();
+    }
+
+    @Test
+    public void channelsAreSearchedConcurrently() {
+        // both channels must be searching at the same time to get past the barrier
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        SearchServiceImpl service = new SearchServiceImpl();
+        service.addChannel("BarrierChannel", new BarrierChannel(barrier));
+        service.addChannel("OtherBarrierChannel", new BarrierChannel(barrier));
+
+        SearchCriteria sc = new SearchCriteria();
+        sc.setSearchString("test");
+        sc.addChannel("BarrierChannel");
+        sc.addChannel("OtherBarrierChannel");
+
+        Query query = service.doSearch(sc);
+
+        assertEquals(2, query.getResults().size());
+        assertFalse("Channels should be searched concurrently", query.findResult("BarrierChannel").isQueryFailed());
+        assertFalse("Channels should be searched concurrently", query.findResult("OtherBarrierChannel").isQueryFailed());
+        assertEquals(1, query.findResult("BarrierChannel").getNumberOfResults());
+        assertEquals(1, query.findResult("OtherBarrierChannel").getNumberOfResults());
+    }
+
+    @Test
+    public void resultsFromOtherChannelsAreReturnedOnTimeout() {
+        SearchServiceImpl service = new SearchServiceImpl();
+        service.addChannel("FastChannel", new FastChannel());
+        service.addChannel("TimingOutChannel", new BlockingChannel(release));
+
+        SearchCriteria sc = new SearchCriteria();
+        sc.setSearchString("test");
+        sc.addChannel("FastChannel");
+        sc.addChannel("TimingOutChannel");
+
+        Query query = service.doSearch(sc);
+
+        ChannelSearchResult ok = query.findResult("FastChannel");
+        assertFalse(ok.isQueryFailed());
+        assertEquals(1, ok.getNumberOfResults());
+
+        ChannelSearchResult timedOut = query.findResult("TimingOutChannel");
+        assertTrue(timedOut.isQueryFailed());
+        assertTrue(timedOut.isTimedOut());
+        assertEquals(0, timedOut.getNumberOfResults());
+    }
+
+    private static class FastChannel extends SearchChannel {
+        protected void await() throws Exception {}
+
+        @Override
+        public ChannelSearchResult doSearch(SearchCriteria searchCriteria) {
+            try {
+                await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            ChannelSearchResult result = new ChannelSearchResult();
+            SearchResultItem item = new SearchResultItem();
+            item.setTitle(getName());
+            result.addItem(item);
+            return result;
+        }
+    }
+
+    private static class BarrierChannel extends FastChannel {
+        private final CyclicBarrier barrier;
+
+        BarrierChannel(CyclicBarrier barrier) {
+            this.barrier = barrier;
+        }
+
+        @Override
+        protected void await() throws Exception {
+            barrier.await(WAIT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static class BlockingChannel extends FastChannel {
+        private final CountDownLatch latch;
+
+        BlockingChannel(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        protected void await() throws Exception {
+            latch.await(WAIT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+}
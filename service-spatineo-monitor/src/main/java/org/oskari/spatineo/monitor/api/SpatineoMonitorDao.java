@@ -82,7 +82,7 @@ public class SpatineoMonitorDao {
                 LOG.warn("Request:", url, "failed! Unexpected Content-Type:", contentType);
                 return null;
             }
-            try (InputStream in = conn.getInputStream()) {
+            try (InputStream in = IOHelper.getResponseStream(conn)) {
                 return parse(in);
             }
         } catch (IOException e) {
@@ -0,0 +1,206 @@
+package fi.nls.oskari.control.statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.simplify.DouglasPeuckerLineSimplifier;
+
+/**
+ * Simplifies the polygons of a coverage (regions sharing boundaries with their neighbours) so that
+ * a boundary shared by two regions is simplified once and the same simplified line is used for both.
+ * Simplifying each region separately moves the shared boundary differently for the neighbours and
+ * leaves gaps and overlaps between them.
+ *
+ * Rings are split to edges at vertices where more than two boundary lines meet. A boundary is only
+ * recognized as shared when the neighbours have the same vertices on it, which is the case for
+ * regionsets from a topologically clean source. Edges are simplified with Douglas-Peucker, polygons
+ * that become invalid with a large tolerance are repaired with buffer(0).
+ */
+class CoverageSimplifier {
+
+    private final double tolerance;
+    private final Map<Coordinate, Set<Coordinate>> neighbours = new HashMap<>();
+    private final Map<List<Coordinate>, Coordinate[]> simplifiedEdges = new HashMap<>();
+
+    private CoverageSimplifier(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @param geometries geometries of the coverage, non-polygonal geometries are returned as is
+     * @param tolerance distance tolerance for simplifying, 0 to keep the geometries as is
+     * @return simplified geometries in the same order
+     */
+    static List<Geometry> simplify(List<Geometry> geometries, double tolerance) {
+        if (tolerance <= 0) {
+            return geometries;
+        }
+        CoverageSimplifier simplifier = new CoverageSimplifier(tolerance);
+        for (Geometry geom : geometries) {
+            for (LineString ring : getRings(geom)) {
+                simplifier.addRing(ring.getCoordinates());
+            }
+        }
+        List<Geometry> simplified = new ArrayList<>(geometries.size());
+        for (Geometry geom : geometries) {
+            simplified.add(simplifier.simplify(geom));
+        }
+        return simplified;
+    }
+
+    private static List<LineString> getRings(Geometry geom) {
+        if (!(geom instanceof Polygonal)) {
+            return Collections.emptyList();
+        }
+        List<LineString> rings = new ArrayList<>();
+        for (int i = 0; i < geom.getNumGeometries(); i++) {
+            Polygon polygon = (Polygon) geom.getGeometryN(i);
+            rings.add(polygon.getExteriorRing());
+            for (int j = 0; j < polygon.getNumInteriorRing(); j++) {
+                rings.add(polygon.getInteriorRingN(j));
+            }
+        }
+        return rings;
+    }
+
+    private void addRing(Coordinate[] ring) {
+        for (int i = 1; i < ring.length; i++) {
+            neighbours.computeIfAbsent(ring[i - 1], c -> new HashSet<>()).add(ring[i]);
+            neighbours.computeIfAbsent(ring[i], c -> new HashSet<>()).add(ring[i - 1]);
+        }
+    }
+
+    private Geometry simplify(Geometry geom) {
+        if (!(geom instanceof Polygonal)) {
+            return geom;
+        }
+        GeometryFactory gf = geom.getFactory();
+        Polygon[] polygons = new Polygon[geom.getNumGeometries()];
+        for (int i = 0; i < polygons.length; i++) {
+            Polygon polygon = (Polygon) geom.getGeometryN(i);
+            LinearRing shell = simplifyRing(gf, polygon.getExteriorRing());
+            if (shell == null) {
+                // keep small islands instead of dropping them
+                shell = gf.createLinearRing(polygon.getExteriorRing().getCoordinates());
+            }
+            List<LinearRing> holes = new ArrayList<>();
+            for (int j = 0; j < polygon.getNumInteriorRing(); j++) {
+                LinearRing hole = simplifyRing(gf, polygon.getInteriorRingN(j));
+                if (hole != null) {
+                    holes.add(hole);
+                }
+            }
+            polygons[i] = gf.createPolygon(shell, holes.toArray(new LinearRing[0]));
+        }
+        Geometry simplified = geom instanceof Polygon ? polygons[0] : gf.createMultiPolygon(polygons);
+        return simplified.isValid() ? simplified : simplified.buffer(0);
+    }
+
+    /**
+     * @return simplified ring or null if the ring collapsed
+     */
+    private LinearRing simplifyRing(GeometryFactory gf, LineString ring) {
+        Coordinate[] pts = ring.getCoordinates();
+        int n = pts.length - 1;
+        if (n < 3) {
+            return null;
+        }
+        int start = -1;
+        for (int i = 0; i < n && start < 0; i++) {
+            if (isNode(pts[i])) {
+                start = i;
+            }
+        }
+        List<Coordinate> simplified = new ArrayList<>();
+        if (start < 0) {
+            // no shared end points (island or a region completely inside another one),
+            // start from the smallest coordinate so both sides of the boundary produce the same edge
+            start = 0;
+            for (int i = 1; i < n; i++) {
+                if (pts[i].compareTo(pts[start]) < 0) {
+                    start = i;
+                }
+            }
+            simplified.addAll(Arrays.asList(simplifyEdge(getEdge(pts, start, start + n))));
+        } else {
+            int from = start;
+            for (int i = start + 1; i <= start + n; i++) {
+                if (i == start + n || isNode(pts[i % n])) {
+                    Coordinate[] edge = simplifyEdge(getEdge(pts, from, i));
+                    // the first coordinate of an edge is the last one of the previous edge
+                    int skip = simplified.isEmpty() ? 0 : 1;
+                    simplified.addAll(Arrays.asList(edge).subList(skip, edge.length));
+                    from = i;
+                }
+            }
+        }
+        if (simplified.size() < 4) {
+            return null;
+        }
+        return gf.createLinearRing(simplified.toArray(new Coordinate[0]));
+    }
+
+    private boolean isNode(Coordinate c) {
+        return neighbours.get(c).size() != 2;
+    }
+
+    /**
+     * @param from index of the first vertex of the ring
+     * @param to index of the last vertex, the indexes wrap around the ring
+     */
+    private static List<Coordinate> getEdge(Coordinate[] ring, int from, int to) {
+        int n = ring.length - 1;
+        List<Coordinate> edge = new ArrayList<>(to - from + 1);
+        for (int i = from; i <= to; i++) {
+            edge.add(ring[i % n]);
+        }
+        return edge;
+    }
+
+    /**
+     * Simplifies the edge once for both regions sharing it, the edge is in the opposite direction for the other one
+     */
+    private Coordinate[] simplifyEdge(List<Coordinate> edge) {
+        List<Coordinate> reversed = new ArrayList<>(edge);
+        Collections.reverse(reversed);
+        boolean forward = compare(edge, reversed) <= 0;
+        Coordinate[] simplified = simplifiedEdges.computeIfAbsent(forward ? edge : reversed,
+                key -> douglasPeucker(key.toArray(new Coordinate[0])));
+        if (forward) {
+            return simplified;
+        }
+        Coordinate[] copy = simplified.clone();
+        Collections.reverse(Arrays.asList(copy));
+        return copy;
+    }
+
+    private Coordinate[] douglasPeucker(Coordinate[] edge) {
+        Coordinate[] simplified = DouglasPeuckerLineSimplifier.simplify(edge, tolerance);
+        boolean closed = edge[0].equals2D(edge[edge.length - 1]);
+        // a ring made of a single edge would collapse to a line
+        return closed && simplified.length < 4 ? edge : simplified;
+    }
+
+    private static int compare(List<Coordinate> a, List<Coordinate> b) {
+        for (int i = 0; i < a.size(); i++) {
+            int c = a.get(i).compareTo(b.get(i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+}
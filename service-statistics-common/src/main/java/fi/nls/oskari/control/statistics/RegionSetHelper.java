@@ -12,12 +12,14 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geojson.feature.FeatureJSON;
 import org.geotools.geometry.jts.JTS;
-import org.geotools.referencing.CRS;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.geometry.MismatchedDimensionException;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
@@ -26,12 +28,14 @@ import org.opengis.referencing.operation.TransformException;
 import org.oskari.geojson.GeoJSON;
 import org.oskari.geojson.GeoJSONWriter;
 
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 
 import fi.nls.oskari.control.statistics.db.RegionSet;
 import fi.nls.oskari.domain.geo.Point;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.service.ServiceException;
 import fi.nls.oskari.service.ServiceRuntimeException;
 import fi.nls.oskari.util.IOHelper;
@@ -44,12 +48,44 @@ public class RegionSetHelper {
     private static final String RESOURCES_URL_PREFIX = "resources://";
     private static final FeatureJSON FJ = new FeatureJSON();
 
+    /**
+     * Geometries can be simplified with levels 1-MAX_SIMPLIFY_LEVEL, 0 means full resolution geometries.
+     * Simplification tolerance for level n is size of the regionset extent / SIMPLIFY_DIVISORS[n]
+     */
+    public static final int MAX_SIMPLIFY_LEVEL = 3;
+    private static final double[] SIMPLIFY_DIVISORS = { 0, 4096, 1024, 256 };
+
     public static List<Region> getRegions(RegionSet regionset, String requestedSRS)
             throws FactoryException, MismatchedDimensionException, TransformException, ServiceException, IOException {
+        return getRegions(regionset, requestedSRS, 0);
+    }
+
+    /**
+     * @param simplifyLevel 0 for full resolution geometries, 1-MAX_SIMPLIFY_LEVEL for simplified ones
+     */
+    public static List<Region> getRegions(RegionSet regionset, String requestedSRS, int simplifyLevel)
+            throws FactoryException, MismatchedDimensionException, TransformException, ServiceException, IOException {
         SimpleFeatureCollection fc = getFeatureCollection(regionset, requestedSRS);
         final String propId = regionset.getIdProperty();
         final String propName = regionset.getNameProperty();
-        return parse(fc, propId, propName);
+        return parse(fc, propId, propName, getSimplifyTolerance(fc.getBounds(), simplifyLevel));
+    }
+
+    /**
+     * Returns the regions as features with only id and name attributes (for example for creating vector tiles)
+     */
+    public static SimpleFeatureCollection getRegionFeatures(RegionSet regionset, String requestedSRS)
+            throws FactoryException, MismatchedDimensionException, TransformException, ServiceException, IOException {
+        SimpleFeatureCollection fc = getFeatureCollection(regionset, requestedSRS);
+        return toRegionFeatures(fc, regionset.getIdProperty(), regionset.getNameProperty());
+    }
+
+    protected static double getSimplifyTolerance(Envelope extent, int level) {
+        if (level <= 0 || extent == null || extent.isNull()) {
+            return 0;
+        }
+        int i = Math.min(level, MAX_SIMPLIFY_LEVEL);
+        return Math.max(extent.getWidth(), extent.getHeight()) / SIMPLIFY_DIVISORS[i];
     }
 
     protected static SimpleFeatureCollection getFeatureCollection(RegionSet regionset, String requestedSRS)
@@ -110,9 +146,9 @@ public class RegionSetHelper {
         if (from.equals(to)) {
             return null;
         }
-        CoordinateReferenceSystem sourceCRS = CRS.decode(from);
-        CoordinateReferenceSystem targetCRS = CRS.decode(to);
-        return CRS.findMathTransform(sourceCRS, targetCRS, true);
+        CoordinateReferenceSystem sourceCRS = CRSRegistry.decode(from);
+        CoordinateReferenceSystem targetCRS = CRSRegistry.decode(to);
+        return CRSRegistry.findMathTransform(sourceCRS, targetCRS, true);
     }
 
     protected static void transform(SimpleFeature f, MathTransform transform)
@@ -137,7 +173,7 @@ public class RegionSetHelper {
         params.put("srsName", requestedSRS);
         final String url = IOHelper.constructUrl(regionset.getFeaturesUrl(), params);
         final HttpURLConnection connection = IOHelper.getConnection(url);
-        try (InputStream in = new BufferedInputStream(connection.getInputStream())) {
+        try (InputStream in = new BufferedInputStream(IOHelper.getResponseStream(connection))) {
             return parseGMLFeatureCollection(in);
         }
     }
@@ -153,36 +189,79 @@ public class RegionSetHelper {
 
     protected static List<Region> parse(SimpleFeatureCollection fc, String idProperty, String nameProperty)
             throws ServiceException {
-        final SimpleFeatureIterator it = fc.features();
-        try {
-            final List<Region> nameCodes = new ArrayList<>();
+        return parse(fc, idProperty, nameProperty, 0);
+    }
+
+    /**
+     * @param tolerance distance tolerance for simplifying the geometries, 0 to keep them as is
+     */
+    protected static List<Region> parse(SimpleFeatureCollection fc, String idProperty, String nameProperty,
+            double tolerance) throws ServiceException {
+        final List<SimpleFeature> features = new ArrayList<>();
+        final List<Geometry> geometries = new ArrayList<>();
+        try (SimpleFeatureIterator it = fc.features()) {
             while (it.hasNext()) {
                 final SimpleFeature feature = it.next();
-                // id might be numeric on source data
-                final String id = feature.getAttribute(idProperty).toString();
-                final String name = (String) feature.getAttribute(nameProperty);
-                if (id == null || name == null) {
-                    LOG.warn("Couldn't find id (", idProperty, ") and/or name(", nameProperty,
-                            ") property for region. Properties are:", LOG.getAsString(feature.getProperties()));
+                features.add(feature);
+                geometries.add((Geometry) feature.getDefaultGeometry());
+            }
+        }
+        // shared boundaries of neighbouring regions are simplified together so they stay shared
+        final List<Geometry> simplified = CoverageSimplifier.simplify(geometries, tolerance);
+        final List<Region> nameCodes = new ArrayList<>();
+        for (int i = 0; i < features.size(); i++) {
+            final SimpleFeature feature = features.get(i);
+            // id might be numeric on source data
+            final String id = feature.getAttribute(idProperty).toString();
+            final String name = (String) feature.getAttribute(nameProperty);
+            if (id == null || name == null) {
+                LOG.warn("Couldn't find id (", idProperty, ") and/or name(", nameProperty,
+                        ") property for region. Properties are:", LOG.getAsString(feature.getProperties()));
+                continue;
+            }
+            Region region = new Region(id, name);
+            try {
+                region.setPointOnSurface(getPointOnSurface(feature));
+                region.setGeojson(toGeoJSON(simplified.get(i), id, name));
+                nameCodes.add(region);
+            } catch (Exception ex) {
+                LOG.warn("Region had invalid geometry:", region, "Error:", ex.getMessage());
+            }
+        }
+        if (nameCodes.isEmpty()) {
+            throw new ServiceException("Empty result, check configuration for region id-property=" +
+                    idProperty + " and name-property=" + nameProperty);
+        }
+        return nameCodes;
+    }
+
+    protected static SimpleFeatureCollection toRegionFeatures(SimpleFeatureCollection fc,
+            String idProperty, String nameProperty) {
+        SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+        typeBuilder.setName("regions");
+        typeBuilder.setCRS(fc.getSchema().getCoordinateReferenceSystem());
+        typeBuilder.add("geometry", Geometry.class);
+        typeBuilder.add(Region.KEY_CODE, String.class);
+        typeBuilder.add(Region.KEY_NAME, String.class);
+        SimpleFeatureType type = typeBuilder.buildFeatureType();
+
+        DefaultFeatureCollection regions = new DefaultFeatureCollection(null, type);
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+        try (SimpleFeatureIterator it = fc.features()) {
+            while (it.hasNext()) {
+                SimpleFeature feature = it.next();
+                Object id = feature.getAttribute(idProperty);
+                Object name = feature.getAttribute(nameProperty);
+                if (id == null || name == null || feature.getDefaultGeometry() == null) {
                     continue;
                 }
-                Region region = new Region(id, name);
-                try {
-                    region.setPointOnSurface(getPointOnSurface(feature));
-                    region.setGeojson(toGeoJSON((Geometry) feature.getDefaultGeometry(), id, name));
-                    nameCodes.add(region);
-                } catch (Exception ex) {
-                    LOG.warn("Region had invalid geometry:", region, "Error:", ex.getMessage());
-                }
-            }
-            if (nameCodes.isEmpty()) {
-                throw new ServiceException("Empty result, check configuration for region id-property=" +
-                        idProperty + " and name-property=" + nameProperty);
+                builder.add(feature.getDefaultGeometry());
+                builder.add(id.toString());
+                builder.add(name.toString());
+                regions.add(builder.buildFeature(id.toString()));
             }
-            return nameCodes;
-        } finally {
-            it.close();
         }
+        return regions;
     }
 
     protected static JSONObject toGeoJSON(Geometry geom, String id, String name) throws JSONException {
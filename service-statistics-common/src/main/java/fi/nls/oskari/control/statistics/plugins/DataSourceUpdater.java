@@ -1,37 +1,273 @@
 package fi.nls.oskari.control.statistics.plugins;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.control.ActionControl;
 import fi.nls.oskari.control.statistics.data.StatisticalIndicator;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
+import org.oskari.cluster.ClusterManager;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Used to preload and -process statistical indicator data from a datasource
+ * Used to preload and -process statistical indicator data from a datasource.
+ *
+ * If the plugin returns tasks from getUpdateTasks() they are run concurrently (at most
+ * plugin.getMaxConcurrentRequests() at a time for a datasource) and the results are passed
+ * to onIndicatorProcessed() in the order of the tasks. Otherwise plugin.update() is called.
+ *
+ * In a clustered environment a lock in Redis makes sure only one node updates a datasource at a time.
+ * The lock is kept short and renewed while the update runs so it's released soon if the node dies.
+ * An update that takes longer than the max update duration of the datasource is cancelled so it
+ * doesn't hold the lock forever.
+ * Progress is reported as metrics (statistics.update.[datasource id].*).
  */
 public abstract class DataSourceUpdater implements Runnable {
 
     private static final Logger LOG = LogFactory.getLogger(DataSourceUpdater.class);
 
+    private static final String PROPERTY_TASK_THREADS = "statistics.update.threads";
+    private static final String METRICS_PREFIX = "statistics.update.";
+    // the lock is renewed every LOCK_SECONDS / 3 seconds while the update is running
+    private static final int LOCK_SECONDS = 60;
+    private static ExecutorService taskExecutor;
+    private static ScheduledExecutorService lockRenewer;
+
     protected StatisticalDatasourcePlugin plugin;
 
+    private volatile boolean cancelled;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    // update that was cancelled to start this one, this one waits for it to stop
+    private volatile DataSourceUpdater previous;
+    private final AtomicInteger tasksTotal = new AtomicInteger();
+    private final AtomicInteger tasksDone = new AtomicInteger();
+
     public DataSourceUpdater(StatisticalDatasourcePlugin plugin) {
         this.plugin = plugin;
     }
 
+    /**
+     * @param previous cancelled update of the same datasource, this update waits for it to stop
+     * so they don't run at the same time and the previous one releases the update lock.
+     */
+    void setPrevious(DataSourceUpdater previous) {
+        this.previous = previous;
+    }
+
     @Override
     public void run() {
-        updateStarted();
+        if (!started.compareAndSet(false, true)) {
+            // cancelled before it was started
+            return;
+        }
+        try {
+            if (awaitPrevious() && !cancelled) {
+                update();
+            }
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    private boolean awaitPrevious() {
+        DataSourceUpdater p = previous;
+        if (p == null) {
+            return true;
+        }
         try {
-            plugin.update();
+            if (p.awaitFinished(getMaxUpdateDuration())) {
+                previous = null;
+                return true;
+            }
+            LOG.warn("Previous update of datasource", plugin.getSource().getId(), "didn't stop in time. Skipping update.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Waits until this update and the updates it was waiting for have stopped
+     * @return false if the updates didn't stop in time
+     */
+    boolean awaitFinished(long timeoutMs) throws InterruptedException {
+        if (!finished.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        // set if this update was cancelled before it got to wait for the previous one
+        DataSourceUpdater p = previous;
+        return p == null || p.awaitFinished(timeoutMs);
+    }
+
+    private void update() {
+        final String lockKey = plugin.getUpdateLockKey();
+        final String lockValue = UUID.randomUUID().toString();
+        final boolean clustered = ClusterManager.isClustered();
+        if (clustered && !JedisManager.setIfAbsent(lockKey, LOCK_SECONDS, lockValue)) {
+            LOG.info("Datasource", plugin.getSource().getId(), "is being updated on another node. Skipping update.");
+            return;
+        }
+        final Instant changedSince = isFullUpdate() ? null : plugin.getStatus().getLastUpdate();
+        final long start = System.nanoTime();
+        final ScheduledFuture<?> lockRenewal = clustered
+                ? getLockRenewer().scheduleWithFixedDelay(() -> renewLock(lockKey, lockValue, start),
+                        LOCK_SECONDS / 3, LOCK_SECONDS / 3, TimeUnit.SECONDS)
+                : null;
+        registerGauges();
+        try {
+            updateStarted();
+            List<Callable<List<StatisticalIndicator>>> tasks = plugin.getUpdateTasks(changedSince);
+            if (tasks == null) {
+                plugin.update();
+            } else {
+                runTasks(tasks);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            LOG.debug("Update interrupted for datasource:", plugin.getSource().getId());
+            cancelled = true;
         } catch (Exception ex) {
             LOG.error(ex, "Error updating datasource indicators! Datasource id: ", plugin.getSource().getId());
+        } finally {
+            if (lockRenewal != null) {
+                lockRenewal.cancel(false);
+            }
+            if (cancelled) {
+                LOG.info("Update cancelled for datasource:", plugin.getSource().getId());
+                updateCancelled();
+            } else {
+                // TODO: Should we modify status on problematic update? Should atleast update that it's not running anymore.
+                updateCompleted();
+                getMetrics().timer(getMetricsPrefix() + "duration").update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            if (clustered) {
+                JedisManager.delIfEquals(lockKey, lockValue);
+            }
+        }
+    }
+
+    /**
+     * Keeps the update lock while the update is running. Cancels the update if it has taken longer
+     * than the max update duration or if the lock has been lost (f.ex. Redis wasn't available for a while).
+     */
+    private void renewLock(String lockKey, String lockValue, long start) {
+        if (cancelled) {
+            return;
+        }
+        if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) > getMaxUpdateDuration()) {
+            LOG.warn("Update of datasource", plugin.getSource().getId(), "took longer than",
+                    getMaxUpdateDuration(), "ms. Cancelling update.");
+            cancel();
+        } else if (!JedisManager.expireIfEquals(lockKey, LOCK_SECONDS, lockValue)) {
+            LOG.warn("Lost the update lock for datasource", plugin.getSource().getId(), ". Cancelling update.");
+            cancel();
+        }
+    }
+
+    /**
+     * Stops the update. Tasks that haven't been started are skipped and the indicator list is not stored.
+     */
+    public void cancel() {
+        cancelled = true;
+        if (started.compareAndSet(false, true)) {
+            // won't be run
+            finished.countDown();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return number of update tasks completed / total number of tasks, -1 if the plugin doesn't use tasks
+     */
+    public double getProgress() {
+        int total = tasksTotal.get();
+        return total == 0 ? -1 : (double) tasksDone.get() / total;
+    }
+
+    private void runTasks(List<Callable<List<StatisticalIndicator>>> tasks) throws InterruptedException {
+        final Semaphore permits = new Semaphore(Math.max(1, plugin.getMaxConcurrentRequests()));
+        tasksTotal.set(tasks.size());
+        tasksDone.set(0);
+
+        List<Future<List<StatisticalIndicator>>> futures = new ArrayList<>(tasks.size());
+        for (Callable<List<StatisticalIndicator>> task : tasks) {
+            if (cancelled) {
+                break;
+            }
+            // limits the number of concurrent requests to the datasource
+            permits.acquire();
+            try {
+                futures.add(getTaskExecutor().submit(() -> {
+                    try {
+                        return cancelled ? null : task.call();
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+            handleCompleted(futures, false);
+        }
+        handleCompleted(futures, true);
+    }
+
+    /**
+     * Passes the results of completed tasks to the plugin in the order of the tasks
+     * @param wait true to wait for all the tasks to complete
+     */
+    private void handleCompleted(List<Future<List<StatisticalIndicator>>> futures, boolean wait)
+            throws InterruptedException {
+        final MetricRegistry metrics = getMetrics();
+        final String prefix = getMetricsPrefix();
+        int handled = tasksDone.get();
+        while (handled < futures.size()) {
+            Future<List<StatisticalIndicator>> future = futures.get(handled);
+            if (!wait && !future.isDone()) {
+                return;
+            }
+            try {
+                List<StatisticalIndicator> indicators = future.get();
+                if (indicators != null && !cancelled) {
+                    for (StatisticalIndicator indicator : indicators) {
+                        plugin.onIndicatorProcessed(indicator);
+                    }
+                    metrics.meter(prefix + "indicators").mark(indicators.size());
+                }
+            } catch (ExecutionException | CancellationException e) {
+                metrics.meter(prefix + "failed").mark();
+                LOG.warn(e, "Failed to update indicators for datasource:", plugin.getSource().getId());
+            }
+            // release the results for GC
+            futures.set(handled, null);
+            handled = tasksDone.incrementAndGet();
         }
-        // TODO: Should we modify status on problematic update? Should atleast update that it's not running anymore.
-        updateCompleted();
     }
 
     protected void updateStarted() {
@@ -40,6 +276,13 @@ public abstract class DataSourceUpdater implements Runnable {
         JedisManager.setex(plugin.getStatusKey(), JedisManager.EXPIRY_TIME_DAY * 7, status.toString());
     }
 
+    protected void updateCancelled() {
+        // not running anymore, lastUpdate is kept as is so the next update is started normally
+        DataStatus status = plugin.getStatus();
+        status.cancelUpdate();
+        JedisManager.setex(plugin.getStatusKey(), JedisManager.EXPIRY_TIME_DAY * 7, status.toString());
+    }
+
     protected void updateCompleted() {
         storeIndicatorList(getIndicators());
         DataStatus status = plugin.getStatus();
@@ -62,11 +305,63 @@ public abstract class DataSourceUpdater implements Runnable {
         try {
             String result = listMapper.writeValueAsString(indicators);
             JedisManager.setex(plugin.getIndicatorListKey(), JedisManager.EXPIRY_TIME_DAY * 7, result);
+            plugin.onIndicatorListUpdated();
         } catch (JsonProcessingException ex) {
             LOG.error(ex, "Error updating indicator list");
         }
     }
 
+    private long getMaxUpdateDuration() {
+        return Math.max(TimeUnit.SECONDS.toMillis(LOCK_SECONDS), plugin.getSource().getMaxUpdateDuration());
+    }
+
+    private void registerGauges() {
+        final MetricRegistry metrics = getMetrics();
+        final String prefix = getMetricsPrefix();
+        // registered once per datasource, values are read from the plugin so they follow the latest updater
+        final Gauge<Double> progress = plugin::getUpdateProgress;
+        final Gauge<Long> lag = () -> {
+            // milliseconds since the last completed update
+            Instant lastUpdate = plugin.getStatus().getLastUpdate();
+            return lastUpdate == null ? -1L : System.currentTimeMillis() - lastUpdate.toEpochMilli();
+        };
+        metrics.gauge(prefix + "progress", () -> progress);
+        metrics.gauge(prefix + "lag", () -> lag);
+    }
+
+    private String getMetricsPrefix() {
+        return METRICS_PREFIX + plugin.getSource().getId() + ".";
+    }
+
+    private static MetricRegistry getMetrics() {
+        return ActionControl.getMetrics();
+    }
+
+    private static synchronized ExecutorService getTaskExecutor() {
+        if (taskExecutor == null) {
+            // shared by all datasources, each datasource is limited by plugin.getMaxConcurrentRequests()
+            int threads = PropertyUtil.getOptional(PROPERTY_TASK_THREADS, 8);
+            AtomicInteger threadNumber = new AtomicInteger();
+            taskExecutor = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "oskari-statistics-update-" + threadNumber.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return taskExecutor;
+    }
+
+    private static synchronized ScheduledExecutorService getLockRenewer() {
+        if (lockRenewer == null) {
+            lockRenewer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "oskari-statistics-update-lock");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return lockRenewer;
+    }
+
     public abstract boolean isFullUpdate();
     protected abstract void addToWorkQueue(StatisticalIndicator indicator);
     protected abstract List<StatisticalIndicator> getIndicators();
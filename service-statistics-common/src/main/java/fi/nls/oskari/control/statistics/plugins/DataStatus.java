@@ -55,6 +55,10 @@ public class DataStatus {
         this.updateStarted = Instant.now();
     }
 
+    public void cancelUpdate() {
+        this.updateStarted = null;
+    }
+
     public void finishUpdate() {
         this.lastUpdate = Instant.now();
         this.updateStarted = null;
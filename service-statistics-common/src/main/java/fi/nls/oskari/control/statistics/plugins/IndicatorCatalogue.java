@@ -0,0 +1,138 @@
+package fi.nls.oskari.control.statistics.plugins;
+
+import fi.nls.oskari.control.statistics.data.StatisticalIndicator;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory copy of the indicators of a datasource. The indicator list stored in Redis is deserialized
+ * only when its version changes instead of on every request. Indicator metadata and the lists filtered
+ * by user permissions are kept until the version changes.
+ * The version is checked from Redis at most every VERSION_CHECK_INTERVAL and the catalogue can be
+ * invalidated right away with invalidate() (f.ex. when another cluster node has updated the list).
+ */
+class IndicatorCatalogue {
+
+    private static final long VERSION_CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+    // filtered lists are usually shared by guests, don't let logged in users fill the memory
+    private static final int MAX_VIEWS = 1000;
+
+    private final Supplier<String> versionReader;
+    private final Supplier<List<StatisticalIndicator>> listReader;
+    private final Function<String, StatisticalIndicator> metadataReader;
+    private final long versionCheckInterval;
+
+    private volatile Snapshot snapshot;
+    private volatile long lastVersionCheck;
+
+    private static class Snapshot {
+        private final String version;
+        private final List<StatisticalIndicator> indicators;
+        private final ConcurrentMap<String, StatisticalIndicator> metadata = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, List<StatisticalIndicator>> views = new ConcurrentHashMap<>();
+
+        private Snapshot(String version, List<StatisticalIndicator> indicators) {
+            this.version = version;
+            this.indicators = Collections.unmodifiableList(indicators);
+        }
+    }
+
+    IndicatorCatalogue(Supplier<String> versionReader,
+                       Supplier<List<StatisticalIndicator>> listReader,
+                       Function<String, StatisticalIndicator> metadataReader) {
+        this(versionReader, listReader, metadataReader, VERSION_CHECK_INTERVAL);
+    }
+
+    IndicatorCatalogue(Supplier<String> versionReader,
+                       Supplier<List<StatisticalIndicator>> listReader,
+                       Function<String, StatisticalIndicator> metadataReader,
+                       long versionCheckInterval) {
+        this.versionReader = versionReader;
+        this.listReader = listReader;
+        this.metadataReader = metadataReader;
+        this.versionCheckInterval = versionCheckInterval;
+    }
+
+    /**
+     * @return unmodifiable list of all the indicators
+     */
+    List<StatisticalIndicator> getIndicators() {
+        return getSnapshot().indicators;
+    }
+
+    /**
+     * @param viewKey identifies the filter, lists are cached per key
+     * @return unmodifiable list of the indicators matching the filter
+     */
+    List<StatisticalIndicator> getIndicators(String viewKey, Predicate<StatisticalIndicator> filter) {
+        final Snapshot current = getSnapshot();
+        if (current.views.size() >= MAX_VIEWS) {
+            current.views.clear();
+        }
+        return current.views.computeIfAbsent(viewKey, __ -> Collections.unmodifiableList(
+                current.indicators.stream().filter(filter).collect(Collectors.toList())));
+    }
+
+    /**
+     * @return indicator metadata or null if not available
+     */
+    StatisticalIndicator getMetadata(String indicatorId) {
+        final Snapshot current = getSnapshot();
+        StatisticalIndicator indicator = current.metadata.get(indicatorId);
+        if (indicator == null) {
+            indicator = metadataReader.apply(indicatorId);
+            if (indicator != null) {
+                current.metadata.put(indicatorId, indicator);
+            }
+        }
+        return indicator;
+    }
+
+    /**
+     * Metadata of an indicator has changed, read it again on next request
+     */
+    void removeMetadata(String indicatorId) {
+        Snapshot current = snapshot;
+        if (current != null) {
+            current.metadata.remove(indicatorId);
+        }
+    }
+
+    /**
+     * Reloads everything on the next request
+     */
+    void invalidate() {
+        snapshot = null;
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        long now = System.currentTimeMillis();
+        if (current != null && now - lastVersionCheck < versionCheckInterval) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current != null && now - lastVersionCheck < versionCheckInterval) {
+                return current;
+            }
+            String version = versionReader.get();
+            lastVersionCheck = now;
+            // list written without a version can't be compared -> reload it
+            if (current != null && version != null && version.equals(current.version)) {
+                return current;
+            }
+            current = new Snapshot(version, listReader.get());
+            snapshot = current;
+            return current;
+        }
+    }
+}
@@ -10,8 +10,10 @@ import fi.nls.oskari.domain.User;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.util.PropertyUtil;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.oskari.cluster.ClusterManager;
 
 import java.io.IOException;
 import java.time.Duration;
@@ -19,9 +21,11 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Each statistical datasource plugin encapsulates access to a single external API
@@ -49,6 +53,8 @@ import java.util.stream.Collectors;
  * Before that, we can pretty much cache all the values using Jedis.
  *
  * On adapter implementations implement update(). Update() should call onIndicatorProcessed() after each indicator.
+ * Alternatively override getUpdateTasks() to split the update into tasks that can be run concurrently
+ * and skip indicators that haven't changed since the previous update.
  * Optionally you can override getIndicatorSet() and getIndicator() if results can be returned fast enough.
  *
  * You should also consider overriding hasPermission() as the default implementation always returns true.
@@ -57,20 +63,62 @@ public abstract class StatisticalDatasourcePlugin {
     static final String CACHE_PREFIX = "oskari:stats:";
     private static final String CACHE_POSTFIX_LIST = ":indicators";
     private static final String CACHE_POSTFIX_METADATA = ":metadata:";
+    private static final String CACHE_POSTFIX_VERSION = ":version";
+    private static final String CACHE_POSTFIX_UPDATE_LOCK = ":updatelock";
+    private static final String CONFIG_MAX_CONCURRENT_REQUESTS = "maxConcurrentRequests";
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 2;
+    // cluster nodes are notified with the datasource id when the indicator list is updated
+    private static final String CLUSTER_FUNCTIONALITY = "statistics";
+    private static final String CLUSTER_CHANNEL_INDICATORS = "indicators";
 
     private StatisticalDatasource source = null;
-    private DataSourceUpdater updater = null;
+    private volatile DataSourceUpdater updater = null;
+    private Future<?> updaterFuture = null;
+    private final IndicatorCatalogue catalogue = new IndicatorCatalogue(
+            () -> JedisManager.get(getIndicatorListVersionKey()),
+            this::readProcessedIndicators,
+            this::readIndicatorMetadata);
 
     private static final Logger LOG = LogFactory.getLogger(StatisticalDatasourcePlugin.class);
     private static final ObjectMapper MAPPER = new ObjectMapper();
-    // update at most 4 datasources at a time
-    private static final ExecutorService UPDATE_SCHEDULER = Executors.newFixedThreadPool(4);
+    // update at most 4 datasources at a time by default
+    private static final ExecutorService UPDATE_SCHEDULER = createUpdateScheduler();
 
     /**
      * This is called when datasource should start processing the indicators. Processed indicators
      */
     public abstract void update();
 
+    /**
+     * Override to split the update into tasks that each return a batch of processed indicators. The tasks are
+     * run concurrently (see getMaxConcurrentRequests()) and onIndicatorProcessed() is called for the results
+     * in the order of the tasks so the tasks shouldn't call it themselves. update() isn't called when tasks
+     * are returned.
+     * @param changedSince time of the previous completed update or null if all the indicators should be processed.
+     *                     Tasks can use getPreviouslyProcessed() for indicators that haven't changed since.
+     * @return null to use update() instead
+     */
+    protected List<Callable<List<StatisticalIndicator>>> getUpdateTasks(Instant changedSince) {
+        return null;
+    }
+
+    /**
+     * Max number of update tasks run at the same time for this datasource so the service isn't flooded with requests.
+     * Can be configured with "maxConcurrentRequests" in the datasource config.
+     */
+    protected int getMaxConcurrentRequests() {
+        JSONObject config = getSource().getConfigJSON();
+        return config.optInt(CONFIG_MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * Returns the indicator metadata stored by the previous update or null if not available
+     */
+    protected StatisticalIndicator getPreviouslyProcessed(String indicatorId) {
+        // read directly from Redis so the update doesn't fill the in-memory catalogue
+        return readIndicatorMetadata(indicatorId);
+    }
+
     public boolean canModify(User user) {
         return false;
     }
@@ -105,14 +153,40 @@ public abstract class StatisticalDatasourcePlugin {
     /**
      * Trigger update on the data. Should refresh cached data for getIndicatorSet and track progress.
      */
-    private void startUpdater(boolean cacheEmpty) {
-        // TODO: cancel previous if running?
+    private synchronized void startUpdater(boolean cacheEmpty) {
+        final DataSourceUpdater previous = updater;
+        if (previous != null && updaterFuture != null && !updaterFuture.isDone()) {
+            // previous update has taken too long, stop it so it doesn't keep on writing the results
+            LOG.info("Cancelling previous update of datasource:", getSource().getId());
+            previous.cancel();
+            updaterFuture.cancel(true);
+        }
         if (cacheEmpty) {
             this.updater = new DataSourceCachePopulator(this);
         } else {
             this.updater = new DataSourceCacheUpdater(this);
         }
-        UPDATE_SCHEDULER.execute(updater);
+        // the cancelled update still holds the update lock until it has stopped
+        updater.setPrevious(previous);
+        updaterFuture = UPDATE_SCHEDULER.submit(updater);
+    }
+
+    /**
+     * @return progress of the current update between 0 and 1 or -1 if not known
+     */
+    public double getUpdateProgress() {
+        DataSourceUpdater current = updater;
+        return current == null ? -1 : current.getProgress();
+    }
+
+    private static ExecutorService createUpdateScheduler() {
+        final int threads = PropertyUtil.getOptional("statistics.update.datasources", 4);
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "oskari-statistics-datasource-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
     }
 
     /**
@@ -120,6 +194,15 @@ public abstract class StatisticalDatasourcePlugin {
      */
     public void init(StatisticalDatasource source) {
         this.source = source;
+        if (ClusterManager.isClustered()) {
+            final String id = Long.toString(source.getId());
+            ClusterManager.getClientFor(CLUSTER_FUNCTIONALITY)
+                    .addListener(CLUSTER_CHANNEL_INDICATORS, (msg) -> {
+                        if (id.equals(msg)) {
+                            catalogue.invalidate();
+                        }
+                    });
+        }
     }
     public StatisticalDatasource getSource() {
         return source;
@@ -131,7 +214,7 @@ public abstract class StatisticalDatasourcePlugin {
      */
     public IndicatorSet getIndicatorSet(User user) {
         DataStatus status = getStatus();
-        List<StatisticalIndicator> indicators = getProcessedIndicators();
+        List<StatisticalIndicator> indicators = catalogue.getIndicators();
         boolean cacheEmpty = indicators.isEmpty();
 
         Duration maxUpdateDuration = Duration.ofMillis(getSource().getMaxUpdateDuration());
@@ -164,30 +247,54 @@ public abstract class StatisticalDatasourcePlugin {
         }
 
         // filter by user
-        final List<StatisticalIndicator> result = indicators.stream()
-                .filter(ind -> hasPermission(ind, user))
-                .collect(Collectors.toList());
+        final List<StatisticalIndicator> result = catalogue.getIndicators(getPermissionKey(user),
+                ind -> hasPermission(ind, user));
 
         IndicatorSet set = new IndicatorSet();
         set.setComplete(complete);
-        set.setIndicators(result);
+        set.setIndicators(new ArrayList<>(result));
         return set;
     }
 
+    /**
+     * The indicators a user has permission to are cached by the key returned here. Override if
+     * hasPermission() is based on something else than the user id (f.ex. return a constant if
+     * all users have the same permissions).
+     */
+    protected String getPermissionKey(User user) {
+        return user == null ? "" : Long.toString(user.getId());
+    }
+
+    /**
+     * Returns the indicator metadata. The returned object is shared between requests and shouldn't be modified.
+     */
     public StatisticalIndicator getIndicator(User user, String indicatorId) {
+        StatisticalIndicator indicator = catalogue.getMetadata(indicatorId);
+        if (indicator == null) {
+            return null;
+        }
+        if(hasPermission(indicator, user)) {
+            return indicator;
+        }
+        LOG.error("User doesn't have permissions to indicator ", indicatorId);
+        return null;
+    }
+
+    private StatisticalIndicator readIndicatorMetadata(String indicatorId) {
         try {
             String json = JedisManager.get(getIndicatorMetadataKey(indicatorId));
+            if (json == null) {
+                LOG.info("No metadata for indicator:", indicatorId);
+                return null;
+            }
             StatisticalIndicator indicator = MAPPER.readValue(json, StatisticalIndicator.class);
-            if(hasPermission(indicator, user)) {
-                // sort dimensions etc
-                try {
-                    handleHints(indicator);
-                } catch (Exception ex) {
-                    LOG.info("Problem handling hints for indicator");
-                }
-                return indicator;
+            // sort dimensions etc
+            try {
+                handleHints(indicator);
+            } catch (Exception ex) {
+                LOG.info("Problem handling hints for indicator");
             }
-            LOG.error("User doesn't have permissions to indicator ", indicatorId);
+            return indicator;
         } catch (IOException ex) {
             LOG.error(ex, "Couldn't read indicator data for is:", indicatorId);
         }
@@ -240,12 +347,31 @@ public abstract class StatisticalDatasourcePlugin {
         try {
             String json = MAPPER.writeValueAsString(indicator);
             JedisManager.setex(getIndicatorMetadataKey(indicator.getId()), JedisManager.EXPIRY_TIME_DAY * 7, json);
+            catalogue.removeMetadata(indicator.getId());
         } catch (JsonProcessingException ex) {
             LOG.error(ex, "Error updating indicator metadata");
         }
     }
 
     protected List<StatisticalIndicator> getProcessedIndicators() {
+        return new ArrayList<>(catalogue.getIndicators());
+    }
+
+    /**
+     * Called after the indicator list has been written to Redis. Bumps the version of the list
+     * and notifies other cluster nodes so they can refresh their copy.
+     */
+    protected void onIndicatorListUpdated() {
+        JedisManager.setex(getIndicatorListVersionKey(), JedisManager.EXPIRY_TIME_DAY * 7,
+                Long.toString(System.currentTimeMillis()));
+        catalogue.invalidate();
+        if (ClusterManager.isClustered()) {
+            ClusterManager.getClientFor(CLUSTER_FUNCTIONALITY)
+                    .sendMessage(CLUSTER_CHANNEL_INDICATORS, Long.toString(getSource().getId()));
+        }
+    }
+
+    private List<StatisticalIndicator> readProcessedIndicators() {
         final List<StatisticalIndicator> existingIndicators = new ArrayList<>();
         final String cacheKey = getIndicatorListKey();
         try {
@@ -268,6 +394,18 @@ public abstract class StatisticalDatasourcePlugin {
     protected String getIndicatorListKey() {
         return CACHE_PREFIX + getSource().getId() + CACHE_POSTFIX_LIST;
     }
+    /**
+     * Returns a Redis key that holds the version of the indicator list
+     */
+    protected String getIndicatorListVersionKey() {
+        return getIndicatorListKey() + CACHE_POSTFIX_VERSION;
+    }
+    /**
+     * Returns a Redis key used to make sure only one cluster node updates the datasource at a time
+     */
+    protected String getUpdateLockKey() {
+        return CACHE_PREFIX + getSource().getId() + CACHE_POSTFIX_UPDATE_LOCK;
+    }
     /**
      * Returns a Redis key that should hold client ready indicators as JSON
      * @return
@@ -0,0 +1,47 @@
+package fi.nls.oskari.control.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.io.WKTReader;
+
+public class CoverageSimplifierTest {
+
+    // two squares sharing a zigzag boundary at x=10
+    private static final String LEFT = "POLYGON ((0 0, 10 0, 10.1 2, 9.9 4, 10.1 6, 9.9 8, 10 10, 0 10, 0 0))";
+    private static final String RIGHT = "POLYGON ((10 0, 20 0, 20 10, 10 10, 9.9 8, 10.1 6, 9.9 4, 10.1 2, 10 0))";
+
+    @Test
+    public void testSharedBoundaryIsSimplifiedOnce() throws Exception {
+        WKTReader reader = new WKTReader();
+        List<Geometry> coverage = Arrays.asList(reader.read(LEFT), reader.read(RIGHT));
+
+        List<Geometry> simplified = CoverageSimplifier.simplify(coverage, 0.5);
+        Geometry left = simplified.get(0);
+        Geometry right = simplified.get(1);
+
+        assertEquals(5, left.getNumPoints());
+        assertEquals(5, right.getNumPoints());
+        assertTrue(left.isValid());
+        assertTrue(right.isValid());
+        // no overlap and no gap between the neighbours
+        assertEquals(0, left.intersection(right).getArea(), 1e-9);
+        Geometry union = left.union(right);
+        assertTrue(union instanceof Polygon);
+        assertEquals(0, ((Polygon) union).getNumInteriorRing());
+        assertEquals(200, union.getArea(), 1e-9);
+    }
+
+    @Test
+    public void testNoTolerance() throws Exception {
+        WKTReader reader = new WKTReader();
+        List<Geometry> coverage = Arrays.asList(reader.read(LEFT), reader.read(RIGHT));
+        assertEquals(coverage, CoverageSimplifier.simplify(coverage, 0));
+    }
+}
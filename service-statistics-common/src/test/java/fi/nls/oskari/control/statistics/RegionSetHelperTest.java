@@ -2,14 +2,18 @@ package fi.nls.oskari.control.statistics;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.List;
 
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.geometry.MismatchedDimensionException;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.operation.TransformException;
@@ -73,6 +77,43 @@ public class RegionSetHelperTest {
         }
     }
 
+    @Test
+    public void testSimplifiedGeometries() throws Exception {
+        RegionSet kunnatJSON = new RegionSet();
+        kunnatJSON.setId(-1);
+        kunnatJSON.setName("oskari:kunnat2013");
+        kunnatJSON.setSrs_name("EPSG:3067");
+        kunnatJSON.setAttributes(getAttributes("kuntakoodi", "kuntanimi", "resources://kunnat2013.json"));
+        List<Region> full = RegionSetHelper.getRegions(kunnatJSON, "EPSG:3067");
+        List<Region> simplified = RegionSetHelper.getRegions(kunnatJSON, "EPSG:3067", RegionSetHelper.MAX_SIMPLIFY_LEVEL);
+        assertEquals(full.size(), simplified.size());
+        int fullLength = 0;
+        int simplifiedLength = 0;
+        for (int i = 0; i < full.size(); i++) {
+            assertEquals(full.get(i).getCode(), simplified.get(i).getCode());
+            fullLength += full.get(i).getGeojson().toString().length();
+            simplifiedLength += simplified.get(i).getGeojson().toString().length();
+        }
+        assertTrue("Simplified geometries should be smaller", simplifiedLength < fullLength);
+    }
+
+    @Test
+    public void testRegionFeatures() throws Exception {
+        RegionSet kunnatJSON = new RegionSet();
+        kunnatJSON.setId(-1);
+        kunnatJSON.setName("oskari:kunnat2013");
+        kunnatJSON.setSrs_name("EPSG:3067");
+        kunnatJSON.setAttributes(getAttributes("kuntakoodi", "kuntanimi", "resources://kunnat2013.json"));
+        SimpleFeatureCollection fc = RegionSetHelper.getRegionFeatures(kunnatJSON, "EPSG:3067");
+        assertEquals(320, fc.size());
+        assertEquals(3, fc.getSchema().getAttributeCount());
+        try (SimpleFeatureIterator it = fc.features()) {
+            SimpleFeature f = it.next();
+            assertEquals(f.getID(), f.getAttribute(Region.KEY_CODE));
+            assertNotNull(f.getAttribute(Region.KEY_NAME));
+        }
+    }
+
     private String getAttributes(String regionIdTag, String nameIdTag, String featuresUrl) throws JSONException {
         JSONObject attributes = new JSONObject();
         JSONObject statistics = new JSONObject();
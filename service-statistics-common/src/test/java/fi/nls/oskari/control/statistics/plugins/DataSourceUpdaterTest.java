@@ -9,6 +9,9 @@ import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.JSONHelper;
 import org.junit.Test;
 
+import java.util.Collections;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 /**
@@ -80,4 +83,35 @@ public class DataSourceUpdaterTest {
         assertEquals("Deserialized value should be total", "total", gender.getAllowedValues().get(0).getKey());
         assertEquals("Deserialized value should be 2015", "2015", year.getAllowedValues().get(0).getKey());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void cancelledUpdateWaitsForThePreviousOne() throws Exception {
+        DataSourceUpdater running = new TestUpdater();
+        DataSourceUpdater cancelled = new TestUpdater();
+        cancelled.setPrevious(running);
+        // cancelled before it got to run
+        cancelled.cancel();
+        assertFalse("Should wait for the previous update", cancelled.awaitFinished(10));
+        running.cancel();
+        assertTrue(cancelled.awaitFinished(10));
+    }
+
+    private static class TestUpdater extends DataSourceUpdater {
+        TestUpdater() {
+            super(null);
+        }
+
+        @Override
+        public boolean isFullUpdate() {
+            return true;
+        }
+
+        @Override
+        protected void addToWorkQueue(StatisticalIndicator indicator) {}
+
+        @Override
+        protected List<StatisticalIndicator> getIndicators() {
+            return Collections.emptyList();
+        }
+    }
+}
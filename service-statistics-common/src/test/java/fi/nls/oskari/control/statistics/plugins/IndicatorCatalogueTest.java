@@ -0,0 +1,98 @@
+package fi.nls.oskari.control.statistics.plugins;
+
+import fi.nls.oskari.control.statistics.data.StatisticalIndicator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class IndicatorCatalogueTest {
+
+    private final AtomicReference<String> version = new AtomicReference<>("1");
+    private final AtomicInteger listReads = new AtomicInteger();
+    private final AtomicInteger metadataReads = new AtomicInteger();
+
+    private IndicatorCatalogue createCatalogue(long versionCheckInterval) {
+        return new IndicatorCatalogue(version::get,
+                () -> {
+                    listReads.incrementAndGet();
+                    return new ArrayList<>(Arrays.asList(indicator("1"), indicator("2")));
+                },
+                id -> {
+                    metadataReads.incrementAndGet();
+                    return "missing".equals(id) ? null : indicator(id);
+                },
+                versionCheckInterval);
+    }
+
+    @Test
+    public void testListIsReadOncePerVersion() {
+        IndicatorCatalogue catalogue = createCatalogue(0);
+        List<StatisticalIndicator> first = catalogue.getIndicators();
+        assertEquals(2, first.size());
+        assertSame(first, catalogue.getIndicators());
+        assertEquals(1, listReads.get());
+
+        version.set("2");
+        assertNotSame(first, catalogue.getIndicators());
+        assertEquals(2, listReads.get());
+    }
+
+    @Test
+    public void testVersionIsCheckedWithInterval() {
+        IndicatorCatalogue catalogue = createCatalogue(60000);
+        catalogue.getIndicators();
+        version.set("2");
+        catalogue.getIndicators();
+        assertEquals("Version shouldn't be checked again yet", 1, listReads.get());
+
+        catalogue.invalidate();
+        catalogue.getIndicators();
+        assertEquals(2, listReads.get());
+    }
+
+    @Test
+    public void testUnversionedListIsReloaded() {
+        version.set(null);
+        IndicatorCatalogue catalogue = createCatalogue(0);
+        catalogue.getIndicators();
+        catalogue.getIndicators();
+        assertEquals(2, listReads.get());
+    }
+
+    @Test
+    public void testFilteredViews() {
+        IndicatorCatalogue catalogue = createCatalogue(0);
+        List<StatisticalIndicator> onlyFirst = catalogue.getIndicators("a", ind -> "1".equals(ind.getId()));
+        assertEquals(1, onlyFirst.size());
+        assertSame(onlyFirst, catalogue.getIndicators("a", ind -> false));
+        assertEquals(0, catalogue.getIndicators("b", ind -> false).size());
+    }
+
+    @Test
+    public void testMetadata() {
+        IndicatorCatalogue catalogue = createCatalogue(0);
+        StatisticalIndicator ind = catalogue.getMetadata("1");
+        assertSame(ind, catalogue.getMetadata("1"));
+        assertEquals(1, metadataReads.get());
+
+        catalogue.removeMetadata("1");
+        assertNotSame(ind, catalogue.getMetadata("1"));
+        assertEquals(2, metadataReads.get());
+
+        assertNull(catalogue.getMetadata("missing"));
+        assertNull(catalogue.getMetadata("missing"));
+        assertEquals("Missing metadata isn't cached", 4, metadataReads.get());
+    }
+
+    private static StatisticalIndicator indicator(String id) {
+        StatisticalIndicator ind = new StatisticalIndicator();
+        ind.setId(id);
+        return ind;
+    }
+}
@@ -129,7 +129,7 @@ public class EurostatIndicatorsParser {
         InputStream is = null;
         try {
             // "http://ec.europa.eu/eurostat
-            is = IOHelper.getConnection(config.getUrl() + "/SDMX/diss-web/rest/dataflow/ESTAT/all/latest").getInputStream();
+            is = IOHelper.getResponseStream(IOHelper.getConnection(config.getUrl() + "/SDMX/diss-web/rest/dataflow/ESTAT/all/latest"));
             is = IOHelper.debugResponse(is);
         } catch (IOException e) {
             throw new ServiceRuntimeException("Couldn't get indicator list from " + config.getUrl(), e);
@@ -82,14 +82,14 @@ public class KapaRequest {
             final String url = getUrl(method, params);
             con = IOHelper.getConnection(url);
 
-            final String data = IOHelper.readString(con.getInputStream(), KAPA_ENCODING);
+            final String data = IOHelper.readString(con, KAPA_ENCODING);
             return data;
         } catch (Exception e) {
             e.printStackTrace();
             throw new APIException("Couldn't request data from the KaPa server", e);
         } finally {
             try {
-                con.disconnect();
+                IOHelper.disconnect(con);
             }
             catch (Exception ignored) {}
         }
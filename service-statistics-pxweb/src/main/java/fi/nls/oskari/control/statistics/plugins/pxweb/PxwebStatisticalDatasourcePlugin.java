@@ -5,6 +5,7 @@ import fi.nls.oskari.control.statistics.plugins.APIException;
 import fi.nls.oskari.control.statistics.plugins.StatisticalDatasourcePlugin;
 import fi.nls.oskari.control.statistics.plugins.db.DatasourceLayer;
 import fi.nls.oskari.control.statistics.plugins.db.StatisticalDatasource;
+import fi.nls.oskari.control.statistics.plugins.pxweb.json.PxFolderItem;
 import fi.nls.oskari.control.statistics.plugins.pxweb.parser.PxwebIndicatorsParser;
 import fi.nls.oskari.control.statistics.plugins.pxweb.parser.ValueProcessor;
 import fi.nls.oskari.log.LogFactory;
@@ -17,9 +18,17 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 public class PxwebStatisticalDatasourcePlugin extends StatisticalDatasourcePlugin {
 
@@ -28,6 +37,9 @@ public class PxwebStatisticalDatasourcePlugin extends StatisticalDatasourcePlugi
     private static final ValueProcessor DEFAULT_PROCESSOR = new ValueProcessor();
     private Map<String, ValueProcessor> processors = new HashMap<>();
 
+    // the updated timestamps of pxweb tables don't have a timezone
+    private static final Duration UPDATED_MARGIN = Duration.ofDays(1);
+
     private PxwebConfig config;
 
     @Override
@@ -48,6 +60,74 @@ public class PxwebStatisticalDatasourcePlugin extends StatisticalDatasourcePlugi
         }
     }
 
+    /**
+     * Each table in the service is processed as a separate task. On incremental updates the indicators of
+     * tables that haven't been updated since the previous update are taken from the previous update.
+     */
+    @Override
+    protected List<Callable<List<StatisticalIndicator>>> getUpdateTasks(Instant changedSince) {
+        List<PxFolderItem> tables = indicatorsParser.listTables();
+        if (tables == null) {
+            // configured url points to a single px-file
+            return null;
+        }
+        Map<String, List<String>> previousIds = changedSince == null ? new HashMap<>() : getIndicatorIdsByTable();
+        List<Callable<List<StatisticalIndicator>>> tasks = new ArrayList<>(tables.size());
+        for (PxFolderItem table : tables) {
+            List<String> ids = isUpdatedSince(table, changedSince) ? null : previousIds.get(table.id);
+            tasks.add(() -> processTable(table, ids));
+        }
+        return tasks;
+    }
+
+    private List<StatisticalIndicator> processTable(PxFolderItem table, List<String> previousIds) {
+        if (previousIds != null) {
+            List<StatisticalIndicator> previous = new ArrayList<>(previousIds.size());
+            for (String id : previousIds) {
+                StatisticalIndicator ind = getPreviouslyProcessed(id);
+                if (ind == null) {
+                    break;
+                }
+                previous.add(ind);
+            }
+            if (previous.size() == previousIds.size()) {
+                return previous;
+            }
+        }
+        return indicatorsParser.parseTable(table, getSource().getLayers())
+                .stream()
+                // skip indicators without region info
+                .filter(ind -> ind.getDataModel().isHasRegionInfo())
+                .collect(Collectors.toList());
+    }
+
+    private Map<String, List<String>> getIndicatorIdsByTable() {
+        return getProcessedIndicators().stream()
+                .map(StatisticalIndicator::getId)
+                .collect(Collectors.groupingBy(this::getTablePath));
+    }
+
+    private String getTablePath(String indicatorId) {
+        if (!config.hasIndicatorKey()) {
+            return indicatorId;
+        }
+        int separatorIndex = indicatorId.lastIndexOf(PxwebConfig.ID_SEPARATOR);
+        return separatorIndex == -1 ? indicatorId : indicatorId.substring(0, separatorIndex);
+    }
+
+    private boolean isUpdatedSince(PxFolderItem table, Instant changedSince) {
+        if (changedSince == null || table.updated == null) {
+            return true;
+        }
+        try {
+            Instant updated = LocalDateTime.parse(table.updated).toInstant(ZoneOffset.UTC);
+            return updated.isAfter(changedSince.minus(UPDATED_MARGIN));
+        } catch (DateTimeParseException e) {
+            LOG.debug("Unrecognized updated timestamp for table:", table.id, "-", table.updated);
+            return true;
+        }
+    }
+
     @Override
     public void init(StatisticalDatasource source) {
         super.init(source);
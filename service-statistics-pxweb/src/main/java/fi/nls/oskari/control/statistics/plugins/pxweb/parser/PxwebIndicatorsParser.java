@@ -66,32 +66,82 @@ public class PxwebIndicatorsParser {
                 // only recognize l and t types
                 continue;
             }
-            if(config.hasIndicatorKey()) {
-                // go to the px-file
-                indicators.addAll(parsePxFileToMultipleIndicators(getPath(path, item.id), languages));
-                continue;
+            indicators.addAll(parseTable(path, item, languages));
+        }
+        return indicators;
+    }
+
+    /**
+     * Lists the tables in a structured service so they can be parsed separately with parseTable().
+     * The id of the returned items is the path of the table relative to the configured url.
+     * @return null if the configured url points to a px-file
+     */
+    public List<PxFolderItem> listTables() {
+        if(getUrl(null).endsWith(".px")) {
+            return null;
+        }
+        return listTables(null);
+    }
+
+    protected List<PxFolderItem> listTables(String path) {
+        List<PxFolderItem> tables = new ArrayList<>();
+        for(PxFolderItem item : readFolderListing(getUrl(path))) {
+            if("l".equalsIgnoreCase(item.type)) {
+                tables.addAll(listTables(getPath(path, item.id)));
+            } else if("t".equalsIgnoreCase(item.type)) {
+                PxFolderItem table = new PxFolderItem();
+                table.id = getPath(path, item.id);
+                table.text = item.text;
+                table.type = item.type;
+                table.updated = item.updated;
+                tables.add(table);
             }
-            HashMap<String, StatisticalIndicator> indicatorMap = new HashMap<>();
-            languages.forEach(lang -> {
-                try {
-                    PxTableItem table = getPxTable(path, lang, item.id);
-                    String indicatorId = createIndicatorId(table);
-                    StatisticalIndicator ind = indicatorMap.get(indicatorId);
-                    if (ind == null) {
-                        ind = new StatisticalIndicator();
-                        ind.setId(indicatorId);
-                        indicatorMap.put(indicatorId, ind);
-                        indicators.add(ind);
-                        // only populate model for first (== primary) language as it doesn't support localized labels for variables/selectors
-                        ind.setDataModel(getModel(table));
-                    }
-                    ind.addName(lang, item.text);
-                    // TODO: add "mergeModels(lang, model)" that would populate localized labels for variable
-                } catch (IOException e) {
-                    LOG.error(e, "Error getting indicators from Pxweb datasource:", config.getUrl());
-                }
-            });
         }
+        return tables;
+    }
+
+    /**
+     * Parses the indicators of a table returned by listTables()
+     */
+    public List<StatisticalIndicator> parseTable(PxFolderItem table, List<DatasourceLayer> layers) {
+        int separator = table.id.lastIndexOf('/');
+        String path = separator == -1 ? null : table.id.substring(0, separator);
+        PxFolderItem item = new PxFolderItem();
+        item.id = table.id.substring(separator + 1);
+        item.text = table.text;
+        item.type = table.type;
+        item.updated = table.updated;
+        List<StatisticalIndicator> indicators = parseTable(path, item, getLanguages());
+        setupLayers(indicators, layers, getUrl(null));
+        return indicators;
+    }
+
+    protected List<StatisticalIndicator> parseTable(String path, PxFolderItem item, Collection<String> languages) {
+        if(config.hasIndicatorKey()) {
+            // go to the px-file
+            return parsePxFileToMultipleIndicators(getPath(path, item.id), languages);
+        }
+        List<StatisticalIndicator> indicators = new ArrayList<>();
+        HashMap<String, StatisticalIndicator> indicatorMap = new HashMap<>();
+        languages.forEach(lang -> {
+            try {
+                PxTableItem table = getPxTable(path, lang, item.id);
+                String indicatorId = createIndicatorId(table);
+                StatisticalIndicator ind = indicatorMap.get(indicatorId);
+                if (ind == null) {
+                    ind = new StatisticalIndicator();
+                    ind.setId(indicatorId);
+                    indicatorMap.put(indicatorId, ind);
+                    indicators.add(ind);
+                    // only populate model for first (== primary) language as it doesn't support localized labels for variables/selectors
+                    ind.setDataModel(getModel(table));
+                }
+                ind.addName(lang, item.text);
+                // TODO: add "mergeModels(lang, model)" that would populate localized labels for variable
+            } catch (IOException e) {
+                LOG.error(e, "Error getting indicators from Pxweb datasource:", config.getUrl());
+            }
+        });
         return indicators;
     }
 
@@ -5,6 +5,7 @@ import fi.nls.oskari.control.statistics.data.StatisticalIndicator;
 import fi.nls.oskari.control.statistics.data.StatisticalIndicatorDataModel;
 import fi.nls.oskari.control.statistics.plugins.db.DatasourceLayer;
 import fi.nls.oskari.control.statistics.plugins.pxweb.PxwebConfig;
+import fi.nls.oskari.control.statistics.plugins.pxweb.json.PxFolderItem;
 import fi.nls.oskari.control.statistics.plugins.pxweb.json.PxTableItem;
 import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.PropertyUtil;
@@ -27,6 +28,7 @@ import java.net.URLEncoder;
 import java.util.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doReturn;
@@ -160,6 +162,35 @@ public class PxwebIndicatorsParserTest {
         assertEquals("Should find dimension 'vuosi'", "Vuosi", indicators.get(0).getDataModel().getDimension("vuosi").getName());
     }
 
+    /**
+     * Tests that parsing the tables separately (as the update tasks do) results in the same indicators as parse()
+     */
+    @Test
+    public void testParseTablesSeparately() throws Exception {
+        PxwebIndicatorsParser parser = getParser("config2folderstructWithIndicatorKey.json");
+        List<PxFolderItem> tables = parser.listTables();
+        assertEquals("Should find two tables", 2, tables.size());
+        assertEquals("kuntien_avainluvut_2017_aikasarja.px", tables.get(0).id);
+        assertEquals("2018-02-22T10:35:41", tables.get(0).updated);
+
+        List<StatisticalIndicator> indicators = new ArrayList<>();
+        for (PxFolderItem table : tables) {
+            indicators.addAll(parser.parseTable(table, getLayers()));
+        }
+        List<StatisticalIndicator> expected = parser.parse(getLayers());
+        assertEquals("Should find the same indicators", expected.size(), indicators.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), indicators.get(i).getId());
+            assertEquals(expected.get(i).getLayers().size(), indicators.get(i).getLayers().size());
+        }
+    }
+
+    @Test
+    public void testListTablesWithPXfileConfig() throws Exception {
+        PxwebIndicatorsParser parser = getParser("config2pxfile.json");
+        assertNull("Px-file config doesn't have tables to list", parser.listTables());
+    }
+
     @Test
     public void testHKIModel() throws Exception {
         PxwebIndicatorsParser parser = getParser("config2folderstruct_hki.json");
@@ -175,7 +175,7 @@ public class SotkaRequest {
             throw new APIException("Couldn't request data from the SOTKAnet server", e);
         } finally {
             try {
-                con.disconnect();
+                IOHelper.disconnect(con);
             }
             catch (Exception ignored) {}
         }
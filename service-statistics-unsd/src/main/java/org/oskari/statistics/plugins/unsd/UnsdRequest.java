@@ -161,7 +161,7 @@ public class UnsdRequest {
             throw new APIException("Couldn't request data from the UNSD server", e);
         } finally {
             try {
-                con.disconnect();
+                IOHelper.disconnect(con);
             } catch (Exception ignored) {
             }
         }
@@ -7,7 +7,6 @@ import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.JTS;
-import org.geotools.referencing.CRS;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.FactoryException;
@@ -17,6 +16,7 @@ import org.oskari.map.userlayer.service.UserLayerException;
 
 import org.locationtech.jts.geom.Geometry;
 
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.service.ServiceException;
 
 public class FeatureCollectionParsers {
@@ -101,7 +101,7 @@ public class FeatureCollectionParsers {
             throw new ServiceException("targetCRS isn't configured in Oskari properties");
         }
         try {
-            return CRS.findMathTransform(sourceCRS, targetCRS, true);
+            return CRSRegistry.findMathTransform(sourceCRS, targetCRS, true);
         } catch (FactoryException e) {
             throw new ServiceException("Failed to find math transform for: " + sourceCRS + " to: " + targetCRS);
         }
@@ -18,7 +18,6 @@ import org.geotools.gpx.GPX;
 import org.geotools.gpx.GPXConfiguration;
 import org.geotools.gpx.gpx10.GPX10;
 import org.geotools.gpx.gpx10.GPX10Configuration;
-import org.geotools.referencing.CRS;
 import org.geotools.xsd.PullParser;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.referencing.FactoryException;
@@ -26,6 +25,7 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.oskari.map.userlayer.service.UserLayerException;
 import org.xml.sax.SAXException;
 
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.service.ServiceException;
 
 public class GPXParser implements FeatureCollectionParser {
@@ -37,7 +37,7 @@ public class GPXParser implements FeatureCollectionParser {
             CoordinateReferenceSystem targetCRS) throws ServiceException {
         try {
             // GPX always lon,lat 4326
-            sourceCRS = CRS.decode("EPSG:4326", true);
+            sourceCRS = CRSRegistry.decode("EPSG:4326", true);
         } catch (FactoryException e) {
             throw new ServiceException("Failed to decode sourceCrs (EPSG:4326) for GPXParser");
         }
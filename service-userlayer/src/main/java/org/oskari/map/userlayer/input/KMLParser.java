@@ -18,7 +18,6 @@ import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.kml.v22.KML;
 import org.geotools.kml.v22.KMLConfiguration;
-import org.geotools.referencing.CRS;
 import org.geotools.xsd.PullParser;
 import org.geotools.geometry.jts.JTS;
 import org.opengis.feature.simple.SimpleFeature;
@@ -29,6 +28,7 @@ import org.xml.sax.SAXException;
 
 import org.locationtech.jts.geom.Geometry;
 
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.service.ServiceException;
 
 /**
@@ -98,7 +98,7 @@ public class KMLParser implements FeatureCollectionParser {
             DefaultFeatureCollection fc = new DefaultFeatureCollection();
             SimpleFeature f;
             // KML always lon,lat 4326
-            CoordinateReferenceSystem sourceCRS = CRS.decode("EPSG:4326", true);
+            CoordinateReferenceSystem sourceCRS = CRSRegistry.decode("EPSG:4326", true);
             MathTransform transform = FeatureCollectionParsers.getTransform(sourceCRS, targetCRS);
 
             SimpleFeatureBuilder builder = getBuilder(targetCRS, extendedData);
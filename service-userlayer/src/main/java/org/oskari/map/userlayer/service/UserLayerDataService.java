@@ -6,6 +6,7 @@ import fi.nls.oskari.domain.map.userlayer.UserLayerData;
 import fi.nls.oskari.domain.map.wfs.WFSLayerOptions;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.map.geometry.WKTHelper;
 import fi.nls.oskari.map.layer.OskariLayerService;
 import fi.nls.oskari.map.layer.OskariLayerServiceMybatisImpl;
@@ -19,7 +20,6 @@ import fi.nls.oskari.util.PropertyUtil;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.geometry.jts.ReferencedEnvelope;
-import org.geotools.referencing.CRS;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -68,7 +68,7 @@ public class UserLayerDataService {
 
     private static String getWGS84ExtentAsWKT(SimpleFeatureCollection fc) {
         try {
-            CoordinateReferenceSystem wgs84 = CRS.decode("EPSG:4326", true);
+            CoordinateReferenceSystem wgs84 = CRSRegistry.decode("EPSG:4326", true);
             ReferencedEnvelope extentWGS84 = fc.getBounds().transform(wgs84, true);
             return WKTHelper.getBBOX(extentWGS84.getMinX(),
                     extentWGS84.getMinY(),
@@ -4,6 +4,7 @@ import fi.nls.oskari.domain.map.userlayer.UserLayer;
 import fi.nls.oskari.domain.map.userlayer.UserLayerData;
 import fi.nls.oskari.service.OskariComponent;
 import fi.nls.oskari.service.ServiceException;
+import org.oskari.service.user.VectorTileQuery;
 
 import java.util.List;
 
@@ -19,6 +20,10 @@ public abstract class UserLayerDbService extends OskariComponent {
     public abstract void deleteUserLayersByUuid(String uuid) throws ServiceException;
     public abstract int updatePublisherName(final long id, final String uuid, final String name);
 	public abstract String getUserLayerExtent (final long id);
+    /**
+     * @return MVT tile of the user layer, empty tile if the user with uuid isn't permitted to view the layer
+     */
+    public abstract byte[] getVectorTile(final long id, final String uuid, final VectorTileQuery query);
 
     //UserLayerData related
     public abstract int updateUserLayerData(final UserLayerData userlayerdata);
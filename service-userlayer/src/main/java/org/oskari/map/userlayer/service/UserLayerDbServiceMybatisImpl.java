@@ -17,6 +17,7 @@ import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.*;
 import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.oskari.service.user.VectorTileQuery;
 
 import javax.sql.DataSource;
 import java.util.List;
@@ -243,6 +244,13 @@ public class UserLayerDbServiceMybatisImpl extends UserLayerDbService {
          }
      }
 
+    public byte[] getVectorTile(final long id, final String uuid, final VectorTileQuery query) {
+        try (SqlSession session = factory.openSession()) {
+            byte[] tile = getMapper(session).getVectorTile(id, uuid, query);
+            return tile != null ? tile : new byte[0];
+        }
+    }
+
 	private UserLayerMapper getMapper(SqlSession session) {
 	    return session.getMapper(UserLayerMapper.class);
 	}
@@ -4,6 +4,7 @@ import fi.nls.oskari.domain.map.userlayer.UserLayer;
 import fi.nls.oskari.domain.map.userlayer.UserLayerData;
 import fi.nls.oskari.service.ServiceException;
 import org.apache.ibatis.annotations.Param;
+import org.oskari.service.user.VectorTileQuery;
 
 import java.util.List;
 
@@ -17,6 +18,7 @@ public interface UserLayerMapper {
     void deleteUserLayer(final long id) throws ServiceException;
     int updatePublisherName(@Param ("id") long id, @Param ("uuid") String uuid, @Param ("publisher_name") String name);
     String getUserLayerBbox (final long userLayerId);
+    byte[] getVectorTile(@Param("userLayerId") long userLayerId, @Param("uuid") String uuid, @Param("tile") VectorTileQuery tile);
 
     //UserLayerData related
     void insertUserLayerData(@Param ("user_layer_data") final UserLayerData userLayerData, @Param("user_layer_id") final long userLayerId);
@@ -0,0 +1,230 @@
+package org.oskari.service.wfs.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.json.JSONObject;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.referencing.ReferenceIdentifier;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.oskari.service.mvt.TileCoord;
+import org.oskari.service.mvt.WFSTileGrid;
+import org.oskari.service.mvt.WFSTileGridProperties;
+import org.oskari.service.user.UserLayerService;
+
+import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.cache.ComputeOnceCache;
+import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.service.ServiceRuntimeException;
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Caches features per tile of the WFS tile grid (on the cache zoom level) so that
+ * MVT tiles, GeoJSON requests and printing share the same WFS requests.
+ * Requests with a bbox are assembled from the cached tiles covering the bbox.
+ * Requests that don't fit the grid (unknown srs, too many tiles) and user content layers are not cached.
+ * Tiles of a bbox covering multiple tiles are loaded concurrently
+ * on a shared pool (oskari.wfs.cache.pool.size, default 8).
+ * Besides the number of tiles the cache is limited by the estimated size of the features
+ * (oskari.cache.maxWeight.[cache name] in bytes, default 64 MB).
+ */
+public class CachingOskariFeatureClient extends OskariFeatureClient {
+
+    private static final String CACHE_NAME = CachingOskariFeatureClient.class.getName();
+    private static final int CACHE_SIZE_LIMIT = 10000;
+    private static final long CACHE_EXPIRATION = TimeUnit.MINUTES.toMillis(5L);
+    private static final long CACHE_MAX_WEIGHT = 64L * 1024L * 1024L;
+    // rough estimates of the memory used by a feature, an attribute and a coordinate of its geometry
+    private static final long FEATURE_WEIGHT = 256L;
+    private static final long ATTRIBUTE_WEIGHT = 32L;
+    private static final long COORDINATE_WEIGHT = 40L;
+    private static final String PROPERTY_MAX_TILES = "oskari.wfs.cache.maxTiles";
+    private static final String PROPERTY_POOL_SIZE = "oskari.wfs.cache.pool.size";
+    private static final String PROPERTY_POOL_QUEUE = "oskari.wfs.cache.pool.queue";
+
+    private static ExecutorService executor;
+
+    private final ComputeOnceCache<SimpleFeatureCollection> cache;
+    private final WFSTileGridProperties tileGridProperties;
+    private final int maxTiles;
+
+    public CachingOskariFeatureClient(OskariWFSClient wfsClient) {
+        super(wfsClient);
+        cache = CacheManager.getCache(CACHE_NAME, () -> {
+            ComputeOnceCache<SimpleFeatureCollection> c = new ComputeOnceCache<>(CACHE_SIZE_LIMIT, CACHE_EXPIRATION);
+            c.setMaxWeight(CACHE_MAX_WEIGHT);
+            c.setWeigher(CachingOskariFeatureClient::estimateWeight);
+            return c;
+        });
+        tileGridProperties = new WFSTileGridProperties();
+        maxTiles = PropertyUtil.getOptional(PROPERTY_MAX_TILES, 16);
+    }
+
+    @Override
+    public SimpleFeatureCollection getFeatures(String id, OskariLayer layer, ReferencedEnvelope bbox,
+            CoordinateReferenceSystem targetCRS, Optional<UserLayerService> processor) {
+        if (bbox == null || (processor.isPresent() && processor.get().isUserContentLayer(id))) {
+            // Don't cache user content, it might be modified by the user at any time
+            return super.getFeatures(id, layer, bbox, targetCRS, processor);
+        }
+        String srs = getSrs(targetCRS);
+        WFSTileGrid grid = srs == null ? null : tileGridProperties.getTileGridOrDefault(srs);
+        if (grid == null) {
+            return super.getFeatures(id, layer, bbox, targetCRS, processor);
+        }
+
+        int z = WFSTileGridProperties.getCacheZoom(grid);
+        double[] extent = { bbox.getMinX(), bbox.getMinY(), bbox.getMaxX(), bbox.getMaxY() };
+        List<TileCoord> tiles = grid.getTilesInExtent(z, extent);
+        if (tiles.isEmpty() || tiles.size() > maxTiles) {
+            return super.getFeatures(id, layer, bbox, targetCRS, processor);
+        }
+
+        if (tiles.size() == 1) {
+            ReferencedEnvelope tileBbox = getTileBBOX(grid, tiles.get(0), targetCRS);
+            if (tileBbox.boundsEquals2D(bbox, 0)) {
+                // Common case for MVT, request matches the tile exactly
+                return getTileFeatures(id, layer, srs, tileBbox, tiles.get(0), targetCRS, processor);
+            }
+        }
+
+        // DefaultFeatureCollection ignores features with the same id
+        // which removes the duplicates of features that intersect multiple tiles
+        DefaultFeatureCollection fc = new DefaultFeatureCollection();
+        for (SimpleFeatureCollection tileFeatures : getTileFeatures(id, layer, srs, grid, tiles, targetCRS, processor)) {
+            try (SimpleFeatureIterator it = tileFeatures.features()) {
+                while (it.hasNext()) {
+                    SimpleFeature f = it.next();
+                    if (intersects(f, bbox)) {
+                        fc.add(f);
+                    }
+                }
+            }
+        }
+        return fc;
+    }
+
+    /**
+     * Loads the tiles concurrently, the first tile is loaded on the calling thread
+     * @return features of the tiles in the same order as the tiles
+     */
+    private List<SimpleFeatureCollection> getTileFeatures(String id, OskariLayer layer, String srs,
+            WFSTileGrid grid, List<TileCoord> tiles, CoordinateReferenceSystem targetCRS,
+            Optional<UserLayerService> processor) {
+        List<Future<SimpleFeatureCollection>> futures = new ArrayList<>();
+        for (TileCoord tile : tiles.subList(1, tiles.size())) {
+            ReferencedEnvelope tileBbox = getTileBBOX(grid, tile, targetCRS);
+            futures.add(getExecutor().submit(() -> getTileFeatures(id, layer, srs, tileBbox, tile, targetCRS, processor)));
+        }
+        List<SimpleFeatureCollection> collections = new ArrayList<>(tiles.size());
+        try {
+            TileCoord first = tiles.get(0);
+            collections.add(getTileFeatures(id, layer, srs, getTileBBOX(grid, first, targetCRS), first, targetCRS, processor));
+            for (Future<SimpleFeatureCollection> future : futures) {
+                collections.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceRuntimeException("Interrupted while loading features", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ServiceRuntimeException("Failed to load features", e.getCause());
+        } finally {
+            futures.forEach(f -> f.cancel(true));
+        }
+        return collections;
+    }
+
+    private SimpleFeatureCollection getTileFeatures(String id, OskariLayer layer, String srs,
+            ReferencedEnvelope tileBbox, TileCoord tile, CoordinateReferenceSystem targetCRS,
+            Optional<UserLayerService> processor) {
+        String key = getCacheKey(id, layer, srs, tile);
+        return cache.get(key, __ -> super.getFeatures(id, layer, tileBbox, targetCRS, processor));
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            int poolSize = PropertyUtil.getOptional(PROPERTY_POOL_SIZE, 8);
+            int queueSize = PropertyUtil.getOptional(PROPERTY_POOL_QUEUE, 100);
+            AtomicInteger threadNumber = new AtomicInteger();
+            // When the queue is full the tile is loaded on the calling thread instead of failing it
+            executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueSize),
+                    r -> {
+                        Thread t = new Thread(r, "oskari-wfs-cache-" + threadNumber.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return executor;
+    }
+
+    private ReferencedEnvelope getTileBBOX(WFSTileGrid grid, TileCoord tile, CoordinateReferenceSystem crs) {
+        double[] box = grid.getTileExtent(tile);
+        return new ReferencedEnvelope(new Envelope(box[0], box[2], box[1], box[3]), crs);
+    }
+
+    private boolean intersects(SimpleFeature f, Envelope bbox) {
+        Object geom = f.getDefaultGeometry();
+        if (!(geom instanceof Geometry)) {
+            return true;
+        }
+        return bbox.intersects(((Geometry) geom).getEnvelopeInternal());
+    }
+
+    protected static long estimateWeight(SimpleFeatureCollection fc) {
+        long weight = 0;
+        if (fc == null) {
+            return weight;
+        }
+        try (SimpleFeatureIterator it = fc.features()) {
+            while (it.hasNext()) {
+                SimpleFeature f = it.next();
+                weight += FEATURE_WEIGHT + f.getAttributeCount() * ATTRIBUTE_WEIGHT;
+                Object geom = f.getDefaultGeometry();
+                if (geom instanceof Geometry) {
+                    weight += ((Geometry) geom).getNumPoints() * COORDINATE_WEIGHT;
+                }
+            }
+        }
+        return weight;
+    }
+
+    protected static String getCacheKey(String id, OskariLayer layer, String srs, TileCoord tile) {
+        return String.join(",", id, layer.getUrl(), layer.getName(), srs, tile.toString(), getFilterHash(layer));
+    }
+
+    private static String getFilterHash(OskariLayer layer) {
+        JSONObject filter = layer.getAttributes().optJSONObject(OskariWFSClient.KEY_FILTER);
+        if (filter == null) {
+            return "";
+        }
+        return Integer.toHexString(filter.toString().hashCode());
+    }
+
+    private static String getSrs(CoordinateReferenceSystem crs) {
+        if (crs == null || crs.getIdentifiers().isEmpty()) {
+            return null;
+        }
+        ReferenceIdentifier identifier = crs.getIdentifiers().iterator().next();
+        return identifier.toString();
+    }
+
+}
@@ -13,6 +13,10 @@ import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.cache.ComputeOnceCache;
 import fi.nls.oskari.domain.map.OskariLayer;
 
+/**
+ * @deprecated features are cached per tile of the WFS tile grid by {@link CachingOskariFeatureClient}
+ */
+@Deprecated
 public class CachingOskariWFSClient extends OskariWFSClient {
 
     private static final String CACHE_NAME = CachingOskariWFSClient.class.getName();
@@ -13,6 +13,7 @@ import org.oskari.service.user.UserLayerService;
 import org.oskari.service.wfs3.CoordinateTransformer;
 
 import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.service.ServiceRuntimeException;
 import fi.nls.oskari.util.PropertyUtil;
 
@@ -33,7 +34,7 @@ public class OskariFeatureClient {
         if (nativeCRS == null) {
             try {
                 String nativeSrs = PropertyUtil.get(PROPERTY_NATIVE_SRS, "EPSG:4326");
-                nativeCRS = CRS.decode(nativeSrs, true);
+                nativeCRS = CRSRegistry.decode(nativeSrs, true);
             } catch (Exception e) {
                 throw new ServiceRuntimeException(ERR_NATIVE_SRS_DECODE_FAIL, e);
             }
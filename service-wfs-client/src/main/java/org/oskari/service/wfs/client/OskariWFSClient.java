@@ -1,8 +1,6 @@
 package org.oskari.service.wfs.client;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
+import com.fasterxml.jackson.core.JsonProcessingException;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
@@ -11,23 +9,21 @@ import fi.nls.oskari.util.JSONHelper;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.json.JSONObject;
-import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.TransformException;
 
 import fi.nls.oskari.service.ServiceRuntimeException;
-import org.oskari.geojson.GeoJSONReader2;
-import org.oskari.geojson.GeoJSONSchemaDetector;
+import org.oskari.geojson.GeoJSONStreamReader;
 import org.oskari.service.user.UserLayerService;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static fi.nls.oskari.service.capabilities.CapabilitiesConstants.KEY_FEATURE_OUTPUT_FORMATS;
 import static fi.nls.oskari.service.capabilities.CapabilitiesConstants.KEY_MAX_FEATURES;
@@ -36,13 +32,22 @@ public class OskariWFSClient {
 
     private static final Logger LOG = LogFactory.getLogger(OskariWFS110Client.class);
     private static final String EXC_HANDLING_OUTPUTFORMAT = "outputformat";
-    private static final TypeReference<HashMap<String, Object>> TYPE_REF = new TypeReference<HashMap<String, Object>>() {};
-    private static final ObjectMapper OM = new ObjectMapper();
     private static final int MAX_REDIRECTS = 5;
     private static final String PROPERTY_FORCE_GML = "forceGML";
     private static final String JSON_OUTPUT_FORMAT = "application/json";
     private static final int DEFAULT_MAX_FEATURES = 10000;
     protected static final String KEY_FILTER = "filter";
+    // bytes to look at for detecting the format of the response
+    private static final int SNIFF_LIMIT = 1024;
+    // services that responded with something else when GeoJSON was requested, GeoJSON isn't requested again until the time
+    private static final Map<String, Long> GML_PREFERRED_UNTIL = new ConcurrentHashMap<>();
+    private static final long GML_PREFERENCE_TTL = TimeUnit.HOURS.toMillis(1);
+
+    protected enum ResponseFormat {
+        JSON,
+        XML,
+        UNKNOWN
+    }
 
     public SimpleFeatureCollection getFeatures(OskariLayer layer,
             ReferencedEnvelope bbox, CoordinateReferenceSystem crs, Filter filter) {
@@ -70,40 +75,64 @@ public class OskariWFSClient {
             String user, String pass, Map<String, String> query,
             CoordinateReferenceSystem crs, boolean tryGeoJSON, OskariGMLDecoder gmlDecoder) {
         String url; // for debugging
-
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        byte[] response;
-        Map<String, String> responseHeaders;
         SimpleFeatureCollection fc;
 
-        if (tryGeoJSON) {
+        if (tryGeoJSON && !prefersGML(endPoint)) {
             // First try GeoJSON
-            query.put("OUTPUTFORMAT", "application/json");
+            query.put("OUTPUTFORMAT", JSON_OUTPUT_FORMAT);
             url = IOHelper.constructUrl(endPoint, query);
-            responseHeaders = OskariWFSClient.readResponseTo(endPoint, user, pass, query, baos);
-            response = baos.toByteArray();
-            // TODO: Select parsing algorithm based on response headers (Content-Type)
-            fc = parseGeoJSON(response, crs, url);
-            if (fc != null) {
-                return fc;
-            }
-            // Try to parse the same response as GML
-            fc = parseGML(response, crs, url, user, pass, gmlDecoder);
-            if (fc != null) {
-                LOG.info("Requested JSON but got GML. Possibly misconfigured service for", url);
-                return fc;
+            // only remember the service as GML preferring if it responded with something else than GeoJSON
+            boolean preferGML = false;
+            try {
+                HttpURLConnection conn = getConnection(endPoint, user, pass, query);
+                try (InputStream in = new BufferedInputStream(IOHelper.getResponseStream(conn))) {
+                    ResponseFormat format = detectFormat(conn.getContentType(), in);
+                    if (format == ResponseFormat.JSON) {
+                        try {
+                            fc = parseGeoJSON(in, crs);
+                            if (fc != null) {
+                                return fc;
+                            }
+                        } catch (JsonProcessingException e) {
+                            // malformed JSON, possibly truncated - don't hold it against the service
+                            LOG.info(e, "Unable to parse GeoJSON from", url);
+                        } catch (IllegalArgumentException e) {
+                            // valid JSON but not a FeatureCollection
+                            LOG.info(e, "Unable to parse GeoJSON from", url);
+                            preferGML = true;
+                        }
+                    } else if (format == ResponseFormat.XML) {
+                        preferGML = true;
+                        // Parse the same response as GML
+                        fc = parseGML(in, url, user, pass, gmlDecoder);
+                        if (fc != null) {
+                            LOG.info("Requested JSON but got GML. Possibly misconfigured service for", url);
+                            setPrefersGML(endPoint);
+                            return fc;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new ServiceRuntimeException("Unable to read response", e);
             }
             // Okay I guess it wasn't a GML FeatureCollection either - move on
             LOG.warn("Requested JSON but didn't get a parseable result. Making a new request for GML. Possibly misconfigured service for", url);
+            if (preferGML) {
+                setPrefersGML(endPoint);
+            }
         }
 
         // Fallback to to requesting GML
         query.remove("OUTPUTFORMAT");
         url = IOHelper.constructUrl(endPoint, query);
-        baos.reset();
-        responseHeaders = OskariWFSClient.readResponseTo(endPoint, user, pass, query, baos);
-        response = baos.toByteArray();
-        fc = parseGML(response, crs, url, user, pass, gmlDecoder);
+        try {
+            HttpURLConnection conn = getConnection(endPoint, user, pass, query);
+            try (InputStream in = IOHelper.getResponseStream(conn)) {
+                fc = parseGML(in, url, user, pass, gmlDecoder);
+            }
+        } catch (IOException e) {
+            throw new ServiceRuntimeException("Unable to read response", e);
+        }
         if (fc != null) {
             return fc;
         }
@@ -111,17 +140,62 @@ public class OskariWFSClient {
         throw new ServiceRuntimeException("Failed to get features");
     }
 
-    private static Map<String, String> readResponseTo(String endPoint,
-            String user, String pass, Map<String, String> query, OutputStream out) {
+    /**
+     * Detects the format of the response from the first bytes of the response,
+     * Content-Type is used if the bytes don't tell it. The stream is reset to where it was.
+     */
+    protected static ResponseFormat detectFormat(String contentType, InputStream in) throws IOException {
+        in.mark(SNIFF_LIMIT);
         try {
-            HttpURLConnection conn = getConnection(endPoint, user, pass, query);
-            Map<String, String> responseHeaders = new HashMap<>();
-            conn.getHeaderFields().forEach((k, v) -> responseHeaders.put(k, v.get(0)));
-            IOHelper.readBytesTo(conn, out);
-            return responseHeaders;
-        } catch (IOException e) {
-            throw new ServiceRuntimeException("Unable to read response", e);
+            for (int i = 0; i < SNIFF_LIMIT; i++) {
+                int b = in.read();
+                if (b == -1) {
+                    break;
+                }
+                if (b == '{') {
+                    return ResponseFormat.JSON;
+                }
+                if (b == '<') {
+                    return ResponseFormat.XML;
+                }
+                if (!Character.isWhitespace(b) && !isUTF8BOM(b)) {
+                    break;
+                }
+            }
+        } finally {
+            in.reset();
         }
+        if (contentType != null) {
+            String type = contentType.toLowerCase(Locale.ROOT);
+            if (type.contains("json")) {
+                return ResponseFormat.JSON;
+            }
+            if (type.contains("xml") || type.contains("gml")) {
+                return ResponseFormat.XML;
+            }
+        }
+        return ResponseFormat.UNKNOWN;
+    }
+
+    private static boolean isUTF8BOM(int b) {
+        return b == 0xEF || b == 0xBB || b == 0xBF;
+    }
+
+    private static boolean prefersGML(String endPoint) {
+        Long until = GML_PREFERRED_UNTIL.get(endPoint);
+        if (until == null) {
+            return false;
+        }
+        if (until < System.currentTimeMillis()) {
+            // Give JSON another chance, the service might have been fixed
+            GML_PREFERRED_UNTIL.remove(endPoint);
+            return false;
+        }
+        return true;
+    }
+
+    private static void setPrefersGML(String endPoint) {
+        GML_PREFERRED_UNTIL.put(endPoint, System.currentTimeMillis() + GML_PREFERENCE_TTL);
     }
 
     private static HttpURLConnection getConnection(String endPoint,
@@ -135,26 +209,32 @@ public class OskariWFSClient {
         return conn;
     }
 
-    private static SimpleFeatureCollection parseGeoJSON(byte[] response, CoordinateReferenceSystem crs, String url) {
+    /**
+     * @throws JsonProcessingException if the response isn't valid JSON
+     * @throws IllegalArgumentException if the response isn't a GeoJSON FeatureCollection
+     * @throws IOException if reading the response fails
+     */
+    private static SimpleFeatureCollection parseGeoJSON(InputStream in, CoordinateReferenceSystem crs) throws IOException {
         try {
-            InputStream in = new ByteArrayInputStream(response);
-            Map<String, Object> geojson = OM.readValue(in, TYPE_REF);
             boolean ignoreGeometryProperties = true;
-            SimpleFeatureType schema = GeoJSONSchemaDetector.getSchema(geojson, crs, ignoreGeometryProperties);
-            return GeoJSONReader2.toFeatureCollection(geojson, schema);
-        } catch (Exception e) {
-            LOG.info(e, "Unable to parse GeoJSON from", url);
-            LOG.debug("Response from", url, "was:\n", new String(response, StandardCharsets.UTF_8));
-            return null;
+            return new GeoJSONStreamReader(crs, ignoreGeometryProperties, null).read(in);
+        } catch (TransformException e) {
+            throw new ServiceRuntimeException("Failed to transform features", e);
         }
     }
 
-    private static SimpleFeatureCollection parseGML(byte[] response, CoordinateReferenceSystem crs, String url, String user, String pass, OskariGMLDecoder gmlDecoder) {
+    /**
+     * @return null if the response couldn't be parsed as GML
+     * @throws IOException if reading the response fails
+     */
+    private static SimpleFeatureCollection parseGML(InputStream in, String url, String user, String pass, OskariGMLDecoder gmlDecoder)
+            throws IOException {
         try {
-            return gmlDecoder.decodeFeatureCollection(new ByteArrayInputStream(response), user, pass);
+            return gmlDecoder.decodeFeatureCollection(in, user, pass);
+        } catch (IOException e) {
+            throw e;
         } catch (Exception e) {
             LOG.info(e, "Unable to parse GML from", url);
-            LOG.debug("Response from", url, "was:\n", new String(response, StandardCharsets.UTF_8));
             return null;
         }
     }
@@ -9,6 +9,10 @@ import org.junit.Assert;
 import org.opengis.filter.Filter;
 import org.junit.Test;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 
 public class OskariWFSClientTest {
@@ -33,4 +37,27 @@ public class OskariWFSClientTest {
         Assert.assertNotNull("Layer should get filter", filter);
         Assert.assertEquals("foo = 'bar' AND BBOX(geomName, 0.0,0.0,10.0,10.0)", CQL.toCQL(filter));
     }
+
+    @Test
+    public void detectFormat() throws Exception {
+        Assert.assertEquals(OskariWFSClient.ResponseFormat.JSON,
+                OskariWFSClient.detectFormat("text/xml", toStream("  \n{\"type\":\"FeatureCollection\"}")));
+        Assert.assertEquals(OskariWFSClient.ResponseFormat.XML,
+                OskariWFSClient.detectFormat("application/json", toStream("\uFEFF<?xml version=\"1.0\"?>")));
+        Assert.assertEquals(OskariWFSClient.ResponseFormat.JSON,
+                OskariWFSClient.detectFormat("application/json; subtype=geojson", toStream("")));
+        Assert.assertEquals(OskariWFSClient.ResponseFormat.UNKNOWN,
+                OskariWFSClient.detectFormat(null, toStream("foo")));
+    }
+
+    @Test
+    public void detectFormatResetsStream() throws Exception {
+        InputStream in = toStream("<wfs:FeatureCollection/>");
+        OskariWFSClient.detectFormat(null, in);
+        Assert.assertEquals('<', in.read());
+    }
+
+    private static InputStream toStream(String s) {
+        return new BufferedInputStream(new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8)));
+    }
 }
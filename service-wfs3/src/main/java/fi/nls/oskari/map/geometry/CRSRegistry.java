@@ -0,0 +1,187 @@
+package fi.nls.oskari.map.geometry;
+
+import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.cache.ComputeOnceCache;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
+import org.geotools.referencing.CRS;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memoizes decoded CoordinateReferenceSystems and MathTransforms between them.
+ * Decoding EPSG codes and looking up transforms is relatively expensive and the same
+ * handful of projections is used on every request.
+ *
+ * The values are kept in caches registered to {@link CacheManager} so hit/miss counts
+ * are available with the other cache statistics.
+ *
+ * Transforms are memoized by the WKT definitions of the CRSs so a CRS with a known identifier
+ * but a different definition (f.ex. parsed from a .prj file) doesn't get the transform of the other.
+ * Transforms for CRSs that can't be formatted as WKT are always looked up.
+ *
+ * Lives in service-wfs3 (and not service-map with the other geometry helpers) so the
+ * WFS 3 client can use it as well.
+ */
+public class CRSRegistry {
+
+    public static final String PROPERTY_NATIVE_SRS = "oskari.native.srs";
+    // comma-separated list of additional projections to decode on startup
+    public static final String PROPERTY_WARMUP = "oskari.crs.warmup";
+
+    private static final Logger LOG = LogFactory.getLogger(CRSRegistry.class);
+
+    private static final int CRS_CACHE_LIMIT = 100;
+    private static final int TRANSFORM_CACHE_LIMIT = 500;
+    // decoded values don't change, the expiration only keeps unused ones from piling up
+    private static final long CACHE_EXPIRATION = TimeUnit.HOURS.toMillis(24);
+
+    private static final ComputeOnceCache<CoordinateReferenceSystem> CRS_CACHE = CacheManager.getCache(
+            CRSRegistry.class.getName() + ".crs",
+            () -> new ComputeOnceCache<>(CRS_CACHE_LIMIT, CACHE_EXPIRATION));
+    private static final ComputeOnceCache<MathTransform> TRANSFORM_CACHE = CacheManager.getCache(
+            CRSRegistry.class.getName() + ".transform",
+            () -> new ComputeOnceCache<>(TRANSFORM_CACHE_LIMIT, CACHE_EXPIRATION));
+
+    private CRSRegistry() {}
+
+    /**
+     * Same as {@link CRS#decode(String)}, axis order is decided by GeoTools hints
+     */
+    public static CoordinateReferenceSystem decode(String code) throws FactoryException {
+        return decode(code, code, () -> CRS.decode(code));
+    }
+
+    /**
+     * Same as {@link CRS#decode(String, boolean)}
+     * @param longitudeFirst true to force x/lon as the first axis
+     */
+    public static CoordinateReferenceSystem decode(String code, boolean longitudeFirst) throws FactoryException {
+        return decode(code, code + (longitudeFirst ? "|xy" : "|authority"),
+                () -> CRS.decode(code, longitudeFirst));
+    }
+
+    private static CoordinateReferenceSystem decode(String code, String key,
+            FactoryCall<CoordinateReferenceSystem> decoder) throws FactoryException {
+        if (code == null) {
+            throw new IllegalArgumentException("CRS code is required");
+        }
+        return compute(CRS_CACHE, key, decoder);
+    }
+
+    /**
+     * Same as {@link CRS#findMathTransform(CoordinateReferenceSystem, CoordinateReferenceSystem)}
+     */
+    public static MathTransform findMathTransform(CoordinateReferenceSystem source,
+            CoordinateReferenceSystem target) throws FactoryException {
+        return findMathTransform(source, target, false);
+    }
+
+    /**
+     * Same as {@link CRS#findMathTransform(CoordinateReferenceSystem, CoordinateReferenceSystem, boolean)}
+     */
+    public static MathTransform findMathTransform(CoordinateReferenceSystem source,
+            CoordinateReferenceSystem target, boolean lenient) throws FactoryException {
+        String sourceKey = getKey(source);
+        String targetKey = getKey(target);
+        if (sourceKey == null || targetKey == null) {
+            return CRS.findMathTransform(source, target, lenient);
+        }
+        String key = sourceKey + "->" + targetKey + (lenient ? "|lenient" : "");
+        return compute(TRANSFORM_CACHE, key, () -> CRS.findMathTransform(source, target, lenient));
+    }
+
+    /**
+     * Decodes the native projection of the installation, projections listed in property
+     * oskari.crs.warmup and the given codes (for example projections supported by an endpoint)
+     * and looks up transforms from the native projection to them. Failures are only logged.
+     * @param codes additional projections to decode
+     */
+    public static void warmUp(Collection<String> codes) {
+        Set<String> all = new LinkedHashSet<>();
+        String nativeSrs = PropertyUtil.get(PROPERTY_NATIVE_SRS, "EPSG:4326");
+        all.add(nativeSrs);
+        all.addAll(Arrays.asList(PropertyUtil.getCommaSeparatedList(PROPERTY_WARMUP)));
+        if (codes != null) {
+            all.addAll(codes);
+        }
+        CoordinateReferenceSystem nativeCRS;
+        try {
+            nativeCRS = decode(nativeSrs, true);
+        } catch (Exception e) {
+            LOG.warn(e, "Failed to decode native projection:", nativeSrs);
+            return;
+        }
+        for (String code : all) {
+            try {
+                CoordinateReferenceSystem crs = decode(code, true);
+                decode(code);
+                findMathTransform(nativeCRS, crs, true);
+                findMathTransform(crs, nativeCRS, true);
+            } catch (Exception e) {
+                LOG.warn("Failed to warm up projection:", code, "-", e.getMessage());
+            }
+        }
+        LOG.info("Warmed up projections:", all);
+    }
+
+    public static void warmUp() {
+        warmUp(Collections.emptyList());
+    }
+
+    /**
+     * @return key identifying the CRS with its definition (including the axis order) or null if
+     * the CRS can't be formatted as WKT
+     */
+    protected static String getKey(CoordinateReferenceSystem crs) {
+        if (crs == null) {
+            return null;
+        }
+        try {
+            return crs.toWKT();
+        } catch (UnsupportedOperationException e) {
+            // UnformattableObjectException
+            return null;
+        }
+    }
+
+    private static <T> T compute(ComputeOnceCache<T> cache, String key, FactoryCall<T> call)
+            throws FactoryException {
+        try {
+            return cache.get(key, __ -> {
+                try {
+                    return call.get();
+                } catch (FactoryException e) {
+                    throw new FactoryFailure(e);
+                }
+            });
+        } catch (FactoryFailure e) {
+            throw e.getCause();
+        }
+    }
+
+    @FunctionalInterface
+    private interface FactoryCall<T> {
+        T get() throws FactoryException;
+    }
+
+    private static class FactoryFailure extends RuntimeException {
+        private FactoryFailure(FactoryException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized FactoryException getCause() {
+            return (FactoryException) super.getCause();
+        }
+    }
+}
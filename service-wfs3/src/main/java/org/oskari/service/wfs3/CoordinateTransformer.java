@@ -22,6 +22,8 @@ import org.oskari.geojson.GeoJSONFeatureCollection;
 
 import org.locationtech.jts.geom.Geometry;
 
+import fi.nls.oskari.map.geometry.CRSRegistry;
+
 public class CoordinateTransformer {
 
     private final CoordinateReferenceSystem from;
@@ -29,14 +31,14 @@ public class CoordinateTransformer {
     private final MathTransform transform;
 
     public CoordinateTransformer(String from, String to) throws NoSuchAuthorityCodeException, FactoryException {
-        this(CRS.decode(from, true), CRS.decode(to, true));
+        this(CRSRegistry.decode(from, true), CRSRegistry.decode(to, true));
     }
 
     public CoordinateTransformer(CoordinateReferenceSystem from, CoordinateReferenceSystem to) throws FactoryException {
         this.from = from;
         this.to = to;
         boolean needsTransform = !CRS.equalsIgnoreMetadata(from, to);
-        this.transform = needsTransform ? CRS.findMathTransform(from, to) : null;
+        this.transform = needsTransform ? CRSRegistry.findMathTransform(from, to) : null;
     }
 
     public CoordinateReferenceSystem getA() {
@@ -1,11 +1,9 @@
 package org.oskari.service.wfs3;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
@@ -22,16 +20,13 @@ import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
-import org.oskari.geojson.GeoJSONReader2;
-import org.oskari.geojson.GeoJSONSchemaDetector;
+import org.oskari.geojson.GeoJSONStreamReader;
 import org.oskari.service.wfs3.model.WFS3Link;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.service.ServiceRuntimeException;
 import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.JSONHelper;
@@ -47,9 +42,6 @@ public class OskariWFS3Client {
 
     private static final String CONTENT_TYPE_GEOJSON = "application/geo+json";
     private static final int MAX_REDIRECTS = 5;
-    private static final ObjectMapper OM = new ObjectMapper();
-    private static final TypeReference<HashMap<String, Object>> TYPE_REF = new TypeReference<HashMap<String, Object>>() {};
-
 
     private static CoordinateReferenceSystem CRS84;
     protected static CoordinateReferenceSystem getCRS84() {
@@ -57,7 +49,7 @@ public class OskariWFS3Client {
             try {
                 // Default CRS for WFS 3 is CRS84 (= WGS84 with lon/lat order)
                 final boolean longitudeFirst = true;
-                CRS84 = CRS.decode("EPSG:4326", longitudeFirst);
+                CRS84 = CRSRegistry.decode("EPSG:4326", longitudeFirst);
             } catch (Exception e) {
                 LOG.error(e, "Failed to decode CRS84");
             }
@@ -83,7 +75,7 @@ public class OskariWFS3Client {
         if (crsURI == null) {
             try {
                 // Service doesn't support outputting the collection in the targetCRS
-                transformCRS84ToTargetCRS = CRS.equalsIgnoreMetadata(getCRS84(), crs) ? null : CRS.findMathTransform(getCRS84(), crs);
+                transformCRS84ToTargetCRS = CRS.equalsIgnoreMetadata(getCRS84(), crs) ? null : CRSRegistry.findMathTransform(getCRS84(), crs);
             } catch (Exception e) {
                 throw new ServiceRuntimeException("Coordinate transformation failure", e);
             }
@@ -122,13 +114,13 @@ public class OskariWFS3Client {
             conn = IOHelper.followRedirect(conn, user, pass, query, headers, MAX_REDIRECTS);
 
             validateResponse(conn, CONTENT_TYPE_GEOJSON);
-            Map<String, Object> geojson = readMap(conn);
             boolean ignoreGeometryProperties = true;
-            schema = GeoJSONSchemaDetector.getSchema(geojson, crs, ignoreGeometryProperties);
-            SimpleFeatureCollection sfc = GeoJSONReader2.toFeatureCollection(geojson, schema, transformCRS84ToTargetCRS);
+            GeoJSONStreamReader reader = new GeoJSONStreamReader(crs, ignoreGeometryProperties, transformCRS84ToTargetCRS);
+            SimpleFeatureCollection sfc = reader.read(IOHelper.getResponseStream(conn));
+            schema = sfc.getSchema();
             numFeatures += sfc.size();
             pages.add(sfc);
-            String next = getLinkHref(geojson, "next");
+            String next = getLinkHref(reader.getMembers(), "next");
 
             while (next != null && numFeatures < hardLimit) {
                 // Blindly follow the next link, don't use the initial queryParameters
@@ -136,11 +128,14 @@ public class OskariWFS3Client {
                 conn = IOHelper.followRedirect(conn, user, pass, null, headers, MAX_REDIRECTS);
 
                 validateResponse(conn, CONTENT_TYPE_GEOJSON);
-                geojson = readMap(conn);
-                sfc = GeoJSONReader2.toFeatureCollection(geojson, schema, transformCRS84ToTargetCRS);
+                // Use the schema of the first page, detect it only if the first page was empty
+                sfc = reader.read(IOHelper.getResponseStream(conn), schema);
+                if (schema == null) {
+                    schema = sfc.getSchema();
+                }
                 numFeatures += sfc.size();
                 pages.add(sfc);
-                next = getLinkHref(geojson, "next");
+                next = getLinkHref(reader.getMembers(), "next");
             }
         } catch (IOException e) {
             throw new ServiceRuntimeException("IOException occured", e);
@@ -195,12 +190,6 @@ public class OskariWFS3Client {
         return null;
     }
 
-    private static Map<String, Object> readMap(HttpURLConnection conn) throws IOException {
-        try (InputStream in = conn.getInputStream()) {
-            return OM.readValue(in, TYPE_REF);
-        }
-    }
-
     public static void validateResponse(HttpURLConnection conn, String expectedContentType)
             throws ServiceRuntimeException, IOException {
         if (conn.getResponseCode() != 200) {
@@ -252,7 +241,7 @@ public class OskariWFS3Client {
 
     private static CoordinateReferenceSystem safeCRSDecode(String code) {
         try {
-            return CRS.decode(code);
+            return CRSRegistry.decode(code);
         } catch (Exception ignore) {
             return null;
         }
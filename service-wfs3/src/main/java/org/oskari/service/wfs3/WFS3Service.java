@@ -21,6 +21,7 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.util.IOHelper;
 
 public class WFS3Service {
@@ -88,7 +89,7 @@ public class WFS3Service {
 
         int sc = conn.getResponseCode();
         if (sc == 200) {
-            try (InputStream in = conn.getInputStream()) {
+            try (InputStream in = IOHelper.getResponseStream(conn)) {
                 return load(in, clazz);
             }
         } else {
@@ -147,7 +148,7 @@ public class WFS3Service {
             return "EPSG:4326"; // same projection, but axis order differs
         }
         try {
-            return CRS.lookupIdentifier(CRS.decode(crs), false);
+            return CRS.lookupIdentifier(CRSRegistry.decode(crs), false);
         } catch (Exception e) {
             // Either failed - maybe the code is invalid
             // Only thing certain is that we can not use this
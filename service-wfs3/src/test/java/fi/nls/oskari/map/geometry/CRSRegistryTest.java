@@ -0,0 +1,70 @@
+package fi.nls.oskari.map.geometry;
+
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
+import org.geotools.referencing.CRS;
+import org.junit.Test;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CRSRegistryTest {
+
+    @Test
+    public void testDecodeIsMemoizedPerAxisOrder() throws Exception {
+        CoordinateReferenceSystem xy = CRSRegistry.decode("EPSG:4326", true);
+        CoordinateReferenceSystem authority = CRSRegistry.decode("EPSG:4326", false);
+
+        assertSame(xy, CRSRegistry.decode("EPSG:4326", true));
+        assertSame(authority, CRSRegistry.decode("EPSG:4326", false));
+        assertEquals(CRS.AxisOrder.EAST_NORTH, CRS.getAxisOrder(xy));
+        assertEquals(CRS.AxisOrder.NORTH_EAST, CRS.getAxisOrder(authority));
+        assertTrue(CRS.equalsIgnoreMetadata(CRS.decode("EPSG:4326", true), xy));
+    }
+
+    @Test
+    public void testFindMathTransformIsMemoized() throws Exception {
+        CoordinateReferenceSystem source = CRSRegistry.decode("EPSG:3067", true);
+        CoordinateReferenceSystem target = CRSRegistry.decode("EPSG:4326", true);
+
+        Cache<MathTransform> cache = CacheManager.getCache(CRSRegistry.class.getName() + ".transform");
+        MathTransform transform = CRSRegistry.findMathTransform(source, target, true);
+        long hits = cache.getHitCount();
+        assertSame(transform, CRSRegistry.findMathTransform(source, target, true));
+        assertEquals(hits + 1, cache.getHitCount());
+        assertNotSame(transform, CRSRegistry.findMathTransform(target, source, true));
+    }
+
+    @Test
+    public void testKeyDependsOnAxisOrder() throws Exception {
+        assertNotEquals(
+                CRSRegistry.getKey(CRSRegistry.decode("EPSG:4326", true)),
+                CRSRegistry.getKey(CRSRegistry.decode("EPSG:4326", false)));
+    }
+
+    @Test
+    public void testKeyDependsOnDefinition() throws Exception {
+        CoordinateReferenceSystem decoded = CRSRegistry.decode("EPSG:3067", true);
+        // same identifier, different false easting
+        CoordinateReferenceSystem modified = CRS.parseWKT(decoded.toWKT().replace(
+                "PARAMETER[\"false_easting\", 500000.0]", "PARAMETER[\"false_easting\", 0.0]"));
+        assertFalse(modified.getIdentifiers().isEmpty());
+        assertNotEquals(CRSRegistry.getKey(decoded), CRSRegistry.getKey(modified));
+    }
+
+    @Test(expected = FactoryException.class)
+    public void testUnknownCodeThrows() throws Exception {
+        CRSRegistry.decode("EPSG:1", true);
+    }
+
+    @Test
+    public void testWarmUpIgnoresInvalidCodes() throws Exception {
+        CRSRegistry.warmUp(Arrays.asList("EPSG:3067", "foobar"));
+        Cache<CoordinateReferenceSystem> cache = CacheManager.getCache(CRSRegistry.class.getName() + ".crs");
+        assertTrue(cache.getKeys().contains("EPSG:3067|xy"));
+    }
+}